@@ -0,0 +1,48 @@
+package tparser.core.benchmark;
+
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tparser.core.BatchResult;
+import tparser.core.Template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Template.parseAll over copies of a saved page, one op is a whole batch
+ */
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+
+    @Param({"listing"})
+    String page;
+
+    @Param({"64"})
+    int documents;
+
+    @Param({"1", "2", "4"})
+    int parallelism;
+
+    private Template       template;
+    private List<Document> inputs;
+
+    @Setup
+    public void setup() {
+        template = new Template(Corpus.templateResource(page + ".template.html"));
+        inputs = new ArrayList<>(documents);
+        for (int i = 0; i < documents; i++) {
+            //separate DOMs, documents in a real batch do not share nodes
+            inputs.add(Corpus.documentResource(page + ".html"));
+        }
+    }
+
+    @Benchmark
+    public BatchResult<Map<String, Object>, List<Object>> parseAll() throws InterruptedException {
+        return template.parseAll(inputs, BenchmarkDelegate.INSTANCE, parallelism);
+    }
+}
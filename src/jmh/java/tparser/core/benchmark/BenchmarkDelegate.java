@@ -0,0 +1,54 @@
+package tparser.core.benchmark;
+
+import tparser.core.JsonDelegate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * plain collections based delegate
+ * kept minimal so the measurement is dominated by the parser rather than the json library
+ */
+final class BenchmarkDelegate implements JsonDelegate<Map<String, Object>, List<Object>> {
+    static final BenchmarkDelegate INSTANCE = new BenchmarkDelegate();
+
+    private BenchmarkDelegate() {
+    }
+
+    @Override
+    public Map<String, Object> createObjectNode() {
+        return new HashMap<>();
+    }
+
+    @Override
+    public List<Object> createArrayNode() {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void putValue(Map<String, Object> objectNode, String key, Object value) {
+        objectNode.put(key, value);
+    }
+
+    @Override
+    public void putNull(Map<String, Object> objectNode, String key) {
+        objectNode.put(key, null);
+    }
+
+    @Override
+    public void putObjectNode(Map<String, Object> objectNode, String key, Map<String, Object> value) {
+        objectNode.put(key, value);
+    }
+
+    @Override
+    public void putArrayNode(Map<String, Object> objectNode, String key, List<Object> value) {
+        objectNode.put(key, value);
+    }
+
+    @Override
+    public void add(List<Object> arrayNode, Map<String, Object> itemToAdd) {
+        arrayNode.add(itemToAdd);
+    }
+}
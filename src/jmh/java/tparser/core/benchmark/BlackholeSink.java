@@ -0,0 +1,54 @@
+package tparser.core.benchmark;
+
+import org.openjdk.jmh.infra.Blackhole;
+import tparser.core.JsonEventSink;
+
+/**
+ * consumes streamed values without building anything, the row-major counterpart of BenchmarkDelegate
+ * <p>
+ * keys are template constants, structural events are only counted
+ */
+final class BlackholeSink implements JsonEventSink {
+    private final Blackhole blackhole;
+
+    int events = 0;
+
+    BlackholeSink(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void startObject() {
+        events++;
+    }
+
+    @Override
+    public void endObject() {
+        events++;
+    }
+
+    @Override
+    public void startArray() {
+        events++;
+    }
+
+    @Override
+    public void endArray() {
+        events++;
+    }
+
+    @Override
+    public void key(String key) {
+        events++;
+    }
+
+    @Override
+    public void value(Object value) {
+        blackhole.consume(value);
+    }
+
+    @Override
+    public void nullValue() {
+        events++;
+    }
+}
@@ -0,0 +1,68 @@
+package tparser.core.benchmark;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * fixed inputs for benchmarks
+ * <p>
+ * templates are parsed as xml so custom tags and table parts are kept as written,
+ * documents are parsed as html like a crawler would do
+ */
+final class Corpus {
+    private static final String CHARSET = "UTF-8";
+
+    private Corpus() {
+    }
+
+    static Document template(String source) {
+        return Jsoup.parse(source, "", Parser.xmlParser());
+    }
+
+    static Document document(String html) {
+        return Jsoup.parse(html);
+    }
+
+    static Document templateResource(String name) {
+        try (InputStream in = open(name)) {
+            return Jsoup.parse(in, CHARSET, "", Parser.xmlParser());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Document documentResource(String name) {
+        try (InputStream in = open(name)) {
+            return Jsoup.parse(in, CHARSET, "");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String textResource(String name) {
+        try (InputStream in = open(name)) {
+            ByteArrayOutputStream bytes  = new ByteArrayOutputStream();
+            byte[]                buffer = new byte[8192];
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString(CHARSET);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static InputStream open(String name) throws IOException {
+        InputStream in = Corpus.class.getResourceAsStream("/corpus/" + name);
+        if (in == null) {
+            throw new IOException(String.format("corpus resource not found: %s", name));
+        }
+        return in;
+    }
+}
@@ -0,0 +1,57 @@
+package tparser.core.benchmark;
+
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tparser.core.HtmlParseException;
+import tparser.core.ParseResult;
+import tparser.core.Template;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * end-delimiter arrays under many parents, every parent ends with values after its last delimiter
+ * <p>
+ * those values are dropped at the end of each parent, the time per op should grow linearly with rows
+ * (4x rows, about 4x time), a superlinear step means the dropping depends on the groups found so far
+ */
+@State(Scope.Benchmark)
+public class EndDelimiterScalingBenchmark {
+    private static final String TEMPLATE =
+            "<html><body><ul class=\"rows\"><json-array name=\"rows\">" +
+                    "<li class=\"row\">" +
+                    "<json-array name=\"values\" end-delimiter=\"hr\"><span>{v}</span></json-array>" +
+                    "</li>" +
+                    "</json-array></ul></body></html>";
+
+    @Param({"1000", "4000", "16000"})
+    int rows;
+
+    private Template template;
+    private Document document;
+
+    @Setup
+    public void setup() {
+        template = new Template(Corpus.template(TEMPLATE));
+        StringBuilder html = new StringBuilder(rows * 96);
+        html.append("<html><body><ul class=\"rows\">");
+        for (int i = 0; i < rows; i++) {
+            html.append("<li class=\"row\">")
+                    .append("<span>").append(i).append("</span><span>").append(i).append("</span><hr/>")
+                    //not ended, dropped
+                    .append("<span>").append(i).append("</span><span>").append(i).append("</span>")
+                    .append("</li>");
+        }
+        html.append("</ul></body></html>");
+        document = Corpus.document(html.toString());
+    }
+
+    @Benchmark
+    public ParseResult<Map<String, Object>, List<Object>> parse() throws HtmlParseException {
+        return template.parse(document, BenchmarkDelegate.INSTANCE);
+    }
+}
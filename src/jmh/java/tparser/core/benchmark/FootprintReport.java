@@ -0,0 +1,125 @@
+package tparser.core.benchmark;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Tag;
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+import tparser.core.CompactJsonDelegate;
+import tparser.core.HtmlParseException;
+import tparser.core.ParseResult;
+import tparser.core.StepNode;
+import tparser.core.Template;
+import tparser.core.TemplateBuilder;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * retained heap size of compiled templates, run with: gradle footprintReport
+ * <p>
+ * "element-backed" is an estimate of the same template when every step node still inherited jsoup Element:
+ * the retained size of a mirrored Element skeleton (attributes, child node list, base uri...) is added back
+ * and the compact children arrays are taken off, shared Tag instances are not counted
+ * <p>
+ * then the retained size of parse results, hash map nodes (BenchmarkDelegate) against CompactJsonDelegate records,
+ * converted values and extracted strings are counted in both
+ */
+public final class FootprintReport {
+    private static final String ROW_FORMAT   = "%-22s %6s %14s %16s %10s%n";
+    private static final int    RESULT_ITEMS = 1000;
+
+    private FootprintReport() {
+    }
+
+    public static void main(String[] args) throws ReflectiveOperationException, HtmlParseException {
+        System.out.println(VM.current().details());
+        System.out.printf(ROW_FORMAT, "template", "steps", "compact(B)", "element-backed(B)", "saved");
+        for (Shape shape : Shape.values()) {
+            report(shape.name(), new TemplateBuilder(Corpus.template(shape.template)).build());
+        }
+        report("listing", new TemplateBuilder(Corpus.templateResource("listing.template.html")).build());
+
+        System.out.println();
+        System.out.printf(ROW_FORMAT, "result", "items", "map(B)", "compact(B)", "saved");
+        for (Shape shape : Shape.values()) {
+            reportResult(shape.name(), RESULT_ITEMS,
+                    new TemplateBuilder(Corpus.template(shape.template)).build(),
+                    Corpus.document(shape.document(RESULT_ITEMS)));
+        }
+        reportResult("listing", 0,
+                new TemplateBuilder(Corpus.templateResource("listing.template.html")).build(),
+                Corpus.documentResource("listing.html"));
+    }
+
+    private static void reportResult(String name, int items, Template template, Document document) throws HtmlParseException {
+        ParseResult<Map<String, Object>, List<Object>> map = template.parse(document, BenchmarkDelegate.INSTANCE);
+        ParseResult<CompactJsonDelegate.Record, CompactJsonDelegate.Array> compact =
+                template.parse(document, CompactJsonDelegate.INSTANCE);
+
+        // records reach the key tables owned by the template, not counted
+        GraphLayout owned       = GraphLayout.parseInstance(template);
+        long        mapSize     = GraphLayout.parseInstance(resultOf(map)).subtract(owned).totalSize();
+        long        compactSize = GraphLayout.parseInstance(resultOf(compact)).subtract(owned).totalSize();
+        System.out.printf(ROW_FORMAT,
+                name,
+                items > 0 ? String.valueOf(items) : "-",
+                mapSize,
+                compactSize,
+                String.format("%.1f%%", 100.0 * (mapSize - compactSize) / mapSize)
+        );
+    }
+
+    private static Object resultOf(ParseResult<?, ?> result) {
+        return result.getResultObject() != null ? result.getResultObject() : result.getResultArray();
+    }
+
+    private static void report(String name, Template template) throws ReflectiveOperationException {
+        StepNode     root      = stepRoot(template);
+        List<Object> skeleton  = new ArrayList<>();
+        Set<Tag>     tags      = Collections.newSetFromMap(new IdentityHashMap<Tag, Boolean>());
+        long[]       childrens = new long[1];
+        int          steps     = mirror(root, null, skeleton, tags, childrens);
+
+        long compact    = GraphLayout.parseInstance(template).totalSize();
+        long baggage    = GraphLayout.parseInstance(skeleton.toArray())
+                .subtract(GraphLayout.parseInstance(tags.toArray()))
+                .totalSize();
+        long backed     = compact - childrens[0] + baggage;
+        System.out.printf(ROW_FORMAT,
+                name,
+                steps,
+                compact,
+                backed,
+                String.format("%.1f%%", 100.0 * (backed - compact) / backed)
+        );
+    }
+
+    // rebuild the step tree as bare jsoup elements, returns number of steps
+    private static int mirror(StepNode step, Element parent, List<Object> skeleton, Set<Tag> tags, long[] childrens) {
+        Element element = new Element(step.tagName());
+        tags.add(element.tag());
+        if (parent == null) {
+            skeleton.add(element);
+        } else {
+            parent.appendChild(element);
+        }
+        childrens[0] += VM.current().sizeOf(new Object[step.childCount()]);
+        int steps = 1;
+        for (int i = 0, size = step.childCount(); i < size; i++) {
+            steps += mirror(step.child(i), element, skeleton, tags, childrens);
+        }
+        return steps;
+    }
+
+    private static StepNode stepRoot(Template template) throws ReflectiveOperationException {
+        Field field = Template.class.getDeclaredField("root");
+        field.setAccessible(true);
+        return (StepNode) field.get(template);
+    }
+}
@@ -0,0 +1,90 @@
+package tparser.core.benchmark;
+
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tparser.core.HtmlParseException;
+import tparser.core.ParseResult;
+import tparser.core.Template;
+import tparser.core.TemplateBuilder;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * an x-select-in-subtree array without depth-limit, its items nested a few levels below the parent
+ * after {chrome} blocks of filters that never match, with one type of item or three (hits, promos and notes)
+ * <p>
+ * without learnArrayDepths the collecting pass finds the depth of the first item of each type itself,
+ * keeping what it visits before them, with it the depth learned in the warmup parses is only verified
+ */
+@State(Scope.Benchmark)
+public class LearnedDepthBenchmark {
+    private static final String SINGLE_TYPE =
+            "<html><body><div class=\"results\"><json-array name=\"hits\">" +
+                    "<article class=\"hit\" x-select-in-subtree=\"true\">" +
+                    "<h3>{title}</h3>" +
+                    "<span class=\"price\">[int]{price}</span>" +
+                    "</article>" +
+                    "</json-array></div></body></html>";
+    private static final String MULTI_TYPE  =
+            "<html><body><div class=\"results\"><json-array name=\"hits\">" +
+                    "<article class=\"hit\" x-select-in-subtree=\"true\">" +
+                    "<h3>{title}</h3>" +
+                    "<span class=\"price\">[int]{price}</span>" +
+                    "</article>" +
+                    "<aside class=\"promo\" x-select-in-subtree=\"true\">{promo}</aside>" +
+                    "<em class=\"note\" x-select-in-subtree=\"true\">{note}</em>" +
+                    "</json-array></div></body></html>";
+
+    @Param({"1", "3"})
+    int types;
+
+    @Param({"0", "200"})
+    int chrome;
+
+    @Param({"100", "1000"})
+    int items;
+
+    @Param({"false", "true"})
+    boolean learnArrayDepths;
+
+    private Template template;
+    private Document document;
+
+    @Setup
+    public void setup() {
+        template = new TemplateBuilder(Corpus.template(types == 1 ? SINGLE_TYPE : MULTI_TYPE))
+                .learnArrayDepths(learnArrayDepths)
+                .build();
+        StringBuilder html = new StringBuilder((chrome + items) * 96);
+        html.append("<html><body><div class=\"results\"><form class=\"filters\">");
+        for (int i = 0; i < chrome; i++) {
+            html.append("<fieldset><legend>filter ").append(i).append("</legend>")
+                    .append("<label><input type=\"checkbox\" name=\"f").append(i).append("\"><span>option</span></label>")
+                    .append("</fieldset>");
+        }
+        html.append("</form><div class=\"list\"><ul>");
+        for (int i = 0; i < items; i++) {
+            html.append("<li><article class=\"hit\"><h3>hit ").append(i).append("</h3>")
+                    .append("<span class=\"price\">").append(i % 500).append("</span></article>");
+            if (i % 5 == 4) {
+                html.append("<aside class=\"promo\">promo ").append(i).append("</aside>");
+            }
+            if (i % 7 == 6) {
+                html.append("<em class=\"note\">note ").append(i).append("</em>");
+            }
+            html.append("</li>");
+        }
+        html.append("</ul></div></div></body></html>");
+        document = Corpus.document(html.toString());
+    }
+
+    @Benchmark
+    public ParseResult<Map<String, Object>, List<Object>> parse() throws HtmlParseException {
+        return template.parse(document, BenchmarkDelegate.INSTANCE);
+    }
+}
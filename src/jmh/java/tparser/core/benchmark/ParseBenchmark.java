@@ -0,0 +1,60 @@
+package tparser.core.benchmark;
+
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import tparser.core.HtmlParseException;
+import tparser.core.ParseResult;
+import tparser.core.Template;
+import tparser.core.TemplateBuilder;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Template.parse (column-major) and Template.stream (row-major) over synthetic documents for every template shape
+ * <p>
+ * document parsing (jsoup) is done in setup and excluded from the measurement,
+ * the element index is built inside each measured parse when indexElements is set
+ *
+ * @see Shape
+ */
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    @Param
+    Shape shape;
+
+    @Param({"10", "100", "1000"})
+    int items;
+
+    @Param({"false", "true"})
+    boolean indexElements;
+
+    private Template template;
+    private Document document;
+
+    @Setup
+    public void setup() {
+        template = new TemplateBuilder(Corpus.template(shape.template))
+                .indexElements(indexElements)
+                .build();
+        document = Corpus.document(shape.document(items));
+    }
+
+    @Benchmark
+    public ParseResult<Map<String, Object>, List<Object>> parse() throws HtmlParseException {
+        return template.parse(document, BenchmarkDelegate.INSTANCE);
+    }
+
+    @Benchmark
+    public int stream(Blackhole blackhole) throws HtmlParseException {
+        BlackholeSink sink = new BlackholeSink(blackhole);
+        template.stream(document, sink);
+        return sink.events;
+    }
+}
@@ -0,0 +1,134 @@
+package tparser.core.benchmark;
+
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tparser.core.HtmlParseException;
+import tparser.core.JsonDelegate;
+import tparser.core.JsonKey;
+import tparser.core.ParseResult;
+import tparser.core.PrimitiveJsonDelegate;
+import tparser.core.Template;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * rows of int, double and boolean fields kept by a delegate,
+ * boxed into a map by name, or unboxed into a record slot by key handle
+ * <p>
+ * a delegate only consuming the values would not show the boxing, the jit removes boxes that do not escape
+ */
+@State(Scope.Benchmark)
+public class PrimitiveDelegateBenchmark {
+    private static final String TEMPLATE =
+            "<html><body><ul class=\"rows\"><json-array name=\"rows\">" +
+                    "<li class=\"row\">" +
+                    "<b class=\"id\">[int]{id}</b>" +
+                    "<i class=\"price\">[double]{price}</i>" +
+                    "<em data-stock=\"[boolean]{inStock}\"/>" +
+                    "</li>" +
+                    "</json-array></ul></body></html>";
+
+    @Param({"false", "true"})
+    boolean primitive;
+
+    @Param({"1000"})
+    int rows;
+
+    private Template                           template;
+    private Document                           document;
+    private JsonDelegate<Object, List<Object>> delegate;
+
+    @Setup
+    public void setup() {
+        template = new Template(Corpus.template(TEMPLATE));
+        Random        random = new Random(rows);
+        StringBuilder html   = new StringBuilder(rows * 96);
+        html.append("<html><body><ul class=\"rows\">");
+        for (int i = 0; i < rows; i++) {
+            html.append("<li class=\"row\">")
+                    .append("<b class=\"id\">").append(100000 + i).append("</b>")
+                    .append("<i class=\"price\">").append(random.nextInt(100000) / 100.0).append("</i>")
+                    .append("<em data-stock=\"").append(random.nextBoolean()).append("\"></em>")
+                    .append("</li>");
+        }
+        html.append("</ul></body></html>");
+        document = Corpus.document(html.toString());
+        delegate = primitive ? new RecordDelegate() : new MapDelegate();
+    }
+
+    @Benchmark
+    public ParseResult<Object, List<Object>> parse() throws HtmlParseException {
+        return template.parse(document, delegate);
+    }
+
+    private static class MapDelegate implements JsonDelegate<Object, List<Object>> {
+        @Override
+        public Object createObjectNode() {
+            return new HashMap<String, Object>();
+        }
+
+        @Override
+        public List<Object> createArrayNode() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void putValue(Object objectNode, String key, Object value) {
+            ((Map<String, Object>) objectNode).put(key, value);
+        }
+
+        @Override
+        public void putNull(Object objectNode, String key) {
+            putValue(objectNode, key, null);
+        }
+
+        @Override
+        public void putObjectNode(Object objectNode, String key, Object value) {
+            putValue(objectNode, key, value);
+        }
+
+        @Override
+        public void putArrayNode(Object objectNode, String key, List<Object> value) {
+            putValue(objectNode, key, value);
+        }
+
+        @Override
+        public void add(List<Object> arrayNode, Object itemToAdd) {
+            arrayNode.add(itemToAdd);
+        }
+    }
+
+    //items are records of the three fields, the root array is never an item
+    private static final class RecordDelegate extends MapDelegate implements PrimitiveJsonDelegate<Object, List<Object>> {
+        private static final int FIELDS = 3;
+
+        @Override
+        public Object createObjectNode() {
+            return new long[FIELDS];
+        }
+
+        @Override
+        public void putInt(Object objectNode, JsonKey key, int value) {
+            ((long[]) objectNode)[key.index()] = value;
+        }
+
+        @Override
+        public void putDouble(Object objectNode, JsonKey key, double value) {
+            ((long[]) objectNode)[key.index()] = Double.doubleToRawLongBits(value);
+        }
+
+        @Override
+        public void putBoolean(Object objectNode, JsonKey key, boolean value) {
+            ((long[]) objectNode)[key.index()] = value ? 1 : 0;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package tparser.core.benchmark;
+
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tparser.core.HtmlParseException;
+import tparser.core.ParseResult;
+import tparser.core.Template;
+import tparser.core.TemplateBuilder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * building the DOM and parsing it, from the whole page or from a stream leaving out what the template can't select
+ * <p>
+ * listing extracts inner html, so nothing is left out for it and pruned only measures reading from a stream,
+ * listing.fields extracts text and attributes of most of the page, listing.prices only of the price spans,
+ * chrome appends that many blocks of inline scripts, styles and ad slots to the page, 256 make it about 1.2 MB,
+ * run with -prof gc to compare the allocation of both
+ */
+@State(Scope.Benchmark)
+public class PruningParseBenchmark {
+
+    @Param({"listing", "listing.fields", "listing.prices"})
+    String template;
+
+    @Param({"0", "256"})
+    int chrome;
+
+    private Template compiled;
+    private String   html;
+
+    @Setup
+    public void setup() {
+        compiled = new TemplateBuilder(Corpus.templateResource(template + ".template.html")).build();
+        String page = Corpus.textResource("listing.html");
+        int    end  = page.lastIndexOf("</body>");
+        html = page.substring(0, end) + chrome(chrome) + page.substring(end);
+    }
+
+    //what a template rarely selects: tracking scripts, styles and ad slots
+    private static String chrome(int blocks) {
+        StringBuilder script = new StringBuilder("<script>");
+        for (int i = 0; i < 64; i++) {
+            script.append("window.dataLayer.push({event:\"impression\",slot:").append(i).append(",ts:Date.now()});");
+        }
+        script.append("</script>");
+        StringBuilder chrome = new StringBuilder();
+        for (int i = 0; i < blocks; i++) {
+            chrome.append(script)
+                    .append("<style>.slot-").append(i).append("{min-height:250px;background:#f4f4f4}</style>")
+                    .append("<div class=\"ad-slot\" id=\"slot-").append(i).append("\">")
+                    .append("<iframe src=\"/ads/").append(i).append("\" width=\"300\" height=\"250\"></iframe>")
+                    .append("<div class=\"ad-label\"><span>Sponsored</span></div></div>\n");
+        }
+        return chrome.toString();
+    }
+
+    @Benchmark
+    public ParseResult<Map<String, Object>, List<Object>> wholeDocument() throws HtmlParseException {
+        return compiled.parse(Jsoup.parse(html), BenchmarkDelegate.INSTANCE);
+    }
+
+    @Benchmark
+    public ParseResult<Map<String, Object>, List<Object>> pruned() throws IOException, HtmlParseException {
+        return compiled.parse(new StringReader(html), BenchmarkDelegate.INSTANCE);
+    }
+}
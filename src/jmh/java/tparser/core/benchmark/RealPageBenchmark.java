@@ -0,0 +1,61 @@
+package tparser.core.benchmark;
+
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import tparser.core.HtmlParseException;
+import tparser.core.ParseResult;
+import tparser.core.Template;
+import tparser.core.TemplateBuilder;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Template.parse (column-major, sequential and with forked siblings) and Template.stream (row-major)
+ * over saved pages in src/jmh/resources/corpus
+ * <p>
+ * each page {name}.html is paired with its template {name}.template.html,
+ * indexElements runs them with the per-document element index (built inside each measured parse)
+ */
+@State(Scope.Benchmark)
+public class RealPageBenchmark {
+
+    @Param({"listing"})
+    String page;
+
+    @Param({"false", "true"})
+    boolean indexElements;
+
+    private Template template;
+    private Document document;
+
+    @Setup
+    public void setup() {
+        template = new TemplateBuilder(Corpus.templateResource(page + ".template.html"))
+                .indexElements(indexElements)
+                .build();
+        document = Corpus.documentResource(page + ".html");
+    }
+
+    @Benchmark
+    public ParseResult<Map<String, Object>, List<Object>> parse() throws HtmlParseException {
+        return template.parse(document, BenchmarkDelegate.INSTANCE);
+    }
+
+    @Benchmark
+    public ParseResult<Map<String, Object>, List<Object>> parseForked() throws HtmlParseException {
+        return template.parse(document, BenchmarkDelegate.INSTANCE, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Benchmark
+    public int stream(Blackhole blackhole) throws HtmlParseException {
+        BlackholeSink sink = new BlackholeSink(blackhole);
+        template.stream(document, sink);
+        return sink.events;
+    }
+}
@@ -0,0 +1,77 @@
+package tparser.core.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tparser.core.RegexEngine;
+import tparser.core.RegexEngines;
+
+/**
+ * one find and group read of a compiled identifier regex, per engine
+ * <p>
+ * FIELDS is a typical extraction, NESTED_REPEAT a regex backtracking exponentially on a line it doesn't match,
+ * the time of the java engine doubles for each char of it while the linear engine grows by a constant
+ */
+@State(Scope.Benchmark)
+public class RegexEngineBenchmark {
+
+    public enum Case {
+        FIELDS("id=(?<id>\\d+);\\s*weight=(?<weight>[\\d.]+)") {
+            @Override
+            String input(int length) {
+                StringBuilder text = new StringBuilder("meta ");
+                for (int i = 0; i < length; i++) {
+                    text.append('x');
+                }
+                return text.append(" id=1024; weight=12.5").toString();
+            }
+        },
+        NESTED_REPEAT("^(?<words>(\\w+\\s?)+)$") {
+            @Override
+            String input(int length) {
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < length; i++) {
+                    text.append('a');
+                }
+                return text.append('!').toString();
+            }
+        };
+
+        final String regex;
+
+        Case(String regex) {
+            this.regex = regex;
+        }
+
+        abstract String input(int length);
+    }
+
+    @Param({"java", "linear"})
+    String engine;
+
+    @Param
+    Case regexCase;
+
+    @Param({"12", "18"})
+    int length;
+
+    private RegexEngine.Regex regex;
+    private String            input;
+    private int               group;
+
+    @Setup
+    public void setup() {
+        RegexEngine regexEngine = "linear".equals(engine) ? RegexEngines.linear() : RegexEngines.javaRegex();
+        regex = regexEngine.compile(regexCase.regex);
+        group = regex.groupIndex(regex.groupNames().get(0));
+        input = regexCase.input(length);
+    }
+
+    @Benchmark
+    public String findGroup() {
+        RegexEngine.Match match = regex.matcher(input);
+        return match.find() ? match.group(group) : null;
+    }
+}
@@ -0,0 +1,263 @@
+package tparser.core.benchmark;
+
+import java.util.Random;
+
+/**
+ * representative template shapes with a synthetic document generator for each
+ * <p>
+ * documents are generated from a fixed seed so every run measures identical input
+ */
+public enum Shape {
+    /**
+     * json-object with flat fields, items = number of repeated blocks the fields are picked from
+     */
+    FLAT_OBJECT(
+            "<html><body><json-object>" +
+                    "<h1>{title}</h1>" +
+                    "<div class=\"price\">[int]{price}</div>" +
+                    "<a class=\"main\" href=\"{link}\">{linkText}</a>" +
+                    "<p class=\"summary\">{'#summary}</p>" +
+                    "<span class=\"rating\">[double]{rating}</span>" +
+                    "<em class=\"stock\">[boolean]{inStock}</em>" +
+                    "<p class=\"missing\">{absent}</p>" +
+                    "</json-object></body></html>") {
+        @Override
+        void body(StringBuilder html, int items, Random random) {
+            html.append("<h1>Product ").append(random.nextInt(1000)).append("</h1>");
+            for (int i = 0; i < items; i++) {
+                html.append("<div class=\"filler\"><span>filler ").append(i).append("</span></div>");
+            }
+            html.append("<div class=\"price\">").append(random.nextInt(10000)).append("</div>")
+                    .append("<a class=\"main link\" href=\"/p/").append(random.nextInt(1000)).append("\">open</a>")
+                    .append("<p class=\"summary\">some <b>bold</b> and <i>italic</i> text</p>")
+                    .append("<span class=\"rating\">").append(random.nextInt(50) / 10.0).append("</span>")
+                    .append("<em class=\"stock\">true</em>");
+        }
+    },
+
+    /**
+     * json-array with one element type (single type classifier)
+     */
+    SINGLE_TYPE_ARRAY(
+            "<html><body><ul class=\"list\"><json-array name=\"items\">" +
+                    "<li class=\"item\">" +
+                    "<span class=\"name\">{name}</span>" +
+                    "<a href=\"{href}\"/>" +
+                    "<b class=\"count\">[int]{count}</b>" +
+                    "</li>" +
+                    "</json-array></ul></body></html>") {
+        @Override
+        void body(StringBuilder html, int items, Random random) {
+            html.append("<ul class=\"list\">");
+            for (int i = 0; i < items; i++) {
+                if (i % 10 == 9) {
+                    html.append("<li class=\"ad\">sponsored</li>");
+                }
+                html.append("<li class=\"item\"><span class=\"name\">item ").append(i).append("</span>");
+                if (random.nextInt(4) != 0) {
+                    html.append("<a href=\"/i/").append(i).append("\"></a>");
+                }
+                html.append("<b class=\"count\">").append(random.nextInt(100)).append("</b></li>");
+            }
+            html.append("</ul>");
+        }
+    },
+
+    /**
+     * json-array with several element types grouped by order (multi type classifier)
+     */
+    MULTI_TYPE_ARRAY(
+            "<html><body><div class=\"cards\"><json-array name=\"cards\">" +
+                    "<h3>{title}</h3>" +
+                    "<p class=\"desc\">{desc}</p>" +
+                    "<span class=\"price\">[int]{price}</span>" +
+                    "<a class=\"more\" href=\"{more}\"/>" +
+                    "</json-array></div></body></html>") {
+        @Override
+        void body(StringBuilder html, int items, Random random) {
+            html.append("<div class=\"cards\">");
+            for (int i = 0; i < items; i++) {
+                html.append("<h3>title ").append(i).append("</h3>");
+                if (random.nextInt(3) != 0) {
+                    html.append("<p class=\"desc\">description ").append(i).append("</p>");
+                }
+                html.append("<span class=\"price\">").append(random.nextInt(1000)).append("</span>");
+                if (random.nextBoolean()) {
+                    html.append("<a class=\"more\" href=\"/c/").append(i).append("\"></a>");
+                }
+            }
+            html.append("</div>");
+        }
+    },
+
+    /**
+     * json-array with a dozen element types, a few sharing a tag (types looked up by tag)
+     */
+    WIDE_MULTI_TYPE_ARRAY(
+            "<html><body><div class=\"cards\"><json-array name=\"cards\">" +
+                    "<h3>{title}</h3>" +
+                    "<b class=\"brand\">{brand}</b>" +
+                    "<img src=\"{image}\"/>" +
+                    "<p class=\"desc\">{desc}</p>" +
+                    "<span class=\"price\">[int]{price}</span>" +
+                    "<span class=\"was\">[int]{was}</span>" +
+                    "<em class=\"rating\">[double]{rating}</em>" +
+                    "<small class=\"sku\">{sku}</small>" +
+                    "<i class=\"badge\">{badge}</i>" +
+                    "<ul class=\"tags\">{'#tags}</ul>" +
+                    "<time>{date}</time>" +
+                    "<a class=\"more\" href=\"{more}\"/>" +
+                    "</json-array></div></body></html>") {
+        @Override
+        void body(StringBuilder html, int items, Random random) {
+            html.append("<div class=\"cards\">");
+            for (int i = 0; i < items; i++) {
+                html.append("<h3>title ").append(i).append("</h3>")
+                        .append("<b class=\"brand\">brand ").append(random.nextInt(20)).append("</b>")
+                        .append("<img src=\"/img/").append(i).append(".png\">")
+                        .append("<p class=\"desc\">description ").append(i).append("</p>")
+                        .append("<span class=\"price\">").append(random.nextInt(1000)).append("</span>");
+                if (random.nextInt(3) == 0) {
+                    html.append("<span class=\"was\">").append(1000 + random.nextInt(1000)).append("</span>");
+                }
+                html.append("<em class=\"rating\">").append(random.nextInt(50) / 10.0).append("</em>")
+                        .append("<small class=\"sku\">SKU-").append(i).append("</small>");
+                if (random.nextBoolean()) {
+                    html.append("<i class=\"badge\">new</i>");
+                }
+                html.append("<ul class=\"tags\"><li>a</li><li>b</li></ul>")
+                        .append("<time>2020-01-").append(10 + random.nextInt(18)).append("</time>")
+                        .append("<div class=\"spacer\"></div>")
+                        .append("<a class=\"more\" href=\"/c/").append(i).append("\"></a>");
+            }
+            html.append("</div>");
+        }
+    },
+
+    BETWEEN_DELIMITER(
+            "<html><body><div class=\"rows\"><json-array name=\"values\" between-delimiter=\"hr\">" +
+                    "<span>{v}</span>" +
+                    "</json-array></div></body></html>") {
+        @Override
+        void body(StringBuilder html, int items, Random random) {
+            delimitedRows(html, items, random, "", "<hr/>");
+        }
+    },
+
+    START_DELIMITER(
+            "<html><body><div class=\"rows\"><json-array name=\"values\" start-delimiter=\"hr\">" +
+                    "<span>{v}</span>" +
+                    "</json-array></div></body></html>") {
+        @Override
+        void body(StringBuilder html, int items, Random random) {
+            delimitedRows(html, items, random, "<hr/>", "");
+        }
+    },
+
+    END_DELIMITER(
+            "<html><body><div class=\"rows\"><json-array name=\"values\" end-delimiter=\"hr\">" +
+                    "<span>{v}</span>" +
+                    "</json-array></div></body></html>") {
+        @Override
+        void body(StringBuilder html, int items, Random random) {
+            delimitedRows(html, items, random, "", "<hr/>");
+        }
+    },
+
+    START_END_DELIMITER(
+            "<html><body><div class=\"rows\"><json-array name=\"values\" start-delimiter=\"i\" end-delimiter=\"hr\">" +
+                    "<span>{v}</span>" +
+                    "</json-array></div></body></html>") {
+        @Override
+        void body(StringBuilder html, int items, Random random) {
+            delimitedRows(html, items, random, "<i></i>", "<hr/>");
+        }
+    },
+
+    /**
+     * regex extraction with typed named groups on every item
+     */
+    REGEX_FIELDS(
+            "<html><body><ul class=\"list\"><json-array name=\"items\">" +
+                    "<li class=\"item\">" +
+                    "<span class=\"meta\">[int,double]{/id=(?&lt;id&gt;\\d+);\\s*weight=(?&lt;weight&gt;[\\d.]+)/}</span>" +
+                    "<span class=\"date\">{'#/(?&lt;year&gt;\\d{4})-(?&lt;month&gt;\\d{2})-(?&lt;day&gt;\\d{2})/}</span>" +
+                    "<a href=\"{/\\/p\\/(?&lt;slug&gt;[a-z-]+)\\/(?&lt;pid&gt;\\d+)/}\"/>" +
+                    "</li>" +
+                    "</json-array></ul></body></html>") {
+        @Override
+        void body(StringBuilder html, int items, Random random) {
+            html.append("<ul class=\"list\">");
+            for (int i = 0; i < items; i++) {
+                html.append("<li class=\"item\">")
+                        .append("<span class=\"meta\">id=").append(i).append("; weight=").append(random.nextInt(100) / 4.0).append("</span>")
+                        .append("<span class=\"date\">posted <b>2020-0").append(1 + random.nextInt(9)).append("-1").append(random.nextInt(10)).append("</b></span>")
+                        .append("<a href=\"/p/some-product-name/").append(i).append("\"></a>")
+                        .append("</li>");
+            }
+            html.append("</ul>");
+        }
+    },
+
+    /**
+     * x-select-in-subtree lookups inside deeply nested items
+     */
+    SUBTREE_SELECT(
+            "<html><body><div class=\"grid\"><json-array name=\"cells\">" +
+                    "<section class=\"cell\">" +
+                    "<h4 x-select-in-subtree=\"true\">{title}</h4>" +
+                    "<span class=\"price\" x-select-in-subtree=\"true\">[int]{price}</span>" +
+                    "<img x-select-in-subtree=\"true\" src=\"{image}\"/>" +
+                    "</section>" +
+                    "</json-array></div></body></html>") {
+        @Override
+        void body(StringBuilder html, int items, Random random) {
+            html.append("<div class=\"grid\">");
+            for (int i = 0; i < items; i++) {
+                html.append("<section class=\"cell\"><div class=\"wrap\"><div class=\"head\"><h4>cell ").append(i).append("</h4></div>")
+                        .append("<div class=\"body\"><div class=\"media\"><img src=\"/img/").append(i).append(".png\"></div>")
+                        .append("<div class=\"footer\"><p>note</p><span class=\"price\">").append(random.nextInt(500)).append("</span></div>")
+                        .append("</div></div></section>");
+            }
+            html.append("</div>");
+        }
+    };
+
+    private static final long SEED = 0x5EEDL;
+
+    final String template;
+
+    Shape(String template) {
+        this.template = template;
+    }
+
+    abstract void body(StringBuilder html, int items, Random random);
+
+    /**
+     * @param items approximate number of repeated units in the document
+     * @return html source of a deterministic synthetic page
+     */
+    final String document(int items) {
+        Random        random = new Random(SEED);
+        StringBuilder html   = new StringBuilder(items * 128);
+        html.append("<html><head><title>synthetic</title></head><body>");
+        body(html, items, random);
+        html.append("</body></html>");
+        return html.toString();
+    }
+
+    // rows of 1~5 values, each row optionally wrapped by leading/trailing delimiter tags
+    private static void delimitedRows(StringBuilder html, int items, Random random, String before, String after) {
+        html.append("<div class=\"rows\">");
+        int written = 0;
+        while (written < items) {
+            html.append(before);
+            int rowSize = 1 + random.nextInt(5);
+            for (int i = 0; i < rowSize && written < items; i++, written++) {
+                html.append("<span>").append(written).append("</span>");
+            }
+            html.append(after);
+        }
+        html.append("</div>");
+    }
+}
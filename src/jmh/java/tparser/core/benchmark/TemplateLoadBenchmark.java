@@ -0,0 +1,49 @@
+package tparser.core.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tparser.core.Template;
+import tparser.core.TemplateBinary;
+import tparser.core.TemplateBuilder;
+
+import java.io.StringReader;
+
+/**
+ * creating a template from its html source (xml parse and DefaultBuilder, or pulled with StAX without the DOM)
+ * against from its compiled binary
+ */
+@State(Scope.Benchmark)
+public class TemplateLoadBenchmark {
+
+    @Param({"FLAT_OBJECT", "MULTI_TYPE_ARRAY", "REGEX_FIELDS", "listing"})
+    String template;
+
+    private String source;
+    private byte[] compiled;
+
+    @Setup
+    public void setup() {
+        source = "listing".equals(template) ?
+                Corpus.textResource("listing.template.html") :
+                Shape.valueOf(template).template;
+        compiled = TemplateBinary.toBytes(new TemplateBuilder(Corpus.template(source)).build());
+    }
+
+    @Benchmark
+    public Template fromSource() {
+        return new TemplateBuilder(Corpus.template(source)).build();
+    }
+
+    @Benchmark
+    public Template fromSourceStreamed() {
+        return new TemplateBuilder(new StringReader(source)).build();
+    }
+
+    @Benchmark
+    public Template fromBinary() {
+        return new TemplateBuilder(TemplateBinary.fromBytes(compiled)).build();
+    }
+}
@@ -89,7 +89,7 @@ public class ArrayVisitor extends StructPlaceHolderVisitor {
             state.resultArray = state.delegate.createArrayNode();
         }
         Elements      parents       = state.selectionStack.peek();
-        ElementGroups elementGroups = classifier.classify(parents);
+        ElementGroups elementGroups = classifier.classify(parents, state.index);
         ArrayList<JO> jsonList      = new ArrayList<>();
         for (int i = 0, groupsFound = elementGroups.getGroupsFound(); i < groupsFound; i++) {
             jsonList.add(state.delegate.createObjectNode());
@@ -100,9 +100,9 @@ public class ArrayVisitor extends StructPlaceHolderVisitor {
 
     @Override
     public <JO, JA> void onExit(ParseResult<JO, JA> state) {
-        JsonDelegate<JO, JA> delegate      = state.delegate;
-        List<JO>             items         = state.pendingItemStack.pop();
-        List<Integer>        arraySizeList = state.elementGroupsStack.pop().getSubArraySizes();
+        PrimitiveJsonDelegate<JO, JA> delegate      = state.delegate;
+        List<JO>                      items         = state.pendingItemStack.pop();
+        ElementGroups                 elementGroups = state.elementGroupsStack.pop();
 
         List<JO> parentItems = state.pendingItemStack.peek();
         //spilt items by sizes and put into parent structure
@@ -126,10 +126,10 @@ public class ArrayVisitor extends StructPlaceHolderVisitor {
 
             //now based on items instead of sizes
             //the sub arrays out of bound from the parent item's index will be ignore
-            final int maxIndexOfSizeList = arraySizeList.size() - 1;
+            final int subArrayCount = elementGroups.getSubArrayCount();
             for (int i = 0, size = parentItems.size(); i < size; i++) {
-                int subArraySize = i <= maxIndexOfSizeList ?
-                        arraySizeList.get(i) :
+                int subArraySize = i < subArrayCount ?
+                        elementGroups.getSubArraySize(i) :
                         0;
 
                 //sub array starting index
@@ -140,7 +140,11 @@ public class ArrayVisitor extends StructPlaceHolderVisitor {
                 final JO parentItem  = parentItems.get(i);
                 final JA destination = delegate.createArrayNode();
 
-                delegate.putArrayNode(parentItem, this.name, destination);
+                if (nameKey != null) {
+                    delegate.putArrayNode(parentItem, nameKey, destination);
+                } else {
+                    delegate.putArrayNode(parentItem, this.name, destination);
+                }
                 for (int j = startIndex; j < end; j++) {
                     delegate.add(destination, items.get(j));
                 }
@@ -177,6 +181,8 @@ public class ArrayVisitor extends StructPlaceHolderVisitor {
         if (classifier instanceof ClassifierTemp) {
             classifier = ((ClassifierTemp) classifier).toArrayClassifier(container);
         }
+        //release template source, the classifier holds everything needed
+        container = null;
         if (classifier.classifications.isEmpty()){
             throw new TemplateSyntaxError("array has no identifiable elements");
         }
@@ -186,14 +192,14 @@ public class ArrayVisitor extends StructPlaceHolderVisitor {
     @Override
     public <JO, JA> void onExtract(
             ParseResult<JO, JA> state,
-            String property,
+            JsonKey key,
             Object result,
             int index) {
         List<JO> items = state.pendingItemStack.peek();
         if (result == null) {
-            state.delegate.putNull(items.get(index), property);
+            state.delegate.putNull(items.get(index), key);
         } else {
-            state.delegate.putValue(items.get(index), property, result);
+            state.delegate.putValue(items.get(index), key, result);
         }
     }
 
@@ -262,7 +268,7 @@ public class ArrayVisitor extends StructPlaceHolderVisitor {
         }
 
         @Override
-        final protected Finder createFinder(ElementGroups groups, Elements parents) {
+        final protected Finder createFinder(ElementGroups groups, Elements parents, ElementIndex index) {
             //no usage
             return null;
         }
@@ -0,0 +1,121 @@
+package tparser.core;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * attributes of a template element copied into arrays, independent of the source
+ * <p>
+ * the classes are copied as the source splits them, a missing attribute reads as empty like jsoup
+ */
+final class AttributePairs implements AttributeContainer<Map.Entry<String, String>> {
+    private static final String   ATTR_CLASS = "class";
+    private static final String   EMPTY      = "";
+    private static final String[] NONE       = new String[0];
+
+    static final AttributePairs EMPTY_PAIRS = new AttributePairs(NONE, NONE, NONE);
+
+    private final String[] keys;
+    private final String[] values;
+    private final String[] classes;
+
+    AttributePairs(String[] keys, String[] values, String[] classes) {
+        this.keys = keys;
+        this.values = values;
+        this.classes = classes;
+    }
+
+    static AttributePairs copyOf(AttributeContainer<? extends Map.Entry<String, String>> source) {
+        if (source instanceof AttributePairs) {
+            return (AttributePairs) source;
+        }
+        List<String> keys   = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (Map.Entry<String, String> attr : source) {
+            keys.add(attr.getKey());
+            values.add(attr.getValue());
+        }
+        if (keys.isEmpty()) {
+            return EMPTY_PAIRS;
+        }
+        List<String> classes = new ArrayList<>();
+        if (source.hasAttr(ATTR_CLASS)) {
+            for (String className : source.getClasses()) {
+                classes.add(className);
+            }
+        }
+        return new AttributePairs(keys.toArray(NONE), values.toArray(NONE), classes.toArray(NONE));
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    String key(int index) {
+        return keys[index];
+    }
+
+    String value(int index) {
+        return values[index];
+    }
+
+    int classCount() {
+        return classes.length;
+    }
+
+    String className(int index) {
+        return classes[index];
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean hasAttr(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public String getAttr(String key) {
+        int index = indexOf(key);
+        return index < 0 ? EMPTY : values[index];
+    }
+
+    @Override
+    public Iterable<String> getClasses() {
+        return Arrays.asList(classes);
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> iterator() {
+        return new Iterator<Map.Entry<String, String>>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < keys.length;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (next >= keys.length) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, String> entry = new AbstractMap.SimpleImmutableEntry<>(keys[next], values[next]);
+                next++;
+                return entry;
+            }
+        };
+    }
+}
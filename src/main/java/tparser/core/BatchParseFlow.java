@@ -0,0 +1,94 @@
+package tparser.core;
+
+import org.jsoup.nodes.Element;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * parses many documents with one compiled program, spread over worker threads
+ * <p>
+ * documents are handed out one at a time through a shared index so workers stay busy on uneven pages,
+ * each worker keeps its own scratch stacks, results are stored by index so the input order is kept
+ * <p>
+ * the step tree and converters are only read while parsing, so they are shared without locking,
+ * the delegate must be safe to call from several threads (a stateless node factory is)
+ */
+final class BatchParseFlow<JO, JA> implements Runnable {
+    private final TreeParseFlow         flow;
+    private final Element[]             inputs;
+    private final JsonDelegate<JO, JA>  delegate;
+    private final ParseResult<JO, JA>[] results;
+    private final HtmlParseException[]  failures;
+
+    private final AtomicInteger  nextIndex = new AtomicInteger();
+    private final AtomicInteger  remaining;
+    private final CountDownLatch done      = new CountDownLatch(1);
+
+    //unexpected exception, aborts the batch
+    private volatile Throwable error;
+
+    @SuppressWarnings("unchecked")
+    BatchParseFlow(TreeParseFlow flow, Element[] inputs, JsonDelegate<JO, JA> delegate) {
+        this.flow = flow;
+        this.inputs = inputs;
+        this.delegate = delegate;
+        this.results = (ParseResult<JO, JA>[]) new ParseResult<?, ?>[inputs.length];
+        this.failures = new HtmlParseException[inputs.length];
+        this.remaining = new AtomicInteger(inputs.length);
+    }
+
+    /**
+     * @param parallelism number of workers, including the calling thread
+     * @param executor    runs the other workers
+     */
+    BatchResult<JO, JA> parse(int parallelism, Executor executor) throws InterruptedException {
+        long start   = System.nanoTime();
+        int  workers = Math.max(1, Math.min(parallelism, inputs.length));
+        if (inputs.length == 0) {
+            done.countDown();
+        }
+        for (int i = 1; i < workers; i++) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                //saturated executor, the workers already running take the rest
+                break;
+            }
+        }
+        //calling thread works too, so the batch completes even if no worker gets a thread
+        run();
+        done.await();
+        Throwable error = this.error;
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        return new BatchResult<>(results, failures, workers, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run() {
+        ParseScratch<JO> scratch = new ParseScratch<>();
+        int              index;
+        while (error == null && (index = nextIndex.getAndIncrement()) < inputs.length) {
+            try {
+                results[index] = flow.parse(inputs[index], delegate, scratch);
+            } catch (HtmlParseException e) {
+                failures[index] = e;
+            } catch (RuntimeException | Error e) {
+                error = e;
+                done.countDown();
+                return;
+            }
+            //the last decrement happens after every store of results, the caller wakes after it
+            if (remaining.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package tparser.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * model class represent the results of parsing many documents with a template
+ * <p>
+ * results are kept in the order of inputs, a document failed with HtmlParseException has a null result
+ * and its failure recorded at the same index
+ *
+ * @param <JO> Json object type provide by Json library
+ * @param <JA> Json array type provide by Json library
+ * @see Template#parseAll(Iterable, JsonDelegate, int)
+ */
+@SuppressWarnings("unused")
+public class BatchResult<JO, JA> {
+    private final List<ParseResult<JO, JA>> results;
+    private final HtmlParseException[]      failures;
+    private final int                       failureCount;
+    private final int                       parallelism;
+    private final long                      elapsedNanos;
+
+    BatchResult(ParseResult<JO, JA>[] results, HtmlParseException[] failures, int parallelism, long elapsedNanos) {
+        this.results = Collections.unmodifiableList(Arrays.asList(results));
+        this.failures = failures;
+        this.parallelism = parallelism;
+        this.elapsedNanos = elapsedNanos;
+        int count = 0;
+        for (HtmlParseException failure : failures) {
+            if (failure != null) {
+                count++;
+            }
+        }
+        this.failureCount = count;
+    }
+
+    /**
+     * @return number of documents
+     */
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * @param index index of the document in inputs
+     * @return result of the document, null if it failed
+     */
+    public ParseResult<JO, JA> get(int index) {
+        return results.get(index);
+    }
+
+    /**
+     * @param index index of the document in inputs
+     * @return the exception the document failed with, null if it succeeded
+     */
+    public HtmlParseException getFailure(int index) {
+        return failures[index];
+    }
+
+    /**
+     * @return all results in the order of inputs, failed documents are null
+     */
+    public List<ParseResult<JO, JA>> getResults() {
+        return results;
+    }
+
+    public int failureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return number of workers the documents were spread over, including the calling thread
+     */
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return wall clock time of the whole batch, in nanos
+     */
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return wall clock time of the whole batch, in millis
+     */
+    public float elapsedMillis() {
+        final int nanosInMillis = 1000000;
+        return (float) elapsedNanos / nanosInMillis;
+    }
+
+    /**
+     * @return parsing time of the succeeded documents added up, in nanos
+     */
+    public long totalProcessTimeNanos() {
+        long total = 0;
+        for (ParseResult<JO, JA> result : results) {
+            if (result != null) {
+                total += result.processTimeNanos();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return aggregate throughput, documents (succeeded or failed) per second of wall clock time
+     */
+    public double documentsPerSecond() {
+        final double nanosInSecond = 1e9;
+        return elapsedNanos == 0 ? 0 : size() * nanosInSecond / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{" +
+                "size=" + size() +
+                ", failureCount=" + failureCount +
+                ", parallelism=" + parallelism +
+                ", elapsedNanos=" + elapsedNanos +
+                ", documentsPerSecond=" + documentsPerSecond() +
+                '}';
+    }
+}
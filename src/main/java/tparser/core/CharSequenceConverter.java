@@ -0,0 +1,53 @@
+package tparser.core;
+
+import org.jsoup.nodes.Element;
+
+/**
+ * text converter reading the text as a CharSequence, so no String is created for it
+ * <p>
+ * own text and full text are written into a buffer reused by the parsing thread,
+ * attribute values are passed as they are stored in the element,
+ * the text is only valid during the call and must not be kept, copy it with toString() if needed
+ * <p>
+ * like TextConverter, only non-null text is converted, a null text outputs null,
+ * override shouldConvert(CharSequence, Element) to output null for other text
+ *
+ * @param <O> the output type converted from input
+ * @see Converters#toInteger
+ */
+@SuppressWarnings("unused")
+@FunctionalInterface
+public interface CharSequenceConverter<O> extends TextConverter<O> {
+
+    /**
+     * @param text    extracted text, only valid during the call
+     * @param context the owner element of the text extraction
+     * @return a value of type O
+     */
+    O convert(CharSequence text, Element context);
+
+    /**
+     * check the text before convert(CharSequence, Element) is called, the text is only valid during the call
+     *
+     * @return false to output a null instead
+     */
+    default boolean shouldConvert(CharSequence text, Element context) {
+        return text != null;
+    }
+
+    /**
+     * regex groups and cached texts are checked the same as the other texts
+     */
+    @Override
+    default boolean shouldConvert(String text, Element context) {
+        return shouldConvert((CharSequence) text, context);
+    }
+
+    /**
+     * regex groups and cached texts are already strings
+     */
+    @Override
+    default O convert(String text, Element context) {
+        return convert((CharSequence) text, context);
+    }
+}
@@ -8,9 +8,10 @@ import org.jsoup.select.Evaluator;
 import org.jsoup.select.NodeFilter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * functional class
@@ -21,15 +22,25 @@ import java.util.List;
 abstract class Classifier {
     private static final int CHILDREN_DEPTH = 1;
     private static final int SKIP_SEARCH    = 0;
+    //the groups found stand
+    private static final int NO_RETRY       = -1;
     List<Evaluator> classifications = new ArrayList<>();
 
     /*---instance method---*/
     abstract void addClassification(Evaluator evaluator, DOMSearchMethod.Scope scope);
 
-    final ElementGroups classify(Elements parents) {
-        ElementGroups elementGroups = new ElementGroups(classifications);
+    /**
+     * @param index index of the input to find subtree elements with, null to traverse
+     */
+    ElementGroups classify(Elements parents, ElementIndex index) {
+        ElementGroups elementGroups = new ElementGroups(classifications.size());
+        findIn(parents, elementGroups, createFinder(elementGroups, parents, index));
+        elementGroups.onParentsAllVisited();
+        return elementGroups;
+    }
 
-        Finder finder = createFinder(elementGroups, parents);
+    //search every parent with the finder, then finish it
+    final void findIn(Elements parents, ElementGroups elementGroups, Finder finder) {
         for (Element parent : parents) {
 //            elementGroups.onStartOfArray();
             finder.before();
@@ -41,11 +52,32 @@ abstract class Classifier {
 //            elementGroups.onEndOfArray();
             finder.after();
         }
-        elementGroups.onParentsAllVisited(parents);
-        return elementGroups;
+        finder.onParentsAllVisited();
+    }
+
+    protected abstract Finder createFinder(ElementGroups groups, Elements parents, ElementIndex index);
+
+    /**
+     * speculate the depth limit of an array without depth-limit from earlier documents
+     *
+     * @return the statistics, null if the depth is never measured
+     */
+    DepthLearning learnDepth() {
+        return null;
     }
 
-    protected abstract Finder createFinder(ElementGroups groups, Elements parents);
+    /**
+     * depth of the first match in the subtree of root, relative to root
+     *
+     * @param keys index keys of the evaluator
+     * @return -1 if not found
+     */
+    static int findDepth(DepthFinder finder, Element root, ElementIndex index, ElementIndex.Key[] keys) {
+        if (index != null && keys.length != 0 && index.covers(root)) {
+            return index.firstDepthExcludeRoot(root, keys, finder.evaluator);
+        }
+        return finder.find(root);
+    }
 
     protected void onNonNullParent(ElementGroups groups, Element parent, Finder finder) {
         finder.find(parent);
@@ -73,6 +105,8 @@ abstract class Classifier {
         void find(Element parent);
 
         void after();
+
+        void onParentsAllVisited();
     }
 
     enum DepthStrategy {
@@ -120,47 +154,249 @@ abstract class Classifier {
         }
     }
 
-    static class Object extends Classifier {
-        private List<DOMSearchMethod.FirstSelector> selectors = new ArrayList<>();
+    /**
+     * the depth limit of an array step without depth-limit, learned from earlier documents
+     * <p>
+     * without it the collection pass finds the first match of each type itself, keeping what it visits before
+     * they are all found to replay within the depth then known,
+     * with a learned depth the pass collects within it from the start and probes below it for those first matches,
+     * the groups stand if the deepest of them is at the learned depth, otherwise the parents are searched again,
+     * a type found nowhere makes the pass traverse the whole parents, as measuring does
+     * <p>
+     * shared by all threads parsing with the template, a stale depth read only costs a retry
+     */
+    static final class DepthLearning {
+        private static final int UNKNOWN = -1;
+
+        private volatile int depth = UNKNOWN;
+        //learned depth held
+        private final LongAdder hits      = new LongAdder();
+        //measured through the whole parents, with no depth learned yet or a type found nowhere
+        private final LongAdder fallbacks = new LongAdder();
+        //searched again, the first matches were not at the learned depth
+        private final LongAdder retries   = new LongAdder();
+
+        long hits() {
+            return hits.sum();
+        }
 
-        @Override
-        void addClassification(Evaluator evaluator, DOMSearchMethod.Scope scope) {
-            classifications.add(evaluator);
-            selectors.add(SearchOptionAttributeHelper.singleSelector(scope));
+        long fallbacks() {
+            return fallbacks.sum();
         }
 
-        @Override
-        protected Finder createFinder(ElementGroups groups, Elements parents) {
-            //no usage
-            //see onNonNullParent
-            return EmptyFinder.instance;
+        long retries() {
+            return retries.sum();
+        }
+
+        //with nothing learned yet, or with an element index
+        private int measured(int deepest, boolean found) {
+            fallbacks.increment();
+            if (found) {
+                depth = deepest;
+            }
+            return deepest;
+        }
+
+        /**
+         * @param deepest the depth limit measuring finds
+         * @return depth to search again with, or NO_RETRY
+         */
+        private int settle(DepthProbe probe, int deepest) {
+            if (probe.probing()) {
+                fallbacks.increment();
+            }
+            if (probe.found()) {
+                depth = deepest;
+            }
+            if (deepest == probe.depthLimit) {
+                hits.increment();
+                return NO_RETRY;
+            }
+            retries.increment();
+            return deepest;
+        }
+    }
+
+    /**
+     * the first match of each measured type in the parents, found by a collection pass itself
+     */
+    static final class DepthProbe {
+        //the depth limit is found by the probe
+        private static final int UNKNOWN_LIMIT = -1;
+
+        //learned
+        private final int   depthLimit;
+        //by type
+        private final int[] depths;
+        private       int   unfound;
+
+        DepthProbe(int depthLimit, int types) {
+            this.depthLimit = depthLimit;
+            this.depths = new int[types];
+            Arrays.fill(depths, DepthFinder.NOT_FOUND);
+            this.unfound = types;
+        }
+
+        DepthProbe(int types) {
+            this(UNKNOWN_LIMIT, types);
+        }
+
+        boolean probing() {
+            return unfound > 0;
+        }
+
+        //verifying a learned depth limit
+        boolean speculating() {
+            return depthLimit != UNKNOWN_LIMIT;
+        }
+
+        //any of the types
+        boolean found() {
+            return unfound < depths.length;
+        }
+
+        boolean found(int type) {
+            return depths[type] != DepthFinder.NOT_FOUND;
+        }
+
+        void onMatch(int type, int depth) {
+            if (depths[type] == DepthFinder.NOT_FOUND) {
+                depths[type] = depth;
+                unfound--;
+            }
+        }
+
+        //the deepest of the first matches, NOT_FOUND if none
+        int deepest() {
+            int deepest = DepthFinder.NOT_FOUND;
+            for (int depth : depths) {
+                deepest = Math.max(deepest, depth);
+            }
+            return deepest;
+        }
+    }
+
+    /**
+     * delimiters and matches a collection pass visits before its depth limit is known, with their depth,
+     * and the bounds of each parent, replayed within the limit once it is known
+     * <p>
+     * a delimiter only changes its state on delimiters,
+     * so the replay groups them as a pass limited from the start would
+     */
+    static final class DeferredVisits {
+        //not matching any type, a delimiter
+        static final int NO_TYPE      = -1;
+        static final int START_PARENT = -2;
+        static final int ROOT         = -3;
+        static final int END_PARENT   = -4;
+
+        private Element[] elements = new Element[16];
+        private int[]     depths   = new int[16];
+        //type matched or one of the above
+        private int[]     kinds    = new int[16];
+        private int       size     = 0;
+
+        void add(Element element, int depth, int kind) {
+            if (size == kinds.length) {
+                int capacity = size << 1;
+                elements = Arrays.copyOf(elements, capacity);
+                depths = Arrays.copyOf(depths, capacity);
+                kinds = Arrays.copyOf(kinds, capacity);
+            }
+            elements[size] = element;
+            depths[size] = depth;
+            kinds[size] = kind;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        Element element(int i) {
+            return elements[i];
+        }
+
+        int depth(int i) {
+            return depths[i];
+        }
+
+        int kind(int i) {
+            return kinds[i];
+        }
+    }
+
+    static class Object extends Classifier {
+        private static final int[] NO_INDICES = new int[0];
+
+        //indices of classifications by scope
+        private int[] childrenScoped = NO_INDICES;
+        private int[] subtreeScoped  = NO_INDICES;
+        //subtree scoped ones split by if the element index can find them
+        private int[] subtreeKeyed   = NO_INDICES;
+        private int[] subtreeUnkeyed = NO_INDICES;
+
+        //index keys of each classification
+        private final List<ElementIndex.Key[]> keys = new ArrayList<>();
+
+        private static int[] append(int[] indices, int index) {
+            int[] appended = Arrays.copyOf(indices, indices.length + 1);
+            appended[indices.length] = index;
+            return appended;
         }
 
         @Override
-        protected void onNonNullParent(ElementGroups groups, Element nonNull, Finder finder) {
-            for (int i = 0, evaluatorSize = classifications.size(); i < evaluatorSize; i++) {
-                Evaluator                     evaluator = classifications.get(i);
-                DOMSearchMethod.FirstSelector selector  = selectors.get(i);
-                Element                       element   = NullWrapper.wrapNullElement(selector.select(nonNull, evaluator), nonNull);
-                if (i == 0) {
-                    groups.onShouldNewGroup(nonNull, element, evaluator);
+        void addClassification(Evaluator evaluator, DOMSearchMethod.Scope scope) {
+            int index = classifications.size();
+            classifications.add(evaluator);
+            ElementIndex.Key[] evaluatorKeys = ElementIndex.keysOf(evaluator);
+            keys.add(evaluatorKeys);
+            if (scope == DOMSearchMethod.Scope.SUBTREE_EXCLUDE_ROOT) {
+                subtreeScoped = append(subtreeScoped, index);
+                if (evaluatorKeys.length != 0) {
+                    subtreeKeyed = append(subtreeKeyed, index);
                 } else {
-                    groups.onFound(element, evaluator);
+                    subtreeUnkeyed = append(subtreeUnkeyed, index);
                 }
+            } else {
+                childrenScoped = append(childrenScoped, index);
             }
         }
 
         @Override
-        protected void onNullParent(ElementGroups groups, Element parent) {
-            groups.addNullGroup(parent);
+        protected Finder createFinder(ElementGroups groups, Elements parents, ElementIndex index) {
+            return new SharedScanFinder(groups, index);
         }
 
+        @Override
+        protected void onNullParent(ElementGroups groups, Element parent) {
+            groups.addNullGroup();
+        }
 
-        private static final class EmptyFinder implements Finder {
-
-            private static final Finder instance = new EmptyFinder();
-
-            private EmptyFinder() {
+        /**
+         * find the first match of every classification in a parent
+         * with one scan over the children and one DFS over the subtree, shared by all classifications of the scope,
+         * instead of a scan per classification
+         * <p>
+         * each scan stops as soon as every classification of its scope is found
+         * <p>
+         * with an element index, subtree classifications the index can find are looked up,
+         * the DFS only runs for the rest
+         */
+        private final class SharedScanFinder implements Finder, NodeFilter {
+            private final ElementGroups groups;
+            private final ElementIndex  index;
+            private final Element[]     found;
+
+            private Element root;
+            //subtree classifications the DFS is searching for
+            private int[]   searching;
+            private int     subtreeRemaining;
+
+            SharedScanFinder(ElementGroups groups, ElementIndex index) {
+                this.groups = groups;
+                this.index = index;
+                this.found = new Element[classifications.size()];
             }
 
             @Override
@@ -170,25 +406,131 @@ abstract class Classifier {
 
             @Override
             public void find(Element parent) {
+                Arrays.fill(found, null);
+                scanChildren(parent);
+                searching = subtreeScoped;
+                if (index != null && subtreeKeyed.length != 0 && index.covers(parent)) {
+                    for (int i : subtreeKeyed) {
+                        found[i] = index.selectFirstExcludeRoot(parent, keys.get(i), classifications.get(i));
+                    }
+                    searching = subtreeUnkeyed;
+                }
+                if (searching.length != 0) {
+                    root = parent;
+                    subtreeRemaining = searching.length;
+                    parent.filter(this);
+                }
+                for (int i = 0, size = found.length; i < size; i++) {
+                    Element element = NullWrapper.wrapNullElement(found[i]);
+                    if (i == 0) {
+                        groups.onShouldNewGroup(element, i);
+                    } else {
+                        groups.onFound(element, i);
+                    }
+                }
+            }
+
+            private void scanChildren(Element parent) {
+                final int[] indices   = childrenScoped;
+                int         remaining = indices.length;
+                if (remaining == 0) {
+                    return;
+                }
+                //the same root Element.is(evaluator) uses, all children share it
+                Element documentRoot = (Element) parent.root();
+                for (int c = 0, childSize = parent.childNodeSize(); c < childSize && remaining != 0; c++) {
+                    Node node = parent.childNode(c);
+                    if (!(node instanceof Element)) {
+                        continue;
+                    }
+                    Element child = (Element) node;
+                    for (int index : indices) {
+                        if (found[index] == null && classifications.get(index).matches(documentRoot, child)) {
+                            found[index] = child;
+                            remaining--;
+                        }
+                    }
+                }
+            }
 
+            @Override
+            public FilterResult head(Node node, int depth) {
+                if (node instanceof Element && node != root) {
+                    Element element = (Element) node;
+                    for (int i : searching) {
+                        if (found[i] == null && classifications.get(i).matches(root, element)) {
+                            found[i] = element;
+                            subtreeRemaining--;
+                        }
+                    }
+                    if (subtreeRemaining == 0) {
+                        return FilterResult.STOP;
+                    }
+                }
+                return FilterResult.CONTINUE;
+            }
+
+            @Override
+            public FilterResult tail(Node node, int depth) {
+                return FilterResult.CONTINUE;
             }
 
             @Override
             public void after() {
 
             }
+
+            @Override
+            public void onParentsAllVisited() {
+
+            }
         }
     }
 
     /**
      * find groups with only 1 type of element
      */
-    static class SingleTypeArray extends Classifier {
+    /**
+     * classifier of an array, which may search the parents again with the depth it learned
+     */
+    abstract static class Array extends Classifier {
+
+        @Override
+        final ElementGroups classify(Elements parents, ElementIndex index) {
+            ElementGroups elementGroups = new ElementGroups(classifications.size());
+            Finder        finder        = createFinder(elementGroups, parents, index);
+            findIn(parents, elementGroups, finder);
+            int retryDepth = retryDepth(finder);
+            if (retryDepth != NO_RETRY) {
+                //searched with a learned depth limit, which is not the one measuring finds
+                elementGroups = new ElementGroups(classifications.size());
+                findIn(parents, elementGroups, createFinder(elementGroups, retryDepth));
+            }
+            elementGroups.onParentsAllVisited();
+            return elementGroups;
+        }
+
+        /**
+         * @return finder searching the parents within a depth limit
+         */
+        abstract Finder createFinder(ElementGroups groups, int depthLimit);
+
+        /**
+         * @param finder the finder the parents are searched with
+         * @return depth limit to search the parents again with, NO_RETRY if the groups found stand
+         */
+        abstract int retryDepth(Finder finder);
+    }
+
+    static class SingleTypeArray extends Array {
         private DepthStrategy         depthStrategy;
         private int                   depthLimit;
         private Evaluator             evaluator;
+        private ElementIndex.Key[]    keys;
         private DOMSearchMethod.Scope scope;
         private Delimiter.Factory     delimiterFactory;
+        //null if not learning the depth
+        private DepthLearning         learning;
 
 //        private Evaluator startDelimiter;
 //        private Evaluator endDelimiter;
@@ -211,14 +553,14 @@ abstract class Classifier {
 //            endDelimiter = SearchMethodHelper.getEndDelimiter(container);
         }
 
-        private int measureDeepest(Elements parents) {
+        private int measureDeepest(Elements parents, ElementIndex index) {
             if (scope == DOMSearchMethod.Scope.CHILDREN) {
                 return CHILDREN_DEPTH;
             }
             DepthFinder depthFinder = new DepthFinder(evaluator);
             for (Element element : parents) {
-                int depth = depthFinder.find(element);
-                if (depthFinder.hasFound()) {
+                int depth = findDepth(depthFinder, element, index, keys);
+                if (depth != DepthFinder.NOT_FOUND) {
                     return depth;
                 }
             }
@@ -227,11 +569,55 @@ abstract class Classifier {
         }
 
         @Override
-        protected Finder createFinder(ElementGroups groups, Elements parents) {
-            int limit = (depthStrategy == DepthStrategy.RUNTIME) ?
-                    measureDeepest(parents) :
-                    depthLimit;
-            return new LimitDepthSingleTypeFinder(evaluator, groups, limit, delimiterFactory.create(groups));
+        protected Finder createFinder(ElementGroups groups, Elements parents, ElementIndex index) {
+            if (depthStrategy != DepthStrategy.RUNTIME) {
+                return createFinder(groups, depthLimit);
+            }
+            if (index != null || scope == DOMSearchMethod.Scope.CHILDREN) {
+                //an index finds the first match without traversing
+                int deepest = measureDeepest(parents, index);
+                return createFinder(groups, learning == null ? deepest : learning.measured(deepest, deepest != 0));
+            }
+            int                        learned = learning == null ? DepthLearning.UNKNOWN : learning.depth;
+            LimitDepthSingleTypeFinder finder;
+            if (learned == DepthLearning.UNKNOWN) {
+                //the depth of the first match, found by the collection pass
+                finder = createFinder(groups, SKIP_SEARCH);
+                finder.probe = new DepthProbe(1);
+                finder.deferred = new DeferredVisits();
+            } else {
+                finder = createFinder(groups, learned);
+                finder.probe = new DepthProbe(learned, 1);
+            }
+            return finder;
+        }
+
+        @Override
+        LimitDepthSingleTypeFinder createFinder(ElementGroups groups, int depthLimit) {
+            return new LimitDepthSingleTypeFinder(evaluator, groups, depthLimit, delimiterFactory.create(groups));
+        }
+
+        @Override
+        int retryDepth(Finder finder) {
+            LimitDepthSingleTypeFinder limited = (LimitDepthSingleTypeFinder) finder;
+            DepthProbe                 probe   = limited.probe;
+            if (probe == null || learning == null) {
+                return NO_RETRY;
+            }
+            if (!probe.speculating()) {
+                learning.measured(limited.depthLimit, probe.found());
+                return NO_RETRY;
+            }
+            //not found: 0 as measured
+            return learning.settle(probe, Math.max(probe.deepest(), 0));
+        }
+
+        @Override
+        DepthLearning learnDepth() {
+            if (depthStrategy == DepthStrategy.RUNTIME && scope != DOMSearchMethod.Scope.CHILDREN && learning == null) {
+                learning = new DepthLearning();
+            }
+            return learning;
         }
 
         @Override
@@ -245,6 +631,10 @@ abstract class Classifier {
             protected Evaluator evaluator;
             ElementGroups elementGroups;
             Delimiter     delimiter;
+            //null if the depth limit is known
+            DepthProbe     probe;
+            //null unless finding the depth limit of the first match, visited before it
+            DeferredVisits deferred;
 
             LimitDepthSingleTypeFinder(
                     Evaluator evaluator,
@@ -261,22 +651,77 @@ abstract class Classifier {
             @Override
             public FilterResult head(Node node, int depth) {
                 if (node instanceof Element && node != root) {
-                    Element element     = (Element) node;
-                    boolean isDelimiter = delimiter.checkShouldSplit(root, element);
-                    //exclude delimiter
-                    if (!isDelimiter && delimiter.shouldCollect()) {
-                        if (evaluator.matches(root, element)) {
-                            elementGroups.onShouldNewGroup(root, element, evaluator);
+                    Element element = (Element) node;
+                    if (deferred != null) {
+                        discover(element, depth);
+                    } else if (depth > depthLimit) {
+                        //below the limit only to find the first match, as measuring does
+                        if (probe.probing() && evaluator.matches(root, element)) {
+                            probe.onMatch(0, depth);
+                        }
+                    } else {
+                        boolean isDelimiter = delimiter.checkShouldSplit(root, element);
+                        //exclude delimiter
+                        boolean collect     = !isDelimiter && delimiter.shouldCollect();
+                        if ((collect || probe != null && probe.probing()) && evaluator.matches(root, element)) {
+                            if (probe != null) {
+                                probe.onMatch(0, depth);
+                            }
+                            if (collect) {
+                                elementGroups.onShouldNewGroup(element, 0);
+                            }
                         }
                     }
 
                 }
-                if (depth == depthLimit) {
+                if (depth >= depthLimit && (probe == null || !probe.probing())) {
                     return FilterResult.SKIP_CHILDREN;
                 }
                 return FilterResult.CONTINUE;
             }
 
+            //the first match is at the depth limit
+            private void discover(Element element, int depth) {
+                boolean match = evaluator.matches(root, element);
+                if (match || delimiter.isDelimiter(root, element)) {
+                    deferred.add(element, depth, match ? 0 : DeferredVisits.NO_TYPE);
+                }
+                if (match) {
+                    probe.onMatch(0, depth);
+                    depthLimit = depth;
+                    replay();
+                }
+            }
+
+            //collect what is visited before the depth limit is known, within it
+            private void replay() {
+                DeferredVisits visits = deferred;
+                deferred = null;
+                for (int i = 0, size = visits.size(); i < size; i++) {
+                    int kind = visits.kind(i);
+                    switch (kind) {
+                        case DeferredVisits.START_PARENT:
+                            delimiter.onStartOfParent();
+                            break;
+                        case DeferredVisits.ROOT:
+                            root = visits.element(i);
+                            break;
+                        case DeferredVisits.END_PARENT:
+                            delimiter.onEndOfParent();
+                            break;
+                        default:
+                            if (visits.depth(i) <= depthLimit) {
+                                Element element     = visits.element(i);
+                                boolean isDelimiter = delimiter.checkShouldSplit(root, element);
+                                if (kind != DeferredVisits.NO_TYPE && !isDelimiter && delimiter.shouldCollect()) {
+                                    elementGroups.onShouldNewGroup(element, 0);
+                                }
+                            }
+                            break;
+                    }
+                }
+            }
+
             @Override
             public FilterResult tail(Node node, int depth) {
                 return FilterResult.CONTINUE;
@@ -284,18 +729,38 @@ abstract class Classifier {
 
             @Override
             public void before() {
-                delimiter.onStartOfParent();
+                if (deferred != null) {
+                    deferred.add(null, 0, DeferredVisits.START_PARENT);
+                } else {
+                    delimiter.onStartOfParent();
+                }
             }
 
             @Override
             public void find(Element root) {
                 this.root = root;
+                if (deferred != null) {
+                    deferred.add(root, 0, DeferredVisits.ROOT);
+                }
                 this.root.filter(this);
             }
 
             @Override
             public void after() {
-                delimiter.onEndOfParent();
+                if (deferred != null) {
+                    deferred.add(null, 0, DeferredVisits.END_PARENT);
+                } else {
+                    delimiter.onEndOfParent();
+                }
+            }
+
+            @Override
+            public void onParentsAllVisited() {
+                if (deferred != null) {
+                    //not found: 0 as measured
+                    depthLimit = SKIP_SEARCH;
+                    replay();
+                }
             }
         }
 
@@ -303,6 +768,7 @@ abstract class Classifier {
         void addClassification(Evaluator evaluator, DOMSearchMethod.Scope scope) {
             classifications.add(evaluator);
             this.evaluator = evaluator;
+            this.keys = ElementIndex.keysOf(evaluator);
             this.scope = scope;
         }
 
@@ -315,11 +781,17 @@ abstract class Classifier {
     /**
      * find groups with multiple type of elements in a group
      */
-    static class MultiTypeArray extends Classifier {
-        private DepthStrategy     depthStrategy;
-        private int               depthLimit;
-        private List<Evaluator>   subtreeEvaluators = new ArrayList<>();
-        private Delimiter.Factory delimiterFactory;
+    static class MultiTypeArray extends Array {
+        private DepthStrategy            depthStrategy;
+        private int                      depthLimit;
+        private List<Evaluator>          subtreeEvaluators = new ArrayList<>();
+        private List<ElementIndex.Key[]> subtreeKeys       = new ArrayList<>();
+        //index in subtreeEvaluators of each type, NOT_PROBED for children scoped ones
+        private int[]                    probeSlots        = new int[0];
+        private TagDispatch              dispatch          = new TagDispatch(Collections.emptyList());
+        private Delimiter.Factory        delimiterFactory;
+        //null if not learning the depth
+        private DepthLearning            learning;
 
 
         MultiTypeArray(AttributeContainer container) {
@@ -341,27 +813,30 @@ abstract class Classifier {
         @Override
         void addClassification(Evaluator evaluator, DOMSearchMethod.Scope scope) {
             classifications.add(evaluator);
+            probeSlots = Arrays.copyOf(probeSlots, probeSlots.length + 1);
+            probeSlots[probeSlots.length - 1] = LimitDepthMultiTypeFinder.NOT_PROBED;
             if (scope == DOMSearchMethod.Scope.SUBTREE_EXCLUDE_ROOT) {
+                probeSlots[probeSlots.length - 1] = subtreeEvaluators.size();
                 subtreeEvaluators.add(evaluator);
+                subtreeKeys.add(ElementIndex.keysOf(evaluator));
             }
+            //at build time, not per document
+            dispatch = new TagDispatch(classifications);
         }
 
-        //pre-measure
-        private int measureDeepest(Elements parents) {
-            if (subtreeEvaluators.size() == 0) {
-                return CHILDREN_DEPTH;
-            }
+        //the deepest of the first matches of each subtree type, NOT_FOUND if none of them is found
+        private int deepestFirstMatch(Elements parents, ElementIndex index) {
             int deepest = -1;
 
             final int notFound = -1;
-            for (Evaluator evaluator : subtreeEvaluators) {
-                DepthFinder finder = new DepthFinder(evaluator);
+            for (int i = 0, size = subtreeEvaluators.size(); i < size; i++) {
+                DepthFinder finder = new DepthFinder(subtreeEvaluators.get(i));
 
                 int depthOfClassification = -1;
 
                 for (Element parent : parents) {
-                    int depth = finder.find(parent);
-                    if (finder.hasFound()) {
+                    int depth = findDepth(finder, parent, index, subtreeKeys.get(i));
+                    if (depth != notFound) {
                         depthOfClassification = depth;
                         break;
                     }
@@ -370,10 +845,14 @@ abstract class Classifier {
                     deepest = depthOfClassification;
                 }
             }
-            if (deepest == notFound) {
+            return deepest;
+        }
+
+        private int deepestOrDefault(int deepest) {
+            if (deepest == DepthFinder.NOT_FOUND) {
                 //nothing found
                 //search children or skip
-                deepest = (subtreeEvaluators.size() == classifications.size()) ?
+                return (subtreeEvaluators.size() == classifications.size()) ?
                         SKIP_SEARCH : //all are subtree, nothing to search
                         CHILDREN_DEPTH; //some are children
             }
@@ -381,11 +860,60 @@ abstract class Classifier {
         }
 
         @Override
-        protected Finder createFinder(ElementGroups groups, Elements parents) {
-            int limit = (depthStrategy == DepthStrategy.RUNTIME) ?
-                    measureDeepest(parents) :
-                    depthLimit;
-            return new LimitDepthMultiTypeFinder(limit, new MultiTypeCollector(groups), classifications, delimiterFactory.create(groups));
+        protected Finder createFinder(ElementGroups groups, Elements parents, ElementIndex index) {
+            if (depthStrategy != DepthStrategy.RUNTIME) {
+                return createFinder(groups, depthLimit);
+            }
+            if (subtreeEvaluators.isEmpty()) {
+                return createFinder(groups, CHILDREN_DEPTH);
+            }
+            if (index != null) {
+                //an index finds the first matches without traversing
+                int deepest  = deepestFirstMatch(parents, index);
+                int measured = deepestOrDefault(deepest);
+                return createFinder(groups, learning == null ? measured : learning.measured(measured, deepest != DepthFinder.NOT_FOUND));
+            }
+            int                       learned = learning == null ? DepthLearning.UNKNOWN : learning.depth;
+            LimitDepthMultiTypeFinder finder;
+            if (learned == DepthLearning.UNKNOWN) {
+                //the deepest of the first matches, found by the collection pass
+                finder = createFinder(groups, SKIP_SEARCH);
+                finder.probe = new DepthProbe(subtreeEvaluators.size());
+                finder.deferred = new DeferredVisits();
+                finder.notFoundDepth = deepestOrDefault(DepthFinder.NOT_FOUND);
+            } else {
+                finder = createFinder(groups, learned);
+                finder.probe = new DepthProbe(learned, subtreeEvaluators.size());
+            }
+            finder.probeSlots = probeSlots;
+            return finder;
+        }
+
+        @Override
+        LimitDepthMultiTypeFinder createFinder(ElementGroups groups, int depthLimit) {
+            return new LimitDepthMultiTypeFinder(depthLimit, new MultiTypeCollector(groups, classifications.size()), classifications, dispatch, delimiterFactory.create(groups));
+        }
+
+        @Override
+        int retryDepth(Finder finder) {
+            LimitDepthMultiTypeFinder limited = (LimitDepthMultiTypeFinder) finder;
+            DepthProbe                probe   = limited.probe;
+            if (probe == null || learning == null) {
+                return NO_RETRY;
+            }
+            if (!probe.speculating()) {
+                learning.measured(limited.depthLimit, probe.found());
+                return NO_RETRY;
+            }
+            return learning.settle(probe, deepestOrDefault(probe.deepest()));
+        }
+
+        @Override
+        DepthLearning learnDepth() {
+            if (depthStrategy == DepthStrategy.RUNTIME && !subtreeEvaluators.isEmpty() && learning == null) {
+                learning = new DepthLearning();
+            }
+            return learning;
         }
 
         @Override
@@ -394,79 +922,165 @@ abstract class Classifier {
         }
 
         private static class MultiTypeCollector {
-            private static final java.lang.Object PRESENT = new java.lang.Object();
-
             private ElementGroups elementGroups;
-            //map as set
-            IdentityHashMap<Evaluator, java.lang.Object> currentFoundGroup = new IdentityHashMap<>();
+            //slots found in the current group, as set
+            private boolean[]     currentFoundGroup;
+            private int           currentFoundCount = 0;
 
-            MultiTypeCollector(ElementGroups elementGroups) {
+            MultiTypeCollector(ElementGroups elementGroups, int slots) {
                 this.elementGroups = elementGroups;
+                this.currentFoundGroup = new boolean[slots];
             }
 
-            void onResult(Element parent, Element result, Evaluator evaluator) {
-                //do not use containsKey to check should new group or not
-                //the first should also be a new group and it does not have any key yet
-                if (currentFoundGroup.containsKey(evaluator)) {
-                    currentFoundGroup.clear();
+            void onResult(Element result, int slot) {
+                //do not check the first slot to decide should new group or not
+                //the first should also be a new group and it does not have any slot yet
+                if (currentFoundGroup[slot]) {
+                    Arrays.fill(currentFoundGroup, false);
+                    currentFoundCount = 0;
                 }
-                //the empty map could be just the first or a new group
-                if (currentFoundGroup.isEmpty()) {
-                    elementGroups.onShouldNewGroup(parent, result, evaluator);
+                //the empty set could be just the first or a new group
+                if (currentFoundCount == 0) {
+                    elementGroups.onShouldNewGroup(result, slot);
                 } else {
-                    elementGroups.onFound(result, evaluator);
+                    elementGroups.onFound(result, slot);
 
                 }
-                currentFoundGroup.put(evaluator, PRESENT);
+                currentFoundGroup[slot] = true;
+                currentFoundCount++;
             }
         }
 
 
         private static class LimitDepthMultiTypeFinder implements NodeFilter, Finder {
+            private static final int NOT_PROBED = -1;
+
             private int                depthLimit;
             private Element            root;
             private MultiTypeCollector collector;
             private List<Evaluator>    types;
+            private TagDispatch        dispatch;
             private Delimiter          delimiter;
-
-            LimitDepthMultiTypeFinder(int depthLimit, MultiTypeCollector collector, List<Evaluator> types, Delimiter delimiter) {
+            //null if the depth limit is known, otherwise finding the first match of each subtree type
+            private DepthProbe         probe;
+            private int[]              probeSlots;
+            //null unless finding the depth limit of the first matches, visited before them
+            private DeferredVisits     deferred;
+            //the depth limit if no subtree type is found
+            private int                notFoundDepth;
+
+            LimitDepthMultiTypeFinder(
+                    int depthLimit,
+                    MultiTypeCollector collector,
+                    List<Evaluator> types,
+                    TagDispatch dispatch,
+                    Delimiter delimiter
+            ) {
                 this.depthLimit = depthLimit;
                 this.collector = collector;
                 this.types = types;
+                this.dispatch = dispatch;
                 this.delimiter = delimiter;
             }
 
             //test an element if it's any type of element from the evaluators
             private void evaluateWithEachType(Element subject) {
-                //using indexed for-loop so there won't be an iterator created each time
-                for (int i = 0, evaluatorsSize = types.size(); i < evaluatorsSize; i++) {
-                    Evaluator type = types.get(i);
-                    if (type.matches(root, subject)) {
-                        collector.onResult(root, subject, type);
-                        break;
-                        //break because we don't want to have an element evaluated twice
+                int type = typeOf(subject, dispatch.candidates(subject));
+                if (type != DeferredVisits.NO_TYPE) {
+                    collector.onResult(subject, type);
+                }
+            }
+
+            //the first type matching, so an element is not collected twice
+            private int typeOf(Element subject, int[] candidates) {
+                for (int type : candidates) {
+                    if (types.get(type).matches(root, subject)) {
+                        return type;
                     }
                 }
+                return DeferredVisits.NO_TYPE;
+            }
 
+            //each subtree type on its own, as measuring does
+            private void probeEachType(Element subject, int[] candidates, int depth) {
+                for (int type : candidates) {
+                    int slot = probeSlots[type];
+                    if (slot != NOT_PROBED && !probe.found(slot) && types.get(type).matches(root, subject)) {
+                        probe.onMatch(slot, depth);
+                    }
+                }
             }
 
             @Override
             public FilterResult head(Node node, int depth) {
                 //exclude root
                 if (node instanceof Element && node != root) {
-                    Element element     = (Element) node;
-                    boolean isDelimiter = delimiter.checkShouldSplit(root, element);
-                    //exclude delimiter
-                    if (!isDelimiter && delimiter.shouldCollect()) {
-                        evaluateWithEachType(element);
+                    Element element = (Element) node;
+                    if (deferred != null) {
+                        discover(element, depth);
+                    } else {
+                        //below the limit only to find the first matches, as measuring does
+                        if (depth <= depthLimit) {
+                            boolean isDelimiter = delimiter.checkShouldSplit(root, element);
+                            //exclude delimiter
+                            if (!isDelimiter && delimiter.shouldCollect()) {
+                                evaluateWithEachType(element);
+                            }
+                        }
+                        if (probe != null && probe.probing()) {
+                            probeEachType(element, dispatch.candidates(element), depth);
+                        }
                     }
                 }
-                if (depth == depthLimit) {
+                if (depth >= depthLimit && (probe == null || !probe.probing())) {
                     return FilterResult.SKIP_CHILDREN;
                 }
                 return FilterResult.CONTINUE;
             }
 
+            //the deepest of the first matches is the depth limit
+            private void discover(Element element, int depth) {
+                int[] candidates = dispatch.candidates(element);
+                probeEachType(element, candidates, depth);
+                int type = typeOf(element, candidates);
+                if (type != DeferredVisits.NO_TYPE || delimiter.isDelimiter(root, element)) {
+                    deferred.add(element, depth, type);
+                }
+                if (!probe.probing()) {
+                    depthLimit = probe.deepest();
+                    replay();
+                }
+            }
+
+            //collect what is visited before the depth limit is known, within it
+            private void replay() {
+                DeferredVisits visits = deferred;
+                deferred = null;
+                for (int i = 0, size = visits.size(); i < size; i++) {
+                    int kind = visits.kind(i);
+                    switch (kind) {
+                        case DeferredVisits.START_PARENT:
+                            delimiter.onStartOfParent();
+                            break;
+                        case DeferredVisits.ROOT:
+                            root = visits.element(i);
+                            break;
+                        case DeferredVisits.END_PARENT:
+                            delimiter.onEndOfParent();
+                            break;
+                        default:
+                            if (visits.depth(i) <= depthLimit) {
+                                Element element     = visits.element(i);
+                                boolean isDelimiter = delimiter.checkShouldSplit(root, element);
+                                if (kind != DeferredVisits.NO_TYPE && !isDelimiter && delimiter.shouldCollect()) {
+                                    collector.onResult(element, kind);
+                                }
+                            }
+                            break;
+                    }
+                }
+            }
+
             @Override
             public FilterResult tail(Node node, int depth) {
                 return FilterResult.CONTINUE;
@@ -474,19 +1088,39 @@ abstract class Classifier {
 
             @Override
             public void before() {
-                delimiter.onStartOfParent();
+                if (deferred != null) {
+                    deferred.add(null, 0, DeferredVisits.START_PARENT);
+                } else {
+                    delimiter.onStartOfParent();
+                }
             }
 
             @Override
             public void find(Element parent) {
                 //set new root
                 this.root = parent;
+                if (deferred != null) {
+                    deferred.add(parent, 0, DeferredVisits.ROOT);
+                }
                 this.root.filter(this);
             }
 
             @Override
             public void after() {
-                delimiter.onEndOfParent();
+                if (deferred != null) {
+                    deferred.add(null, 0, DeferredVisits.END_PARENT);
+                } else {
+                    delimiter.onEndOfParent();
+                }
+            }
+
+            @Override
+            public void onParentsAllVisited() {
+                if (deferred != null) {
+                    //some subtree type is found nowhere
+                    depthLimit = probe.found() ? probe.deepest() : notFoundDepth;
+                    replay();
+                }
             }
         }
 
@@ -7,18 +7,42 @@ import org.jsoup.select.Evaluator;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
 
 /**
  * borrowed from jsoup.select
+ * <p>
+ * terms are evaluated cheapest first instead of in declaration order,
+ * the order can also be re-sorted from observed outcomes
+ *
+ * @see #costOf(Evaluator)
+ * @see #reorderAdaptively()
  */
 public abstract class CombiningEvaluator
         extends Evaluator
         implements Iterable<Evaluator> {
 
+    private static final Evaluator[] NO_TERMS = new Evaluator[0];
+
+    //relative cost of evaluating a term
+    private static final int COST_TAG_OR_ID       = 1;
+    private static final int COST_CLASS           = 2;
+    private static final int COST_ATTRIBUTE       = 3;
+    private static final int COST_ATTRIBUTE_VALUE = 4;
+    private static final int COST_TEXT_OR_REGEX   = 16;
+    private static final int COST_STRUCTURAL      = 32;
+
+    //declaration order, for iterating and toString
     final ArrayList<Evaluator> evaluators;
     int num = 0;
 
+    //evaluation order
+    Evaluator[] terms = NO_TERMS;
+
+    //null unless reordering adaptively
+    volatile AdaptiveOrder adaptiveOrder;
+
     CombiningEvaluator() {
         super();
         evaluators = new ArrayList<>();
@@ -36,10 +60,83 @@ public abstract class CombiningEvaluator
 
     void replaceRightMostEvaluator(Evaluator replacement) {
         evaluators.set(num - 1, replacement);
+        updateNumEvaluators();
     }
 
     void updateNumEvaluators() {
         num = evaluators.size();
+        //stable, terms of the same cost keep declaration order
+        terms = evaluators.toArray(NO_TERMS);
+        Arrays.sort(terms, Comparator.comparingInt(CombiningEvaluator::costOf));
+        if (adaptiveOrder != null) {
+            //start over with the new terms
+            adaptiveOrder = new AdaptiveOrder(terms);
+        }
+    }
+
+    /**
+     * estimated cost of evaluating an element
+     * <p>
+     * tag and id compare one string, class scans one attribute, attribute terms scan attribute keys and values,
+     * text and regex terms build the element's text, structural terms walk siblings or ancestors
+     * (jsoup's own combinators can't be looked into, they are structural for a css combinator)
+     *
+     * @return cost relative to a tag comparison
+     */
+    static int costOf(Evaluator evaluator) {
+        if (evaluator instanceof Evaluator.Tag
+                || evaluator instanceof Evaluator.Id
+                || evaluator instanceof Evaluator.AllElements) {
+            return COST_TAG_OR_ID;
+        }
+        if (evaluator instanceof Evaluator.Class
+                || evaluator instanceof Evaluator.TagEndsWith) {
+            return COST_CLASS;
+        }
+        if (evaluator instanceof Evaluator.Attribute
+                || evaluator instanceof Evaluator.AttributeStarting) {
+            return COST_ATTRIBUTE;
+        }
+        if (evaluator instanceof Evaluator.AttributeKeyPair
+                || evaluator instanceof ExtendedEvaluator.HasAttrWithValue) {
+            return COST_ATTRIBUTE_VALUE;
+        }
+        if (evaluator instanceof Evaluator.AttributeWithValueMatching
+                || evaluator instanceof Evaluator.Matches
+                || evaluator instanceof Evaluator.MatchesOwn
+                || evaluator instanceof Evaluator.MatchText
+                || evaluator instanceof Evaluator.ContainsText
+                || evaluator instanceof Evaluator.ContainsOwnText
+                || evaluator instanceof Evaluator.ContainsData) {
+            return COST_TEXT_OR_REGEX;
+        }
+        if (evaluator instanceof CombiningEvaluator) {
+            //bounded by the costliest term
+            int cost = COST_TAG_OR_ID;
+            for (Evaluator term : (CombiningEvaluator) evaluator) {
+                cost = Math.max(cost, costOf(term));
+            }
+            return cost;
+        }
+        //nth/index/sibling pseudo selectors, jsoup combinators and unknown evaluators
+        return COST_STRUCTURAL;
+    }
+
+    /**
+     * re-sort terms from now on by how often each one decides the result per cost, this and nested combinations
+     * <p>
+     * the order only changes how soon an evaluation short-circuits, never the result,
+     * so it is kept across documents parsed by the same template
+     */
+    void reorderAdaptively() {
+        if (adaptiveOrder == null) {
+            adaptiveOrder = new AdaptiveOrder(terms);
+        }
+        for (Evaluator term : evaluators) {
+            if (term instanceof CombiningEvaluator) {
+                ((CombiningEvaluator) term).reorderAdaptively();
+            }
+        }
     }
 
     @Override
@@ -58,8 +155,12 @@ public abstract class CombiningEvaluator
 
         @Override
         public boolean matches(Element root, Element node) {
-            for (int i = 0; i < num; i++) {
-                Evaluator s = evaluators.get(i);
+            AdaptiveOrder adaptive = adaptiveOrder;
+            if (adaptive != null) {
+                return adaptive.matches(this, root, node, false);
+            }
+            final Evaluator[] terms = this.terms;
+            for (Evaluator s : terms) {
                 if (!s.matches(root, node))
                     return false;
             }
@@ -102,16 +203,97 @@ public abstract class CombiningEvaluator
 
         @Override
         public boolean matches(Element root, Element node) {
-            for (int i = 0; i < num; i++) {
-                Evaluator s = evaluators.get(i);
+            AdaptiveOrder adaptive = adaptiveOrder;
+            if (adaptive != null) {
+                return adaptive.matches(this, root, node, true);
+            }
+            final Evaluator[] terms = this.terms;
+            for (Evaluator s : terms) {
                 if (s.matches(root, node))
                     return true;
             }
             return false;
         }
+
         @Override
         public String toString() {
             return StringUtil.join(evaluators, ",");
         }
     }
+
+    /**
+     * an evaluation order with outcome counts, replaced by a re-sorted one every RESORT_INTERVAL evaluations
+     * <p>
+     * a term decides an and when it rejects, an or when it accepts,
+     * terms are sorted by the rate they decide at, per cost, so the likely deciding and cheap ones go first
+     * <p>
+     * counts are updated without synchronization by every parsing thread,
+     * a lost update only makes a rate slightly off
+     */
+    static final class AdaptiveOrder {
+        private static final int    RESORT_INTERVAL = 1024;
+        //fewer evaluations than this keep the prior rate
+        private static final int    MIN_SAMPLES     = 32;
+        private static final double PRIOR_RATE      = 0.5;
+
+        private final Evaluator[] terms;
+        private final int[]       reached;
+        private final int[]       decided;
+        private int               evaluations = 0;
+
+        AdaptiveOrder(Evaluator[] terms) {
+            this.terms = terms;
+            this.reached = new int[terms.length];
+            this.decided = new int[terms.length];
+        }
+
+        /**
+         * @param decision the result of a term that decides the combination: false for and, true for or
+         */
+        boolean matches(CombiningEvaluator owner, Element root, Element node, boolean decision) {
+            final Evaluator[] terms  = this.terms;
+            boolean           result = !decision;
+            for (int i = 0; i < terms.length; i++) {
+                reached[i]++;
+                if (terms[i].matches(root, node) == decision) {
+                    decided[i]++;
+                    result = decision;
+                    break;
+                }
+            }
+            if (++evaluations == RESORT_INTERVAL) {
+                owner.adaptiveOrder = resorted();
+            }
+            return result;
+        }
+
+        private AdaptiveOrder resorted() {
+            int       size      = terms.length;
+            double[]  scores    = new double[size];
+            Integer[] positions = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                double rate = reached[i] < MIN_SAMPLES ?
+                        PRIOR_RATE :
+                        (double) decided[i] / reached[i];
+                scores[i] = rate / costOf(terms[i]);
+                positions[i] = i;
+            }
+            //stable, ties keep the current order
+            Arrays.sort(positions, (a, b) -> Double.compare(scores[b], scores[a]));
+            Evaluator[] sorted = new Evaluator[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = terms[positions[i]];
+            }
+            return new AdaptiveOrder(sorted);
+        }
+
+        @Override
+        public String toString() {
+            return "AdaptiveOrder{" +
+                    "terms=" + Arrays.toString(terms) +
+                    ", reached=" + Arrays.toString(reached) +
+                    ", decided=" + Arrays.toString(decided) +
+                    '}';
+        }
+    }
 }
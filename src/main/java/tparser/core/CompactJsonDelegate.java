@@ -0,0 +1,482 @@
+package tparser.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * built-in delegate building a compact json tree
+ * <p>
+ * an object is a record of value slots sharing the key table of its structure (JsonKey.structureKeys()),
+ * numbers and booleans of primitive converters are kept unboxed, an array is a plain array of its items,
+ * so a result takes much less memory than hash map based nodes, and is written to json text directly
+ * <p>
+ * stateless, the instance is shared by all threads and templates
+ *
+ * @see Record#toJson()
+ */
+@SuppressWarnings("unused")
+public final class CompactJsonDelegate implements PrimitiveJsonDelegate<CompactJsonDelegate.Record, CompactJsonDelegate.Array> {
+    public static final CompactJsonDelegate INSTANCE = new CompactJsonDelegate();
+
+    //json null, an unset slot is null
+    private static final Object NULL = new Object();
+
+    //slot kinds of unboxed values, the bits are in the primitives of the record
+    private enum Primitive {
+        INT, LONG, FLOAT, DOUBLE, BOOLEAN
+    }
+
+    private CompactJsonDelegate() {
+    }
+
+    @Override
+    public Record createObjectNode() {
+        return new Record();
+    }
+
+    @Override
+    public Array createArrayNode() {
+        return new Array();
+    }
+
+    @Override
+    public void putValue(Record objectNode, String key, Object value) {
+        objectNode.putByName(key, value);
+    }
+
+    @Override
+    public void putNull(Record objectNode, String key) {
+        objectNode.putByName(key, NULL);
+    }
+
+    @Override
+    public void putObjectNode(Record objectNode, String key, Record value) {
+        objectNode.putByName(key, value);
+    }
+
+    @Override
+    public void putArrayNode(Record objectNode, String key, Array value) {
+        objectNode.putByName(key, value);
+    }
+
+    @Override
+    public void add(Array arrayNode, Record itemToAdd) {
+        arrayNode.add(itemToAdd);
+    }
+
+    @Override
+    public void putValue(Record objectNode, JsonKey key, Object value) {
+        if (value instanceof Float) {
+            //[float] has no primitive converter, kept unboxed here and written as a float
+            objectNode.putPrimitive(key, Primitive.FLOAT, Float.floatToRawIntBits((Float) value));
+        } else {
+            objectNode.put(key, value);
+        }
+    }
+
+    @Override
+    public void putNull(Record objectNode, JsonKey key) {
+        objectNode.put(key, NULL);
+    }
+
+    @Override
+    public void putObjectNode(Record objectNode, JsonKey key, Record value) {
+        objectNode.put(key, value);
+    }
+
+    @Override
+    public void putArrayNode(Record objectNode, JsonKey key, Array value) {
+        objectNode.put(key, value);
+    }
+
+    @Override
+    public void putInt(Record objectNode, JsonKey key, int value) {
+        objectNode.putPrimitive(key, Primitive.INT, value);
+    }
+
+    @Override
+    public void putLong(Record objectNode, JsonKey key, long value) {
+        objectNode.putPrimitive(key, Primitive.LONG, value);
+    }
+
+    @Override
+    public void putDouble(Record objectNode, JsonKey key, double value) {
+        objectNode.putPrimitive(key, Primitive.DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    @Override
+    public void putBoolean(Record objectNode, JsonKey key, boolean value) {
+        objectNode.putPrimitive(key, Primitive.BOOLEAN, value ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "CompactJsonDelegate";
+    }
+
+    /**
+     * json object of a structure item, keys in the order of the structure's key table
+     */
+    public static final class Record {
+        private static final Object[] NO_NAMED = new Object[0];
+
+        //key table of the structure, bound by the first keyed put
+        private List<JsonKey> keys;
+        private Object[]      values;
+        //bits of unboxed values, allocated by the first one
+        private long[]        primitives;
+        //name, value pairs put by a name not in the key table
+        private Object[]      named     = NO_NAMED;
+        private int           namedSize = 0;
+
+        private Record() {
+        }
+
+        private int slotOf(JsonKey key) {
+            if (keys == null) {
+                keys = key.structureKeys();
+                values = new Object[keys.size()];
+            }
+            //keys of the same structure share the list
+            return keys == key.structureKeys() ? key.index() : -1;
+        }
+
+        private void put(JsonKey key, Object value) {
+            int slot = slotOf(key);
+            if (slot < 0) {
+                putByName(key.name(), value);
+            } else {
+                values[slot] = value;
+            }
+        }
+
+        private void putPrimitive(JsonKey key, Primitive kind, long bits) {
+            int slot = slotOf(key);
+            if (slot < 0) {
+                putByName(key.name(), box(kind, bits));
+                return;
+            }
+            if (primitives == null) {
+                primitives = new long[values.length];
+            }
+            values[slot] = kind;
+            primitives[slot] = bits;
+        }
+
+        private void putByName(String name, Object value) {
+            if (keys != null) {
+                for (int slot = 0, size = keys.size(); slot < size; slot++) {
+                    if (keys.get(slot).name().equals(name)) {
+                        values[slot] = value;
+                        return;
+                    }
+                }
+            }
+            for (int i = 0; i < namedSize; i += 2) {
+                if (named[i].equals(name)) {
+                    named[i + 1] = value;
+                    return;
+                }
+            }
+            if (namedSize == named.length) {
+                named = Arrays.copyOf(named, Math.max(4, namedSize * 2));
+            }
+            named[namedSize++] = name;
+            named[namedSize++] = value;
+        }
+
+        /**
+         * @return number of keys
+         */
+        public int size() {
+            int size = namedSize / 2;
+            if (values != null) {
+                for (Object value : values) {
+                    if (value != null) {
+                        size++;
+                    }
+                }
+            }
+            return size;
+        }
+
+        /**
+         * @return keys in output order
+         */
+        public List<String> keys() {
+            List<String> names = new ArrayList<>(size());
+            if (values != null) {
+                for (int slot = 0; slot < values.length; slot++) {
+                    if (values[slot] != null) {
+                        names.add(keys.get(slot).name());
+                    }
+                }
+            }
+            for (int i = 0; i < namedSize; i += 2) {
+                names.add((String) named[i]);
+            }
+            return Collections.unmodifiableList(names);
+        }
+
+        public boolean containsKey(String key) {
+            return find(key) != null;
+        }
+
+        /**
+         * @return the value, a Record or an Array for nested structures, numbers and booleans boxed,
+         * null for a json null or a missing key
+         */
+        public Object get(String key) {
+            Object value = find(key);
+            return value == NULL ? null : value;
+        }
+
+        private Object find(String key) {
+            if (values != null) {
+                for (int slot = 0; slot < values.length; slot++) {
+                    Object value = values[slot];
+                    if (value != null && keys.get(slot).name().equals(key)) {
+                        return value instanceof Primitive ? box((Primitive) value, primitives[slot]) : value;
+                    }
+                }
+            }
+            for (int i = 0; i < namedSize; i += 2) {
+                if (named[i].equals(key)) {
+                    return named[i + 1];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return json text of this object
+         */
+        public String toJson() {
+            StringBuilder json = new StringBuilder(64);
+            appendJson(json);
+            return json.toString();
+        }
+
+        /**
+         * append the json text of this object
+         */
+        public void appendJson(StringBuilder json) {
+            json.append('{');
+            boolean first = true;
+            if (values != null) {
+                for (int slot = 0; slot < values.length; slot++) {
+                    Object value = values[slot];
+                    if (value == null) {
+                        continue;
+                    }
+                    if (!first) {
+                        json.append(',');
+                    }
+                    first = false;
+                    json.append(keys.get(slot).quotedName()).append(':');
+                    if (value instanceof Primitive) {
+                        appendPrimitive(json, (Primitive) value, primitives[slot]);
+                    } else {
+                        appendValue(json, value);
+                    }
+                }
+            }
+            for (int i = 0; i < namedSize; i += 2) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendString(json, (String) named[i]);
+                json.append(':');
+                appendValue(json, named[i + 1]);
+            }
+            json.append('}');
+        }
+
+        @Override
+        public String toString() {
+            return toJson();
+        }
+    }
+
+    /**
+     * json array of structure items
+     */
+    public static final class Array {
+        private static final Record[] NO_ITEMS = new Record[0];
+
+        private Record[] items = NO_ITEMS;
+        private int      size  = 0;
+
+        private Array() {
+        }
+
+        private void add(Record item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, Math.max(4, size + (size >> 1)));
+            }
+            items[size++] = item;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public Record get(int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException(String.format("index: %d, size: %d", index, size));
+            }
+            return items[index];
+        }
+
+        /**
+         * @return json text of this array
+         */
+        public String toJson() {
+            StringBuilder json = new StringBuilder(16 + size * 32);
+            appendJson(json);
+            return json.toString();
+        }
+
+        /**
+         * append the json text of this array
+         */
+        public void appendJson(StringBuilder json) {
+            json.append('[');
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                items[i].appendJson(json);
+            }
+            json.append(']');
+        }
+
+        @Override
+        public String toString() {
+            return toJson();
+        }
+    }
+
+    /*-- json text --*/
+    private static Object box(Primitive kind, long bits) {
+        switch (kind) {
+            case INT:
+                return (int) bits;
+            case LONG:
+                return bits;
+            case FLOAT:
+                return Float.intBitsToFloat((int) bits);
+            case DOUBLE:
+                return Double.longBitsToDouble(bits);
+            default:
+                return bits != 0;
+        }
+    }
+
+    private static void appendPrimitive(StringBuilder json, Primitive kind, long bits) {
+        switch (kind) {
+            case INT:
+                json.append((int) bits);
+                break;
+            case LONG:
+                json.append(bits);
+                break;
+            case FLOAT:
+                appendFloat(json, Float.intBitsToFloat((int) bits));
+                break;
+            case DOUBLE:
+                appendDouble(json, Double.longBitsToDouble(bits));
+                break;
+            default:
+                json.append(bits != 0);
+                break;
+        }
+    }
+
+    private static void appendValue(StringBuilder json, Object value) {
+        if (value == NULL) {
+            json.append("null");
+        } else if (value instanceof String) {
+            appendString(json, (String) value);
+        } else if (value instanceof Record) {
+            ((Record) value).appendJson(json);
+        } else if (value instanceof Array) {
+            ((Array) value).appendJson(json);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            json.append(((Number) value).longValue());
+        } else if (value instanceof Float) {
+            //widened to double it would print the binary error, 0.1f as 0.10000000149011612
+            appendFloat(json, (Float) value);
+        } else if (value instanceof Double) {
+            appendDouble(json, (Double) value);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value.toString());
+        } else if (value instanceof byte[]) {
+            appendString(json, Base64.getEncoder().encodeToString((byte[]) value));
+        } else {
+            appendString(json, value.toString());
+        }
+    }
+
+    private static void appendDouble(StringBuilder json, double value) {
+        //no literal for them in json
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            json.append("null");
+        } else {
+            json.append(value);
+        }
+    }
+
+    private static void appendFloat(StringBuilder json, float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            json.append("null");
+        } else {
+            json.append(value);
+        }
+    }
+
+    static void appendString(StringBuilder json, String text) {
+        json.append('"');
+        int start = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char   c       = text.charAt(i);
+            String escaped = escape(c);
+            if (escaped != null) {
+                json.append(text, start, i).append(escaped);
+                start = i + 1;
+            }
+        }
+        json.append(text, start, text.length()).append('"');
+    }
+
+    private static String escape(char c) {
+        switch (c) {
+            case '"':
+                return "\\\"";
+            case '\\':
+                return "\\\\";
+            case '\n':
+                return "\\n";
+            case '\r':
+                return "\\r";
+            case '\t':
+                return "\\t";
+            case '\b':
+                return "\\b";
+            case '\f':
+                return "\\f";
+            case '\u2028':
+                //line terminators of javascript
+                return "\\u2028";
+            case '\u2029':
+                return "\\u2029";
+            default:
+                return c < ' ' ? String.format("\\u%04x", (int) c) : null;
+        }
+    }
+    /*-- json text --*/
+}
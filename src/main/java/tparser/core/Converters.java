@@ -34,15 +34,19 @@ public class Converters {
     /*--  built-in  --*/
     /**
      * these are a part of public api to construct advanced converter or aliasing defaults
+     * <p>
+     * the number and boolean converters are CharSequenceConverter, parsing the text without a String,
+     * with the same results and exceptions as Integer.valueOf(String) etc.,
+     * int, long, double and boolean are PrimitiveConverter, passed unboxed to a PrimitiveJsonDelegate
      */
     public static final TextConverter<String>  toString  = (text, _element) -> text;
-    public static final TextConverter<Integer> toInteger = (text, _element) -> Integer.valueOf(text);
-    public static final TextConverter<Long>    toLong    = (text, _element) -> Long.valueOf(text);
-    public static final TextConverter<Short>   toShort   = (text, _element) -> Short.valueOf(text);
-    public static final TextConverter<Byte>    toByte    = (text, _element) -> Byte.valueOf(text);
-    public static final TextConverter<Float>   toFloat   = (text, _element) -> Float.valueOf(text);
-    public static final TextConverter<Double>  toDouble  = (text, _element) -> Double.valueOf(text);
-    public static final TextConverter<Boolean> toBoolean = (text, _element) -> Boolean.valueOf(text);
+    public static final TextConverter<Integer> toInteger = (PrimitiveConverter.OfInt) (text, _element) -> (int) parseLong(text, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    public static final TextConverter<Long>    toLong    = (PrimitiveConverter.OfLong) (text, _element) -> parseLong(text, Long.MIN_VALUE, Long.MAX_VALUE);
+    public static final TextConverter<Short>   toShort   = (CharSequenceConverter<Short>) (text, _element) -> (short) parseInRange(text, Short.MIN_VALUE, Short.MAX_VALUE);
+    public static final TextConverter<Byte>    toByte    = (CharSequenceConverter<Byte>) (text, _element) -> (byte) parseInRange(text, Byte.MIN_VALUE, Byte.MAX_VALUE);
+    public static final TextConverter<Float>   toFloat   = (CharSequenceConverter<Float>) (text, _element) -> parseFloat(text);
+    public static final TextConverter<Double>  toDouble  = (PrimitiveConverter.OfDouble) (text, _element) -> parseDouble(text);
+    public static final TextConverter<Boolean> toBoolean = (PrimitiveConverter.OfBoolean) (text, _element) -> parseBoolean(text);
     /*--  built-in  --*/
 
     /*-- additional --*/
@@ -62,6 +66,250 @@ public class Converters {
     public static final NullableConverter<Boolean> elementExists         = (_text, context) -> context != null;
     /*-- additional --*/
 
+    /**
+     * convert a text to one of the given values, for enum-like fields
+     * <p>
+     * the output is the given String instance, so no String is created for the text
+     *
+     * @param values allowed values, case sensitive
+     * @return converter outputs the equal value, null for any other text
+     */
+    public static CharSequenceConverter<String> oneOf(String... values) {
+        String[] allowed = values.clone();
+        return (text, _element) -> {
+            for (String value : allowed) {
+                if (contentEquals(value, text)) {
+                    return value;
+                }
+            }
+            return null;
+        };
+    }
+
+    /*-- char sequence parsing, the String versions of the jdk 8 take no CharSequence --*/
+    //10^0 to 10^22, exactly representable as double
+    private static final double[] DOUBLE_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    //10^0 to 10^10, exactly representable as float
+    private static final float[]  FLOAT_POWERS_OF_TEN  = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+    private static final long     MAX_EXACT_DOUBLE     = 1L << 53;
+    private static final long     MAX_EXACT_FLOAT      = 1L << 24;
+    //more significant digits than a long holds
+    private static final int      MAX_DIGITS           = 18;
+
+    /**
+     * Long.parseLong(String) with the range of the type
+     */
+    private static long parseLong(CharSequence text, long min, long max) {
+        int length = text.length();
+        if (length == 0) {
+            throw notANumber(text);
+        }
+        //accumulated negatively, the negative range is larger
+        boolean negative = false;
+        long    limit    = -max;
+        int     i        = 0;
+        char    first    = text.charAt(0);
+        if (first < '0') {
+            if (first == '-') {
+                negative = true;
+                limit = min;
+            } else if (first != '+') {
+                throw notANumber(text);
+            }
+            if (length == 1) {
+                throw notANumber(text);
+            }
+            i++;
+        }
+        long multiplyMin = limit / 10;
+        long result      = 0;
+        while (i < length) {
+            int digit = Character.digit(text.charAt(i++), 10);
+            if (digit < 0 || result < multiplyMin) {
+                throw notANumber(text);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw notANumber(text);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Short.parseShort(String) and Byte.parseByte(String), an int out of the range of the type
+     */
+    private static int parseInRange(CharSequence text, int min, int max) {
+        int value = (int) parseLong(text, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        if (value < min || value > max) {
+            throw new NumberFormatException("Value out of range. Value:\"" + text + "\" Radix:10");
+        }
+        return value;
+    }
+
+    /**
+     * Double.parseDouble(String)
+     *
+     * @see #parseDecimal(CharSequence, boolean)
+     */
+    private static double parseDouble(CharSequence text) {
+        double value = parseDecimal(text, false);
+        return Double.isNaN(value) ? Double.parseDouble(text.toString()) : value;
+    }
+
+    /**
+     * Float.parseFloat(String)
+     *
+     * @see #parseDecimal(CharSequence, boolean)
+     */
+    private static float parseFloat(CharSequence text) {
+        double value = parseDecimal(text, true);
+        return Double.isNaN(value) ? Float.parseFloat(text.toString()) : (float) value;
+    }
+
+    /**
+     * [+-]digits[.digits][(e|E)[+-]digits] surrounded by whitespace, with the mantissa and power of ten
+     * exactly representable, is parsed by one correctly rounded multiplication or division,
+     * any other text (many digits, large exponents, hex, NaN, type suffix or invalid) is left to the jdk
+     *
+     * @param single if computed as float
+     * @return the value, NaN if left to the jdk
+     */
+    private static double parseDecimal(CharSequence text, boolean single) {
+        //trimmed as the jdk does
+        int start = 0;
+        int end   = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int     i        = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long    mantissa = 0;
+        int     exponent = 0;
+        int     digits   = 0;
+        boolean anyDigit = false;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && !fraction) {
+                fraction = true;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                break;
+            }
+            anyDigit = true;
+            if (mantissa != 0 || c != '0') {
+                //significant
+                if (++digits > MAX_DIGITS) {
+                    return Double.NaN;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+            }
+            if (fraction) {
+                exponent--;
+            }
+        }
+        if (!anyDigit) {
+            return Double.NaN;
+        }
+        if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+                negativeExponent = text.charAt(i) == '-';
+                i++;
+            }
+            int exponentStart = i;
+            int written       = 0;
+            for (; i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9'; i++) {
+                if (i - exponentStart >= 4) {
+                    //far beyond the exact range
+                    return Double.NaN;
+                }
+                written = written * 10 + (text.charAt(i) - '0');
+            }
+            if (i == exponentStart) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent ? -written : written;
+        }
+        if (i != end) {
+            return Double.NaN;
+        }
+        if (mantissa == 0) {
+            return negative ? -0.0d : 0.0d;
+        }
+        double value;
+        if (single) {
+            if (mantissa >= MAX_EXACT_FLOAT || exponent < -10 || exponent > 10) {
+                return Double.NaN;
+            }
+            value = exponent < 0 ?
+                    mantissa / FLOAT_POWERS_OF_TEN[-exponent] :
+                    mantissa * FLOAT_POWERS_OF_TEN[exponent];
+        } else {
+            if (mantissa >= MAX_EXACT_DOUBLE || exponent < -22 || exponent > 22) {
+                return Double.NaN;
+            }
+            value = exponent < 0 ?
+                    mantissa / DOUBLE_POWERS_OF_TEN[-exponent] :
+                    mantissa * DOUBLE_POWERS_OF_TEN[exponent];
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Boolean.parseBoolean(String)
+     */
+    private static boolean parseBoolean(CharSequence text) {
+        final String TRUE = "true";
+        if (text.length() != TRUE.length()) {
+            return false;
+        }
+        for (int i = 0; i < TRUE.length(); i++) {
+            char c = text.charAt(i);
+            char t = TRUE.charAt(i);
+            //as String.equalsIgnoreCase
+            if (c != t && Character.toUpperCase(c) != Character.toUpperCase(t)
+                    && Character.toLowerCase(c) != Character.toLowerCase(t)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contentEquals(String value, CharSequence text) {
+        if (value.length() != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static NumberFormatException notANumber(CharSequence text) {
+        return new NumberFormatException("For input string: \"" + text + "\"");
+    }
+
+    /*-- char sequence parsing, the String versions of the jdk 8 take no CharSequence --*/
+
 //    /**
 //     * varargs version
 //     * <p>
@@ -275,6 +523,11 @@ public class Converters {
             map.put(typeName, converter);
         }
 
+        //equal for builders registering equal (mostly the same) converters and factory
+        Object identity() {
+            return Arrays.asList(additionalFactory, new TreeMap<>(map));
+        }
+
         ConverterFactory build() {
             if (additionalFactory == EmptyFactory.INSTANCE && map.size() == 0) {
                 return BuiltinFactory.INSTANCE;
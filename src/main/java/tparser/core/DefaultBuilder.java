@@ -10,6 +10,7 @@ import java.util.ArrayDeque;
 class DefaultBuilder implements StepTreeBuilder, NodeVisitor {
     private Element                              templateRoot;
     private ConverterFactory                     factory;
+    private RegexEngine                          regexEngine = RegexEngines.javaRegex();
     private StepNode                             root;
     private ArrayDeque<StepNode>                 parentStack = new ArrayDeque<>();
     private ArrayDeque<StructPlaceHolderVisitor> structStack = new ArrayDeque<>();
@@ -18,6 +19,10 @@ class DefaultBuilder implements StepTreeBuilder, NodeVisitor {
         this.templateRoot = templateRoot;
     }
 
+    Element templateRoot() {
+        return templateRoot;
+    }
+
     @Override
     public StepNode build(ConverterFactory converterFactory) {
         this.factory = converterFactory;
@@ -25,12 +30,18 @@ class DefaultBuilder implements StepTreeBuilder, NodeVisitor {
         return root;
     }
 
+    @Override
+    public StepNode build(ConverterFactory converterFactory, RegexEngine regexEngine) {
+        this.regexEngine = regexEngine;
+        return build(converterFactory);
+    }
+
     @Override
     public void head(Node node, int depth) {
         if (node instanceof Element) {
             //ignore comment
             Element  templateElement = (Element) node;
-            StepNode currentStep     = createStepNode(templateElement, structStack.peek(), factory);
+            StepNode currentStep     = createStepNode(templateElement, structStack.peek(), factory, regexEngine);
             if (currentStep instanceof StructPlaceHolderVisitor) {
                 structStack.push((StructPlaceHolderVisitor) currentStep);
             }
@@ -57,13 +68,17 @@ class DefaultBuilder implements StepTreeBuilder, NodeVisitor {
         }
     }
 
-    private static StepNode createStepNode(Element template, StructPlaceHolderVisitor parent, ConverterFactory factory) {
+    private static StepNode createStepNode(
+            Element template,
+            StructPlaceHolderVisitor parent,
+            ConverterFactory factory,
+            RegexEngine regexEngine) {
         if (ArrayVisitor.TAG.equals(template.tagName())) {
             return new ArrayVisitor(template);
         }
         if (ObjectVisitor.TAG.equals(template.tagName())) {
             return new ObjectVisitor(template);
         }
-        return new ElementVisitor(template, parent, factory);
+        return new ElementVisitor(template, parent, factory, regexEngine);
     }
 }
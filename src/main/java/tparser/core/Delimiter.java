@@ -23,6 +23,15 @@ abstract class Delimiter {
      */
     abstract boolean checkShouldSplit(Element root, Element element);
 
+    /**
+     * check if the element is a delimiter, without splitting
+     *
+     * @param root    the element's root
+     * @param element to check
+     * @return if this element is a delimiter
+     */
+    abstract boolean isDelimiter(Element root, Element element);
+
 
     abstract void onStartOfParent();
 
@@ -49,6 +58,11 @@ abstract class Delimiter {
             return false;
         }
 
+        @Override
+        boolean isDelimiter(Element root, Element element) {
+            return false;
+        }
+
         @Override
         void onStartOfParent() {
             elementGroups.onStartOfSubArray();
@@ -99,6 +113,11 @@ abstract class Delimiter {
             return isDelimiter;
         }
 
+        @Override
+        boolean isDelimiter(Element root, Element element) {
+            return betweenDelimiter.matches(root, element);
+        }
+
         @Override
         void onStartOfParent() {
             elementGroups.onStartOfSubArray();
@@ -157,6 +176,11 @@ abstract class Delimiter {
             return isDelimiter;
         }
 
+        @Override
+        boolean isDelimiter(Element root, Element element) {
+            return startDelimiter.matches(root, element);
+        }
+
         @Override
         void onStartOfParent() {
             //reset
@@ -191,7 +215,8 @@ abstract class Delimiter {
 
     static class End extends Delimiter {
         private Evaluator endDelimiter;
-        private int       subArrayCount = 0;
+        //sub arrays before the current parent
+        private int       subArraysBefore;
 
         End(ElementGroups elementGroups, Evaluator endDelimiter) {
             super(elementGroups);
@@ -209,21 +234,28 @@ abstract class Delimiter {
             if (isDelimiter) {
                 elementGroups.onEndOfSubArray();
                 elementGroups.onStartOfSubArray();
-                subArrayCount++;
             }
             return isDelimiter;
         }
 
+        @Override
+        boolean isDelimiter(Element root, Element element) {
+            return endDelimiter.matches(root, element);
+        }
+
         @Override
         void onStartOfParent() {
+            subArraysBefore = elementGroups.getSubArrayCount();
             elementGroups.onStartOfSubArray();
         }
 
         @Override
         void onEndOfParent() {
-//            elementGroups.onEndOfSubArray();
-            if (elementGroups.getSubArraySizes().size() > subArrayCount) {
-                elementGroups.removeLastArray();
+            //elements after the last end delimiter are not in any sub array
+            elementGroups.removeCurrentSubArray();
+            if (elementGroups.getSubArrayCount() == subArraysBefore) {
+                //a parent without an end delimiter has an empty sub array, so the next parents keep theirs
+                elementGroups.onEndOfSubArray();
             }
         }
 
@@ -287,6 +319,11 @@ abstract class Delimiter {
             return isStartDelimiter || isEndDelimiter;
         }
 
+        @Override
+        boolean isDelimiter(Element root, Element element) {
+            return startDelimiter.matches(root, element) || endDelimiter.matches(root, element);
+        }
+
         @Override
         void onStartOfParent() {
             //reset
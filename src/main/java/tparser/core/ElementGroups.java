@@ -1,19 +1,14 @@
 package tparser.core;
 
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
-import org.jsoup.select.Evaluator;
 
-import java.util.ArrayList;
-import java.util.IdentityHashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * model class represent ordered sets of elements
  * a single group has types each with only a element of that type,which classified by evaluator
  * <p>
- * its properties can be retrieve by index on each evaluator(type) key
+ * its properties can be retrieve by index on each type's slot
  * <p>
  * a group is also as an item in an array for further extraction if it's under an array
  * every element under a group is nullable by default, unless it has "x-required" attr
@@ -27,41 +22,45 @@ import java.util.Map;
  * some example:
  * [p, div, li, div, li] -> [{p div li}, {null div li}]
  * [p, div, p, p, div, p] -> [{p div null}, {p null null}, {p div null}, {p null null}]
+ * <p>
+ * a type's slot is the index of its classification in the classifier, assigned when the template is built,
+ * each slot has a column holding its element of every group
  */
 class ElementGroups {
+    private static final int INITIAL_CAPACITY = 8;
+
     //the total of groups found
     private int groupsFound         = 0;
     //the current sub array size
     private int currentSubArraySize = 0;
 
-    //evaluators as keys of element's type
-    private IdentityHashMap<Evaluator, ArrayList<Element>> classified;
+    //columns of element's type, by slot
+    private final Column[] columns;
 
     //the sub array sizes used by ArrayVisitor
     //classified elements will be spilt by sizes
-    private ArrayList<Integer> subArraySizes = new ArrayList<>();
+    private int[] subArraySizes = new int[INITIAL_CAPACITY];
+    private int   subArrayCount = 0;
 
-    ElementGroups(List<Evaluator> classifications) {
-        classified = new IdentityHashMap<>(CollectionHelper.enoughHashTableCapacity(classifications.size()));
-        for (Evaluator evaluator : classifications) {
-            classified.put(evaluator, new ArrayList<>());
+    ElementGroups(int slots) {
+        columns = new Column[slots];
+        for (int slot = 0; slot < slots; slot++) {
+            columns[slot] = new Column();
         }
     }
 
-    private void fillPreviousGroupsWithNull(Element parent) {
-        //first group will never execute the loop (empty entries)
-        for (Map.Entry<Evaluator, ArrayList<Element>> entry : classified.entrySet()) {
+    private void fillPreviousGroupsWithNull() {
+        //first group will never fill anything (empty columns)
+        for (Column column : columns) {
             //fill the group by adding missing elements as null
-            while (entry.getValue().size() < groupsFound) {
-                entry.getValue().add(NullWrapper.nullRepresent(parent));
-            }
+            column.fillNull(groupsFound);
         }
     }
 
     //used by Classifier.Object to make sure object always has at least 1 group
-    void addNullGroup(Element parent) {
-        for (Map.Entry<Evaluator, ArrayList<Element>> entry : classified.entrySet()) {
-            entry.getValue().add(NullWrapper.nullRepresent(parent));
+    void addNullGroup() {
+        for (Column column : columns) {
+            column.add(NullWrapper.nullRepresent());
         }
     }
 
@@ -69,44 +68,47 @@ class ElementGroups {
      * all the parents are processed
      * finish the last group
      */
-    void onParentsAllVisited(Elements parents) {
-        Element lastParent = parents.last();
-        fillPreviousGroupsWithNull(lastParent);
+    void onParentsAllVisited() {
+        fillPreviousGroupsWithNull();
     }
 
     /**
      * found first type of element in a group
      * create a new group and finish the previous
      *
+     * @param slot slot of the element's type
      * @see Classifier
      */
-    void onShouldNewGroup(Element parent, Element element, Evaluator eval) {
-        fillPreviousGroupsWithNull(parent);
-        classified.get(eval).add(element);
+    void onShouldNewGroup(Element element, int slot) {
+        fillPreviousGroupsWithNull();
+        columns[slot].add(element);
         groupsFound++;
         currentSubArraySize++;
 
     }
 
-    void removeLastArray() {
-        final int s = subArraySizes.size();
-        if (s > 0) {
-            int lastArraySize = subArraySizes.remove(s - 1);
-            int maxIndex      = lastArraySize - 1;
-            for (Map.Entry<Evaluator, ArrayList<Element>> entry : classified.entrySet()) {
-                //remove last groups
-                for (int i = maxIndex; i >= 0; i--) {
-                    entry.getValue().remove(i);
-                }
-            }
+    /**
+     * drop the groups of the current sub array, which is not ended
+     * they are the last groups found, so every column is truncated in place
+     *
+     * @see Delimiter.End
+     */
+    void removeCurrentSubArray() {
+        int remaining = groupsFound - currentSubArraySize;
+        for (Column column : columns) {
+            column.truncate(remaining);
         }
+        groupsFound = remaining;
+        currentSubArraySize = 0;
     }
 
     /**
      * on found non-first type element in a group
+     *
+     * @param slot slot of the element's type
      */
-    void onFound(Element element, Evaluator eval) {
-        classified.get(eval).add(element);
+    void onFound(Element element, int slot) {
+        columns[slot].add(element);
     }
 
     /**
@@ -122,28 +124,40 @@ class ElementGroups {
      * the sub array is complete
      */
     void onEndOfSubArray() {
-        subArraySizes.add(currentSubArraySize);
+        if (subArrayCount == subArraySizes.length) {
+            subArraySizes = Arrays.copyOf(subArraySizes, subArrayCount * 2);
+        }
+        subArraySizes[subArrayCount++] = currentSubArraySize;
     }
 
 
     /**
      * get elements of a type inside each group
      *
-     * @param classificationKey the evaluator represent the type
+     * @param slot the slot of the type
      * @return properties of the same type, in those owner groups order
      * @see ElementVisitor
      */
-    ArrayList<Element> getClassifiedElements(Evaluator classificationKey) {
-        return classified.get(classificationKey);
+    Column getClassifiedElements(int slot) {
+        return columns[slot];
     }
 
     /**
-     * get sub array sizes
+     * get number of sub arrays
      *
      * @see ArrayVisitor
      */
-    List<Integer> getSubArraySizes() {
-        return subArraySizes;
+    int getSubArrayCount() {
+        return subArrayCount;
+    }
+
+    /**
+     * get size of a sub array
+     *
+     * @see ArrayVisitor
+     */
+    int getSubArraySize(int index) {
+        return subArraySizes[index];
     }
 
     /**
@@ -161,8 +175,59 @@ class ElementGroups {
         return "ElementGroups{" +
                 "groupsFound=" + groupsFound +
                 ", currentSubArraySize=" + currentSubArraySize +
-                ", subArraySizes=" + subArraySizes +
-                ", classified=" + classified +
+                ", subArraySizes=" + Arrays.toString(Arrays.copyOf(subArraySizes, subArrayCount)) +
+                ", classified=" + Arrays.toString(columns) +
                 '}';
     }
+
+    /**
+     * growable array of a type's elements, index is the group
+     */
+    static final class Column {
+        private Element[] elements = new Element[INITIAL_CAPACITY];
+        private int       size     = 0;
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > elements.length) {
+                elements = Arrays.copyOf(elements, Math.max(capacity, elements.length * 2));
+            }
+        }
+
+        void add(Element element) {
+            ensureCapacity(size + 1);
+            elements[size++] = element;
+        }
+
+        //pad with null representations up to size
+        void fillNull(int toSize) {
+            if (size < toSize) {
+                ensureCapacity(toSize);
+                Arrays.fill(elements, size, toSize, NullWrapper.nullRepresent());
+                size = toSize;
+            }
+        }
+
+        //slots past the size are overwritten by later adds
+        void truncate(int toSize) {
+            if (size > toSize) {
+                size = toSize;
+            }
+        }
+
+        Element get(int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException(String.format("index: %d, size: %d", index, size));
+            }
+            return elements[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(Arrays.copyOf(elements, size));
+        }
+    }
 }
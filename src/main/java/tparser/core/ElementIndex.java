@@ -0,0 +1,279 @@
+package tparser.core;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * per-parse index of an input DOM
+ * <p>
+ * elements are numbered in preorder by one pass, the subtree of an element is the range from its number to
+ * the last number in the subtree, so a subtree search only needs the candidates in that range
+ * <p>
+ * candidates come from term lists: the elements matching a tag, class, id or attribute key term, in document order,
+ * a list is built by one scan over the numbered elements when a search first asks for its term,
+ * so a document only pays for the terms its template uses
+ * <p>
+ * a subtree search with an evaluator requiring any of those terms tests the shortest of its lists within the range,
+ * the evaluator still decides the match so results are the same as a traversal
+ * <p>
+ * lists and numbers are built on demand, forked subtrees share an index so building is synchronized
+ *
+ * @see #keysOf(Evaluator)
+ */
+final class ElementIndex implements NodeVisitor {
+    private static final Key[] NO_KEYS   = new Key[0];
+    private static final int   NOT_FOUND = -1;
+
+    private Element[] elements;
+    //last preorder number in the subtree of each element
+    private int[]     subtreeEnds;
+    private int[]     depths;
+    private int       size = 0;
+
+    //preorder numbers of the elements being visited, for tail
+    private final Postings visiting = new Postings();
+
+    //numbers of the searched roots, filled by sibling lists
+    private final Map<Element, Integer> preorders = new IdentityHashMap<>();
+    private final Map<String, Postings> postings  = new HashMap<>();
+
+    private ElementIndex() {
+        elements = new Element[256];
+        subtreeEnds = new int[256];
+        depths = new int[256];
+    }
+
+    static ElementIndex build(Element root) {
+        ElementIndex index = new ElementIndex();
+        NodeTraversor.traverse(index, root);
+        index.preorders.put(root, 0);
+        return index;
+    }
+
+    /**
+     * index terms an evaluator requires, every element it matches has all of them
+     *
+     * @return empty if the evaluator cannot be narrowed down by the index
+     */
+    static Key[] keysOf(Evaluator evaluator) {
+        List<Key> keys = new ArrayList<>();
+        collectKeys(evaluator, keys);
+        return keys.toArray(NO_KEYS);
+    }
+
+    private static void collectKeys(Evaluator evaluator, List<Key> keys) {
+        if (evaluator instanceof CombiningEvaluator.And) {
+            //any of the terms is required
+            for (Evaluator term : (CombiningEvaluator.And) evaluator) {
+                collectKeys(term, keys);
+            }
+        } else if (evaluator instanceof Evaluator.Tag
+                || evaluator instanceof Evaluator.Class
+                || evaluator instanceof Evaluator.Id
+                || evaluator instanceof Evaluator.Attribute) {
+            keys.add(new Key(evaluator));
+        }
+        //others (or, pseudo selectors, value matching...) are not indexed
+    }
+
+    @Override
+    public void head(Node node, int depth) {
+        if (!(node instanceof Element)) {
+            return;
+        }
+        if (size == elements.length) {
+            int capacity = size * 2;
+            elements = Arrays.copyOf(elements, capacity);
+            subtreeEnds = Arrays.copyOf(subtreeEnds, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+        }
+        int preorder = size++;
+        elements[preorder] = (Element) node;
+        depths[preorder] = depth;
+        visiting.add(preorder);
+    }
+
+    @Override
+    public void tail(Node node, int depth) {
+        if (node instanceof Element) {
+            subtreeEnds[visiting.removeLast()] = size - 1;
+        }
+    }
+
+    /**
+     * @return if the element belongs to the indexed DOM
+     */
+    boolean covers(Element element) {
+        return preorderOf(element) != NOT_FOUND;
+    }
+
+    /**
+     * number an element by its siblings, a sibling's number follows the end of the previous one's subtree
+     *
+     * @return -1 if not in the indexed DOM
+     */
+    private synchronized int preorderOf(Element element) {
+        Integer known = preorders.get(element);
+        if (known != null) {
+            return known;
+        }
+        //climb to a numbered ancestor, then number the children on the way down
+        List<Element> path     = new ArrayList<>();
+        Element       ancestor = element;
+        Integer       preorder;
+        do {
+            path.add(ancestor);
+            ancestor = ancestor.parent();
+            if (ancestor == null) {
+                //not under the indexed root
+                return NOT_FOUND;
+            }
+            preorder = preorders.get(ancestor);
+        } while (preorder == null);
+
+        for (int i = path.size() - 1; i >= 0; i--) {
+            numberChildren(ancestor, preorder);
+            ancestor = path.get(i);
+            preorder = preorders.get(ancestor);
+        }
+        return preorder;
+    }
+
+    private void numberChildren(Element parent, int parentPreorder) {
+        int preorder = parentPreorder + 1;
+        for (int i = 0, childSize = parent.childNodeSize(); i < childSize; i++) {
+            Node node = parent.childNode(i);
+            if (node instanceof Element) {
+                preorders.put((Element) node, preorder);
+                preorder = subtreeEnds[preorder] + 1;
+            }
+        }
+    }
+
+    //scan for the elements matching the term at the first time it's asked
+    private synchronized Postings postingsOf(Key key) {
+        Postings list = postings.get(key.name);
+        if (list == null) {
+            list = new Postings();
+            //the terms don't depend on root
+            Element root = elements[0];
+            for (int i = 0; i < size; i++) {
+                if (key.term.matches(root, elements[i])) {
+                    list.add(i);
+                }
+            }
+            postings.put(key.name, list);
+        }
+        return list;
+    }
+
+    /**
+     * first element in document order matching the evaluator in the subtree of root, root excluded
+     * same as a depth first search, evaluator tests elements with root as its root
+     *
+     * @param root      a covered element
+     * @param keys      non empty keys of the evaluator
+     * @param evaluator to test candidates
+     * @return null if not found
+     */
+    Element selectFirstExcludeRoot(Element root, Key[] keys, Evaluator evaluator) {
+        int found = firstExcludeRoot(root, keys, evaluator);
+        return found == NOT_FOUND ? null : elements[found];
+    }
+
+    /**
+     * @return depth of the first match relative to root (root is 0), -1 if not found
+     * @see #selectFirstExcludeRoot(Element, Key[], Evaluator)
+     */
+    int firstDepthExcludeRoot(Element root, Key[] keys, Evaluator evaluator) {
+        int found = firstExcludeRoot(root, keys, evaluator);
+        return found == NOT_FOUND ? NOT_FOUND : depths[found] - depths[preorderOf(root)];
+    }
+
+    private int firstExcludeRoot(Element root, Key[] keys, Evaluator evaluator) {
+        Postings shortest = null;
+        for (Key key : keys) {
+            Postings list = postingsOf(key);
+            if (shortest == null || list.size < shortest.size) {
+                shortest = list;
+            }
+        }
+        int rootPreorder = preorderOf(root);
+        int end          = subtreeEnds[rootPreorder];
+        for (int i = shortest.lowerBound(rootPreorder + 1); i < shortest.size; i++) {
+            int preorder = shortest.values[i];
+            if (preorder > end) {
+                break;
+            }
+            if (evaluator.matches(root, elements[preorder])) {
+                return preorder;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * a tag, class, id or attribute key term required by an evaluator
+     */
+    static final class Key {
+        private final Evaluator term;
+        //unique between kinds: tag / .class / #id / [key]
+        private final String    name;
+
+        private Key(Evaluator term) {
+            this.term = term;
+            this.name = term.toString();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    //ascending preorder numbers
+    private static final class Postings {
+        private int[] values = new int[4];
+        private int   size   = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int removeLast() {
+            return values[--size];
+        }
+
+        //index of the first value >= target
+        int lowerBound(int target) {
+            int low  = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[middle] < target) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package tparser.core;
+
+import com.google.code.regexp.Matcher;
+
+import java.util.Map;
+
+/**
+ * what an ElementVisitor is built from, with the identifiers of its text and attributes already parsed
+ * <p>
+ * matched again from the built step when asked for, so a template can be compiled to binary and built again
+ * without the template source or the identifier patterns
+ *
+ * @see TemplateBinary
+ */
+final class ElementSpec {
+    //kinds of attribute
+    static final byte PLAIN            = 0;
+    static final byte EXTENSION        = 1;
+    static final byte VALUE_IDENTIFIER = 2;
+    static final byte KEY_IDENTIFIER   = 3;
+
+    final String         tagName;
+    final boolean        isDirectChildOfStructure;
+    //null if the text is not an identifier
+    final Identifier     textIdentifier;
+    final AttributePairs attributes;
+    final byte[]         attributeKinds;
+    //null for plain and extension attributes
+    final Identifier[]   attributeIdentifiers;
+
+    ElementSpec(
+            String tagName,
+            boolean isDirectChildOfStructure,
+            Identifier textIdentifier,
+            AttributePairs attributes,
+            byte[] attributeKinds,
+            Identifier[] attributeIdentifiers) {
+        this.tagName = tagName;
+        this.isDirectChildOfStructure = isDirectChildOfStructure;
+        this.textIdentifier = textIdentifier;
+        this.attributes = attributes;
+        this.attributeKinds = attributeKinds;
+        this.attributeIdentifiers = attributeIdentifiers;
+    }
+
+    /**
+     * match the identifiers of a template element
+     *
+     * @throws TemplateSyntaxError if an attribute has identifiers in both key and value, or an unknown extension
+     */
+    static ElementSpec of(
+            String tagName,
+            String ownText,
+            boolean isDirectChildOfStructure,
+            AttributeContainer<? extends Map.Entry<String, String>> attrs) {
+
+        Matcher    matchText      = IdentifierHelper.matchTextIdentifier(ownText);
+        Identifier textIdentifier = matchText.matches() ?
+                IdentifierHelper.parseIdentifier(matchText, ownText, false) :
+                null;
+
+        AttributePairs attributes  = AttributePairs.copyOf(attrs);
+        byte[]         kinds       = new byte[attributes.size()];
+        Identifier[]   identifiers = new Identifier[attributes.size()];
+        for (int i = 0, size = attributes.size(); i < size; i++) {
+            String key   = attributes.key(i);
+            String value = attributes.value(i);
+            if (SearchOptionAttributeHelper.isExtensionAttr(key)) {
+                kinds[i] = EXTENSION;
+                continue;
+            }
+            Matcher matchValue = IdentifierHelper.matchAttrIdentifier(value);
+            Matcher matchKey   = IdentifierHelper.matchAttrIdentifier(key);
+
+            boolean isValueIdentifier = matchValue.matches();
+            boolean isKeyIdentifier   = matchKey.matches();
+            if (isValueIdentifier && isKeyIdentifier) {
+                throw new TemplateSyntaxError(
+                        String.format("attribute identifiers cannot be in both key and value: %s-%s", key, value)
+                );
+            } else if (isValueIdentifier) {
+                kinds[i] = VALUE_IDENTIFIER;
+                identifiers[i] = IdentifierHelper.parseIdentifier(matchValue, value, true);
+            } else if (isKeyIdentifier) {
+                kinds[i] = KEY_IDENTIFIER;
+                identifiers[i] = IdentifierHelper.parseIdentifier(matchKey, key, true);
+            } else {
+                kinds[i] = PLAIN;
+            }
+        }
+        return new ElementSpec(tagName, isDirectChildOfStructure, textIdentifier, attributes, kinds, identifiers);
+    }
+}
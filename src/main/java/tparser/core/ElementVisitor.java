@@ -1,28 +1,34 @@
 package tparser.core;
 
-import com.google.code.regexp.Matcher;
 import org.jsoup.internal.StringUtil;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.jsoup.select.Evaluator;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 public class ElementVisitor extends StepNode {
 
-    private static final String ATTR_CLASS = "class";
+    private static final String                ATTR_CLASS    = "class";
+    private static final ExtractionProcessor[] NO_PROCESSORS = new ExtractionProcessor[0];
 
     private StructPlaceHolderVisitor       parentStructure;
     private Evaluator                      selfEval;
+    private ElementIndex.Key[]             indexKeys;
     private DOMSearchMethod.Scope          scope;
     private DOMSearchMethod.FirstSelector  firstSelector;
     private DOMSearchMethod.ExistenceCheck checker;
-    private List<ExtractionProcessor>      processors = new ArrayList<>();
+    private ExtractionProcessor[]          processors = NO_PROCESSORS;
     private boolean                        isDirectChildOfStructure;
+    //slot in the parent structure's groups, if direct child
+    private int                            classificationSlot = -1;
     private boolean                        hasExtractions;
+    //what this step is built from, matched again only when the spec is asked for
+    private String                         textDeclaration;
+    private AttributePairs                 attributes;
 
     private PendingState state;
 
@@ -38,12 +44,19 @@ public class ElementVisitor extends StepNode {
         StructPlaceHolderVisitor                                parentPlaceholder;
         AttributeContainer<? extends Map.Entry<String, String>> attrs   = CollectionHelper.emptyContainer();
         ConverterFactory                                        factory;
-
-        PendingState(String tagName, boolean isDirectChildOfStructure, StructPlaceHolderVisitor parentPlaceholder, ConverterFactory factory) {
+        RegexEngine                                             regexEngine;
+
+        PendingState(
+                String tagName,
+                boolean isDirectChildOfStructure,
+                StructPlaceHolderVisitor parentPlaceholder,
+                ConverterFactory factory,
+                RegexEngine regexEngine) {
             this.tagName = tagName;
             this.isDirectChildOfStructure = isDirectChildOfStructure;
             this.parentPlaceholder = parentPlaceholder;
             this.factory = factory;
+            this.regexEngine = regexEngine;
         }
     }
 
@@ -57,8 +70,22 @@ public class ElementVisitor extends StepNode {
             boolean isDirectChildOfStructure,
             StructPlaceHolderVisitor parentPlaceholder,
             ConverterFactory factory) {
+        this(tagName, isDirectChildOfStructure, parentPlaceholder, factory, RegexEngines.javaRegex());
+    }
+
+    /**
+     * @param regexEngine compiles regex identifiers
+     * @see #ElementVisitor(String, boolean, StructPlaceHolderVisitor, ConverterFactory)
+     */
+    @SuppressWarnings("unused")
+    public ElementVisitor(
+            String tagName,
+            boolean isDirectChildOfStructure,
+            StructPlaceHolderVisitor parentPlaceholder,
+            ConverterFactory factory,
+            RegexEngine regexEngine) {
         super(tagName);
-        this.state = new PendingState(tagName, isDirectChildOfStructure, parentPlaceholder, factory);
+        this.state = new PendingState(tagName, isDirectChildOfStructure, parentPlaceholder, factory, regexEngine);
     }
 
     @SuppressWarnings("unused")
@@ -85,11 +112,11 @@ public class ElementVisitor extends StepNode {
                     state.isDirectChildOfStructure,
                     state.parentPlaceholder,
                     state.attrs,
-                    state.factory
+                    state.factory,
+                    state.regexEngine
             );
             state = null;
         }
-        processors = Collections.unmodifiableList(processors);
     }
 
     /**
@@ -116,8 +143,25 @@ public class ElementVisitor extends StepNode {
             AttributeContainer<? extends Map.Entry<String, String>> attrs,
             ConverterFactory factory) {
 
+        this(tagName, ownText, isDirectChildOfStructure, parentPlaceholder, attrs, factory, RegexEngines.javaRegex());
+    }
+
+    /**
+     * @param regexEngine compiles regex identifiers
+     * @see #ElementVisitor(String, String, boolean, StructPlaceHolderVisitor, AttributeContainer, ConverterFactory)
+     */
+    @SuppressWarnings("unused")
+    public ElementVisitor(
+            String tagName,
+            String ownText,
+            boolean isDirectChildOfStructure,
+            StructPlaceHolderVisitor parentPlaceholder,
+            AttributeContainer<? extends Map.Entry<String, String>> attrs,
+            ConverterFactory factory,
+            RegexEngine regexEngine) {
+
         super(tagName);
-        initialize(tagName, ownText, isDirectChildOfStructure, parentPlaceholder, attrs, factory);
+        initialize(tagName, ownText, isDirectChildOfStructure, parentPlaceholder, attrs, factory, regexEngine);
     }
 
     private void initialize(
@@ -126,71 +170,77 @@ public class ElementVisitor extends StepNode {
             boolean isDirectChildOfStructure,
             StructPlaceHolderVisitor parentPlaceholder,
             AttributeContainer<? extends Map.Entry<String, String>> attrs,
-            ConverterFactory factory) {
+            ConverterFactory factory,
+            RegexEngine regexEngine) {
+
+        initialize(ElementSpec.of(tagName, ownText, isDirectChildOfStructure, attrs), parentPlaceholder, factory, regexEngine);
+    }
 
-        this.isDirectChildOfStructure = isDirectChildOfStructure;
+    private void initialize(
+            ElementSpec spec,
+            StructPlaceHolderVisitor parentPlaceholder,
+            ConverterFactory factory,
+            RegexEngine regexEngine) {
+
+        this.textDeclaration = spec.textIdentifier != null ? spec.textIdentifier.declaration : null;
+        this.attributes = spec.attributes;
+        this.isDirectChildOfStructure = spec.isDirectChildOfStructure;
         this.parentStructure = parentPlaceholder;
 
-        Matcher matchText = IdentifierHelper.matchTextIdentifier(ownText);
-        if (matchText.matches()) {
-            checkLevel(ownText);
-            processors.add(IdentifierHelper
-                    .createElementTextProcessor(matchText, parentStructure, factory));
+        List<ExtractionProcessor> processorList = new ArrayList<>();
+        if (spec.textIdentifier != null) {
+            checkLevel(spec.textIdentifier.declaration);
+            processorList.add(IdentifierHelper
+                    .createElementTextProcessor(spec.textIdentifier, parentStructure, factory, regexEngine));
         }
+        AttributePairs       attrs    = spec.attributes;
         ArrayList<Evaluator> combines = new ArrayList<>();
-        combines.add(new Evaluator.Tag(tagName));
-        for (Map.Entry<String, String> attr : attrs) {
-
-            String key   = attr.getKey();
-            String value = attr.getValue();
-
-            if (SearchOptionAttributeHelper.isExtensionAttr(key)) {
-                //ignore x-attr
-                continue;
-            }
-            Matcher matchValue = IdentifierHelper.matchAttrIdentifier(value);
-            Matcher matchKey   = IdentifierHelper.matchAttrIdentifier(key);
-
-            boolean isValueIdentifier = matchValue.matches();
-            boolean isKeyIdentifier   = matchKey.matches();
-
-            if (isValueIdentifier && isKeyIdentifier) {
-                throw new TemplateSyntaxError(
-                        String.format("attribute identifiers cannot be in both key and value: %s-%s", key, value)
-                );
-            } else if (isValueIdentifier) {
-                checkLevel(value);
-                boolean isAttrValueSelection = IdentifierHelper.hasSelectionAnnotation(matchValue);
-                if (isAttrValueSelection) {
-                    //is one of selection info
-                    combines.add(new Evaluator.Attribute(key));
-                }
-                processors.add(IdentifierHelper.createAttrProcessor(matchValue, false, attr, parentStructure, factory));
-            } else if (isKeyIdentifier) {
-                checkLevel(key);
-                boolean isAttrKeySelection = IdentifierHelper.hasSelectionAnnotation(matchKey);
-                if (isAttrKeySelection) {
-                    combines.add(new ExtendedEvaluator.HasAttrWithValue(value));
-                }
-                processors.add(IdentifierHelper.createAttrProcessor(matchValue, true, attr, parentStructure, factory));
-            } else {
-                if (!value.isEmpty()) {
-                    if (key.equals(ATTR_CLASS)) {
-                        //class can be multiple inheritance
-                        for (String className : attrs.getClasses()) {
-                            combines.add(new Evaluator.Class(className));
+        combines.add(new Evaluator.Tag(spec.tagName));
+        for (int i = 0, size = attrs.size(); i < size; i++) {
+
+            String     key        = attrs.key(i);
+            String     value      = attrs.value(i);
+            Identifier identifier = spec.attributeIdentifiers[i];
+
+            switch (spec.attributeKinds[i]) {
+                case ElementSpec.EXTENSION:
+                    //ignore x-attr
+                    break;
+                case ElementSpec.VALUE_IDENTIFIER:
+                    checkLevel(value);
+                    if (identifier.selection) {
+                        //is one of selection info
+                        combines.add(new Evaluator.Attribute(key));
+                    }
+                    processorList.add(IdentifierHelper.createAttrProcessor(identifier, false, key, value, parentStructure, factory, regexEngine));
+                    break;
+                case ElementSpec.KEY_IDENTIFIER:
+                    checkLevel(key);
+                    if (identifier.selection) {
+                        combines.add(new ExtendedEvaluator.HasAttrWithValue(value));
+                    }
+                    processorList.add(IdentifierHelper.createAttrProcessor(identifier, true, key, value, parentStructure, factory, regexEngine));
+                    break;
+                default:
+                    if (!value.isEmpty()) {
+                        if (key.equals(ATTR_CLASS)) {
+                            //class can be multiple inheritance
+                            for (int c = 0, classCount = attrs.classCount(); c < classCount; c++) {
+                                combines.add(new Evaluator.Class(attrs.className(c)));
+                            }
+                        } else {
+                            combines.add(new Evaluator.AttributeWithValue(key, value));
                         }
                     } else {
-                        combines.add(new Evaluator.AttributeWithValue(key, value));
+                        //empty attr values
+                        //should only eval with attr key
+                        combines.add(new Evaluator.Attribute(key));
                     }
-                } else {
-                    //empty attr values
-                    //should only eval with attr key
-                    combines.add(new Evaluator.Attribute(key));
-                }
+                    break;
             }
         }
-        this.hasExtractions = (processors.size() != 0);
+        this.processors = processorList.toArray(NO_PROCESSORS);
+        this.hasExtractions = (processors.length != 0);
         this.checker = SearchOptionAttributeHelper.createChecker(attrs);
 //        this.searchMethod = SearchMethodHelper.searchFirstMethod(attrs);
 
@@ -199,13 +249,30 @@ public class ElementVisitor extends StepNode {
         Evaluator defaultEval = new CombiningEvaluator.And(combines);
 
         selfEval = SearchOptionAttributeHelper.composeEvaluator(attrs, defaultEval);
+        indexKeys = ElementIndex.keysOf(selfEval);
         if (isDirectChildOfStructure) {
-            parentPlaceholder.addClassification(selfEval, scope);
+            classificationSlot = parentPlaceholder.addClassification(selfEval, scope);
         }
 
     }
 
-    ElementVisitor(Element selfTemplate, StructPlaceHolderVisitor parentPlaceholder, ConverterFactory factory) {
+    /**
+     * build from a spec already matched, for compiled templates
+     */
+    ElementVisitor(
+            ElementSpec spec,
+            StructPlaceHolderVisitor parentPlaceholder,
+            ConverterFactory factory,
+            RegexEngine regexEngine) {
+        super(spec.tagName);
+        initialize(spec, parentPlaceholder, factory, regexEngine);
+    }
+
+    ElementVisitor(
+            Element selfTemplate,
+            StructPlaceHolderVisitor parentPlaceholder,
+            ConverterFactory factory,
+            RegexEngine regexEngine) {
         super(selfTemplate.tagName());
         initialize(
                 selfTemplate.tagName(),
@@ -213,7 +280,8 @@ public class ElementVisitor extends StepNode {
                 StructPlaceHolderVisitor.isDirectChildOfStructure(selfTemplate),
                 parentPlaceholder,
                 CollectionHelper.asAttributeContainer(selfTemplate),
-                factory
+                factory,
+                regexEngine
         );
 
     }
@@ -308,24 +376,59 @@ public class ElementVisitor extends StepNode {
 //        this(selfTemplate, parentPlaceholder, Converters.defaultFactory());
 //    }
 
-    private <JO, JA> void extract(Element element, ParseResult<JO, JA> state, int index) throws HtmlParseException {
-        if (hasExtractions) {
-            for (ExtractionProcessor processor : processors) {
-                processor.process(state, element, index);
-            }
+    void extract(Element element, ExtractionContext state, int index) throws HtmlParseException {
+        for (ExtractionProcessor processor : processors) {
+            processor.process(state, element, index);
         }
     }
 
+    boolean hasExtractions() {
+        return hasExtractions;
+    }
+
+    /**
+     * the spec this step is built from, matched again from its text and attributes on every call
+     *
+     * @return null if not initialized yet
+     */
+    ElementSpec spec() {
+        if (attributes == null) {
+            return null;
+        }
+        return ElementSpec.of(tagName(), textDeclaration != null ? textDeclaration : "", isDirectChildOfStructure, attributes);
+    }
+
+    Evaluator selfEval() {
+        return selfEval;
+    }
+
+    /**
+     * re-sort the selector's terms from observed outcomes, shared with the structure's classifier
+     */
+    void reorderAdaptively() {
+        if (selfEval instanceof CombiningEvaluator) {
+            ((CombiningEvaluator) selfEval).reorderAdaptively();
+        }
+    }
 
     @Override
     public <JO, JA> void onVisit(ParseResult<JO, JA> state) throws HtmlParseException {
+        select(state);
+        if (hasExtractions) {
+            extract(state);
+        }
+    }
+
+    /**
+     * find this step's element from each of parent selection and push as the current selection
+     */
+    <JO, JA> void select(ParseResult<JO, JA> state) throws HtmlParseException {
         Elements selection = new Elements(32);
         if (isDirectChildOfStructure) {
-            ArrayList<Element> classifiedElements = state.elementGroupsStack.peek().getClassifiedElements(selfEval);
+            ElementGroups.Column classifiedElements = state.elementGroupsStack.peek().getClassifiedElements(classificationSlot);
             for (int index = 0, size = classifiedElements.size(); index < size; index++) {
                 Element element = classifiedElements.get(index);
                 checker.check(element, selfEval);
-                extract(element, state, index);
                 selection.add(element);
             }
         } else {
@@ -334,17 +437,55 @@ public class ElementVisitor extends StepNode {
                 Element parent = peek.get(index);
                 Element target = NullWrapper.isNullRepresent(parent) ?
                         null : //can't be selected
-                        firstSelector.select(parent, selfEval);
+                        selectFirst(parent, state.index);
 //                        SearchMethodHelper.searchFirst(parent, selfEval, searchMethod);
                 checker.check(target, selfEval);
-                target = NullWrapper.wrapNullElement(target, parent);
-                extract(target, state, index);
-                selection.add(target);
+                selection.add(NullWrapper.wrapNullElement(target));
             }
         }
         state.selectionStack.push(selection);
     }
 
+    /**
+     * run extractions on the current selection, index of an element is the index of its owner item
+     */
+    <JO, JA> void extract(ParseResult<JO, JA> state) throws HtmlParseException {
+        Elements selection = state.selectionStack.peek();
+        for (int index = 0, size = selection.size(); index < size; index++) {
+            extract(selection.get(index), state.extractionContext, index);
+        }
+    }
+
+    /**
+     * row-major counterpart of select, find this step's element for the current row only
+     *
+     * @return the element found, or a null representation
+     */
+    Element selectRow(StreamState state) throws HtmlParseException {
+        if (isDirectChildOfStructure) {
+            Element element = state.groups.getClassifiedElements(classificationSlot).get(state.row);
+            checker.check(element, selfEval);
+            return element;
+        }
+        Element parent = state.current();
+        Element target = NullWrapper.isNullRepresent(parent) ?
+                null : //can't be selected
+                selectFirst(parent, state.index);
+        checker.check(target, selfEval);
+        return NullWrapper.wrapNullElement(target);
+    }
+
+    //look up the index for a subtree search if it can narrow down the evaluator
+    private Element selectFirst(Element parent, ElementIndex index) {
+        if (index != null
+                && indexKeys.length != 0
+                && scope == DOMSearchMethod.Scope.SUBTREE_EXCLUDE_ROOT
+                && index.covers(parent)) {
+            return index.selectFirstExcludeRoot(parent, indexKeys, selfEval);
+        }
+        return firstSelector.select(parent, selfEval);
+    }
+
     @Override
     public <JO, JA> void onExit(ParseResult<JO, JA> state) {
         state.selectionStack.pop();
@@ -362,7 +503,7 @@ public class ElementVisitor extends StepNode {
      */
     @Override
     public String toString() {
-        return String.format("%d SELECT IN %s: %s EXTRACT: %s", id, scope, selfEval.toString(), StringUtil.join(processors.iterator(), " , "));
+        return String.format("%d SELECT IN %s: %s EXTRACT: %s", id, scope, selfEval.toString(), StringUtil.join(Arrays.asList(processors), " , "));
     }
 
 
@@ -0,0 +1,35 @@
+package tparser.core;
+
+/**
+ * receiver of extraction results
+ * <p>
+ * column-major parsing puts results into the pending items of a structure,
+ * row-major parsing writes them straight to an event sink
+ *
+ * @see ParseResult
+ * @see StreamState
+ */
+interface ExtractionContext {
+    /**
+     * @param structure the structure the property belongs to
+     * @param key       handle of the json key
+     * @param value     converted value, null if not found or converted as null
+     * @param index     index of the owner item in the structure
+     */
+    void onExtract(StructPlaceHolderVisitor structure, JsonKey key, Object value, int index);
+
+    /*-- values of a PrimitiveConverter, never null --*/
+    void onExtractInt(StructPlaceHolderVisitor structure, JsonKey key, int value, int index);
+
+    void onExtractLong(StructPlaceHolderVisitor structure, JsonKey key, long value, int index);
+
+    void onExtractDouble(StructPlaceHolderVisitor structure, JsonKey key, double value, int index);
+
+    void onExtractBoolean(StructPlaceHolderVisitor structure, JsonKey key, boolean value, int index);
+    /*-- values of a PrimitiveConverter, never null --*/
+
+    /**
+     * @return texts already serialized in this parse
+     */
+    TextCache textCache();
+}
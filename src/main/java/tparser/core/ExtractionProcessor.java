@@ -1,7 +1,5 @@
 package tparser.core;
 
-import com.google.code.regexp.Matcher;
-import com.google.code.regexp.Pattern;
 import org.jsoup.internal.StringUtil;
 import org.jsoup.nodes.Element;
 
@@ -11,31 +9,37 @@ import java.util.regex.PatternSyntaxException;
 
 abstract class ExtractionProcessor {
     TextExtractor preExtractor;
+    //slot of the pre-extractor in the text cache
+    final int     cacheSlot;
 
     ExtractionProcessor(TextExtractor preExtractor) {
         this.preExtractor = preExtractor;
+        this.cacheSlot = TextCache.slotOf(preExtractor);
     }
 
-    abstract <JO, JA> void process(ParseResult<JO, JA> state, Element element, int index)
+    abstract void process(ExtractionContext state, Element element, int index)
             throws HtmlParseException;
 
 
     static class RegexProcessor extends ExtractionProcessor {
-        //need access to named group names
-        private Pattern             pattern;
+        private RegexEngine.Regex   pattern;
         private List<TypeProcessor> typeProcessors;
+        //group index of each type processor's property, resolved at build
+        private int[]               groupIndices;
         private boolean             shouldFailNotMatch;
 
         RegexProcessor(
                 TextExtractor preExtractor,
-                Pattern pattern,
+                RegexEngine.Regex pattern,
                 boolean shouldFailNotMatch,
-                List<TypeProcessor> processors
+                List<TypeProcessor> processors,
+                int[] groupIndices
 
         ) throws PatternSyntaxException {
 
             super(preExtractor);
             this.pattern = pattern;
+            this.groupIndices = groupIndices;
 //            pattern = Pattern.compile(regex);
 //            ArrayList<TypeProcessor> processors = new ArrayList<>();
 //            List<String> groupNames = pattern.groupNames();
@@ -57,8 +61,8 @@ abstract class ExtractionProcessor {
         }
 
         @Override
-        final <JO, JA> void process(ParseResult<JO, JA> state, Element element, int index)
-                throws HtmlParseException.RegexNotMatch {
+        final void process(ExtractionContext state, Element element, int index)
+                throws HtmlParseException {
 
 //            String  extraction = preExtractor.extract(element);
 //            Matcher matcher    = pattern.matcher(extraction);
@@ -66,22 +70,29 @@ abstract class ExtractionProcessor {
 //            if (shouldFailNotMatch && !found) {
 //                throw new HtmlParseException.RegexNotMatch(String.format("pattern: %s not match", pattern.toString()));
 //            }
-            final boolean isElementNull = NullWrapper.isNullRepresent(element);
-            String        extraction    = null;
-            boolean       found         = false;
-            Matcher       matcher       = null;
+            final boolean     isElementNull = NullWrapper.isNullRepresent(element);
+            String            extraction    = null;
+            boolean           found         = false;
+            RegexEngine.Match matcher       = null;
             if (!isElementNull) {
-                extraction = preExtractor.extract(element);
+                extraction = state.textCache().extract(preExtractor, cacheSlot, element);
                 matcher = pattern.matcher(extraction);
-                found = matcher.find();
+                try {
+                    found = matcher.find();
+                } catch (RegexBudget.Exceeded e) {
+                    //as not matched unless required
+                    if (shouldFailNotMatch) {
+                        throw new HtmlParseException.RegexBudgetExceeded(String.format("pattern: %s", pattern.toString()));
+                    }
+                }
                 if (shouldFailNotMatch && !found) {
                     throw new HtmlParseException.RegexNotMatch(String.format("pattern: %s not match", pattern.toString()));
                 }
             }
             boolean shouldNull = extraction == null || !found;
-            for (TypeProcessor processor : typeProcessors) {
-                String result = shouldNull ? null : matcher.group(processor.property);
-                processor.process(state, result, isElementNull ? null : element, index);
+            for (int i = 0, size = typeProcessors.size(); i < size; i++) {
+                String result = shouldNull ? null : matcher.group(groupIndices[i]);
+                typeProcessors.get(i).process(state, result, isElementNull ? null : element, index);
             }
         }
 
@@ -103,9 +114,14 @@ abstract class ExtractionProcessor {
 
 
         @Override
-        <JO, JA> void process(ParseResult<JO, JA> state, Element element, int index) {
+        void process(ExtractionContext state, Element element, int index) {
             boolean isNull = NullWrapper.isNullRepresent(element);
-            String  result = isNull ? null : preExtractor.extract(element);
+            if (processor.acceptsChars) {
+                CharSequence chars = isNull ? null : state.textCache().extractChars(preExtractor, cacheSlot, element);
+                processor.processChars(state, chars, isNull ? null : element, index);
+                return;
+            }
+            String result = isNull ? null : state.textCache().extract(preExtractor, cacheSlot, element);
             processor.process(state, result, isNull ? null : element, index);
         }
 
@@ -32,5 +32,16 @@ public class HtmlParseException extends Exception {
         }
     }
 
+    /**
+     * a regex identifier ran out of its budget before finding a match
+     *
+     * @see TemplateBuilder#regexBudget(long)
+     */
+    public static class RegexBudgetExceeded extends HtmlParseException {
+        RegexBudgetExceeded(String regex) {
+            super(String.format("%s exceeded the regex budget", regex));
+        }
+    }
+
 
 }
@@ -0,0 +1,61 @@
+package tparser.core;
+
+import java.util.Arrays;
+
+/**
+ * an identifier declaration of the template, parsed
+ * <p>
+ * holds everything the extraction processors are created from,
+ * so a step can be built again without matching the identifier patterns
+ *
+ * @see IdentifierHelper#parseIdentifier
+ */
+final class Identifier {
+    //element extraction annotations, attribute identifiers are stripped of them but extract the attribute
+    static final byte OWN_TEXT   = 0;
+    static final byte INNER_HTML = 1;
+    static final byte OUTER_HTML = 2;
+    static final byte FULL_TEXT  = 3;
+    static final byte NONE       = 4;
+
+    //as written in the template, for messages
+    final String   declaration;
+    //$ annotation, attribute identifiers only
+    final boolean  selection;
+    final String[] types;
+    final byte     extraction;
+    //property name, or the pattern of a regex identifier
+    final String   property;
+    final boolean  regex;
+    final boolean  shouldFailNotMatch;
+
+    Identifier(
+            String declaration,
+            boolean selection,
+            String[] types,
+            byte extraction,
+            String property,
+            boolean regex,
+            boolean shouldFailNotMatch) {
+        this.declaration = declaration;
+        this.selection = selection;
+        this.types = types;
+        this.extraction = extraction;
+        this.property = property;
+        this.regex = regex;
+        this.shouldFailNotMatch = shouldFailNotMatch;
+    }
+
+    @Override
+    public String toString() {
+        return "Identifier{" +
+                "declaration='" + declaration + '\'' +
+                ", selection=" + selection +
+                ", types=" + Arrays.toString(types) +
+                ", extraction=" + extraction +
+                ", property='" + property + '\'' +
+                ", regex=" + regex +
+                ", shouldFailNotMatch=" + shouldFailNotMatch +
+                '}';
+    }
+}
@@ -5,7 +5,6 @@ import com.google.code.regexp.Pattern;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.PatternSyntaxException;
 
 
@@ -131,20 +130,33 @@ class IdentifierHelper {
         return actualIdentifier.startsWith(ANNOTATION_EXTRACT_NONE);
     }
 
-    private static TextExtractor elementExtractor(String identifier) {
-        TextExtractor extractor;
+    private static byte extraction(String identifier) {
         if (isInnerHtml(identifier)) {
-            extractor = TextExtractor.innerHtml;
+            return Identifier.INNER_HTML;
         } else if (isOuterHtml(identifier)) {
-            extractor = TextExtractor.outerHtml;
+            return Identifier.OUTER_HTML;
         } else if (isFullText(identifier)) {
-            extractor = TextExtractor.fullText;
+            return Identifier.FULL_TEXT;
         } else if (isNone(identifier)) {
-            extractor = TextExtractor.none;
+            return Identifier.NONE;
         } else {
-            extractor = TextExtractor.ownText;
+            return Identifier.OWN_TEXT;
+        }
+    }
+
+    private static TextExtractor elementExtractor(byte extraction) {
+        switch (extraction) {
+            case Identifier.INNER_HTML:
+                return TextExtractor.innerHtml;
+            case Identifier.OUTER_HTML:
+                return TextExtractor.outerHtml;
+            case Identifier.FULL_TEXT:
+                return TextExtractor.fullText;
+            case Identifier.NONE:
+                return TextExtractor.none;
+            default:
+                return TextExtractor.ownText;
         }
-        return extractor;
     }
 
     private static String getTypeArrayLiteral(Matcher matcher) {
@@ -166,37 +178,54 @@ class IdentifierHelper {
         return items;
     }
 
-    //should check matches() first
+    /**
+     * should check matches() first
+     *
+     * @param matchIdentifier matched text or attribute identifier
+     * @param declaration     the matched text
+     * @param isAttr          if matched as an attribute identifier
+     */
+    static Identifier parseIdentifier(Matcher matchIdentifier, String declaration, boolean isAttr) {
+        String identifier = getActualIdentifier(matchIdentifier);
+        //can be regex or simple
+        String   property   = getProperty(identifier);
+        Matcher  matchRegex = matchRegexAnnotation(property);
+        boolean  isRegex    = matchRegex.matches();
+        String[] types      = hasTypes(matchIdentifier) ? parseArray(getTypeArrayLiteral(matchIdentifier)) : new String[0];
+        return new Identifier(
+                declaration,
+                isAttr && hasSelectionAnnotation(matchIdentifier),
+                types,
+                extraction(identifier),
+                isRegex ? getActualRegex(matchRegex) : property,
+                isRegex,
+                isRegex && shouldFailNotMatch(matchRegex)
+        );
+    }
+
     static ExtractionProcessor createElementTextProcessor(
-            Matcher matchTextIdentifier,
+            Identifier identifier,
             StructPlaceHolderVisitor structure,
-            ConverterFactory factory) {
-
-        String        identifier = getActualIdentifier(matchTextIdentifier);
-        TextExtractor extractor  = elementExtractor(identifier);
-//        if (isInnerHtml(identifier)) {
-//            extractor = TextExtractor.innerHtml;
-//        } else if (isOuterHtml(identifier)) {
-//            extractor = TextExtractor.outerHtml;
-//        } else if (isFullText(identifier)) {
-//            extractor = TextExtractor.fullText;
-//        } else {
-//            extractor = TextExtractor.ownText;
-//        }
-        return createExtractionProcessor(matchTextIdentifier, structure, extractor, factory);
+            ConverterFactory factory,
+            RegexEngine regexEngine) {
+
+        TextExtractor extractor = elementExtractor(identifier.extraction);
+        return createExtractionProcessor(identifier, structure, extractor, factory, regexEngine);
     }
 
     static ExtractionProcessor createAttrProcessor(
-            Matcher matchAttrIdentifier,
+            Identifier identifier,
             boolean isKeyTarget,
-            Map.Entry<String, String> attribute,
+            String key,
+            String value,
             StructPlaceHolderVisitor structure,
-            ConverterFactory factory) {
+            ConverterFactory factory,
+            RegexEngine regexEngine) {
 
         TextExtractor extractor = isKeyTarget ?
-                new TextExtractor.AttrKeyTarget(attribute.getValue()) :
-                new TextExtractor.AttrValueTarget(attribute.getKey());
-        return createExtractionProcessor(matchAttrIdentifier, structure, extractor, factory);
+                new TextExtractor.AttrKeyTarget(value) :
+                new TextExtractor.AttrValueTarget(key);
+        return createExtractionProcessor(identifier, structure, extractor, factory, regexEngine);
     }
 
     private static void checkTypePropertiesRange(int types, int expectLessThan) {
@@ -215,21 +244,17 @@ class IdentifierHelper {
     }
 
     private static ExtractionProcessor createExtractionProcessor(
-            Matcher matchIdentifier,
+            Identifier identifier,
             StructPlaceHolderVisitor structure,
             TextExtractor extractor,
-            ConverterFactory factory) {
+            ConverterFactory factory,
+            RegexEngine regexEngine) {
 
-        String identifier = getActualIdentifier(matchIdentifier);
-        //can be regex or simple
-        String   property   = getProperty(identifier);
-        Matcher  matchRegex = matchRegexAnnotation(property);
-        boolean  isRegex    = matchRegex.matches();
-        String[] types      = hasTypes(matchIdentifier) ? parseArray(getTypeArrayLiteral(matchIdentifier)) : new String[0];
-        if (isRegex) {
-            com.google.code.regexp.Pattern regex;
+        String[] types = identifier.types;
+        if (identifier.regex) {
+            RegexEngine.Regex regex;
             try {
-                regex = Pattern.compile(getActualRegex(matchRegex));
+                regex = regexEngine.compile(identifier.property);
             } catch (PatternSyntaxException e) {
                 throw new TemplateSyntaxError("pattern syntax error", e);
             }
@@ -237,26 +262,27 @@ class IdentifierHelper {
             List<String> groupNames = regex.groupNames();
             checkTypePropertiesRange(types.length, groupNames.size());
 
-            List<TypeProcessor> processors = new ArrayList<>(groupNames.size());
+            List<TypeProcessor> processors   = new ArrayList<>(groupNames.size());
+            int[]               groupIndices = new int[groupNames.size()];
             for (int i = 0, groupNamesSize = groupNames.size(); i < groupNamesSize; i++) {
                 String name = groupNames.get(i);
-                structure.addProperty(name);
+                groupIndices[i] = regex.groupIndex(name);
+                JsonKey key = structure.addProperty(name);
                 // add as default type(String) until fulfill all group names
                 // ex: [Integer,Integer] {(?<a>)(?<b>)(?<c>)} -> a: Integer, b: Integer, c: String
                 String type = i < types.length ? types[i] : Converters.defaultConverterType();
 
                 Converter converter = createAndValidateConverter(factory, type);
-                processors.add(new TypeProcessor(structure, name, converter, type));
+                processors.add(new TypeProcessor(structure, key, converter, type));
             }
-            return new ExtractionProcessor.RegexProcessor(extractor, regex, shouldFailNotMatch(matchRegex), processors);
+            return new ExtractionProcessor.RegexProcessor(extractor, regex, identifier.shouldFailNotMatch, processors, groupIndices);
         } else {
             checkTypePropertiesRange(types.length, 1);
-            String type = types.length == 0 ? Converters.defaultConverterType() : types[0];
-            structure.addProperty(property);
+            String    type      = types.length == 0 ? Converters.defaultConverterType() : types[0];
+            JsonKey   key       = structure.addProperty(identifier.property);
             Converter converter = createAndValidateConverter(factory, type);
-//            String    property  = getProperty(identifier);
-            return new ExtractionProcessor.SimpleProcessor(extractor, new TypeProcessor(structure, property, converter, type));
+            return new ExtractionProcessor.SimpleProcessor(extractor, new TypeProcessor(structure, key, converter, type));
         }
 
     }
-}
\ No newline at end of file
+}
@@ -5,6 +5,7 @@ package tparser.core;
  *
  * @param <JO> Json object type provided by Json library
  * @param <JA> Json array type provided by Json library
+ * @see PrimitiveJsonDelegate
  */
 public interface JsonDelegate<JO, JA> {
     /**
@@ -0,0 +1,61 @@
+package tparser.core;
+
+/**
+ * a plain JsonDelegate seen as a PrimitiveJsonDelegate, every value boxed and put by name as before
+ *
+ * @see PrimitiveJsonDelegate
+ */
+final class JsonDelegateAdapter<JO, JA> implements PrimitiveJsonDelegate<JO, JA> {
+    private final JsonDelegate<JO, JA> delegate;
+
+    private JsonDelegateAdapter(JsonDelegate<JO, JA> delegate) {
+        this.delegate = delegate;
+    }
+
+    static <JO, JA> PrimitiveJsonDelegate<JO, JA> adapt(JsonDelegate<JO, JA> delegate) {
+        if (delegate instanceof PrimitiveJsonDelegate) {
+            return (PrimitiveJsonDelegate<JO, JA>) delegate;
+        }
+        return new JsonDelegateAdapter<>(delegate);
+    }
+
+    @Override
+    public JO createObjectNode() {
+        return delegate.createObjectNode();
+    }
+
+    @Override
+    public JA createArrayNode() {
+        return delegate.createArrayNode();
+    }
+
+    @Override
+    public void putValue(JO objectNode, String key, Object value) {
+        delegate.putValue(objectNode, key, value);
+    }
+
+    @Override
+    public void putNull(JO objectNode, String key) {
+        delegate.putNull(objectNode, key);
+    }
+
+    @Override
+    public void putObjectNode(JO objectNode, String key, JO value) {
+        delegate.putObjectNode(objectNode, key, value);
+    }
+
+    @Override
+    public void putArrayNode(JO objectNode, String key, JA value) {
+        delegate.putArrayNode(objectNode, key, value);
+    }
+
+    @Override
+    public void add(JA arrayNode, JO itemToAdd) {
+        delegate.add(arrayNode, itemToAdd);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
@@ -0,0 +1,56 @@
+package tparser.core;
+
+/**
+ * streaming json output for row-major parsing
+ * <p>
+ * events arrive in document order, an array item is complete (including nested structures) before the next one starts,
+ * so an implementation can write and flush while parsing continues
+ * <p>
+ * given template: object{ title , array "items"{ name } }
+ * events: startObject key(title) value key(items) startArray startObject key(name) value endObject ... endArray endObject
+ *
+ * @see Template#stream(org.jsoup.nodes.Element, JsonEventSink)
+ */
+public interface JsonEventSink {
+    /**
+     * start a json object, either the root, an array item or the value of the last key
+     */
+    void startObject();
+
+    /**
+     * end the current json object
+     */
+    void endObject();
+
+    /**
+     * start a json array, either the root or the value of the last key
+     */
+    void startArray();
+
+    /**
+     * end the current json array
+     */
+    void endArray();
+
+    /**
+     * key of the next value, object or array inside the current object
+     *
+     * @param key json key
+     */
+    void key(String key);
+
+    /**
+     * a value of the last key, guaranteed non null
+     *
+     * @param value a pure value of type defined by template
+     * @see JsonDelegate#putValue(Object, String, Object)
+     */
+    void value(Object value);
+
+    /**
+     * a null value of the last key
+     *
+     * @see JsonDelegate#putNull(Object, String)
+     */
+    void nullValue();
+}
@@ -0,0 +1,63 @@
+package tparser.core;
+
+import java.util.List;
+
+/**
+ * handle of a key of a structure (a property or a nested structure), created once when the template is built
+ * <p>
+ * a delegate can keep per-key data (an encoded key, a slot of a record) by the index instead of hashing the name,
+ * keys are compared by identity, two templates never share one
+ *
+ * @see PrimitiveJsonDelegate
+ */
+@SuppressWarnings("unused")
+public final class JsonKey {
+    private final String        name;
+    private final int           index;
+    private final List<JsonKey> structureKeys;
+    //json text of the name, computed at the first use
+    private       String        quotedName;
+
+    JsonKey(String name, int index, List<JsonKey> structureKeys) {
+        this.name = name;
+        this.index = index;
+        this.structureKeys = structureKeys;
+    }
+
+    /**
+     * @return json key
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return position of the key in its structure starting from 0,
+     * the properties in template order, then the nested structures
+     */
+    public int index() {
+        return index;
+    }
+
+    /**
+     * @return all keys of the structure in index order, the same list for each of them
+     */
+    public List<JsonKey> structureKeys() {
+        return structureKeys;
+    }
+
+    String quotedName() {
+        String quoted = quotedName;
+        if (quoted == null) {
+            StringBuilder json = new StringBuilder(name.length() + 2);
+            CompactJsonDelegate.appendString(json, name);
+            quotedName = quoted = json.toString();
+        }
+        return quoted;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
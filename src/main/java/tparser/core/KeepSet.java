@@ -0,0 +1,368 @@
+package tparser.core;
+
+import org.jsoup.select.Evaluator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * the elements of an input document a template can select, narrowed down from its evaluators
+ * <p>
+ * every evaluator is reduced to conjunctions of terms: tag, .class, #id and [attribute key],
+ * an element without all terms of any conjunction can never be selected,
+ * nor can a subtree made of such elements, so the DOM is the same to the template without it
+ * <p>
+ * html extractions read whole subtrees, so nothing is left out for them,
+ * full text extractions and text, positional or sibling pseudo selectors read the elements around the selected ones,
+ * only comments are left out for those
+ *
+ * @see PruningReader
+ */
+final class KeepSet {
+    //no term: every element may be selected
+    private static final String[]       ANY      = new String[0];
+    private static final List<String[]> ANY_ONLY = Collections.singletonList(ANY);
+
+    //by the first term of each
+    private final Map<String, List<String[]>> conjunctions = new HashMap<>();
+
+    /**
+     * if subtrees without kept elements can be left out, otherwise only comments can
+     */
+    final boolean subtrees;
+
+    private KeepSet(List<String[]> alternatives, boolean subtrees) {
+        boolean any = false;
+        for (String[] conjunction : alternatives) {
+            if (conjunction.length == 0) {
+                any = true;
+                break;
+            }
+            List<String[]> anchored = conjunctions.get(conjunction[0]);
+            if (anchored == null) {
+                anchored = new ArrayList<>(1);
+                conjunctions.put(conjunction[0], anchored);
+            }
+            anchored.add(conjunction);
+        }
+        this.subtrees = subtrees && !any;
+    }
+
+    /**
+     * @param root root step of a built template
+     * @return null if no part of an input can be left out
+     */
+    static KeepSet of(StepNode root) {
+        Analysis analysis = new Analysis();
+        analysis.visit(root);
+        if (analysis.unsafe) {
+            return null;
+        }
+        return new KeepSet(analysis.alternatives, !analysis.structural);
+    }
+
+    /**
+     * @param terms tag, .class, #id and [key terms of an element, lower case but the id
+     * @return if the element may be selected by the template
+     */
+    boolean keeps(List<String> terms) {
+        for (int i = 0, size = terms.size(); i < size; i++) {
+            List<String[]> anchored = conjunctions.get(terms.get(i));
+            if (anchored == null) {
+                continue;
+            }
+            for (String[] conjunction : anchored) {
+                if (hasAll(terms, conjunction)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasAll(List<String> terms, String[] conjunction) {
+        for (int i = 1; i < conjunction.length; i++) {
+            if (!terms.contains(conjunction[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String lowerCase(String value) {
+        return value.toLowerCase(Locale.ENGLISH);
+    }
+
+    private static final class Analysis {
+        private final List<String[]> alternatives = new ArrayList<>();
+        //results depend on elements around the selected ones
+        private boolean              structural;
+        //results depend on comments or markup
+        private boolean              unsafe;
+
+        private void visit(StepNode step) {
+            if (step instanceof ElementVisitor) {
+                ElementVisitor element = (ElementVisitor) step;
+                ElementSpec    spec    = element.spec();
+                if (spec == null) {
+                    unsafe = true;
+                    return;
+                }
+                if (spec.textIdentifier != null) {
+                    extraction(spec.textIdentifier.extraction);
+                }
+                alternatives.addAll(termsOf(element.selfEval(), spec.attributes));
+            } else if (step instanceof StructPlaceHolderVisitor) {
+                //a delimiter is any child of the array the query matches
+                AttributePairs attributes = ((StructPlaceHolderVisitor) step).attributes;
+                for (String query : SearchOptionAttributeHelper.delimiterQueries(attributes)) {
+                    alternatives.addAll(termsOfQuery(query));
+                }
+            } else {
+                unsafe = true;
+                return;
+            }
+            for (int i = 0, size = step.childCount(); i < size; i++) {
+                visit(step.child(i));
+            }
+        }
+
+        private void extraction(byte extraction) {
+            switch (extraction) {
+                case Identifier.INNER_HTML:
+                case Identifier.OUTER_HTML:
+                    unsafe = true;
+                    break;
+                case Identifier.FULL_TEXT:
+                    //a block element adds a space even with no text
+                    structural = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * @return alternative conjunctions, an element matching the evaluator has all terms of one of them
+         */
+        private List<String[]> termsOf(Evaluator evaluator, AttributeContainer attributes) {
+            if (evaluator instanceof CombiningEvaluator.And) {
+                //terms every alternative of the operands requires are required together
+                List<String>   required  = new ArrayList<>();
+                List<String[]> narrowest = null;
+                for (Evaluator operand : (CombiningEvaluator) evaluator) {
+                    List<String[]> operandTerms = termsOf(operand, attributes);
+                    if (operandTerms.size() == 1) {
+                        Collections.addAll(required, operandTerms.get(0));
+                    } else if (narrowest == null && !operandTerms.contains(ANY)) {
+                        narrowest = operandTerms;
+                    }
+                }
+                if (!required.isEmpty()) {
+                    return Collections.singletonList(required.toArray(ANY));
+                }
+                return narrowest != null ? narrowest : ANY_ONLY;
+            }
+            if (evaluator instanceof CombiningEvaluator.Or) {
+                List<String[]> union = new ArrayList<>();
+                for (Evaluator operand : (CombiningEvaluator) evaluator) {
+                    union.addAll(termsOf(operand, attributes));
+                }
+                return union;
+            }
+            if (evaluator instanceof Evaluator.Tag) {
+                return term(lowerCase(evaluator.toString()));
+            }
+            if (evaluator instanceof Evaluator.Class) {
+                //.name
+                return term(lowerCase(evaluator.toString()));
+            }
+            if (evaluator instanceof Evaluator.Id) {
+                //#id
+                return term(evaluator.toString());
+            }
+            if (evaluator instanceof Evaluator.AttributeWithValueNot) {
+                //also matches elements without the attribute
+                return ANY_ONLY;
+            }
+            if (evaluator instanceof Evaluator.Attribute
+                    || evaluator instanceof Evaluator.AttributeKeyPair
+                    || evaluator instanceof Evaluator.AttributeWithValueMatching) {
+                return term(attributeTerm(evaluator.toString()));
+            }
+            if (evaluator instanceof Evaluator.AllElements
+                    || evaluator instanceof Evaluator.TagEndsWith
+                    || evaluator instanceof Evaluator.AttributeStarting
+                    || evaluator instanceof Evaluator.ContainsOwnText
+                    || evaluator instanceof Evaluator.MatchesOwn
+                    || evaluator instanceof Evaluator.IsRoot
+                    || evaluator instanceof ExtendedEvaluator.HasAttrWithValue) {
+                return ANY_ONLY;
+            }
+            if (evaluator instanceof Evaluator.ContainsText
+                    || evaluator instanceof Evaluator.Matches
+                    || evaluator instanceof Evaluator.IsEmpty
+                    || evaluator instanceof Evaluator.IndexEvaluator
+                    || evaluator instanceof Evaluator.CssNthEvaluator
+                    || evaluator instanceof Evaluator.IsFirstChild
+                    || evaluator instanceof Evaluator.IsLastChild
+                    || evaluator instanceof Evaluator.IsOnlyChild
+                    || evaluator instanceof Evaluator.IsOnlyOfType) {
+                structural = true;
+                return ANY_ONLY;
+            }
+            if (evaluator instanceof Evaluator.ContainsData
+                    || evaluator instanceof Evaluator.MatchText) {
+                unsafe = true;
+                return ANY_ONLY;
+            }
+            //jsoup's own combinators can't be looked into, read the query they are parsed from
+            String query = SearchOptionAttributeHelper.selectorQuery(attributes);
+            if (query == null) {
+                unsafe = true;
+                return ANY_ONLY;
+            }
+            return termsOfQuery(query);
+        }
+
+        /**
+         * terms of the subject (last compound selector) of each selector group in a css query
+         */
+        private List<String[]> termsOfQuery(String query) {
+            String lowerQuery = lowerCase(query);
+            if (lowerQuery.contains(":containsdata") || lowerQuery.contains(":matchtext")) {
+                unsafe = true;
+                return ANY_ONLY;
+            }
+            if (query.indexOf('\\') >= 0) {
+                return ANY_ONLY;
+            }
+            List<String[]> groups   = new ArrayList<>();
+            int            start    = 0;
+            int            end      = 0;
+            boolean        boundary = true;
+            int            brackets = 0;
+            char           quote    = 0;
+            for (int i = 0, length = query.length(); i < length; i++) {
+                char c = query.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                    end = i + 1;
+                    continue;
+                }
+                if (brackets > 0) {
+                    if (c == '"' || c == '\'') {
+                        quote = c;
+                    } else if (c == ']') {
+                        brackets--;
+                    }
+                    end = i + 1;
+                    continue;
+                }
+                switch (c) {
+                    case ':':
+                    case '+':
+                    case '~':
+                        //pseudo selectors and sibling combinators
+                        structural = true;
+                        return ANY_ONLY;
+                    case ',':
+                        groups.add(compoundTerms(query.substring(start, end)));
+                        boundary = true;
+                        continue;
+                    case '>':
+                        boundary = true;
+                        continue;
+                    default:
+                        if (Character.isWhitespace(c)) {
+                            boundary = true;
+                            continue;
+                        }
+                        if (c == '[') {
+                            brackets++;
+                        }
+                        if (boundary) {
+                            start = i;
+                            boundary = false;
+                        }
+                        end = i + 1;
+                }
+            }
+            groups.add(compoundTerms(query.substring(start, end)));
+            return groups;
+        }
+
+        //tag.class#id[key...]
+        private static String[] compoundTerms(String compound) {
+            List<String> terms  = new ArrayList<>();
+            int          length = compound.length();
+            int          i      = nextSimpleSelector(compound, 0);
+            String       tag    = compound.substring(0, i);
+            if (!tag.isEmpty() && !tag.startsWith("*")) {
+                terms.add(lowerCase(tag.replace('|', ':')));
+            }
+            while (i < length) {
+                char c = compound.charAt(i);
+                if (c == '[') {
+                    int close = closingBracket(compound, i);
+                    //[^prefix] and [key!=value] don't require a key
+                    String inner = compound.substring(i + 1, close).trim();
+                    if (!inner.startsWith("^") && !inner.contains("!=")) {
+                        terms.add(attributeTerm("[" + inner));
+                    }
+                    i = close + 1;
+                } else {
+                    int    next = nextSimpleSelector(compound, i + 1);
+                    String name = compound.substring(i + 1, next);
+                    terms.add(c == '.' ? "." + lowerCase(name) : "#" + name);
+                    i = next;
+                }
+            }
+            return terms.toArray(ANY);
+        }
+
+        private static int nextSimpleSelector(String compound, int from) {
+            int i = from;
+            while (i < compound.length() && ".#[".indexOf(compound.charAt(i)) < 0) {
+                i++;
+            }
+            return i;
+        }
+
+        private static int closingBracket(String compound, int open) {
+            char quote = 0;
+            for (int i = open + 1; i < compound.length(); i++) {
+                char c = compound.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == ']') {
+                    return i;
+                }
+            }
+            return compound.length();
+        }
+
+        private static List<String[]> term(String term) {
+            return Collections.singletonList(new String[]{term});
+        }
+    }
+
+    //[key], [key=value], [key^=value]... to [key
+    private static String attributeTerm(String attributeSelector) {
+        int i = 1;
+        while (i < attributeSelector.length() && "=!^$*~]".indexOf(attributeSelector.charAt(i)) < 0) {
+            i++;
+        }
+        return "[" + lowerCase(attributeSelector.substring(1, i).trim());
+    }
+}
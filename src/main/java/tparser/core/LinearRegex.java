@@ -0,0 +1,1101 @@
+package tparser.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * regex compiled into a program of a pike vm
+ * <p>
+ * the vm runs every possible position of the program in lockstep over the input, one thread per program position,
+ * threads are kept in priority order (the order a backtracking engine would try them)
+ * so the whole match is the one java.util.regex finds, without backtracking,
+ * groups inside repeated groups may differ: they hold what the iterations of the match captured, as in perl,
+ * where java can keep the value of an iteration it backtracked out of, or leave one matching empty text unset
+ *
+ * @see RegexEngines#linear()
+ */
+final class LinearRegex implements RegexEngine.Regex {
+    //instructions
+    private static final int CHAR          = 0;
+    private static final int SET           = 1;
+    private static final int ANY           = 2;
+    private static final int MATCH         = 3;
+    private static final int JUMP          = 4;
+    private static final int SPLIT         = 5;
+    private static final int SAVE          = 6;
+    private static final int ASSERT        = 7;
+    //a: slot of where an iteration starts, b: where an iteration matching empty goes
+    private static final int ITERATE       = 8;
+    private static final int EXIT_IF_EMPTY = 9;
+
+    //assertions
+    private static final int BEGIN             = 0;
+    private static final int END               = 1;
+    private static final int END_OR_TERMINATOR = 2;
+    private static final int WORD_BOUNDARY     = 3;
+    private static final int NOT_WORD_BOUNDARY = 4;
+
+    private static final int MAX_PROGRAM_SIZE = 10000;
+    private static final int UNBOUNDED        = -1;
+
+    private final String regex;
+
+    //program, operands of an instruction are in a and b
+    private final int[]     op;
+    private final int[]     a;
+    private final int[]     b;
+    //slot of the innermost loop around an instruction, -1 if none
+    private final int[]     loops;
+    private final CharSet[] sets;
+    //a literal every match starts with, -1 if none
+    private final int       firstChar;
+
+    //group bounds, then iteration starts of loops
+    private final int                  slots;
+    private final int                  groupCount;
+    private final Map<String, Integer> groups;
+
+    private LinearRegex(String regex, Compiler compiler, Map<String, Integer> groups, int groupCount) {
+        this.regex = regex;
+        this.op = Arrays.copyOf(compiler.op, compiler.size);
+        this.a = Arrays.copyOf(compiler.a, compiler.size);
+        this.b = Arrays.copyOf(compiler.b, compiler.size);
+        this.loops = Arrays.copyOf(compiler.loops, compiler.size);
+        this.sets = compiler.sets.toArray(new CharSet[0]);
+        //after saving group 0
+        this.firstChar = op.length > 1 && op[1] == CHAR ? a[1] : -1;
+        this.slots = compiler.slots;
+        this.groupCount = groupCount;
+        this.groups = groups;
+    }
+
+    static LinearRegex compile(String regex) throws PatternSyntaxException {
+        Parser   parser = new Parser(regex);
+        Node     root   = parser.parse();
+        Compiler compiler = new Compiler(regex, (parser.groupCount + 1) * 2);
+        //whole match is group 0
+        compiler.emit(SAVE, 0, 0);
+        root.emit(compiler);
+        compiler.emit(SAVE, 1, 0);
+        compiler.emit(MATCH, 0, 0);
+        return new LinearRegex(regex, compiler, parser.names, parser.groupCount);
+    }
+
+    @Override
+    public List<String> groupNames() {
+        return Collections.unmodifiableList(new ArrayList<>(groups.keySet()));
+    }
+
+    @Override
+    public int groupIndex(String name) {
+        Integer index = groups.get(name);
+        return index == null ? -1 : index;
+    }
+
+    @Override
+    public RegexEngine.Match matcher(CharSequence input) {
+        return new Matcher(input);
+    }
+
+    @Override
+    public String toString() {
+        return regex;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    //same as java.util.regex \b
+    private static boolean isWord(CharSequence input, int index) {
+        if (index < 0 || index >= input.length()) {
+            return false;
+        }
+        char c = input.charAt(index);
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * threads of a step in priority order
+     * <p>
+     * a program position is added at most once per step for each state of its innermost loop:
+     * if the current iteration started at this step or not,
+     * the tail of an iteration and the next iteration matching empty lead to the same positions but don't end the same
+     */
+    private static final class ThreadList {
+        private final int[]   positions;
+        private final int[][] captures;
+        private final int[]   keys;
+        //index in positions by key
+        private final int[]   sparse;
+        private int           size = 0;
+
+        ThreadList(int programSize) {
+            positions = new int[programSize * 2];
+            captures = new int[programSize * 2][];
+            keys = new int[programSize * 2];
+            sparse = new int[programSize * 2];
+        }
+
+        boolean contains(int key) {
+            int index = sparse[key];
+            return index < size && keys[index] == key;
+        }
+
+        //mark before following the instruction, so a loop without progress stops
+        void mark(int key, int pc) {
+            sparse[key] = size;
+            keys[size] = key;
+            positions[size] = pc;
+            captures[size++] = null;
+        }
+
+        void clear() {
+            Arrays.fill(captures, 0, size, null);
+            size = 0;
+        }
+    }
+
+    private final class Matcher implements RegexEngine.Match {
+        private final CharSequence input;
+        private       ThreadList   current = new ThreadList(op.length);
+        private       ThreadList   next    = new ThreadList(op.length);
+        //captures of the last match
+        private       int[]        found;
+        private       int          from    = 0;
+        //captures are copied on write, threads can start with the same one
+        private final int[]        unset   = new int[slots];
+
+        Matcher(CharSequence input) {
+            this.input = input;
+            Arrays.fill(unset, -1);
+        }
+
+        @Override
+        public boolean find() {
+            int length = input.length();
+            if (from > length) {
+                found = null;
+                return false;
+            }
+            int[] matched = null;
+            current.clear();
+            for (int position = from; ; position++) {
+                if (matched == null) {
+                    if (current.size == 0 && firstChar != -1) {
+                        //no thread alive, skip to where a match can start
+                        while (position < length && input.charAt(position) != firstChar) {
+                            position++;
+                        }
+                    }
+                    //a match starting here has the lowest priority
+                    add(current, 0, unset, position);
+                }
+                if (current.size == 0) {
+                    break;
+                }
+                boolean inside = position < length;
+                char    c      = inside ? input.charAt(position) : 0;
+                next.clear();
+                for (int i = 0; i < current.size; i++) {
+                    int   pc       = current.positions[i];
+                    int[] captures = current.captures[i];
+                    if (captures == null) {
+                        //control instruction, followed when added
+                        continue;
+                    }
+                    switch (op[pc]) {
+                        case MATCH:
+                            matched = captures;
+                            //threads after this one have lower priority
+                            i = current.size;
+                            break;
+                        case CHAR:
+                            if (inside && c == a[pc]) {
+                                add(next, pc + 1, captures, position + 1);
+                            }
+                            break;
+                        case SET:
+                            if (inside && sets[a[pc]].contains(c)) {
+                                add(next, pc + 1, captures, position + 1);
+                            }
+                            break;
+                        case ANY:
+                            if (inside && !isLineTerminator(c)) {
+                                add(next, pc + 1, captures, position + 1);
+                            }
+                            break;
+                        default:
+                            throw new IllegalStateException("unexpected instruction " + op[pc]);
+                    }
+                }
+                ThreadList swap = current;
+                current = next;
+                next = swap;
+                if (!inside) {
+                    break;
+                }
+            }
+            found = matched;
+            if (matched == null) {
+                from = length + 1;
+                return false;
+            }
+            //an empty match moves on by one, as java.util.regex
+            from = matched[1] == matched[0] ? matched[1] + 1 : matched[1];
+            return true;
+        }
+
+        //follow control instructions, the thread is added at the first consuming one
+        private void add(ThreadList list, int pc, int[] captures, int position) {
+            int loop = loops[pc];
+            int key  = loop != -1 && captures[loop] == position ? pc * 2 + 1 : pc * 2;
+            if (list.contains(key)) {
+                return;
+            }
+            list.mark(key, pc);
+            switch (op[pc]) {
+                case JUMP:
+                    add(list, a[pc], captures, position);
+                    break;
+                case SPLIT:
+                    add(list, a[pc], captures, position);
+                    add(list, b[pc], captures, position);
+                    break;
+                case SAVE:
+                case ITERATE:
+                    int[] saved = captures.clone();
+                    saved[a[pc]] = position;
+                    add(list, pc + 1, saved, position);
+                    break;
+                case EXIT_IF_EMPTY:
+                    //java.util.regex stops a loop at an iteration matching empty
+                    add(list, captures[a[pc]] == position ? b[pc] : pc + 1, captures, position);
+                    break;
+                case ASSERT:
+                    if (holds(a[pc], position)) {
+                        add(list, pc + 1, captures, position);
+                    }
+                    break;
+                default:
+                    list.captures[list.sparse[key]] = captures;
+                    break;
+            }
+        }
+
+        private boolean holds(int assertion, int position) {
+            int length = input.length();
+            switch (assertion) {
+                case BEGIN:
+                    return position == 0;
+                case END:
+                    return position == length;
+                case END_OR_TERMINATOR:
+                    if (position == length) {
+                        return true;
+                    }
+                    if (position == length - 1) {
+                        //not inside \r\n
+                        char c = input.charAt(position);
+                        return isLineTerminator(c) && !(c == '\n' && position > 0 && input.charAt(position - 1) == '\r');
+                    }
+                    return position == length - 2 && input.charAt(position) == '\r' && input.charAt(position + 1) == '\n';
+                case WORD_BOUNDARY:
+                    return isWord(input, position - 1) != isWord(input, position);
+                case NOT_WORD_BOUNDARY:
+                    return isWord(input, position - 1) == isWord(input, position);
+                default:
+                    throw new IllegalStateException("unexpected assertion " + assertion);
+            }
+        }
+
+        @Override
+        public String group(int index) {
+            if (found == null) {
+                throw new IllegalStateException("no match found");
+            }
+            if (index < 0 || index > groupCount) {
+                throw new IndexOutOfBoundsException("no group " + index);
+            }
+            int start = found[index * 2];
+            int end   = found[index * 2 + 1];
+            return start == -1 || end == -1 ? null : input.subSequence(start, end).toString();
+        }
+    }
+
+    /**
+     * sorted, non overlapping ranges of chars
+     */
+    private static final class CharSet {
+        //inclusive bounds, lows at even indices
+        private final int[] ranges;
+
+        private CharSet(int[] ranges) {
+            this.ranges = ranges;
+        }
+
+        boolean contains(char c) {
+            int low  = 0;
+            int high = ranges.length / 2 - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (c < ranges[middle * 2]) {
+                    high = middle - 1;
+                } else if (c > ranges[middle * 2 + 1]) {
+                    low = middle + 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        static CharSet of(List<int[]> ranges, boolean negate) {
+            List<int[]> sorted = new ArrayList<>(ranges);
+            sorted.sort((x, y) -> Integer.compare(x[0], y[0]));
+            List<int[]> merged = new ArrayList<>();
+            for (int[] range : sorted) {
+                int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+                if (last != null && range[0] <= last[1] + 1) {
+                    last[1] = Math.max(last[1], range[1]);
+                } else {
+                    merged.add(new int[]{range[0], range[1]});
+                }
+            }
+            if (negate) {
+                List<int[]> complement = new ArrayList<>();
+                int         start      = Character.MIN_VALUE;
+                for (int[] range : merged) {
+                    if (range[0] > start) {
+                        complement.add(new int[]{start, range[0] - 1});
+                    }
+                    start = range[1] + 1;
+                }
+                if (start <= Character.MAX_VALUE) {
+                    complement.add(new int[]{start, Character.MAX_VALUE});
+                }
+                merged = complement;
+            }
+            int[] bounds = new int[merged.size() * 2];
+            for (int i = 0; i < merged.size(); i++) {
+                bounds[i * 2] = merged.get(i)[0];
+                bounds[i * 2 + 1] = merged.get(i)[1];
+            }
+            return new CharSet(bounds);
+        }
+    }
+
+    private static final class Compiler {
+        private final String        regex;
+        private       int[]         op    = new int[16];
+        private       int[]         a     = new int[16];
+        private       int[]         b     = new int[16];
+        private       int[]         loops = new int[16];
+        private       int           size  = 0;
+        private final List<CharSet> sets  = new ArrayList<>();
+        private       int           slots;
+        //slot of the loop being emitted
+        private       int           loop = -1;
+
+        Compiler(String regex, int groupSlots) {
+            this.regex = regex;
+            this.slots = groupSlots;
+        }
+
+        int slot() {
+            return slots++;
+        }
+
+        int emit(int instruction, int first, int second) {
+            if (size == MAX_PROGRAM_SIZE) {
+                throw new PatternSyntaxException("regex is too large for the linear engine", regex, -1);
+            }
+            if (size == op.length) {
+                op = Arrays.copyOf(op, size * 2);
+                a = Arrays.copyOf(a, size * 2);
+                b = Arrays.copyOf(b, size * 2);
+                loops = Arrays.copyOf(loops, size * 2);
+            }
+            loops[size] = loop;
+            op[size] = instruction;
+            a[size] = first;
+            b[size] = second;
+            return size++;
+        }
+
+        int set(CharSet set) {
+            sets.add(set);
+            return sets.size() - 1;
+        }
+    }
+
+    private abstract static class Node {
+        abstract void emit(Compiler compiler);
+
+        //if it can match empty
+        abstract boolean nullable();
+    }
+
+    private static final class Literal extends Node {
+        private final char c;
+
+        Literal(char c) {
+            this.c = c;
+        }
+
+        @Override
+        void emit(Compiler compiler) {
+            compiler.emit(CHAR, c, 0);
+        }
+
+        @Override
+        boolean nullable() {
+            return false;
+        }
+    }
+
+    private static final class CharClass extends Node {
+        private final CharSet set;
+
+        CharClass(CharSet set) {
+            this.set = set;
+        }
+
+        @Override
+        void emit(Compiler compiler) {
+            compiler.emit(SET, compiler.set(set), 0);
+        }
+
+        @Override
+        boolean nullable() {
+            return false;
+        }
+    }
+
+    private static final class AnyChar extends Node {
+        @Override
+        void emit(Compiler compiler) {
+            compiler.emit(ANY, 0, 0);
+        }
+
+        @Override
+        boolean nullable() {
+            return false;
+        }
+    }
+
+    private static final class Assertion extends Node {
+        private final int assertion;
+
+        Assertion(int assertion) {
+            this.assertion = assertion;
+        }
+
+        @Override
+        void emit(Compiler compiler) {
+            compiler.emit(ASSERT, assertion, 0);
+        }
+
+        @Override
+        boolean nullable() {
+            return true;
+        }
+    }
+
+    private static final class Group extends Node {
+        //-1 for non capturing
+        private final int  index;
+        private final Node body;
+
+        Group(int index, Node body) {
+            this.index = index;
+            this.body = body;
+        }
+
+        @Override
+        void emit(Compiler compiler) {
+            if (index > 0) {
+                compiler.emit(SAVE, index * 2, 0);
+            }
+            body.emit(compiler);
+            if (index > 0) {
+                compiler.emit(SAVE, index * 2 + 1, 0);
+            }
+        }
+
+        @Override
+        boolean nullable() {
+            return body.nullable();
+        }
+    }
+
+    private static final class Concat extends Node {
+        private final List<Node> items;
+
+        Concat(List<Node> items) {
+            this.items = items;
+        }
+
+        @Override
+        void emit(Compiler compiler) {
+            for (Node item : items) {
+                item.emit(compiler);
+            }
+        }
+
+        @Override
+        boolean nullable() {
+            for (Node item : items) {
+                if (!item.nullable()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Alternation extends Node {
+        private final List<Node> alternatives;
+
+        Alternation(List<Node> alternatives) {
+            this.alternatives = alternatives;
+        }
+
+        @Override
+        void emit(Compiler compiler) {
+            int[] jumps = new int[alternatives.size() - 1];
+            for (int i = 0; i < jumps.length; i++) {
+                //try this one first, then the rest
+                int split = compiler.emit(SPLIT, compiler.size + 1, 0);
+                alternatives.get(i).emit(compiler);
+                jumps[i] = compiler.emit(JUMP, 0, 0);
+                compiler.b[split] = compiler.size;
+            }
+            alternatives.get(jumps.length).emit(compiler);
+            for (int jump : jumps) {
+                compiler.a[jump] = compiler.size;
+            }
+        }
+
+        @Override
+        boolean nullable() {
+            for (Node alternative : alternatives) {
+                if (alternative.nullable()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Repeat extends Node {
+        private final Node    body;
+        private final int     min;
+        private final int     max;
+        private final boolean greedy;
+
+        Repeat(Node body, int min, int max, boolean greedy) {
+            this.body = body;
+            this.min = min;
+            this.max = max;
+            this.greedy = greedy;
+        }
+
+        private int split(Compiler compiler) {
+            return compiler.emit(SPLIT, 0, 0);
+        }
+
+        //preferring the body when greedy
+        private void target(Compiler compiler, int split, int bodyStart, int out) {
+            compiler.a[split] = greedy ? bodyStart : out;
+            compiler.b[split] = greedy ? out : bodyStart;
+        }
+
+        @Override
+        void emit(Compiler compiler) {
+            for (int i = 0; i < min; i++) {
+                body.emit(compiler);
+            }
+            if (max == UNBOUNDED) {
+                int loop = split(compiler);
+                int exit = optional(compiler);
+                compiler.emit(JUMP, loop, 0);
+                target(compiler, loop, loop + 1, compiler.size);
+                exitTo(compiler, exit);
+                return;
+            }
+            //optional ones nested: (x(x)?)?
+            int[] splits = new int[max - min];
+            int[] exits  = new int[max - min];
+            for (int i = 0; i < splits.length; i++) {
+                splits[i] = split(compiler);
+                exits[i] = optional(compiler);
+            }
+            for (int i = 0; i < splits.length; i++) {
+                target(compiler, splits[i], splits[i] + 1, compiler.size);
+                exitTo(compiler, exits[i]);
+            }
+        }
+
+        @Override
+        boolean nullable() {
+            return min == 0 || body.nullable();
+        }
+
+        /**
+         * an iteration beyond the minimum, checked for matching empty if the body can
+         *
+         * @return the check, to patch where an empty iteration exits to, -1 if not checked
+         */
+        private int optional(Compiler compiler) {
+            if (!body.nullable()) {
+                body.emit(compiler);
+                return -1;
+            }
+            int slot  = compiler.slot();
+            int outer = compiler.loop;
+            compiler.emit(ITERATE, slot, 0);
+            compiler.loop = slot;
+            body.emit(compiler);
+            int exit = compiler.emit(EXIT_IF_EMPTY, slot, 0);
+            compiler.loop = outer;
+            return exit;
+        }
+
+        private void exitTo(Compiler compiler, int exit) {
+            if (exit != -1) {
+                compiler.b[exit] = compiler.size;
+            }
+        }
+    }
+
+    private static final class Parser {
+        private static final int MAX_REPEAT = 1000;
+
+        private final String regex;
+        private       int    position = 0;
+
+        //named groups by first appearance
+        final Map<String, Integer> names      = new LinkedHashMap<>();
+        int                        groupCount = 0;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        Node parse() {
+            Node root = alternation();
+            if (position < regex.length()) {
+                //only a close can stop the top level
+                throw error("unmatched closing ')'");
+            }
+            return root;
+        }
+
+        private PatternSyntaxException error(String description) {
+            return new PatternSyntaxException(description, regex, position);
+        }
+
+        private PatternSyntaxException unsupported(String feature) {
+            return error(feature + " is not supported by the linear regex engine");
+        }
+
+        private boolean more() {
+            return position < regex.length();
+        }
+
+        private char peek() {
+            return regex.charAt(position);
+        }
+
+        private boolean accept(char c) {
+            if (more() && peek() == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private Node alternation() {
+            List<Node> alternatives = new ArrayList<>();
+            alternatives.add(concat());
+            while (accept('|')) {
+                alternatives.add(concat());
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : new Alternation(alternatives);
+        }
+
+        private Node concat() {
+            List<Node> items = new ArrayList<>();
+            while (more() && peek() != '|' && peek() != ')') {
+                items.add(repeat());
+            }
+            return items.size() == 1 ? items.get(0) : new Concat(items);
+        }
+
+        private Node repeat() {
+            Node atom = atom();
+            if (!more()) {
+                return atom;
+            }
+            int min;
+            int max;
+            switch (peek()) {
+                case '*':
+                    min = 0;
+                    max = UNBOUNDED;
+                    position++;
+                    break;
+                case '+':
+                    min = 1;
+                    max = UNBOUNDED;
+                    position++;
+                    break;
+                case '?':
+                    min = 0;
+                    max = 1;
+                    position++;
+                    break;
+                case '{':
+                    position++;
+                    min = number();
+                    max = min;
+                    if (accept(',')) {
+                        max = more() && peek() == '}' ? UNBOUNDED : number();
+                    }
+                    if (!accept('}')) {
+                        throw error("unclosed counted closure");
+                    }
+                    if (max != UNBOUNDED && max < min) {
+                        throw error("illegal repetition range");
+                    }
+                    if (min > MAX_REPEAT || max > MAX_REPEAT) {
+                        throw unsupported("a repetition count over " + MAX_REPEAT);
+                    }
+                    if (atom.nullable() && (max == UNBOUNDED || max > 1)) {
+                        //java stops and retries such iterations differently, the whole match could differ
+                        throw unsupported("a counted repetition of what can match empty text");
+                    }
+                    break;
+                default:
+                    return atom;
+            }
+            boolean greedy = true;
+            if (accept('?')) {
+                greedy = false;
+            } else if (more() && peek() == '+') {
+                throw unsupported("possessive quantifier");
+            }
+            return new Repeat(atom, min, max, greedy);
+        }
+
+        private int number() {
+            int start = position;
+            while (more() && peek() >= '0' && peek() <= '9') {
+                position++;
+            }
+            if (start == position) {
+                throw error("illegal repetition");
+            }
+            try {
+                return Integer.parseInt(regex.substring(start, position));
+            } catch (NumberFormatException e) {
+                throw error("illegal repetition");
+            }
+        }
+
+        private Node atom() {
+            char c = regex.charAt(position++);
+            switch (c) {
+                case '(':
+                    return group();
+                case '[':
+                    return new CharClass(charClass());
+                case '.':
+                    return new AnyChar();
+                case '^':
+                    return new Assertion(BEGIN);
+                case '$':
+                    return new Assertion(END_OR_TERMINATOR);
+                case '\\':
+                    return escape();
+                case '*':
+                case '+':
+                case '?':
+                    position--;
+                    throw error("dangling meta character '" + c + "'");
+                case '{':
+                    position--;
+                    throw error("illegal repetition");
+                default:
+                    return new Literal(c);
+            }
+        }
+
+        private Node group() {
+            int index = -1;
+            if (accept('?')) {
+                if (accept(':')) {
+                    //non capturing
+                } else if (accept('<')) {
+                    if (more() && (peek() == '=' || peek() == '!')) {
+                        throw unsupported("lookbehind");
+                    }
+                    String name = groupName();
+                    index = ++groupCount;
+                    if (!names.containsKey(name)) {
+                        names.put(name, index);
+                    }
+                } else if (more() && (peek() == '=' || peek() == '!')) {
+                    throw unsupported("lookahead");
+                } else if (more() && peek() == '>') {
+                    throw unsupported("atomic group");
+                } else {
+                    throw unsupported("inline flag");
+                }
+            } else {
+                index = ++groupCount;
+            }
+            Node body = alternation();
+            if (!accept(')')) {
+                throw error("unclosed group");
+            }
+            return new Group(index, body);
+        }
+
+        private String groupName() {
+            int start = position;
+            while (more() && (Character.isLetterOrDigit(peek()) || peek() == '_')) {
+                position++;
+            }
+            if (start == position || !accept('>')) {
+                throw error("named group is missing trailing '>'");
+            }
+            return regex.substring(start, position - 1);
+        }
+
+        private CharSet charClass() {
+            boolean     negate = accept('^');
+            List<int[]> ranges = new ArrayList<>();
+            boolean     first  = true;
+            while (true) {
+                if (!more()) {
+                    throw error("unclosed character class");
+                }
+                char c = peek();
+                if (c == ']' && !first) {
+                    position++;
+                    break;
+                }
+                first = false;
+                if (c == '[') {
+                    throw unsupported("nested character class");
+                }
+                if (c == '&' && regex.startsWith("&&", position)) {
+                    throw unsupported("character class intersection");
+                }
+                position++;
+                int low;
+                if (c == '\\') {
+                    CharSet shorthand = classEscape();
+                    if (shorthand != null) {
+                        for (int i = 0; i < shorthand.ranges.length; i += 2) {
+                            ranges.add(new int[]{shorthand.ranges[i], shorthand.ranges[i + 1]});
+                        }
+                        continue;
+                    }
+                    low = escapedChar();
+                } else {
+                    low = c;
+                }
+                int high = low;
+                //a range unless '-' is the last one
+                if (more() && peek() == '-' && position + 1 < regex.length() && regex.charAt(position + 1) != ']') {
+                    position++;
+                    char end = regex.charAt(position++);
+                    if (end == '\\') {
+                        if (classEscape() != null) {
+                            throw error("illegal character range");
+                        }
+                        high = escapedChar();
+                    } else if (end == '[') {
+                        throw unsupported("nested character class");
+                    } else {
+                        high = end;
+                    }
+                    if (high < low) {
+                        throw error("illegal character range");
+                    }
+                }
+                ranges.add(new int[]{low, high});
+            }
+            return CharSet.of(ranges, negate);
+        }
+
+        //shorthand classes after a backslash, null if not one
+        private CharSet classEscape() {
+            if (!more()) {
+                throw error("unexpected end of regex after '\\'");
+            }
+            CharSet set;
+            switch (peek()) {
+                case 'd':
+                    set = digits(false);
+                    break;
+                case 'D':
+                    set = digits(true);
+                    break;
+                case 'w':
+                    set = words(false);
+                    break;
+                case 'W':
+                    set = words(true);
+                    break;
+                case 's':
+                    set = spaces(false);
+                    break;
+                case 'S':
+                    set = spaces(true);
+                    break;
+                default:
+                    return null;
+            }
+            position++;
+            return set;
+        }
+
+        private Node escape() {
+            CharSet shorthand = classEscape();
+            if (shorthand != null) {
+                return new CharClass(shorthand);
+            }
+            char c = peek();
+            switch (c) {
+                case 'b':
+                    position++;
+                    return new Assertion(WORD_BOUNDARY);
+                case 'B':
+                    position++;
+                    return new Assertion(NOT_WORD_BOUNDARY);
+                case 'A':
+                    position++;
+                    return new Assertion(BEGIN);
+                case 'z':
+                    position++;
+                    return new Assertion(END);
+                case 'Z':
+                    position++;
+                    return new Assertion(END_OR_TERMINATOR);
+                case 'Q':
+                    position++;
+                    return quoted();
+                default:
+                    return new Literal(escapedChar());
+            }
+        }
+
+        //\Q...\E
+        private Node quoted() {
+            int end = regex.indexOf("\\E", position);
+            String     text  = end == -1 ? regex.substring(position) : regex.substring(position, end);
+            List<Node> items = new ArrayList<>(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                items.add(new Literal(text.charAt(i)));
+            }
+            position = end == -1 ? regex.length() : end + 2;
+            return new Concat(items);
+        }
+
+        //a single char after a backslash
+        private char escapedChar() {
+            if (!more()) {
+                throw error("unexpected end of regex after '\\'");
+            }
+            char c = regex.charAt(position++);
+            switch (c) {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'a':
+                    return '\u0007';
+                case 'e':
+                    return '\u001B';
+                case '0':
+                    return (char) octal();
+                case 'x':
+                    return (char) hex(2);
+                case 'u':
+                    return (char) hex(4);
+                case 'c':
+                    if (!more()) {
+                        throw error("illegal control escape sequence");
+                    }
+                    return (char) (regex.charAt(position++) ^ 64);
+                default:
+                    if (c >= '1' && c <= '9' || c == 'k') {
+                        position--;
+                        throw unsupported("back reference");
+                    }
+                    if (Character.isLetter(c)) {
+                        position--;
+                        throw unsupported("escape sequence \\" + c);
+                    }
+                    return c;
+            }
+        }
+
+        private int octal() {
+            int value = 0;
+            int digits = 0;
+            while (digits < 3 && more() && peek() >= '0' && peek() <= '7' && value * 8 + (peek() - '0') <= 0377) {
+                value = value * 8 + (regex.charAt(position++) - '0');
+                digits++;
+            }
+            if (digits == 0) {
+                throw error("illegal octal escape sequence");
+            }
+            return value;
+        }
+
+        private int hex(int digits) {
+            if (position + digits > regex.length()) {
+                throw error("illegal hexadecimal escape sequence");
+            }
+            try {
+                int value = Integer.parseInt(regex.substring(position, position + digits), 16);
+                position += digits;
+                return value;
+            } catch (NumberFormatException e) {
+                throw error("illegal hexadecimal escape sequence");
+            }
+        }
+
+        private static CharSet digits(boolean negate) {
+            return CharSet.of(Collections.singletonList(new int[]{'0', '9'}), negate);
+        }
+
+        private static CharSet words(boolean negate) {
+            return CharSet.of(Arrays.asList(
+                    new int[]{'0', '9'},
+                    new int[]{'A', 'Z'},
+                    new int[]{'_', '_'},
+                    new int[]{'a', 'z'}), negate);
+        }
+
+        private static CharSet spaces(boolean negate) {
+            return CharSet.of(Arrays.asList(
+                    new int[]{'\t', '\r'},
+                    new int[]{' ', ' '}), negate);
+        }
+    }
+}
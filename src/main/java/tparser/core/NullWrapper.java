@@ -3,17 +3,21 @@ package tparser.core;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Evaluator;
 
-import java.util.Objects;
-
 /**
  * internally use for represent the not-found element to preserve the hierarchy of parsing process
+ * <p>
+ * a single shared sentinel without parent, a missing slot is identified by its index in the selection or group,
+ * so representing one allocates nothing and holds no reference into the DOM
+ * <p>
+ * the sentinel is never modified, so it is shared by all parsing threads
  */
 final class NullWrapper extends Element {
     private static final String TAG = "null";
 
-    private NullWrapper(Element parent) {
+    private static final NullWrapper NULL = new NullWrapper();
+
+    private NullWrapper() {
         super(TAG);
-        this.setParentNode(parent);
     }
 
     @Override
@@ -26,19 +30,18 @@ final class NullWrapper extends Element {
         return false;
     }
 
-    static Element wrapNullElement(Element selection, Element parent) {
-        Objects.requireNonNull(parent);
+    static Element wrapNullElement(Element selection) {
         return selection == null ?
-                new NullWrapper(parent) :
+                NULL :
                 selection;
     }
 
     static boolean isNullRepresent(Element test) {
-        return test instanceof NullWrapper || test == null;
+        return test == NULL || test == null;
     }
 
-    static Element nullRepresent(Element parent) {
-        return new NullWrapper(parent);
+    static Element nullRepresent() {
+        return NULL;
     }
 
 //    static Element unwarp(Element element) {
@@ -41,12 +41,12 @@ public class ObjectVisitor extends StructPlaceHolderVisitor {
 
     @Override
     public <JO, JA> void onVisit(ParseResult<JO, JA> state) {
-        JsonDelegate<JO, JA> delegate = state.delegate;
+        PrimitiveJsonDelegate<JO, JA> delegate = state.delegate;
         if (state.resultObject == null && state.resultArray == null) {
             //root
             state.resultObject = delegate.createObjectNode();
         }
-        ElementGroups elementGroups = classifier.classify(state.selectionStack.peek());
+        ElementGroups elementGroups = classifier.classify(state.selectionStack.peek(), state.index);
         state.elementGroupsStack.push(elementGroups);
         List<JO> parentStructure = state.pendingItemStack.peek();
         List<JO> pendingObjects  = new ArrayList<>();
@@ -68,7 +68,11 @@ public class ObjectVisitor extends StructPlaceHolderVisitor {
         List<JO> parentItems  = state.pendingItemStack.peek();
         if (parentItems != null) {
             for (int i = 0, size = currentItems.size(); i < size; i++) {
-                state.delegate.putObjectNode(parentItems.get(i), this.name, currentItems.get(i));
+                if (nameKey != null) {
+                    state.delegate.putObjectNode(parentItems.get(i), nameKey, currentItems.get(i));
+                } else {
+                    state.delegate.putObjectNode(parentItems.get(i), this.name, currentItems.get(i));
+                }
             }
         }
         state.elementGroupsStack.pop();
@@ -88,14 +92,14 @@ public class ObjectVisitor extends StructPlaceHolderVisitor {
     @Override
     public <JO, JA> void onExtract(
             ParseResult<JO, JA> state,
-            String property,
+            JsonKey key,
             Object result,
             int index) {
         List<JO> items = state.pendingItemStack.peek();
         if (result == null) {
-            state.delegate.putNull(items.get(index), property);
+            state.delegate.putNull(items.get(index), key);
         } else {
-            state.delegate.putValue(items.get(index), property, result);
+            state.delegate.putValue(items.get(index), key, result);
         }
     }
 
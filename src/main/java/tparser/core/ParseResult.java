@@ -3,9 +3,9 @@ package tparser.core;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
-import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * model class represent the result parsed by a template
@@ -16,29 +16,94 @@ import java.util.List;
  */
 @SuppressWarnings("unused")
 public class ParseResult<JO, JA> {
-    JsonDelegate<JO, JA> delegate;
-    JO                   resultObject = null;
-    JA                   resultArray  = null;
+    //a plain delegate is adapted
+    PrimitiveJsonDelegate<JO, JA> delegate;
+    JO                            resultObject = null;
+    JA                            resultArray  = null;
     private Element rootInput;
 
-    //using ArrayDeque because no need for thread safe
-    //work only as stack
-    Deque<ElementGroups> elementGroupsStack = new ArrayDeque<>();
-    Deque<Elements>      selectionStack     = new ArrayDeque<>();
-    Deque<List<JO>>      pendingItemStack   = new ArrayDeque<>();
+    //borrowed from scratch, work only as stack
+    Deque<ElementGroups> elementGroupsStack;
+    Deque<Elements>      selectionStack;
+    Deque<List<JO>>      pendingItemStack;
+
+    //sibling subtrees are forked to the executor when set, forks never fork again
+    Executor executor;
+    int      parallelism = 1;
+
+    //index of the input, null if not enabled
+    ElementIndex index;
+
+    //texts serialized by this parse, forks have their own
+    private final TextCache textCache = new TextCache();
+
+    //results go to the pending items of the structure
+    final ExtractionContext extractionContext = new ExtractionContext() {
+        @Override
+        public void onExtract(StructPlaceHolderVisitor structure, JsonKey key, Object value, int index) {
+            structure.onExtract(ParseResult.this, key, value, index);
+        }
+
+        @Override
+        public void onExtractInt(StructPlaceHolderVisitor structure, JsonKey key, int value, int index) {
+            structure.onExtractInt(ParseResult.this, key, value, index);
+        }
+
+        @Override
+        public void onExtractLong(StructPlaceHolderVisitor structure, JsonKey key, long value, int index) {
+            structure.onExtractLong(ParseResult.this, key, value, index);
+        }
+
+        @Override
+        public void onExtractDouble(StructPlaceHolderVisitor structure, JsonKey key, double value, int index) {
+            structure.onExtractDouble(ParseResult.this, key, value, index);
+        }
+
+        @Override
+        public void onExtractBoolean(StructPlaceHolderVisitor structure, JsonKey key, boolean value, int index) {
+            structure.onExtractBoolean(ParseResult.this, key, value, index);
+        }
+
+        @Override
+        public TextCache textCache() {
+            return textCache;
+        }
+    };
 
     private long start;
 
     private long processTimeNanos;
 
-    ParseResult(Element input, JsonDelegate<JO, JA> delegate) {
+    ParseResult(Element input, JsonDelegate<JO, JA> delegate, ParseScratch<JO> scratch) {
         this.rootInput = input;
-        this.delegate = delegate;
+        this.delegate = JsonDelegateAdapter.adapt(delegate);
+        //may be left over by a failed parse
+        scratch.clear();
+        this.elementGroupsStack = scratch.elementGroupsStack;
+        this.selectionStack = scratch.selectionStack;
+        this.pendingItemStack = scratch.pendingItemStack;
         Elements root = new Elements(1);
         root.add(input);
         selectionStack.push(root);
     }
 
+    /**
+     * state for a forked subtree of the current structure,
+     * with the current selection, groups and items on top of its own stacks
+     *
+     * @param forkDelegate delegate of the fork
+     */
+    ParseResult<JO, JA> fork(JsonDelegate<JO, JA> forkDelegate) {
+        ParseResult<JO, JA> fork = new ParseResult<>(rootInput, forkDelegate, new ParseScratch<>());
+        fork.resultObject = resultObject;
+        fork.resultArray = resultArray;
+        fork.index = index;
+        fork.selectionStack.push(selectionStack.peek());
+        fork.elementGroupsStack.push(elementGroupsStack.peek());
+        fork.pendingItemStack.push(pendingItemStack.peek());
+        return fork;
+    }
+
     boolean shouldInitRoot() {
         return resultObject == null && resultArray == null;
     }
@@ -57,6 +122,9 @@ public class ParseResult<JO, JA> {
         selectionStack = null;
         pendingItemStack = null;
         delegate = null;
+        executor = null;
+        index = null;
+        textCache.clear();
     }
 
     public Element getRootInput() {
@@ -0,0 +1,29 @@
+package tparser.core;
+
+import org.jsoup.select.Elements;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * working stacks of column-major parsing
+ * <p>
+ * a parse borrows them and a successful one leaves them empty,
+ * so a worker parsing documents one after another only allocates them once
+ *
+ * @param <JO> Json object type provide by Json library
+ * @see BatchParseFlow
+ */
+final class ParseScratch<JO> {
+    //using ArrayDeque because no need for thread safe, a scratch is owned by one thread
+    final Deque<ElementGroups> elementGroupsStack = new ArrayDeque<>();
+    final Deque<Elements>      selectionStack     = new ArrayDeque<>();
+    final Deque<List<JO>>      pendingItemStack   = new ArrayDeque<>();
+
+    void clear() {
+        elementGroupsStack.clear();
+        selectionStack.clear();
+        pendingItemStack.clear();
+    }
+}
@@ -0,0 +1,55 @@
+package tparser.core;
+
+import org.jsoup.nodes.Element;
+
+/**
+ * char sequence converter with a primitive output, passed to a PrimitiveJsonDelegate without boxing
+ * <p>
+ * implement one of the nested interfaces, a delegate not taking primitives receives the boxed value
+ *
+ * @param <O> the boxed output type
+ * @see PrimitiveJsonDelegate
+ */
+@SuppressWarnings("unused")
+public interface PrimitiveConverter<O> extends CharSequenceConverter<O> {
+
+    @FunctionalInterface
+    interface OfInt extends PrimitiveConverter<Integer> {
+        int convertInt(CharSequence text, Element context);
+
+        @Override
+        default Integer convert(CharSequence text, Element context) {
+            return convertInt(text, context);
+        }
+    }
+
+    @FunctionalInterface
+    interface OfLong extends PrimitiveConverter<Long> {
+        long convertLong(CharSequence text, Element context);
+
+        @Override
+        default Long convert(CharSequence text, Element context) {
+            return convertLong(text, context);
+        }
+    }
+
+    @FunctionalInterface
+    interface OfDouble extends PrimitiveConverter<Double> {
+        double convertDouble(CharSequence text, Element context);
+
+        @Override
+        default Double convert(CharSequence text, Element context) {
+            return convertDouble(text, context);
+        }
+    }
+
+    @FunctionalInterface
+    interface OfBoolean extends PrimitiveConverter<Boolean> {
+        boolean convertBoolean(CharSequence text, Element context);
+
+        @Override
+        default Boolean convert(CharSequence text, Element context) {
+            return convertBoolean(text, context);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package tparser.core;
+
+/**
+ * json delegate receiving property values by key handle, and numbers and booleans unboxed
+ * <p>
+ * values converted by a PrimitiveConverter (the built-in int, long, double and boolean types)
+ * come through the primitive methods, other values, nulls and nested structures through the key handle ones,
+ * only a structure outside any other (a second top level one) is still put by name,
+ * the defaults box the value and fall back to the String keyed methods, override the ones worth it
+ * <p>
+ * a plain JsonDelegate given to a template is adapted to this interface, so it receives the same calls as before
+ *
+ * @param <JO> Json object type provided by Json library
+ * @param <JA> Json array type provided by Json library
+ * @see JsonKey
+ * @see PrimitiveConverter
+ */
+@SuppressWarnings("unused")
+public interface PrimitiveJsonDelegate<JO, JA> extends JsonDelegate<JO, JA> {
+
+    /**
+     * @see #putValue(Object, String, Object)
+     */
+    default void putValue(JO objectNode, JsonKey key, Object value) {
+        putValue(objectNode, key.name(), value);
+    }
+
+    /**
+     * @see #putNull(Object, String)
+     */
+    default void putNull(JO objectNode, JsonKey key) {
+        putNull(objectNode, key.name());
+    }
+
+    /**
+     * @param key key of the nested structure
+     * @see #putObjectNode(Object, String, Object)
+     */
+    default void putObjectNode(JO objectNode, JsonKey key, JO value) {
+        putObjectNode(objectNode, key.name(), value);
+    }
+
+    /**
+     * @param key key of the nested structure
+     * @see #putArrayNode(Object, String, Object)
+     */
+    default void putArrayNode(JO objectNode, JsonKey key, JA value) {
+        putArrayNode(objectNode, key.name(), value);
+    }
+
+    default void putInt(JO objectNode, JsonKey key, int value) {
+        putValue(objectNode, key.name(), value);
+    }
+
+    default void putLong(JO objectNode, JsonKey key, long value) {
+        putValue(objectNode, key.name(), value);
+    }
+
+    default void putDouble(JO objectNode, JsonKey key, double value) {
+        putValue(objectNode, key.name(), value);
+    }
+
+    default void putBoolean(JO objectNode, JsonKey key, boolean value) {
+        putValue(objectNode, key.name(), value);
+    }
+}
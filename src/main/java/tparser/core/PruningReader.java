@@ -0,0 +1,1699 @@
+package tparser.core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * reads html with the subtrees a template can't select left out, before jsoup builds the DOM
+ * <p>
+ * jsoup's tree builder can't be extended, so the input is tokenized here the same way jsoup's tokeniser does,
+ * and a candidate subtree (script, style, iframe, nav, aside, div...) is held back until it is known
+ * whether any element in it is kept, which drops it, or until its effect on the tree around it can't be told,
+ * which gives it to jsoup as it is
+ * <p>
+ * the tree builder is modelled only as far as telling whether a held subtree ends
+ * without closing or reopening elements outside of it,
+ * anything it doesn't model gives the held input to jsoup unchanged, so the result never changes for the template
+ *
+ * @see KeepSet
+ */
+final class PruningReader extends Reader {
+    private static final int CHUNK       = 8192;
+    //held input longer than that is given to jsoup unchanged
+    private static final int MAX_HELD    = 1 << 22;
+    //longer than any character reference name
+    private static final int LOOK_BEHIND = 64;
+
+    /*-- tokenizer states, as named by jsoup's tokeniser --*/
+    private static final int DATA                            = 0;
+    private static final int TAG_OPEN                        = 1;
+    private static final int END_TAG_OPEN                    = 2;
+    private static final int TAG_NAME                        = 3;
+    private static final int BEFORE_ATTRIBUTE_NAME           = 4;
+    private static final int ATTRIBUTE_NAME                  = 5;
+    private static final int AFTER_ATTRIBUTE_NAME            = 6;
+    private static final int BEFORE_ATTRIBUTE_VALUE          = 7;
+    private static final int DOUBLE_QUOTED_VALUE             = 8;
+    private static final int SINGLE_QUOTED_VALUE             = 9;
+    private static final int UNQUOTED_VALUE                  = 10;
+    private static final int AFTER_QUOTED_VALUE              = 11;
+    private static final int SELF_CLOSING_START_TAG          = 12;
+    private static final int MARKUP_DECLARATION              = 13;
+    private static final int COMMENT_START                   = 14;
+    private static final int COMMENT_START_DASH              = 15;
+    private static final int COMMENT                         = 16;
+    private static final int COMMENT_END_DASH                = 17;
+    private static final int COMMENT_END                     = 18;
+    private static final int COMMENT_END_BANG                = 19;
+    private static final int BOGUS_COMMENT                   = 20;
+    private static final int DOCTYPE                         = 21;
+    private static final int CDATA                           = 22;
+    private static final int RAW_TEXT                        = 23;
+    private static final int RAW_TEXT_LESS_THAN              = 24;
+    private static final int RAW_END_TAG_OPEN                = 25;
+    private static final int RAW_END_TAG_NAME                = 26;
+    private static final int SCRIPT                          = 27;
+    private static final int SCRIPT_LESS_THAN                = 28;
+    private static final int SCRIPT_ESCAPE_START             = 29;
+    private static final int SCRIPT_ESCAPE_START_DASH        = 30;
+    private static final int SCRIPT_ESCAPED                  = 31;
+    private static final int SCRIPT_ESCAPED_DASH             = 32;
+    private static final int SCRIPT_ESCAPED_DASH_DASH        = 33;
+    private static final int SCRIPT_ESCAPED_LESS_THAN        = 34;
+    private static final int SCRIPT_DOUBLE_ESCAPE_START      = 35;
+    private static final int SCRIPT_DOUBLE_ESCAPED           = 36;
+    private static final int SCRIPT_DOUBLE_ESCAPED_DASH      = 37;
+    private static final int SCRIPT_DOUBLE_ESCAPED_DASH_DASH = 38;
+    private static final int SCRIPT_DOUBLE_ESCAPED_LESS_THAN = 39;
+    private static final int SCRIPT_DOUBLE_ESCAPE_END        = 40;
+    //nothing is tokenized or left out any more
+    private static final int PLAINTEXT                       = 41;
+
+    //outcomes of modelling a tag besides an index of the names
+    private static final int IGNORED      = -1;
+    private static final int NOT_MODELLED = -2;
+
+    /*-- kinds of candidate subtree, the CANDIDATE bits of an element's kinds --*/
+    //raw text, the same in head and body
+    private static final int RAW      = 1;
+    //raw text, body only
+    private static final int BODY_RAW = 2;
+    //flow content, may close a paragraph or clone formatting elements into it
+    private static final int ELEMENT  = 3;
+
+    /*-- kinds of element, looked up once for each tag --*/
+    private static final int CANDIDATE          = 3;
+    private static final int RAW_TEXT_ELEMENT   = 1 << 2;
+    private static final int VOID_ELEMENT       = 1 << 3;
+    private static final int FORMATTING_ELEMENT = 1 << 4;
+    private static final int MARKER_ELEMENT     = 1 << 5;
+    private static final int CLOSES_PARAGRAPH   = 1 << 6;
+
+    //open part of a table
+    private static final byte NO_PART     = 0;
+    private static final byte DATA_CELL   = 1;
+    private static final byte HEADER_CELL = 2;
+    private static final byte CAPTION     = 3;
+
+    private static final Set<String> RAW_TEXT_ELEMENTS = setOf(
+            "iframe", "noembed", "noframes", "script", "style", "textarea", "title", "xmp");
+    //elements that don't start the body, in the head and after it
+    private static final Set<String> HEAD_ELEMENTS     = setOf(
+            "base", "basefont", "bgsound", "command", "head", "html", "link", "meta", "noframes", "noscript",
+            "script", "style", "title");
+    private static final Set<String> AFTER_HEAD        = setOf(
+            "base", "basefont", "bgsound", "head", "html", "link", "meta", "noframes", "script", "style", "title");
+    //formatting elements after them are cleared when they close
+    private static final Set<String> MARKERS           = setOf("applet", "marquee", "object");
+    //inserted without being pushed on the stack of open elements
+    private static final Set<String> VOID_ELEMENTS     = setOf(
+            "area", "base", "basefont", "bgsound", "br", "col", "command", "embed", "frame", "hr", "image", "img",
+            "input", "keygen", "link", "meta", "param", "source", "track", "wbr");
+    //sorted for binary search
+    private static final String[]    FORMATTING_NAMES  = {
+            "a", "b", "big", "code", "em", "font", "i", "nobr", "s", "small", "strike", "strong", "tt", "u"};
+    private static final Set<String> FORMATTING        = setOf(FORMATTING_NAMES);
+    private static final Set<String> HEADINGS          = setOf("h1", "h2", "h3", "h4", "h5", "h6");
+    private static final Set<String> CLOSES_P          = setOf(
+            "address", "article", "aside", "blockquote", "center", "dd", "details", "dir", "div", "dl", "dt",
+            "fieldset", "figcaption", "figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header",
+            "hgroup", "hr", "li", "listing", "menu", "nav", "ol", "p", "plaintext", "pre", "section", "summary",
+            "ul", "xmp");
+    private static final Set<String> SCOPE             = setOf(
+            "applet", "caption", "html", "marquee", "object", "table", "td", "th");
+    private static final Set<String> BUTTON_SCOPE      = union(SCOPE, "button");
+    private static final Set<String> LIST_SCOPE        = union(SCOPE, "ol", "ul");
+    private static final Set<String> SPECIAL           = setOf(
+            "address", "applet", "area", "article", "aside", "base", "basefont", "bgsound", "blockquote", "body",
+            "br", "button", "caption", "center", "col", "colgroup", "command", "dd", "details", "dir", "div", "dl",
+            "dt", "embed", "fieldset", "figcaption", "figure", "footer", "form", "frame", "frameset", "h1", "h2",
+            "h3", "h4", "h5", "h6", "head", "header", "hgroup", "hr", "html", "iframe", "img", "input", "isindex",
+            "li", "link", "listing", "marquee", "menu", "meta", "nav", "noembed", "noframes", "noscript", "object",
+            "ol", "p", "param", "plaintext", "pre", "script", "section", "select", "style", "summary", "table",
+            "tbody", "td", "textarea", "tfoot", "th", "thead", "title", "tr", "ul", "wbr", "xmp");
+    //where the walk for an open list item stops
+    private static final Set<String> LIST_ITEM_BREAKS  = setOf("address", "div", "p");
+    //end tags closing through elements of a scope
+    private static final Set<String> SCOPED_CLOSERS    = setOf(
+            "address", "article", "aside", "blockquote", "button", "center", "dd", "details", "dir", "div", "dl",
+            "dt", "fieldset", "figcaption", "figure", "footer", "header", "hgroup", "li", "listing", "menu", "nav",
+            "ol", "p", "pre", "section", "summary", "ul");
+    //what a new row or cell closes the open elements up to
+    private static final Set<String> SECTION_CONTEXT   = setOf("table", "tbody", "tfoot", "thead");
+    private static final Set<String> ROW_CONTEXT       = union(SECTION_CONTEXT, "tr");
+    private static final Set<String> TABLE_PARTS       = setOf("tbody", "td", "tfoot", "th", "thead", "tr");
+    private static final Set<String> TABLE_STRUCTURE   = setOf(
+            "caption", "colgroup", "table", "tbody", "td", "tfoot", "th", "thead", "tr");
+    //close an open cell or caption
+    private static final Set<String> CLOSES_CELL       = union(TABLE_STRUCTURE, "col");
+    //close a select in a table, end tags only if the part is open in the table
+    private static final Set<String> SELECT_CLOSERS    = setOf(
+            "caption", "table", "tbody", "td", "tfoot", "th", "thead", "tr");
+    //can't be closed by an end tag of another element without leaving something open
+    private static final Set<String> NOT_POPPED        = union(FORMATTING,
+            "applet", "caption", "colgroup", "form", "marquee", "object", "select", "template");
+    //a row or cell end tag doesn't close through a table
+    private static final Set<String> INSIDE_TABLE      = union(NOT_POPPED, "table");
+    //starting any of them in a held subtree changes the tree outside of it
+    private static final Set<String> UNMODELLED_STARTS = setOf(
+            "body", "caption", "col", "colgroup", "frame", "frameset", "head", "html", "image", "isindex",
+            "plaintext", "template");
+    //clear jsoup's frameset-ok flag in body, an input only if not hidden, an image only outside of svg
+    private static final Set<String> FRAMESET_NOT_OK   = setOf(
+            "applet", "area", "br", "button", "dd", "dt", "embed", "hr", "iframe", "image", "img", "input", "keygen",
+            "li", "listing", "marquee", "object", "pre", "select", "table", "textarea", "wbr", "xmp");
+
+    private static final Map<String, Integer> KINDS = new HashMap<>();
+
+    static {
+        for (String tag : new String[]{"script", "style", "noframes"}) {
+            addKind(tag, RAW);
+        }
+        for (String tag : new String[]{"iframe", "noembed"}) {
+            addKind(tag, BODY_RAW);
+        }
+        for (String tag : new String[]{
+                "article", "aside", "audio", "canvas", "div", "figure", "footer", "header", "ins", "nav", "noscript",
+                "ol", "section", "svg", "ul", "video"}) {
+            addKind(tag, ELEMENT);
+        }
+        for (String tag : RAW_TEXT_ELEMENTS) {
+            addKind(tag, RAW_TEXT_ELEMENT);
+        }
+        for (String tag : VOID_ELEMENTS) {
+            addKind(tag, VOID_ELEMENT);
+        }
+        for (String tag : FORMATTING_NAMES) {
+            addKind(tag, FORMATTING_ELEMENT);
+        }
+        for (String tag : MARKERS) {
+            addKind(tag, MARKER_ELEMENT);
+        }
+        for (String tag : CLOSES_P) {
+            addKind(tag, CLOSES_PARAGRAPH);
+        }
+    }
+
+    private final Reader        input;
+    private final KeepSet       keepSet;
+    private final char[]        chunk = new char[CHUNK];
+    //tokenized input, delivered up to the held part
+    private final StringBuilder out   = new StringBuilder(CHUNK * 2);
+    private       int           delivered;
+    private       boolean       eof;
+
+    private int           state = DATA;
+    //start of the token being read, -1 if the input before it can be delivered
+    private int           tokenStart = -1;
+    private final StringBuilder name  = new StringBuilder();
+    private boolean       endTag;
+    private boolean       selfClosing;
+    private String        tagName;
+    //of the tag name
+    private int           kinds;
+    //raw text element being read
+    private String        rawTextName;
+    private int           rawTextReturn;
+    private int           rawTagStart;
+    private boolean       rawEndTag;
+    private int           cdataBrackets;
+    //end of the last pre or listing start tag, jsoup skips a line feed right after it
+    private int           lineFeedSkip = -1;
+    //jsoup's frameset-ok flag may still be set, then a frameset replaces the body unless a held token cleared it
+    private boolean       framesetOk   = true;
+    //if the start tag being read is matched against the keep set
+    private boolean       capture;
+    //a name or class can't be compared as written
+    private boolean       uncertain;
+    private final List<String>  terms          = new ArrayList<>();
+    private final StringBuilder attributeName  = new StringBuilder();
+    private final StringBuilder attributeValue = new StringBuilder();
+    private final StringBuilder scratch        = new StringBuilder();
+    //names and terms read before, by hash
+    private final String[]      seen           = new String[256];
+    private boolean       pendingAttribute;
+
+    private Context              context = new Context();
+    //held subtrees, outermost first
+    private final List<Region>   regions = new ArrayList<>();
+    //stack of open elements since the outermost held subtree
+    private final List<String>   names   = new ArrayList<>();
+    //where the current tag starts while held subtrees end before it
+    private int                  tagStart;
+
+    PruningReader(Reader input, KeepSet keepSet) {
+        this.input = input;
+        this.keepSet = keepSet;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (deliverable() == delivered) {
+            if (eof) {
+                return -1;
+            }
+            fill();
+        }
+        int count = Math.min(length, deliverable() - delivered);
+        out.getChars(delivered, delivered + count, buffer, offset);
+        delivered += count;
+        compact();
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private int deliverable() {
+        if (!regions.isEmpty()) {
+            return regions.get(0).start;
+        }
+        return tokenStart >= 0 ? tokenStart : out.length();
+    }
+
+    private void fill() throws IOException {
+        int count = input.read(chunk, 0, CHUNK);
+        if (count < 0) {
+            //an unfinished tag is dropped by jsoup too, unfinished subtrees are kept
+            keepHeld();
+            tokenStart = -1;
+            eof = true;
+            return;
+        }
+        int i = 0;
+        while (i < count) {
+            if (state == DATA || state == PLAINTEXT) {
+                //text up to the next tag in one go
+                int from = i;
+                while (i < count && (state == PLAINTEXT || chunk[i] != '<')) {
+                    if (!context.bodyStarted && !isWhitespace(chunk[i])) {
+                        context.startBody();
+                    }
+                    if (framesetOk && state == DATA && !isWhitespace(chunk[i])) {
+                        //a reference may be whitespace, a null alone is dropped
+                        onFramesetNotOk(chunk[i] != '&' && chunk[i] != 0);
+                    }
+                    i++;
+                }
+                out.append(chunk, from, i - from);
+                if (i == count) {
+                    break;
+                }
+            } else if (state == RAW_TEXT || state == SCRIPT || state == COMMENT) {
+                //scripts, styles and comments up to the next char that may end them
+                char stop = state == COMMENT ? '-' : '<';
+                int  from = i;
+                while (i < count && chunk[i] != stop) {
+                    i++;
+                }
+                out.append(chunk, from, i - from);
+                if (i == count) {
+                    break;
+                }
+            }
+            char c = chunk[i++];
+            out.append(c);
+            step(c);
+        }
+        if (!regions.isEmpty() && out.length() - regions.get(0).start > MAX_HELD) {
+            keepHeld();
+        }
+    }
+
+    private void compact() {
+        if (delivered > LOOK_BEHIND && (delivered == out.length() || delivered > CHUNK * 4)) {
+            //the end of the delivered input is kept to look behind a dropped token
+            int shift = delivered - LOOK_BEHIND;
+            out.delete(0, shift);
+            if (tokenStart >= 0) {
+                tokenStart -= shift;
+            }
+            rawTagStart -= shift;
+            lineFeedSkip -= shift;
+            for (Region region : regions) {
+                region.start -= shift;
+            }
+            delivered = LOOK_BEHIND;
+        }
+    }
+
+    /*-- tokenizer, following jsoup's TokeniserState --*/
+
+    private void step(char c) {
+        switch (state) {
+            case DATA:
+                if (c == '<') {
+                    tokenStart = out.length() - 1;
+                    state = TAG_OPEN;
+                }
+                break;
+            case TAG_OPEN:
+                if (c == '!') {
+                    name.setLength(0);
+                    state = MARKUP_DECLARATION;
+                } else if (c == '/') {
+                    state = END_TAG_OPEN;
+                } else if (c == '?') {
+                    state = BOGUS_COMMENT;
+                } else if (Character.isLetter(c)) {
+                    startTagToken(false, c);
+                } else {
+                    //a '<' of text
+                    context.startBody();
+                    if (framesetOk) {
+                        onFramesetNotOk(true);
+                    }
+                    tokenStart = -1;
+                    state = DATA;
+                    step(c);
+                }
+                break;
+            case END_TAG_OPEN:
+                if (Character.isLetter(c)) {
+                    startTagToken(true, c);
+                } else if (c == '>') {
+                    //</> is ignored
+                    tokenStart = -1;
+                    state = DATA;
+                } else {
+                    state = BOGUS_COMMENT;
+                }
+                break;
+            case TAG_NAME:
+                if (isWhitespace(c)) {
+                    tagNameEnded();
+                    state = BEFORE_ATTRIBUTE_NAME;
+                } else if (c == '/') {
+                    tagNameEnded();
+                    state = SELF_CLOSING_START_TAG;
+                } else if (c == '<') {
+                    tagNameEnded();
+                    tagEndedBefore(c);
+                } else if (c == '>') {
+                    tagNameEnded();
+                    emitTag();
+                } else {
+                    name.append(c);
+                }
+                break;
+            case BEFORE_ATTRIBUTE_NAME:
+                if (c == '/') {
+                    state = SELF_CLOSING_START_TAG;
+                } else if (c == '<') {
+                    tagEndedBefore(c);
+                } else if (c == '>') {
+                    emitTag();
+                } else if (!isWhitespace(c)) {
+                    newAttribute(c);
+                }
+                break;
+            case ATTRIBUTE_NAME:
+                if (isWhitespace(c)) {
+                    state = AFTER_ATTRIBUTE_NAME;
+                } else if (c == '/') {
+                    state = SELF_CLOSING_START_TAG;
+                } else if (c == '=') {
+                    state = BEFORE_ATTRIBUTE_VALUE;
+                } else if (c == '>') {
+                    emitTag();
+                } else if (capture) {
+                    attributeName.append(c);
+                }
+                break;
+            case AFTER_ATTRIBUTE_NAME:
+                if (c == '/') {
+                    state = SELF_CLOSING_START_TAG;
+                } else if (c == '=') {
+                    state = BEFORE_ATTRIBUTE_VALUE;
+                } else if (c == '>') {
+                    emitTag();
+                } else if (!isWhitespace(c)) {
+                    newAttribute(c);
+                }
+                break;
+            case BEFORE_ATTRIBUTE_VALUE:
+                if (c == '"') {
+                    state = DOUBLE_QUOTED_VALUE;
+                } else if (c == '\'') {
+                    state = SINGLE_QUOTED_VALUE;
+                } else if (c == '>') {
+                    emitTag();
+                } else if (!isWhitespace(c)) {
+                    appendValue(c);
+                    state = UNQUOTED_VALUE;
+                }
+                break;
+            case DOUBLE_QUOTED_VALUE:
+                if (c == '"') {
+                    state = AFTER_QUOTED_VALUE;
+                } else {
+                    appendValue(c);
+                }
+                break;
+            case SINGLE_QUOTED_VALUE:
+                if (c == '\'') {
+                    state = AFTER_QUOTED_VALUE;
+                } else {
+                    appendValue(c);
+                }
+                break;
+            case UNQUOTED_VALUE:
+                if (isWhitespace(c)) {
+                    state = BEFORE_ATTRIBUTE_NAME;
+                } else if (c == '>') {
+                    emitTag();
+                } else {
+                    appendValue(c);
+                }
+                break;
+            case AFTER_QUOTED_VALUE:
+                if (isWhitespace(c)) {
+                    state = BEFORE_ATTRIBUTE_NAME;
+                } else if (c == '/') {
+                    state = SELF_CLOSING_START_TAG;
+                } else if (c == '>') {
+                    emitTag();
+                } else {
+                    state = BEFORE_ATTRIBUTE_NAME;
+                    step(c);
+                }
+                break;
+            case SELF_CLOSING_START_TAG:
+                if (c == '>') {
+                    selfClosing = true;
+                    emitTag();
+                } else {
+                    state = BEFORE_ATTRIBUTE_NAME;
+                    step(c);
+                }
+                break;
+            case MARKUP_DECLARATION:
+                markupDeclaration(c);
+                break;
+            case COMMENT_START:
+                if (c == '-') {
+                    state = COMMENT_START_DASH;
+                } else if (c == '>') {
+                    dropComment();
+                } else {
+                    state = COMMENT;
+                }
+                break;
+            case COMMENT_START_DASH:
+                if (c == '-') {
+                    state = COMMENT_END;
+                } else if (c == '>') {
+                    dropComment();
+                } else {
+                    state = COMMENT;
+                }
+                break;
+            case COMMENT:
+                if (c == '-') {
+                    state = COMMENT_END_DASH;
+                }
+                break;
+            case COMMENT_END_DASH:
+                state = c == '-' ? COMMENT_END : COMMENT;
+                break;
+            case COMMENT_END:
+                if (c == '>') {
+                    dropComment();
+                } else if (c == '!') {
+                    state = COMMENT_END_BANG;
+                } else if (c != '-') {
+                    state = COMMENT;
+                }
+                break;
+            case COMMENT_END_BANG:
+                if (c == '-') {
+                    state = COMMENT_END_DASH;
+                } else if (c == '>') {
+                    dropComment();
+                } else {
+                    state = COMMENT;
+                }
+                break;
+            case BOGUS_COMMENT:
+                if (c == '>') {
+                    dropComment();
+                }
+                break;
+            case DOCTYPE:
+                //decides the quirks mode, never left out
+                if (c == '>') {
+                    tokenStart = -1;
+                    state = DATA;
+                }
+                break;
+            case CDATA:
+                if (c == '>' && cdataBrackets >= 2) {
+                    state = DATA;
+                } else if (c == ']') {
+                    cdataBrackets++;
+                } else {
+                    cdataBrackets = 0;
+                    if (!isWhitespace(c) && c != '>') {
+                        context.startBody();
+                        if (framesetOk) {
+                            onFramesetNotOk(false);
+                        }
+                    }
+                }
+                break;
+            case RAW_TEXT:
+                if (c == '<') {
+                    rawTagStart = out.length() - 1;
+                    state = RAW_TEXT_LESS_THAN;
+                }
+                break;
+            case RAW_TEXT_LESS_THAN:
+                if (c == '/') {
+                    rawTextReturn = RAW_TEXT;
+                    state = RAW_END_TAG_OPEN;
+                } else {
+                    state = RAW_TEXT;
+                    step(c);
+                }
+                break;
+            case RAW_END_TAG_OPEN:
+                if (Character.isLetter(c)) {
+                    name.setLength(0);
+                    name.append(c);
+                    state = RAW_END_TAG_NAME;
+                } else {
+                    state = rawTextReturn;
+                    step(c);
+                }
+                break;
+            case RAW_END_TAG_NAME:
+                if (Character.isLetter(c)) {
+                    name.append(c);
+                } else if ((isWhitespace(c) || c == '/' || c == '>') && name.length() == rawTextName.length() && nameMatches(rawTextName, true)) {
+                    //an end tag like any other from here
+                    tokenStart = rawTagStart;
+                    endTag = true;
+                    rawEndTag = true;
+                    selfClosing = false;
+                    capture = false;
+                    pendingAttribute = false;
+                    tagName = rawTextName;
+                    state = BEFORE_ATTRIBUTE_NAME;
+                    step(c);
+                } else {
+                    state = rawTextReturn;
+                    step(c);
+                }
+                break;
+            case SCRIPT:
+                if (c == '<') {
+                    rawTagStart = out.length() - 1;
+                    state = SCRIPT_LESS_THAN;
+                }
+                break;
+            case SCRIPT_LESS_THAN:
+                if (c == '/') {
+                    rawTextReturn = SCRIPT;
+                    state = RAW_END_TAG_OPEN;
+                } else if (c == '!') {
+                    state = SCRIPT_ESCAPE_START;
+                } else {
+                    state = SCRIPT;
+                    step(c);
+                }
+                break;
+            case SCRIPT_ESCAPE_START:
+                if (c == '-') {
+                    state = SCRIPT_ESCAPE_START_DASH;
+                } else {
+                    state = SCRIPT;
+                    step(c);
+                }
+                break;
+            case SCRIPT_ESCAPE_START_DASH:
+                if (c == '-') {
+                    state = SCRIPT_ESCAPED_DASH_DASH;
+                } else {
+                    state = SCRIPT;
+                    step(c);
+                }
+                break;
+            case SCRIPT_ESCAPED:
+                if (c == '-') {
+                    state = SCRIPT_ESCAPED_DASH;
+                } else if (c == '<') {
+                    rawTagStart = out.length() - 1;
+                    state = SCRIPT_ESCAPED_LESS_THAN;
+                }
+                break;
+            case SCRIPT_ESCAPED_DASH:
+                if (c == '-') {
+                    state = SCRIPT_ESCAPED_DASH_DASH;
+                } else if (c == '<') {
+                    rawTagStart = out.length() - 1;
+                    state = SCRIPT_ESCAPED_LESS_THAN;
+                } else {
+                    state = SCRIPT_ESCAPED;
+                }
+                break;
+            case SCRIPT_ESCAPED_DASH_DASH:
+                if (c == '<') {
+                    rawTagStart = out.length() - 1;
+                    state = SCRIPT_ESCAPED_LESS_THAN;
+                } else if (c == '>') {
+                    state = SCRIPT;
+                } else if (c != '-') {
+                    state = SCRIPT_ESCAPED;
+                }
+                break;
+            case SCRIPT_ESCAPED_LESS_THAN:
+                if (c == '/') {
+                    rawTextReturn = SCRIPT_ESCAPED;
+                    state = RAW_END_TAG_OPEN;
+                } else if (Character.isLetter(c)) {
+                    name.setLength(0);
+                    name.append(c);
+                    state = SCRIPT_DOUBLE_ESCAPE_START;
+                } else {
+                    state = SCRIPT_ESCAPED;
+                    step(c);
+                }
+                break;
+            case SCRIPT_DOUBLE_ESCAPE_START:
+                if (Character.isLetter(c)) {
+                    name.append(c);
+                } else {
+                    boolean delimiter = isWhitespace(c) || c == '/' || c == '>';
+                    //compared as written, like jsoup does
+                    state = delimiter && "script".contentEquals(name) ? SCRIPT_DOUBLE_ESCAPED : SCRIPT_ESCAPED;
+                    if (!delimiter) {
+                        step(c);
+                    }
+                }
+                break;
+            case SCRIPT_DOUBLE_ESCAPED:
+                if (c == '-') {
+                    state = SCRIPT_DOUBLE_ESCAPED_DASH;
+                } else if (c == '<') {
+                    state = SCRIPT_DOUBLE_ESCAPED_LESS_THAN;
+                }
+                break;
+            case SCRIPT_DOUBLE_ESCAPED_DASH:
+                if (c == '-') {
+                    state = SCRIPT_DOUBLE_ESCAPED_DASH_DASH;
+                } else if (c == '<') {
+                    state = SCRIPT_DOUBLE_ESCAPED_LESS_THAN;
+                } else {
+                    state = SCRIPT_DOUBLE_ESCAPED;
+                }
+                break;
+            case SCRIPT_DOUBLE_ESCAPED_DASH_DASH:
+                if (c == '<') {
+                    state = SCRIPT_DOUBLE_ESCAPED_LESS_THAN;
+                } else if (c == '>') {
+                    state = SCRIPT;
+                } else if (c != '-') {
+                    state = SCRIPT_DOUBLE_ESCAPED;
+                }
+                break;
+            case SCRIPT_DOUBLE_ESCAPED_LESS_THAN:
+                if (c == '/') {
+                    name.setLength(0);
+                    state = SCRIPT_DOUBLE_ESCAPE_END;
+                } else {
+                    state = SCRIPT_DOUBLE_ESCAPED;
+                    step(c);
+                }
+                break;
+            case SCRIPT_DOUBLE_ESCAPE_END:
+                if (Character.isLetter(c)) {
+                    name.append(c);
+                } else {
+                    boolean delimiter = isWhitespace(c) || c == '/' || c == '>';
+                    state = delimiter && "script".contentEquals(name) ? SCRIPT_ESCAPED : SCRIPT_DOUBLE_ESCAPED;
+                    if (!delimiter) {
+                        step(c);
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    //if the name read so far is the start of the given one, without case as String.regionMatches if asked
+    private boolean nameMatches(String given, boolean ignoreCase) {
+        if (name.length() > given.length()) {
+            return false;
+        }
+        for (int i = 0, length = name.length(); i < length; i++) {
+            char a = name.charAt(i);
+            char b = given.charAt(i);
+            if (a != b && !(ignoreCase && sameIgnoringCase(a, b))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameIgnoringCase(char a, char b) {
+        char upperA = Character.toUpperCase(a);
+        char upperB = Character.toUpperCase(b);
+        return upperA == upperB || Character.toLowerCase(upperA) == Character.toLowerCase(upperB);
+    }
+
+    private void markupDeclaration(char c) {
+        name.append(c);
+        if (name.length() == 2 && name.charAt(0) == '-' && c == '-') {
+            state = COMMENT_START;
+        } else if (nameMatches("doctype", true)) {
+            if (name.length() == 7) {
+                state = DOCTYPE;
+            }
+        } else if (nameMatches("[CDATA[", false)) {
+            if (name.length() == 7) {
+                cdataBrackets = 0;
+                tokenStart = -1;
+                state = CDATA;
+            }
+        } else if (!(name.length() == 1 && c == '-')) {
+            //a bogus comment from the first character after <!
+            state = BOGUS_COMMENT;
+            if (c == '>') {
+                dropComment();
+            }
+        }
+    }
+
+    private void dropComment() {
+        //a block element followed by text rather than a comment adds a space to the full text
+        boolean afterTag = !keepSet.subtrees && tokenStart > 0 && out.charAt(tokenStart - 1) == '>';
+        if (!afterTag && !joinsText(tokenStart)) {
+            out.setLength(tokenStart);
+        }
+        tokenStart = -1;
+        state = DATA;
+    }
+
+    /**
+     * @return if the text before the offset would be read differently with the input after it,
+     * a '<', an unfinished character reference or a start tag skipping a line feed
+     */
+    private boolean joinsText(int offset) {
+        if (offset == lineFeedSkip) {
+            return true;
+        }
+        for (int i = offset - 1; i >= 0; i--) {
+            char c = out.charAt(i);
+            if (c == '&' || c == '<' && i == offset - 1) {
+                return true;
+            }
+            if (!Character.isLetterOrDigit(c) && c != '#') {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private void startTagToken(boolean isEndTag, char first) {
+        endTag = isEndTag;
+        selfClosing = false;
+        rawEndTag = false;
+        pendingAttribute = false;
+        name.setLength(0);
+        name.append(first);
+        state = TAG_NAME;
+    }
+
+    private void tagNameEnded() {
+        tagName = term("", name, 0, name.length(), true);
+        Integer known = KINDS.get(tagName);
+        kinds = known == null ? 0 : known;
+        capture = keepSet.subtrees && !endTag && (!regions.isEmpty() || (kinds & CANDIDATE) != 0);
+        if (capture) {
+            terms.clear();
+            terms.add(tagName);
+            uncertain = !isPlain(tagName) || tagName.equals("image");
+        }
+    }
+
+    //a '<' ends the tag and starts the next token
+    private void tagEndedBefore(char c) {
+        //ended by ' >' instead, the same tag to jsoup, so it stays ended if the next token is left out
+        out.setLength(out.length() - 1);
+        out.append(" >");
+        emitTag();
+        out.append(c);
+        step(c);
+    }
+
+    private void newAttribute(char c) {
+        finishAttribute();
+        pendingAttribute = true;
+        if (capture) {
+            attributeName.setLength(0);
+            attributeValue.setLength(0);
+            attributeName.append(c);
+        }
+        state = ATTRIBUTE_NAME;
+    }
+
+    private void appendValue(char c) {
+        if (capture) {
+            attributeValue.append(c);
+        }
+    }
+
+    private void finishAttribute() {
+        if (!pendingAttribute) {
+            return;
+        }
+        pendingAttribute = false;
+        if (!capture) {
+            return;
+        }
+        //trimmed as jsoup does
+        int from = 0;
+        int to   = attributeName.length();
+        while (from < to && attributeName.charAt(from) <= ' ') {
+            from++;
+        }
+        while (to > from && attributeName.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        if (from == to) {
+            return;
+        }
+        String key = term("[", attributeName, from, to, true);
+        if (!isPlain(key)) {
+            uncertain = true;
+        }
+        terms.add(key);
+        boolean id = key.equals("[id");
+        if (!id && !key.equals("[class")) {
+            return;
+        }
+        if (!isPlain(attributeValue) || attributeValue.indexOf("&") >= 0) {
+            //character references are decoded by jsoup
+            uncertain = true;
+        } else if (id) {
+            terms.add(term("#", attributeValue, 0, attributeValue.length(), false));
+        } else {
+            //split as Element.hasClass does
+            int length = attributeValue.length();
+            int i      = 0;
+            while (i < length) {
+                while (i < length && Character.isWhitespace(attributeValue.charAt(i))) {
+                    i++;
+                }
+                int start = i;
+                while (i < length && !Character.isWhitespace(attributeValue.charAt(i))) {
+                    i++;
+                }
+                if (i > start) {
+                    terms.add(term(".", attributeValue, start, i, true));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return prefix and characters, lower case ascii if asked,
+     * the same instance as the last time the same term was read unless another one took its slot
+     */
+    private String term(String prefix, CharSequence chars, int from, int to, boolean lowerCase) {
+        scratch.setLength(0);
+        scratch.append(prefix);
+        for (int i = from; i < to; i++) {
+            char c = chars.charAt(i);
+            if (lowerCase && c > 0x7f) {
+                return prefix + chars.subSequence(from, to).toString().toLowerCase(Locale.ENGLISH);
+            }
+            scratch.append(lowerCase && c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+        int hash = 0;
+        for (int i = 0, length = scratch.length(); i < length; i++) {
+            hash = 31 * hash + scratch.charAt(i);
+        }
+        int    slot = (hash ^ hash >>> 16) & (seen.length - 1);
+        String term = seen[slot];
+        if (term == null || !term.contentEquals(scratch)) {
+            term = scratch.toString();
+            seen[slot] = term;
+        }
+        return term;
+    }
+
+    private void emitTag() {
+        finishAttribute();
+        int start = tokenStart;
+        tokenStart = -1;
+        state = DATA;
+        if (!endTag) {
+            onStartTag(tagName, start);
+        } else if (rawEndTag) {
+            rawEndTag = false;
+            onRawTextEnd(start);
+        } else {
+            onEndTag(tagName, start);
+        }
+    }
+
+    /*-- tree builder model --*/
+
+    private void onStartTag(String tag, int start) {
+        boolean relevant = capture && (uncertain || keepSet.keeps(terms));
+        boolean clearing = framesetOk && FRAMESET_NOT_OK.contains(tag);
+        if (!regions.isEmpty()) {
+            tagStart = start;
+            if (relevant || clearing || !modelStart(tag)) {
+                keepHeld();
+            }
+            start = tagStart;
+        }
+        boolean candidate = !relevant && !clearing && keepSet.subtrees && isCandidate(tag) && !joinsText(start);
+        boolean rawText   = opensRawText(tag);
+        Context saved     = candidate ? context.copy() : null;
+        boolean inBody    = clearing && inBodyMode();
+        context.start(tag, kinds, selfClosing);
+        if (inBody && context.bodyStarted && !tag.equals("input") && !tag.equals("image")) {
+            framesetOk = false;
+        }
+        if (candidate) {
+            if (selfClosing && !rawText) {
+                //an empty element, closed by the fake end tag jsoup emits
+                out.setLength(start);
+                context = saved;
+            } else {
+                if (regions.isEmpty()) {
+                    names.clear();
+                    if (!rawText) {
+                        names.add(tag);
+                    }
+                }
+                regions.add(new Region(start, rawText ? names.size() : names.size() - 1, rawText, saved));
+            }
+        }
+        if (tag.equals("pre") || tag.equals("listing")) {
+            lineFeedSkip = out.length();
+        }
+        if (tag.equals("plaintext") || tag.equals("frameset") || context.lost) {
+            keepHeld();
+            state = PLAINTEXT;
+        } else if (rawText) {
+            rawTextName = tag;
+            state = tag.equals("script") ? SCRIPT : RAW_TEXT;
+        }
+    }
+
+    //if the tree builder switches the tokeniser to raw text or script data
+    private boolean opensRawText(String tag) {
+        if ((kinds & RAW_TEXT_ELEMENT) == 0) {
+            return false;
+        }
+        if (selfClosing) {
+            //the fake end tag switches back to data, but a textarea switches after inserting
+            return tag.equals("textarea") && !context.headNoscript;
+        }
+        if (context.headNoscript) {
+            //other tags are text in a noscript of the head
+            return tag.equals("style") || tag.equals("noframes");
+        }
+        return !context.inSelect || tag.equals("script") || tag.equals("textarea");
+    }
+
+    private boolean isCandidate(String tag) {
+        int kind = kinds & CANDIDATE;
+        if (kind == 0 || context.headNoscript || context.inSelect && !tag.equals("script")) {
+            return false;
+        }
+        switch (kind) {
+            case RAW:
+                return !selfClosing;
+            case BODY_RAW:
+                return !selfClosing && context.bodyStarted;
+            default:
+                return context.bodyStarted && !context.pOpen && context.inBodyContext() && context.formatting() == 0;
+        }
+    }
+
+    private void onRawTextEnd(int start) {
+        int last = regions.size() - 1;
+        if (last >= 0 && regions.get(last).rawText) {
+            Region region = regions.remove(last);
+            out.setLength(region.start);
+            context = region.saved;
+            if (regions.isEmpty()) {
+                names.clear();
+            }
+        }
+    }
+
+    private void onEndTag(String tag, int start) {
+        if (framesetOk && tag.equals("br")) {
+            //a br start tag to jsoup
+            onFramesetNotOk(true);
+        }
+        if (regions.isEmpty()) {
+            context.end(tag, kinds);
+            giveUpIfLost();
+            return;
+        }
+        tagStart = start;
+        int index = modelEnd(tag);
+        if (index == IGNORED) {
+            return;
+        }
+        if (index == NOT_MODELLED) {
+            keepHeld();
+            context.end(tag, kinds);
+            giveUpIfLost();
+            return;
+        }
+        //held subtrees inside the closed element end before its end tag
+        popFrom(index + 1);
+        int last = regions.size() - 1;
+        if (last >= 0 && regions.get(last).base == index && !regions.get(last).rawText) {
+            Region region = regions.remove(last);
+            out.setLength(region.start);
+            context = region.saved;
+            truncateNames(index);
+            return;
+        }
+        truncateNames(index);
+        context.end(tag, kinds);
+        giveUpIfLost();
+    }
+
+    /**
+     * a token that clears jsoup's frameset-ok flag in body, the held subtrees it is in are kept while the flag may be
+     * set, a frameset later on is ignored by jsoup only if the flag was cleared
+     *
+     * @param certain if the token clears the flag wherever jsoup takes it as in body
+     */
+    private void onFramesetNotOk(boolean certain) {
+        keepHeld();
+        if (certain && context.bodyStarted && inBodyMode()) {
+            framesetOk = false;
+        }
+    }
+
+    //jsoup processes the next token in body, not in a select, a table or the noscript of the head
+    private boolean inBodyMode() {
+        return !context.headNoscript && !context.inSelect && context.inBodyContext();
+    }
+
+    //the rest of the input is given to jsoup unchanged
+    private void giveUpIfLost() {
+        if (context.lost) {
+            keepHeld();
+            state = PLAINTEXT;
+        }
+    }
+
+    /**
+     * @return index of the element the end tag closes, IGNORED if jsoup ignores it,
+     * NOT_MODELLED if it may change elements outside of the held subtrees
+     */
+    private int modelEnd(String tag) {
+        int top   = names.size() - 1;
+        int index = HEADINGS.contains(tag) ? lastIndexOf(HEADINGS) : names.lastIndexOf(tag);
+        if (index < 0) {
+            //</p> and </br> insert an element in place
+            return tag.equals("p") || tag.equals("br") ? IGNORED : NOT_MODELLED;
+        }
+        if (index == top) {
+            return index;
+        }
+        if (NOT_POPPED.contains(tag)) {
+            return NOT_MODELLED;
+        }
+        Set<String> scope;
+        if (tag.equals("p")) {
+            scope = BUTTON_SCOPE;
+        } else if (tag.equals("li")) {
+            scope = LIST_SCOPE;
+        } else if (SCOPED_CLOSERS.contains(tag) || HEADINGS.contains(tag)) {
+            scope = SCOPE;
+        } else if (tag.equals("table") || TABLE_PARTS.contains(tag)) {
+            scope = tag.equals("table") ? NOT_POPPED : INSIDE_TABLE;
+        } else {
+            //any other end tag
+            for (int i = top; i > index; i--) {
+                if (SPECIAL.contains(names.get(i))) {
+                    return IGNORED;
+                }
+                if (FORMATTING.contains(names.get(i))) {
+                    return NOT_MODELLED;
+                }
+            }
+            return index;
+        }
+        for (int i = top; i > index; i--) {
+            if (scope.contains(names.get(i)) || NOT_POPPED.contains(names.get(i))) {
+                return NOT_MODELLED;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * apply what jsoup does to the stack of open elements for a start tag
+     *
+     * @return false if it may change elements outside of the held subtrees
+     */
+    private boolean modelStart(String tag) {
+        if (UNMODELLED_STARTS.contains(tag) || tag.equals("form") && context.formOpen) {
+            return false;
+        }
+        int top = names.size() - 1;
+        if (names.contains("select")) {
+            if (tag.equals("option") || tag.equals("optgroup")) {
+                if (names.get(top).equals("option") || tag.equals("optgroup") && names.get(top).equals("optgroup")) {
+                    popFrom(top);
+                }
+                push(tag);
+                return true;
+            }
+            return tag.equals("script");
+        }
+        if (FORMATTING.contains(tag)) {
+            if (regions.get(0).saved.formatting() > 0
+                    || (tag.equals("a") || tag.equals("nobr")) && names.contains(tag)) {
+                return false;
+            }
+        }
+        int table = lastIndexOf(TABLE_STRUCTURE);
+        if (TABLE_PARTS.contains(tag)) {
+            if (table < 0) {
+                return false;
+            }
+            int parent;
+            if (tag.equals("td") || tag.equals("th")) {
+                parent = lastIndexOf(ROW_CONTEXT);
+            } else if (tag.equals("tr")) {
+                parent = lastIndexOf(SECTION_CONTEXT);
+            } else {
+                parent = names.lastIndexOf("table");
+            }
+            if (parent < 0 || !poppable(parent + 1, NOT_POPPED)) {
+                return false;
+            }
+            popFrom(parent + 1);
+            push(tag);
+            return true;
+        }
+        if (table >= 0) {
+            String innermost = names.get(table);
+            if (!innermost.equals("td") && !innermost.equals("th")) {
+                //foster parented in front of the table, or closing it
+                if (tag.equals("table") || tag.equals("form") || tag.equals("select")
+                        || innermost.equals("caption") || innermost.equals("colgroup")) {
+                    return false;
+                }
+            }
+        }
+        if (tag.equals("li") || tag.equals("dd") || tag.equals("dt")) {
+            int index = openListItem(tag);
+            if (index == NOT_MODELLED) {
+                return false;
+            }
+            if (index >= 0) {
+                if (!poppable(index + 1, NOT_POPPED)) {
+                    return false;
+                }
+                popFrom(index);
+            }
+        }
+        if (CLOSES_P.contains(tag) || tag.equals("table")) {
+            int index = inScope("p", BUTTON_SCOPE);
+            if (index >= 0) {
+                if (tag.equals("table") || !poppable(index + 1, NOT_POPPED)) {
+                    //a table doesn't close the paragraph in quirks mode
+                    return false;
+                }
+                popFrom(index);
+            }
+        }
+        top = names.size() - 1;
+        if (HEADINGS.contains(tag) && top >= 0 && HEADINGS.contains(names.get(top))) {
+            popFrom(top);
+        } else if (tag.equals("button")) {
+            int index = inScope("button", SCOPE);
+            if (index == NOT_MODELLED && regions.get(0).saved.buttons > 0) {
+                return false;
+            }
+            if (index >= 0) {
+                if (!poppable(index + 1, NOT_POPPED)) {
+                    return false;
+                }
+                popFrom(index);
+            }
+        } else if (tag.equals("rp") || tag.equals("rt")) {
+            int index = inScope("ruby", SCOPE);
+            if (index < 0 || !poppable(index + 1, NOT_POPPED)) {
+                return false;
+            }
+            popFrom(index + 1);
+        } else if ((tag.equals("option") || tag.equals("optgroup")) && top >= 0 && names.get(top).equals("option")) {
+            popFrom(top);
+        }
+        if (!selfClosing || tag.equals("form")) {
+            push(tag);
+        }
+        return true;
+    }
+
+    private void push(String tag) {
+        if (!VOID_ELEMENTS.contains(tag) && !RAW_TEXT_ELEMENTS.contains(tag)) {
+            names.add(tag);
+        }
+    }
+
+    /**
+     * @return index of the list item a new one closes, IGNORED if none, NOT_MODELLED if it may be outside
+     */
+    private int openListItem(String tag) {
+        for (int i = names.size() - 1; i >= 0; i--) {
+            String open = names.get(i);
+            if (tag.equals("li") ? open.equals("li") : open.equals("dd") || open.equals("dt")) {
+                return i;
+            }
+            if (SPECIAL.contains(open) && !LIST_ITEM_BREAKS.contains(open)) {
+                return IGNORED;
+            }
+        }
+        return NOT_MODELLED;
+    }
+
+    /**
+     * @return index of the element, IGNORED if out of scope, NOT_MODELLED if not open in the held subtrees
+     */
+    private int inScope(String tag, Set<String> scope) {
+        for (int i = names.size() - 1; i >= 0; i--) {
+            String open = names.get(i);
+            if (open.equals(tag)) {
+                return i;
+            }
+            if (scope.contains(open)) {
+                return IGNORED;
+            }
+        }
+        return NOT_MODELLED;
+    }
+
+    private boolean poppable(int from, Set<String> kept) {
+        for (int i = from; i < names.size(); i++) {
+            if (kept.contains(names.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int lastIndexOf(Set<String> tags) {
+        for (int i = names.size() - 1; i >= 0; i--) {
+            if (tags.contains(names.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //close the open elements from the index, the held subtrees among them end before the current tag
+    private void popFrom(int index) {
+        for (int last = regions.size() - 1; last >= 0 && regions.get(last).base >= index; last--) {
+            Region region = regions.remove(last);
+            out.delete(region.start, tagStart);
+            tagStart = region.start;
+            context = region.saved;
+        }
+        truncateNames(index);
+    }
+
+    private void truncateNames(int size) {
+        if (regions.isEmpty()) {
+            names.clear();
+        } else {
+            while (names.size() > size) {
+                names.remove(names.size() - 1);
+            }
+        }
+    }
+
+    //give the held subtrees to jsoup unchanged
+    private void keepHeld() {
+        regions.clear();
+        names.clear();
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+
+    //ascii without null, compared the same as jsoup does after normalizing
+    private static boolean isPlain(CharSequence value) {
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            if (c == 0 || c > 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void addKind(String tag, int kind) {
+        Integer kinds = KINDS.get(tag);
+        KINDS.put(tag, kinds == null ? kind : kinds | kind);
+    }
+
+    private static Set<String> setOf(String... tags) {
+        return new HashSet<>(Arrays.asList(tags));
+    }
+
+    private static Set<String> union(Set<String> set, String... tags) {
+        Set<String> union = new HashSet<>(set);
+        union.addAll(Arrays.asList(tags));
+        return union;
+    }
+
+    /**
+     * a held candidate subtree
+     */
+    private static final class Region {
+        int start;
+        //index of its element in the names, the size of the names for raw text
+        final int     base;
+        final boolean rawText;
+        //context before it started, restored when it is left out
+        final Context saved;
+
+        Region(int start, int base, boolean rawText, Context saved) {
+            this.start = start;
+            this.base = base;
+            this.rawText = rawText;
+            this.saved = saved;
+        }
+    }
+
+    /**
+     * what jsoup's tree builder state a candidate subtree depends on, tracked over the whole input
+     * <p>
+     * errs towards not left out: an element taken as open may be closed already, not the other way round
+     */
+    private static final class Context implements Cloneable {
+        boolean bodyStarted;
+        boolean headEnded;
+        boolean headNoscript;
+        boolean pOpen;
+        //button scope boundaries opened inside the paragraph, which keep it open
+        String[] blockers = new String[4];
+        int      blocked;
+        boolean inSelect;
+        //a table start or end tag closes the select
+        boolean selectInTable;
+        boolean formOpen;
+        int     buttons;
+        //formatting elements outside of markers, by name
+        int[]   formattingOpen = new int[FORMATTING_NAMES.length];
+        int     outerFormatting;
+        //formatting elements after a marker, counted until all markers close
+        int     markedFormatting;
+        int     markers;
+        int     tableDepth;
+        //bits per table depth, set while a cell, a th cell or a caption is open
+        long    cells;
+        long    headerCells;
+        long    captions;
+        //which elements are open can't be followed any further
+        boolean lost;
+
+        Context copy() {
+            try {
+                Context copy = (Context) clone();
+                copy.formattingOpen = formattingOpen.clone();
+                copy.blockers = blockers.clone();
+                return copy;
+            } catch (CloneNotSupportedException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        //by text
+        void startBody() {
+            if (!headNoscript) {
+                bodyStarted = true;
+            }
+        }
+
+        boolean inBodyContext() {
+            return tableDepth == 0 || inCell();
+        }
+
+        //a cell or caption, their content is in body context
+        private boolean inCell() {
+            return part() != NO_PART;
+        }
+
+        //active formatting elements, which are cloned into a new element
+        int formatting() {
+            return outerFormatting + markedFormatting;
+        }
+
+        void start(String tag, int kinds, boolean selfClosing) {
+            if (headNoscript) {
+                //text, or the same as in the head
+                return;
+            }
+            if (inSelect) {
+                if (!closesSelect(tag)) {
+                    //an option, or ignored
+                    return;
+                }
+                inSelect = false;
+                if (tag.equals("select")) {
+                    //only closes the open one
+                    return;
+                }
+            }
+            if (!bodyStarted) {
+                if (!(headEnded ? AFTER_HEAD : HEAD_ELEMENTS).contains(tag)) {
+                    bodyStarted = true;
+                } else if (tag.equals("noscript") && !headEnded && !selfClosing) {
+                    headNoscript = true;
+                }
+            }
+            if (tag.equals("form")) {
+                if (formOpen) {
+                    //ignored by jsoup
+                    return;
+                }
+                formOpen = true;
+            }
+            if ((kinds & CLOSES_PARAGRAPH) != 0 && blocked == 0) {
+                pOpen = false;
+            }
+            if (tableDepth > 0 && CLOSES_CELL.contains(tag) && !(tag.equals("table") && inCell())) {
+                //closes the open cell or caption, a table directly in a table closes it, in them it is nested
+                setPart(NO_PART);
+                if (tag.equals("table")) {
+                    tableDepth--;
+                }
+            }
+            if (selfClosing || (kinds & VOID_ELEMENT) != 0) {
+                return;
+            }
+            if (pOpen && BUTTON_SCOPE.contains(tag)) {
+                if (blocked == blockers.length) {
+                    blockers = Arrays.copyOf(blockers, blocked * 2);
+                }
+                blockers[blocked++] = tag;
+            }
+            if (tag.equals("p")) {
+                //a paragraph kept open by a boundary stays so
+                pOpen = true;
+            }
+            if ((kinds & FORMATTING_ELEMENT) != 0) {
+                if (markers > 0 || inCell()) {
+                    markedFormatting++;
+                } else {
+                    formattingOpen[Arrays.binarySearch(FORMATTING_NAMES, tag)]++;
+                    outerFormatting++;
+                }
+            }
+            if ((kinds & MARKER_ELEMENT) != 0) {
+                markers++;
+            }
+            switch (tag) {
+                case "table":
+                    tableDepth++;
+                    lost |= tableDepth >= 64;
+                    setPart(NO_PART);
+                    break;
+                case "td":
+                    setPart(DATA_CELL);
+                    break;
+                case "th":
+                    setPart(HEADER_CELL);
+                    break;
+                case "caption":
+                    setPart(CAPTION);
+                    break;
+                case "select":
+                    inSelect = true;
+                    selectInTable = tableDepth > 0;
+                    break;
+                case "button":
+                    buttons++;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void end(String tag, int kinds) {
+            if (headNoscript) {
+                headNoscript = !tag.equals("noscript");
+                return;
+            }
+            if (inSelect) {
+                if (selectInTable && SELECT_CLOSERS.contains(tag) && !tag.equals("table")) {
+                    //closes the select if the part is open in the table, which isn't followed
+                    lost = true;
+                    return;
+                }
+                if (!tag.equals("select") && !(selectInTable && tag.equals("table"))) {
+                    return;
+                }
+                inSelect = false;
+            }
+            if (!bodyStarted) {
+                if (tag.equals("body") || tag.equals("html")) {
+                    bodyStarted = true;
+                } else if (tag.equals("head") || tag.equals("br")) {
+                    headEnded = true;
+                }
+                return;
+            }
+            if (tag.equals("p") && blocked == 0) {
+                pOpen = false;
+            } else if (blocked > 0 && blockers[blocked - 1].equals(tag)) {
+                blocked--;
+            } else if (tag.equals("table")) {
+                //closes the cells in it
+                for (int i = blocked - 1; i >= 0; i--) {
+                    if (blockers[i].equals(tag)) {
+                        blocked = i;
+                        break;
+                    }
+                }
+            }
+            if ((kinds & FORMATTING_ELEMENT) != 0 && tableDepth == 0 && markers == 0) {
+                int formattingIndex = Arrays.binarySearch(FORMATTING_NAMES, tag);
+                if (formattingOpen[formattingIndex] > 0) {
+                    formattingOpen[formattingIndex]--;
+                    outerFormatting--;
+                }
+            }
+            if ((kinds & MARKER_ELEMENT) != 0 && markers > 0) {
+                markers--;
+            }
+            switch (tag) {
+                case "table":
+                    if (tableDepth > 0) {
+                        setPart(NO_PART);
+                        tableDepth--;
+                    }
+                    break;
+                case "td":
+                case "th":
+                    if (part() == (tag.equals("td") ? HEADER_CELL : DATA_CELL)) {
+                        //jsoup leaves the cell mode with the cell still open
+                        lost = true;
+                    } else if (part() != CAPTION) {
+                        setPart(NO_PART);
+                    }
+                    break;
+                case "tr":
+                    //ignored in a caption
+                    if (part() != CAPTION) {
+                        setPart(NO_PART);
+                    }
+                    break;
+                case "caption":
+                    if (part() == CAPTION) {
+                        setPart(NO_PART);
+                    }
+                    break;
+                case "tbody":
+                case "thead":
+                case "tfoot":
+                    //closes an open cell only if the section is open
+                    lost |= part() == DATA_CELL || part() == HEADER_CELL;
+                    break;
+                case "form":
+                    formOpen = false;
+                    break;
+                case "button":
+                    if (buttons > 0) {
+                        buttons--;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (tableDepth == 0 && markers == 0) {
+                markedFormatting = 0;
+            }
+        }
+
+        private boolean closesSelect(String tag) {
+            switch (tag) {
+                case "input":
+                case "keygen":
+                case "select":
+                case "textarea":
+                    return true;
+                default:
+                    return selectInTable && SELECT_CLOSERS.contains(tag);
+            }
+        }
+
+        private byte part() {
+            if (tableDepth == 0 || tableDepth >= 64) {
+                return NO_PART;
+            }
+            long bit = 1L << tableDepth;
+            if ((captions & bit) != 0) {
+                return CAPTION;
+            }
+            if ((cells & bit) == 0) {
+                return NO_PART;
+            }
+            return (headerCells & bit) != 0 ? HEADER_CELL : DATA_CELL;
+        }
+
+        private void setPart(byte part) {
+            if (tableDepth == 0 || tableDepth >= 64) {
+                return;
+            }
+            long bit = 1L << tableDepth;
+            cells = part == DATA_CELL || part == HEADER_CELL ? cells | bit : cells & ~bit;
+            headerCells = part == HEADER_CELL ? headerCells | bit : headerCells & ~bit;
+            captions = part == CAPTION ? captions | bit : captions & ~bit;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package tparser.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * delegate used by a forked subtree
+ * <p>
+ * json nodes created inside the fork are private to it and written directly,
+ * writes into the shared items of the forking structure are recorded and replayed later on the parsing thread,
+ * so the shared items are only ever touched by one thread, in the same order as a sequential parse
+ *
+ * @see TreeParseFlow
+ */
+final class RecordingDelegate<JO, JA> implements PrimitiveJsonDelegate<JO, JA> {
+    private static final byte PUT_VALUE        = 0;
+    private static final byte PUT_NULL         = 1;
+    private static final byte PUT_OBJECT       = 2;
+    private static final byte PUT_ARRAY        = 3;
+    private static final byte PUT_KEYED_VALUE  = 4;
+    private static final byte PUT_KEYED_NULL   = 5;
+    private static final byte PUT_INT          = 6;
+    private static final byte PUT_LONG         = 7;
+    private static final byte PUT_DOUBLE       = 8;
+    private static final byte PUT_BOOLEAN      = 9;
+    private static final byte PUT_KEYED_OBJECT = 10;
+    private static final byte PUT_KEYED_ARRAY  = 11;
+
+    private final PrimitiveJsonDelegate<JO, JA> delegate;
+    private final Set<Object>                   sharedItems;
+
+    //flat records of: operation, target, key, value, primitives boxed as only shared items are recorded
+    private final List<Object> records = new ArrayList<>();
+
+    RecordingDelegate(PrimitiveJsonDelegate<JO, JA> delegate, Set<Object> sharedItems) {
+        this.delegate = delegate;
+        this.sharedItems = sharedItems;
+    }
+
+    private boolean record(byte operation, JO target, Object key, Object value) {
+        if (!sharedItems.contains(target)) {
+            return false;
+        }
+        records.add(operation);
+        records.add(target);
+        records.add(key);
+        records.add(value);
+        return true;
+    }
+
+    /**
+     * write the recorded operations in order
+     *
+     * @param target the delegate of the parsing thread
+     */
+    @SuppressWarnings("unchecked")
+    void replay(PrimitiveJsonDelegate<JO, JA> target) {
+        final int recordSize = 4;
+        for (int i = 0, size = records.size(); i < size; i += recordSize) {
+            JO     objectNode = (JO) records.get(i + 1);
+            Object key        = records.get(i + 2);
+            Object value      = records.get(i + 3);
+            switch ((byte) records.get(i)) {
+                case PUT_VALUE:
+                    target.putValue(objectNode, (String) key, value);
+                    break;
+                case PUT_NULL:
+                    target.putNull(objectNode, (String) key);
+                    break;
+                case PUT_OBJECT:
+                    target.putObjectNode(objectNode, (String) key, (JO) value);
+                    break;
+                case PUT_ARRAY:
+                    target.putArrayNode(objectNode, (String) key, (JA) value);
+                    break;
+                case PUT_KEYED_VALUE:
+                    target.putValue(objectNode, (JsonKey) key, value);
+                    break;
+                case PUT_KEYED_NULL:
+                    target.putNull(objectNode, (JsonKey) key);
+                    break;
+                case PUT_KEYED_OBJECT:
+                    target.putObjectNode(objectNode, (JsonKey) key, (JO) value);
+                    break;
+                case PUT_KEYED_ARRAY:
+                    target.putArrayNode(objectNode, (JsonKey) key, (JA) value);
+                    break;
+                case PUT_INT:
+                    target.putInt(objectNode, (JsonKey) key, (Integer) value);
+                    break;
+                case PUT_LONG:
+                    target.putLong(objectNode, (JsonKey) key, (Long) value);
+                    break;
+                case PUT_DOUBLE:
+                    target.putDouble(objectNode, (JsonKey) key, (Double) value);
+                    break;
+                case PUT_BOOLEAN:
+                    target.putBoolean(objectNode, (JsonKey) key, (Boolean) value);
+                    break;
+                default:
+                    throw new IllegalStateException("unknown record");
+            }
+        }
+    }
+
+    @Override
+    public JO createObjectNode() {
+        return delegate.createObjectNode();
+    }
+
+    @Override
+    public JA createArrayNode() {
+        return delegate.createArrayNode();
+    }
+
+    @Override
+    public void putValue(JO objectNode, String key, Object value) {
+        if (!record(PUT_VALUE, objectNode, key, value)) {
+            delegate.putValue(objectNode, key, value);
+        }
+    }
+
+    @Override
+    public void putNull(JO objectNode, String key) {
+        if (!record(PUT_NULL, objectNode, key, null)) {
+            delegate.putNull(objectNode, key);
+        }
+    }
+
+    @Override
+    public void putObjectNode(JO objectNode, String key, JO value) {
+        if (!record(PUT_OBJECT, objectNode, key, value)) {
+            delegate.putObjectNode(objectNode, key, value);
+        }
+    }
+
+    @Override
+    public void putArrayNode(JO objectNode, String key, JA value) {
+        if (!record(PUT_ARRAY, objectNode, key, value)) {
+            delegate.putArrayNode(objectNode, key, value);
+        }
+    }
+
+    @Override
+    public void putValue(JO objectNode, JsonKey key, Object value) {
+        if (!record(PUT_KEYED_VALUE, objectNode, key, value)) {
+            delegate.putValue(objectNode, key, value);
+        }
+    }
+
+    @Override
+    public void putNull(JO objectNode, JsonKey key) {
+        if (!record(PUT_KEYED_NULL, objectNode, key, null)) {
+            delegate.putNull(objectNode, key);
+        }
+    }
+
+    @Override
+    public void putObjectNode(JO objectNode, JsonKey key, JO value) {
+        if (!record(PUT_KEYED_OBJECT, objectNode, key, value)) {
+            delegate.putObjectNode(objectNode, key, value);
+        }
+    }
+
+    @Override
+    public void putArrayNode(JO objectNode, JsonKey key, JA value) {
+        if (!record(PUT_KEYED_ARRAY, objectNode, key, value)) {
+            delegate.putArrayNode(objectNode, key, value);
+        }
+    }
+
+    @Override
+    public void putInt(JO objectNode, JsonKey key, int value) {
+        //boxed only if shared
+        if (!sharedItems.contains(objectNode)) {
+            delegate.putInt(objectNode, key, value);
+        } else {
+            record(PUT_INT, objectNode, key, value);
+        }
+    }
+
+    @Override
+    public void putLong(JO objectNode, JsonKey key, long value) {
+        if (!sharedItems.contains(objectNode)) {
+            delegate.putLong(objectNode, key, value);
+        } else {
+            record(PUT_LONG, objectNode, key, value);
+        }
+    }
+
+    @Override
+    public void putDouble(JO objectNode, JsonKey key, double value) {
+        if (!sharedItems.contains(objectNode)) {
+            delegate.putDouble(objectNode, key, value);
+        } else {
+            record(PUT_DOUBLE, objectNode, key, value);
+        }
+    }
+
+    @Override
+    public void putBoolean(JO objectNode, JsonKey key, boolean value) {
+        if (!sharedItems.contains(objectNode)) {
+            delegate.putBoolean(objectNode, key, value);
+        } else {
+            record(PUT_BOOLEAN, objectNode, key, value);
+        }
+    }
+
+    @Override
+    public void add(JA arrayNode, JO itemToAdd) {
+        //arrays are only created inside a fork, the root array is never reached from one
+        delegate.add(arrayNode, itemToAdd);
+    }
+}
@@ -0,0 +1,131 @@
+package tparser.core;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * limits the work of each regex extraction, wrapping the engine of a template
+ * <p>
+ * the work is counted as characters read by the engine from the input,
+ * a backtracking engine reads the same character again on each attempt, so a catastrophic match runs out quickly,
+ * counting is deterministic, unlike wall time, the same page always passes or fails
+ *
+ * @see TemplateBuilder#regexBudget(long)
+ */
+final class RegexBudget implements RegexEngine {
+    private final RegexEngine engine;
+    private final long        maxCharReads;
+    //extractions stopped by the budget, over all parses of the template
+    private final LongAdder   exceeded = new LongAdder();
+
+    RegexBudget(RegexEngine engine, long maxCharReads) {
+        this.engine = engine;
+        this.maxCharReads = maxCharReads;
+    }
+
+    long exceededCount() {
+        return exceeded.sum();
+    }
+
+    @Override
+    public Regex compile(String regex) throws PatternSyntaxException {
+        return new BudgetedRegex(engine.compile(regex));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s, at most %d char reads", engine, maxCharReads);
+    }
+
+    /**
+     * thrown out of a match running out of budget, caught by the regex processor
+     */
+    static final class Exceeded extends RuntimeException {
+        private Exceeded() {
+            //a signal, never printed
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Exceeded EXCEEDED = new Exceeded();
+
+    private final class BudgetedRegex implements Regex {
+        private final Regex regex;
+
+        private BudgetedRegex(Regex regex) {
+            this.regex = regex;
+        }
+
+        @Override
+        public List<String> groupNames() {
+            return regex.groupNames();
+        }
+
+        @Override
+        public int groupIndex(String name) {
+            return regex.groupIndex(name);
+        }
+
+        @Override
+        public Match matcher(CharSequence input) {
+            Match match = regex.matcher(new CountedInput(input, maxCharReads));
+            return new Match() {
+                @Override
+                public boolean find() {
+                    try {
+                        return match.find();
+                    } catch (Exceeded e) {
+                        exceeded.increment();
+                        throw e;
+                    }
+                }
+
+                @Override
+                public String group(int index) {
+                    return match.group(index);
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return regex.toString();
+        }
+    }
+
+    //the budget is shared by all finds of one match
+    private static final class CountedInput implements CharSequence {
+        private final CharSequence text;
+        private long               remaining;
+
+        private CountedInput(CharSequence text, long remaining) {
+            this.text = text;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (--remaining < 0) {
+                throw EXCEEDED;
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            //group texts, not matching work
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
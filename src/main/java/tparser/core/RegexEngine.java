@@ -0,0 +1,55 @@
+package tparser.core;
+
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * compiles the regex of regex identifiers when a template is built
+ * <p>
+ * a compiled regex is shared by every parse of the template, so it must be immutable,
+ * a match is created per extraction and only used by one thread
+ *
+ * @see RegexEngines
+ * @see TemplateBuilder#regexEngine(RegexEngine)
+ */
+public interface RegexEngine {
+
+    /**
+     * @param regex regex of an identifier, with named groups as properties
+     * @return compiled regex
+     * @throws PatternSyntaxException if the regex is invalid, or uses a feature the engine does not support
+     */
+    Regex compile(String regex) throws PatternSyntaxException;
+
+    interface Regex {
+        /**
+         * @return names of the named groups in order of appearance, a repeated name only once
+         */
+        List<String> groupNames();
+
+        /**
+         * resolved once when the template is built, so a match never looks up a name
+         *
+         * @return index of the first group with the name
+         */
+        int groupIndex(String name);
+
+        Match matcher(CharSequence input);
+    }
+
+    interface Match {
+        /**
+         * find the next match in the input
+         *
+         * @return if found
+         */
+        boolean find();
+
+        /**
+         * @param index index of a group in the last match
+         * @return text of the group, null if it did not take part in the match
+         * @see Regex#groupIndex(String)
+         */
+        String group(int index);
+    }
+}
@@ -0,0 +1,115 @@
+package tparser.core;
+
+import com.google.code.regexp.Pattern;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * built-in regex engines
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class RegexEngines {
+    private RegexEngines() {
+    }
+
+    private static final RegexEngine JAVA   = new JavaRegexEngine();
+    private static final RegexEngine LINEAR = new LinearRegexEngine();
+
+    /**
+     * the default, java.util.regex with named groups
+     * <p>
+     * supports the full java syntax, but a backtracking match can take exponential time on some inputs
+     */
+    public static RegexEngine javaRegex() {
+        return JAVA;
+    }
+
+    /**
+     * an automaton simulation, a match takes time linear to the input length times the regex size
+     * <p>
+     * supports literals, escapes, character classes (no nesting or intersection), dot, ^ $ \A \z \Z \b \B anchors,
+     * capturing, named and non-capturing groups, alternation, greedy and lazy quantifiers,
+     * regexes with back references, lookaround, atomic groups, possessive quantifiers, flags or unicode properties
+     * are rejected when the template is built
+     * <p>
+     * a counted repetition ({n}, {n,} or {n,m} other than {0,1} or {1}) of what can match empty text is rejected too,
+     * java stops and retries its empty iterations in ways the whole match can differ by
+     * <p>
+     * the whole match is the same as java.util.regex for the supported syntax, except characters are matched as UTF-16 units,
+     * groups inside repeated groups may differ: java leaves a group unset by an iteration matching empty text,
+     * and may keep the value of an iteration it backtracked out of
+     */
+    public static RegexEngine linear() {
+        return LINEAR;
+    }
+
+    private static final class JavaRegexEngine implements RegexEngine {
+        @Override
+        public Regex compile(String regex) throws PatternSyntaxException {
+            return new JavaRegex(Pattern.compile(regex));
+        }
+
+        @Override
+        public String toString() {
+            return "java.util.regex";
+        }
+    }
+
+    private static final class LinearRegexEngine implements RegexEngine {
+        @Override
+        public Regex compile(String regex) throws PatternSyntaxException {
+            return LinearRegex.compile(regex);
+        }
+
+        @Override
+        public String toString() {
+            return "linear";
+        }
+    }
+
+    private static final class JavaRegex implements RegexEngine.Regex {
+        //resolves named groups
+        private final Pattern                 pattern;
+        private final java.util.regex.Pattern standard;
+
+        private JavaRegex(Pattern pattern) {
+            this.pattern = pattern;
+            this.standard = pattern.pattern();
+        }
+
+        @Override
+        public List<String> groupNames() {
+            return Collections.unmodifiableList(pattern.groupNames());
+        }
+
+        @Override
+        public int groupIndex(String name) {
+            //index in the named groups, group 0 is the whole match
+            return pattern.indexOf(name) + 1;
+        }
+
+        @Override
+        public RegexEngine.Match matcher(CharSequence input) {
+            Matcher matcher = standard.matcher(input);
+            return new RegexEngine.Match() {
+                @Override
+                public boolean find() {
+                    return matcher.find();
+                }
+
+                @Override
+                public String group(int index) {
+                    return matcher.group(index);
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return pattern.toString();
+        }
+    }
+}
@@ -5,6 +5,9 @@ import org.jsoup.select.Evaluator;
 import org.jsoup.select.QueryParser;
 import org.jsoup.select.Selector;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static tparser.core.Classifier.DepthStrategy;
 
 /**
@@ -88,6 +91,21 @@ final class SearchOptionAttributeHelper {
         return Delimiter.noDelimiter;
     }
 
+    /**
+     * css queries of the delimiters as written, for analysing the template
+     *
+     * @return empty if the array has no delimiter
+     */
+    static List<String> delimiterQueries(AttributeContainer container) {
+        List<String> queries = new ArrayList<>(2);
+        for (String delimiterType : new String[]{START_DELIMITER, END_DELIMITER, BETWEEN_DELIMITER}) {
+            if (container.hasAttr(delimiterType)) {
+                queries.add(container.getAttr(delimiterType));
+            }
+        }
+        return queries;
+    }
+
     private static Evaluator getStartDelimiter(AttributeContainer container) {
         return getDelimiter(container, START_DELIMITER);
     }
@@ -287,6 +305,20 @@ final class SearchOptionAttributeHelper {
 //        return evalFromTemplate;
 //    }
 
+    /**
+     * css query of the x-and-selector, x-or-selector or x-overwrite-default-selector as written
+     *
+     * @return null if the element is selected by its default evaluator only
+     */
+    static String selectorQuery(AttributeContainer attributes) {
+        for (String selectorType : new String[]{X_AND_SELECTOR, X_OR_SELECTOR, X_OVERWRITE_DEFAULT_SELECTOR}) {
+            if (attributes.hasAttr(selectorType)) {
+                return attributes.getAttr(selectorType);
+            }
+        }
+        return null;
+    }
+
     /**
      * combines evaluator from template itself and x-selector attr's css selector into one evaluator
      *
@@ -1,19 +1,25 @@
 package tparser.core;
 
-import org.jsoup.nodes.Element;
-
+import java.util.Arrays;
 import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * abstract functional node
+ * <p>
+ * a compact tree node, it only keeps the children array the parsing process needs
+ * instead of the whole jsoup DOM state (attributes, child node list, base uri...)
  */
 @SuppressWarnings("WeakerAccess")
-public abstract class StepNode extends Element {
+public abstract class StepNode {
+    private static final StepNode[] NO_CHILDREN = new StepNode[0];
 
     public final long id = ThreadLocalRandom.current().nextLong();
 
+    private final String     tagName;
+    private       StepNode[] children = NO_CHILDREN;
+
     public StepNode(String tagName) {
-        super(tagName);
+        this.tagName = tagName;
     }
 
     /**
@@ -39,11 +45,30 @@ public abstract class StepNode extends Element {
 
     /**
      * type sensitive tree building
+     * <p>
+     * the children array is sized exactly, it only grows while building
      *
      * @param node step node instance
      */
     public void addChild(StepNode node) {
-        appendChild(node);
+        int size = children.length;
+        children = Arrays.copyOf(children, size + 1);
+        children[size] = node;
+    }
+
+    public int childCount() {
+        return children.length;
+    }
+
+    public StepNode child(int index) {
+        return children[index];
+    }
+
+    /**
+     * @return tag name of the template element this step is built from
+     */
+    public String tagName() {
+        return tagName;
     }
 
     @Override
@@ -3,4 +3,15 @@ package tparser.core;
 public interface StepTreeBuilder {
 
     StepNode build(ConverterFactory converterFactory);
+
+    /**
+     * build with the regex engine selected on the template builder,
+     * builders not overriding this compile regex identifiers with the default engine
+     *
+     * @param regexEngine compiles regex identifiers
+     * @see TemplateBuilder#regexEngine(RegexEngine)
+     */
+    default StepNode build(ConverterFactory converterFactory, RegexEngine regexEngine) {
+        return build(converterFactory);
+    }
 }
@@ -0,0 +1,205 @@
+package tparser.core;
+
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * internal state of row-major parsing
+ * <p>
+ * only a single row is held at a time: one element per selecting step and the groups of the innermost structure,
+ * results are written to the sink as soon as they are extracted
+ *
+ * @see TreeParseFlow#stream(Element, JsonEventSink)
+ */
+class StreamState implements ExtractionContext {
+    private enum Root {
+        NONE, OBJECT, ARRAY
+    }
+
+    private final JsonEventSink sink;
+    private final Element       rootInput;
+
+    //work only as stack
+    private final Deque<Element> elementStack = new ArrayDeque<>();
+
+    private Root root        = Root.NONE;
+    private int  structDepth = 0;
+
+    //groups of the innermost structure, and the item of it being parsed
+    ElementGroups groups;
+    int           row;
+
+    //current instruction, for error report
+    int pc;
+
+    //index of the input, null if not enabled
+    ElementIndex index;
+
+    //texts serialized in the current item, cleared by item so only a row is held
+    private final TextCache textCache = new TextCache();
+
+    StreamState(Element input, JsonEventSink sink) {
+        this.rootInput = input;
+        this.sink = sink;
+        elementStack.push(input);
+    }
+
+    Element current() {
+        return elementStack.peek();
+    }
+
+    void push(Element element) {
+        elementStack.push(element);
+    }
+
+    void pop() {
+        elementStack.pop();
+    }
+
+    /**
+     * the first root level structure becomes the json root and stays open until the end,
+     * following root level objects are merged into a root object, arrays are put into it by name
+     * <p>
+     * following root level arrays append their items to a root array, objects are added as items
+     *
+     * @return if the object should be ended on exit
+     */
+    boolean startObject(String name) {
+        if (structDepth++ != 0) {
+            sink.key(name);
+            sink.startObject();
+            return true;
+        }
+        switch (root) {
+            case NONE:
+                root = Root.OBJECT;
+                sink.startObject();
+                return false;
+            case OBJECT:
+                //merge into root
+                return false;
+            default:
+                //item of root array
+                sink.startObject();
+                return true;
+        }
+    }
+
+    void endObject(boolean shouldEnd) {
+        structDepth--;
+        if (shouldEnd) {
+            sink.endObject();
+        }
+    }
+
+    /**
+     * @return if the array should be ended on exit
+     * @see #startObject(String)
+     */
+    boolean startArray(String name) {
+        if (structDepth++ != 0) {
+            sink.key(name);
+            sink.startArray();
+            return true;
+        }
+        switch (root) {
+            case NONE:
+                root = Root.ARRAY;
+                sink.startArray();
+                return false;
+            case OBJECT:
+                sink.key(name);
+                sink.startArray();
+                return true;
+            default:
+                //append to root array
+                return false;
+        }
+    }
+
+    void endArray(boolean shouldEnd) {
+        structDepth--;
+        if (shouldEnd) {
+            sink.endArray();
+        }
+    }
+
+    void startItem(int row) {
+        this.row = row;
+        sink.startObject();
+    }
+
+    void endItem() {
+        sink.endObject();
+        textCache.clear();
+    }
+
+    /**
+     * close the root structure
+     */
+    void end() {
+        switch (root) {
+            case OBJECT:
+                sink.endObject();
+                break;
+            case ARRAY:
+                sink.endArray();
+                break;
+            default:
+                //no structure in template
+                break;
+        }
+    }
+
+    @Override
+    public void onExtract(StructPlaceHolderVisitor structure, JsonKey key, Object value, int index) {
+        //index is always the current row
+        sink.key(key.name());
+        if (value == null) {
+            sink.nullValue();
+        } else {
+            sink.value(value);
+        }
+    }
+
+    /*-- the sink takes boxed values --*/
+    @Override
+    public void onExtractInt(StructPlaceHolderVisitor structure, JsonKey key, int value, int index) {
+        onExtract(structure, key, value, index);
+    }
+
+    @Override
+    public void onExtractLong(StructPlaceHolderVisitor structure, JsonKey key, long value, int index) {
+        onExtract(structure, key, value, index);
+    }
+
+    @Override
+    public void onExtractDouble(StructPlaceHolderVisitor structure, JsonKey key, double value, int index) {
+        onExtract(structure, key, value, index);
+    }
+
+    @Override
+    public void onExtractBoolean(StructPlaceHolderVisitor structure, JsonKey key, boolean value, int index) {
+        onExtract(structure, key, value, index);
+    }
+    /*-- the sink takes boxed values --*/
+
+    @Override
+    public TextCache textCache() {
+        return textCache;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamState{" +
+                "rootInput=" + rootInput +
+                ", root=" + root +
+                ", structDepth=" + structDepth +
+                ", row=" + row +
+                ", groups=" + groups +
+                ", elementStack=" + elementStack +
+                '}';
+    }
+}
@@ -3,24 +3,40 @@ package tparser.core;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Evaluator;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
 
 @SuppressWarnings("WeakerAccess")
 public abstract class StructPlaceHolderVisitor extends StepNode {
     private static final String                ATTR_NAME  = "name";
     private static final String                EMPTY      = "";
     final                String                name;
+    //options this structure is built from
+    final                AttributePairs        attributes;
     protected            Classifier            classifier;
     protected            LinkedHashSet<String> properties = new LinkedHashSet<>();
+    //handles of the properties in the same order
+    private final        List<JsonKey>         keys       = new ArrayList<>();
+    private final        List<JsonKey>         keysView   = Collections.unmodifiableList(keys);
+    //key of this structure in the nearest enclosing one, null at top level
+    JsonKey nameKey;
 
 
+    @SuppressWarnings("unchecked")
     protected StructPlaceHolderVisitor(String tagName, AttributeContainer container) {
-        this(tagName, container.hasAttr(ATTR_NAME) ? container.getAttr(ATTR_NAME) : EMPTY);
+        super(tagName);
+        this.attributes = AttributePairs.copyOf(container);
+        this.name = attributes.hasAttr(ATTR_NAME) ? attributes.getAttr(ATTR_NAME) : EMPTY;
     }
 
     protected StructPlaceHolderVisitor(String tagName, String name) {
         super(tagName);
         this.name = name;
+        this.attributes = name.isEmpty() ?
+                AttributePairs.EMPTY_PAIRS :
+                new AttributePairs(new String[]{ATTR_NAME}, new String[]{name}, new String[0]);
     }
 
     abstract void onAddProperty(String property, boolean dupe);
@@ -29,18 +45,92 @@ public abstract class StructPlaceHolderVisitor extends StepNode {
 
     abstract <JO, JA> void onExtract(
             ParseResult<JO, JA> state,
-            String property,
+            JsonKey key,
             Object result,
             int index);
 
-    void addClassification(Evaluator evaluator, DOMSearchMethod.Scope scope) {
+    /*-- unboxed values, into the pending items of either structure --*/
+    <JO, JA> void onExtractInt(ParseResult<JO, JA> state, JsonKey key, int result, int index) {
+        state.delegate.putInt(state.pendingItemStack.peek().get(index), key, result);
+    }
+
+    <JO, JA> void onExtractLong(ParseResult<JO, JA> state, JsonKey key, long result, int index) {
+        state.delegate.putLong(state.pendingItemStack.peek().get(index), key, result);
+    }
+
+    <JO, JA> void onExtractDouble(ParseResult<JO, JA> state, JsonKey key, double result, int index) {
+        state.delegate.putDouble(state.pendingItemStack.peek().get(index), key, result);
+    }
+
+    <JO, JA> void onExtractBoolean(ParseResult<JO, JA> state, JsonKey key, boolean result, int index) {
+        state.delegate.putBoolean(state.pendingItemStack.peek().get(index), key, result);
+    }
+    /*-- unboxed values, into the pending items of either structure --*/
+
+    /**
+     * @return slot of the classification in element groups
+     * @see ElementGroups
+     */
+    int addClassification(Evaluator evaluator, DOMSearchMethod.Scope scope) {
         onAddEvaluator(evaluator, false);
+        //same index in the final array classifier, it adds the pending ones in order
+        int slot = classifier.classifications.size();
         classifier.addClassification(evaluator, scope);
+        return slot;
     }
 
-    void addProperty(String property) {
+    /**
+     * @return handle of the property
+     */
+    JsonKey addProperty(String property) {
         boolean dupe = !(properties.add(property));
         onAddProperty(property, dupe);
+        JsonKey key = new JsonKey(property, keys.size(), keysView);
+        keys.add(key);
+        return key;
+    }
+
+    /**
+     * @return handles of the properties and nested structures, in the order added
+     */
+    List<JsonKey> keys() {
+        return keysView;
+    }
+
+    /**
+     * key of a nested structure, after the properties,
+     * a name already used by a property or another nested structure shares its key, the later value replaces it
+     */
+    private JsonKey addNestedStructure(String nestedName) {
+        for (JsonKey key : keys) {
+            if (key.name().equals(nestedName)) {
+                return key;
+            }
+        }
+        JsonKey key = new JsonKey(nestedName, keys.size(), keysView);
+        keys.add(key);
+        return key;
+    }
+
+    /**
+     * give each structure of a built step tree its key in the nearest enclosing structure,
+     * completing the key tables before any parse
+     */
+    static void resolveNestedKeys(StepNode root) {
+        resolveNestedKeys(root, null);
+    }
+
+    private static void resolveNestedKeys(StepNode step, StructPlaceHolderVisitor enclosing) {
+        if (step instanceof StructPlaceHolderVisitor) {
+            StructPlaceHolderVisitor structure = (StructPlaceHolderVisitor) step;
+            if (enclosing != null) {
+                structure.nameKey = enclosing.addNestedStructure(structure.name);
+            }
+            enclosing = structure;
+        }
+        for (int i = 0, size = step.childCount(); i < size; i++) {
+            resolveNestedKeys(step.child(i), enclosing);
+        }
     }
 
     public static boolean isStructure(String tag) {
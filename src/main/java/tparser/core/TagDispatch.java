@@ -0,0 +1,99 @@
+package tparser.core;
+
+import org.jsoup.internal.Normalizer;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Evaluator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * the types of an array an element can match, looked up by the element's tag name
+ * <p>
+ * a type requiring a tag (the tag term of the And built from its template element) only matches elements of that tag,
+ * so an element is tested with the types of its tag and the ones requiring no tag, in declaration order,
+ * instead of with every type
+ * <p>
+ * Evaluator.Tag ignores case, names are compared lower cased as Element#normalName(),
+ * an element named with other than ascii is tested with every type, ignoring case may still match it
+ */
+final class TagDispatch {
+    private static final int[] NONE = new int[0];
+
+    //candidates by the lower cased tag, with the types requiring no tag merged in
+    private final Map<String, int[]> byTag = new HashMap<>();
+    private final int[]              untagged;
+    private final int[]              all;
+
+    TagDispatch(List<Evaluator> types) {
+        int      size = types.size();
+        String[] tags = new String[size];
+        for (int i = 0; i < size; i++) {
+            tags[i] = requiredTag(types.get(i));
+        }
+        untagged = candidatesOf(tags, null);
+        for (String tag : tags) {
+            if (tag != null && !byTag.containsKey(tag)) {
+                byTag.put(tag, candidatesOf(tags, tag));
+            }
+        }
+        all = new int[size];
+        Arrays.setAll(all, i -> i);
+    }
+
+    //ascending
+    private static int[] candidatesOf(String[] tags, String tag) {
+        int[] candidates = NONE;
+        for (int i = 0; i < tags.length; i++) {
+            if (tags[i] == null || tags[i].equals(tag)) {
+                candidates = Arrays.copyOf(candidates, candidates.length + 1);
+                candidates[candidates.length - 1] = i;
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @return lower cased, null if elements of any tag may match
+     */
+    private static String requiredTag(Evaluator evaluator) {
+        if (evaluator instanceof Evaluator.Tag) {
+            String tag = Normalizer.lowerCase(evaluator.toString());
+            return isAscii(tag) ? tag : null;
+        }
+        if (evaluator instanceof CombiningEvaluator.And) {
+            //any of the terms is required
+            for (Evaluator term : (CombiningEvaluator.And) evaluator) {
+                String tag = requiredTag(term);
+                if (tag != null) {
+                    return tag;
+                }
+            }
+        }
+        //others (or, pseudo selectors, any element...) are tested on every element
+        return null;
+    }
+
+    private static boolean isAscii(String name) {
+        for (int i = 0, length = name.length(); i < length; i++) {
+            if (name.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return indices of the types the element may match, ascending, not to be modified
+     */
+    int[] candidates(Element element) {
+        String name       = element.normalName();
+        int[]  candidates = byTag.get(name);
+        if (candidates != null) {
+            return candidates;
+        }
+        return isAscii(name) ? untagged : all;
+    }
+}
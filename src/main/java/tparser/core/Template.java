@@ -1,10 +1,20 @@
 package tparser.core;
 
+import org.jsoup.UncheckedIOException;
 import org.jsoup.nodes.Element;
-import org.jsoup.nodes.Node;
-import org.jsoup.select.NodeVisitor;
+import org.jsoup.parser.Parser;
 
+import java.io.BufferedReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * the facade class
@@ -13,6 +23,11 @@ import java.util.Objects;
 public class Template {
     private StepNode      root;
     private TreeParseFlow parser;
+    //null if regex extraction is unlimited
+    private RegexBudget   regexBudget;
+    //null if no part of an input can be left out, analysed on the first parse of a reader
+    private KeepSet       keepSet;
+    private boolean       keepSetAnalysed;
 
     /**
      * time of building the template object , in nanoseconds
@@ -43,12 +58,87 @@ public class Template {
      * @param factory produces text converter by given type name
      */
     Template(StepTreeBuilder builder, ConverterFactory factory) {
+        this(builder, factory, TemplateOptions.defaults());
+    }
+
+    /**
+     * constructor used by template builder with parsing options
+     * @param builder tree builder implementation
+     * @param factory produces text converter by given type name
+     * @param options parsing options
+     */
+    Template(StepTreeBuilder builder, ConverterFactory factory, TemplateOptions options) {
         long start = System.nanoTime();
-        root = builder.build(factory);
-        parser = new TreeParseFlow(root);
+        RegexEngine regexEngine = options.regexEngine;
+        if (options.regexBudget > 0) {
+            regexBudget = new RegexBudget(regexEngine, options.regexBudget);
+            regexEngine = regexBudget;
+        }
+        root = builder.build(factory, regexEngine);
+        StructPlaceHolderVisitor.resolveNestedKeys(root);
+        parser = new TreeParseFlow(root, options);
         buildTimeConsumed = System.nanoTime() - start;
     }
 
+    StepNode root() {
+        return root;
+    }
+
+    /**
+     * templates only parsing documents never analyse it, synchronized as the first parses may run on many threads
+     */
+    private synchronized KeepSet keepSet() {
+        if (!keepSetAnalysed) {
+            keepSet = KeepSet.of(root);
+            keepSetAnalysed = true;
+        }
+        return keepSet;
+    }
+
+    /**
+     * @return regex extractions stopped by the regex budget since the template was built, over all threads
+     * @see TemplateBuilder#regexBudget(long)
+     */
+    public long regexBudgetExceededCount() {
+        return regexBudget == null ? 0 : regexBudget.exceededCount();
+    }
+
+    /**
+     * @return array collections with the learned depth held, without measuring, over all threads
+     * @see TemplateBuilder#learnArrayDepths(boolean)
+     */
+    public long learnedDepthHitCount() {
+        long count = 0;
+        for (Classifier.DepthLearning learning : parser.depthLearning()) {
+            count += learning.hits();
+        }
+        return count;
+    }
+
+    /**
+     * @return array collections measuring the depth as without learning, with none learned yet, with the element index,
+     * or traversing the parents fully as some type of element is not found in them
+     * @see TemplateBuilder#learnArrayDepths(boolean)
+     */
+    public long learnedDepthFallbackCount() {
+        long count = 0;
+        for (Classifier.DepthLearning learning : parser.depthLearning()) {
+            count += learning.fallbacks();
+        }
+        return count;
+    }
+
+    /**
+     * @return array collections searched again, the first matches were found at another depth than the learned one
+     * @see TemplateBuilder#learnArrayDepths(boolean)
+     */
+    public long learnedDepthRetryCount() {
+        long count = 0;
+        for (Classifier.DepthLearning learning : parser.depthLearning()) {
+            count += learning.retries();
+        }
+        return count;
+    }
 
     /**
      * debug info usage
@@ -62,28 +152,24 @@ public class Template {
     @Override
     public String toString() {
         StringBuilder stringBuilder = new StringBuilder();
-        final char    indent        = '\t';
-        final char    linebreak     = '\n';
-        root.traverse(new NodeVisitor() {
-            @Override
-            public void head(Node node, int depth) {
-                StepNode stepNode = (StepNode) node;
-                for (int i = 0; i <= depth; i++) {
-                    //indent
-                    stringBuilder.append(indent);
-                }
-                stringBuilder.append(stepNode.toString());
-                stringBuilder.append(linebreak);
-            }
-
-            @Override
-            public void tail(Node node, int depth) {
-
-            }
-        });
+        appendStep(stringBuilder, root, 0);
         return stringBuilder.toString();
     }
 
+    private static void appendStep(StringBuilder stringBuilder, StepNode stepNode, int depth) {
+        final char indent    = '\t';
+        final char linebreak = '\n';
+        for (int i = 0; i <= depth; i++) {
+            //indent
+            stringBuilder.append(indent);
+        }
+        stringBuilder.append(stepNode.toString());
+        stringBuilder.append(linebreak);
+        for (int i = 0, size = stepNode.childCount(); i < size; i++) {
+            appendStep(stringBuilder, stepNode.child(i), depth + 1);
+        }
+    }
+
     /**
      * parse a DOM into json, with a given json type from delegate
      * @param rootInput root of DOM
@@ -98,4 +184,185 @@ public class Template {
         Objects.requireNonNull(delegate, "json delegate must be provided");
         return parser.parse(rootInput, delegate);
     }
+
+    /**
+     * parse html read from a stream, leaving out of the DOM the subtrees the template can't select
+     * <p>
+     * scripts, styles, comments and any script, style, iframe, nav, aside, div... subtree without an element
+     * matching the template's selectors are dropped before jsoup builds the DOM,
+     * which cuts the heap and the build time of large pages,
+     * the result is the same as parsing the whole DOM
+     * <p>
+     * nothing is left out for a template extracting html,
+     * only comments for one extracting full text or using text, positional or sibling pseudo selectors
+     *
+     * @param input    html, closed by the caller
+     * @param delegate delegation to the json library
+     * @param <JO>     json object's type given by delegate
+     * @param <JA>     json array's type given by delegate
+     * @return parse result
+     * @throws IOException        if reading the input fails
+     * @throws HtmlParseException if the given html has a required but missing, or a found-and-fail element
+     */
+    public <JO, JA> ParseResult<JO, JA> parse(Reader input, JsonDelegate<JO, JA> delegate)
+            throws IOException, HtmlParseException {
+        Objects.requireNonNull(input, "input reader cannot be null");
+        Objects.requireNonNull(delegate, "json delegate must be provided");
+        KeepSet keepSet = keepSet();
+        Reader  reader  = new FilledReader(new BufferedReader(keepSet == null ? input : new PruningReader(input, keepSet)));
+        Element document;
+        try {
+            document = Parser.htmlParser().parseInput(reader, "");
+        } catch (UncheckedIOException e) {
+            throw e.ioException();
+        }
+        return parser.parse(document, delegate);
+    }
+
+    /**
+     * parse html read from a byte stream in a known charset
+     *
+     * @param charsetName charset of the input, such as from the Content-Type header
+     * @see #parse(Reader, JsonDelegate)
+     */
+    public <JO, JA> ParseResult<JO, JA> parse(InputStream input, String charsetName, JsonDelegate<JO, JA> delegate)
+            throws IOException, HtmlParseException {
+        Objects.requireNonNull(input, "input stream cannot be null");
+        Objects.requireNonNull(charsetName, "charset must be provided");
+        return parse(new InputStreamReader(input, charsetName), delegate);
+    }
+
+    /**
+     * parse a DOM with sibling subtrees evaluated in parallel on the common ForkJoinPool
+     *
+     * @see #parse(Element, JsonDelegate, int, Executor)
+     */
+    public <JO, JA> ParseResult<JO, JA> parse(
+            Element rootInput,
+            JsonDelegate<JO, JA> delegate,
+            int parallelism) throws HtmlParseException {
+        return parse(rootInput, delegate, parallelism, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * parse a DOM, evaluating independent sibling subtrees of each structure on multiple threads
+     * <p>
+     * intended to cut the latency of a single large page with wide structures,
+     * the result is identical to a sequential parse, for small pages the forking costs more than it saves
+     * <p>
+     * the delegate is called from several threads and should be stateless,
+     * the DOM is read by several threads and must not be modified while parsing
+     *
+     * @param rootInput   root of DOM
+     * @param delegate    delegation to the json library
+     * @param parallelism maximum number of threads working on a structure, including the calling thread
+     * @param executor    executor to run forked subtrees
+     * @param <JO>        json object's type given by delegate
+     * @param <JA>        json array's type given by delegate
+     * @return parse result
+     * @throws HtmlParseException if the given DOM has a required but missing, or a found-and-fail element
+     */
+    public <JO, JA> ParseResult<JO, JA> parse(
+            Element rootInput,
+            JsonDelegate<JO, JA> delegate,
+            int parallelism,
+            Executor executor) throws HtmlParseException {
+        Objects.requireNonNull(rootInput, "input element cannot be null");
+        Objects.requireNonNull(delegate, "json delegate must be provided");
+        Objects.requireNonNull(executor, "executor must be provided");
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(String.format("parallelism must be positive: %d", parallelism));
+        }
+        return parser.parse(rootInput, delegate, parallelism, executor);
+    }
+
+    /**
+     * parse many DOMs on the common ForkJoinPool
+     *
+     * @see #parseAll(Iterable, JsonDelegate, int, Executor)
+     */
+    public <JO, JA> BatchResult<JO, JA> parseAll(
+            Iterable<? extends Element> inputs,
+            JsonDelegate<JO, JA> delegate,
+            int parallelism) throws InterruptedException {
+        return parseAll(inputs, delegate, parallelism, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * parse many DOMs in parallel, sharing this template between workers
+     * <p>
+     * the calling thread is one of the workers and blocks until all documents are parsed,
+     * a document failed with HtmlParseException is recorded in the batch result instead of stopping the batch
+     * <p>
+     * converters registered to the template are shared between workers,
+     * the delegate is called from several threads and should be stateless
+     *
+     * @param inputs      roots of DOMs, one document per element
+     * @param delegate    delegation to the json library
+     * @param parallelism number of workers including the calling thread
+     * @param executor    executor to run the other workers
+     * @param <JO>        json object's type given by delegate
+     * @param <JA>        json array's type given by delegate
+     * @return results in the order of inputs, with throughput of the batch
+     * @throws InterruptedException if interrupted while waiting for the workers
+     * @see BatchResult
+     */
+    public <JO, JA> BatchResult<JO, JA> parseAll(
+            Iterable<? extends Element> inputs,
+            JsonDelegate<JO, JA> delegate,
+            int parallelism,
+            Executor executor) throws InterruptedException {
+        Objects.requireNonNull(inputs, "inputs cannot be null");
+        Objects.requireNonNull(delegate, "json delegate must be provided");
+        Objects.requireNonNull(executor, "executor must be provided");
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(String.format("parallelism must be positive: %d", parallelism));
+        }
+        List<Element> elements = new ArrayList<>();
+        for (Element input : inputs) {
+            elements.add(Objects.requireNonNull(input, "input element cannot be null"));
+        }
+        return new BatchParseFlow<>(parser, elements.toArray(new Element[0]), delegate).parse(parallelism, executor);
+    }
+
+    /**
+     * parse a DOM in row-major order and stream the json as events
+     * <p>
+     * an array item is complete, including nested structures, before the next item starts,
+     * so the output can be flushed while parsing continues instead of holding the whole result tree
+     *
+     * @param rootInput root of DOM
+     * @param sink      receiver of json events
+     * @throws HtmlParseException if the given DOM has a required but missing, or a found-and-fail element
+     * @see JsonEventSink
+     */
+    public void stream(Element rootInput, JsonEventSink sink) throws HtmlParseException {
+        Objects.requireNonNull(rootInput, "input element cannot be null");
+        Objects.requireNonNull(sink, "json event sink must be provided");
+        parser.stream(rootInput, sink);
+    }
+
+    /**
+     * jsoup takes each read as all it can look ahead and rewind over,
+     * a read cut short by the pruning or by a slow stream makes it fail in the middle of a token,
+     * so reads are filled unless the input ends
+     */
+    private static final class FilledReader extends FilterReader {
+        FilledReader(Reader input) {
+            super(input);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int filled = 0;
+            while (filled < length) {
+                int count = in.read(buffer, offset + filled, length - filled);
+                if (count < 0) {
+                    return filled == 0 ? -1 : filled;
+                }
+                filled += count;
+            }
+            return filled;
+        }
+    }
 }
@@ -0,0 +1,570 @@
+package tparser.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * compiled templates in a versioned binary format, built again without the template source
+ * <p>
+ * a template is written as its step tree: the tag, attributes, classes and parsed identifiers of each element step
+ * (extraction kind, property or regex source, converter type names), and the options of each structure
+ * (name, delimiters, depth limit), loading creates the steps through the source independent constructors,
+ * without parsing html or matching identifier patterns, only css selectors of x-attributes and delimiters,
+ * and regex identifiers are compiled again, by the engine of the loading template builder
+ * <p>
+ * converters are not written, the loading template builder resolves the type names like building from source:
+ * <pre>
+ * byte[] compiled = TemplateBinary.toBytes(template);
+ * Template loaded = new TemplateBuilder(TemplateBinary.fromBytes(compiled)).registerConverter(...).build();
+ * </pre>
+ * a bundle holds many named templates, it can be memory mapped and each template is only decoded when built
+ * <p>
+ * the bundle index and each template carry a CRC-32 of their bytes,
+ * a truncated or damaged template is rejected when it is loaded, before anything is decoded
+ * <p>
+ * layout, integers big endian, var = unsigned LEB128:
+ * <pre>
+ * file     := magic:int version:short kind:byte (template | bundle)
+ * bundle   := count:int (name:string offset:int length:int)* crc:int template*
+ * template := crc:int stringCount:var (length:var utf8)* step
+ * step     := kind:byte (element | attributes) childCount:var step*
+ * element  := tag:var flags:byte identifier? attributes (attrKind:byte identifier?)*
+ * </pre>
+ *
+ * @see TemplateBuilder#TemplateBuilder(StepTreeBuilder)
+ */
+@SuppressWarnings("unused")
+public final class TemplateBinary {
+    /**
+     * version written, and the only one read
+     */
+    public static final  short VERSION = 2;
+    // "TPLB"
+    private static final int   MAGIC   = 0x54504C42;
+
+    private static final byte FILE_TEMPLATE = 0;
+    private static final byte FILE_BUNDLE   = 1;
+
+    private static final byte STEP_ELEMENT = 0;
+    private static final byte STEP_OBJECT  = 1;
+    private static final byte STEP_ARRAY   = 2;
+
+    private static final byte ELEMENT_DIRECT_CHILD = 1;
+    private static final byte ELEMENT_TEXT         = 1 << 1;
+
+    private static final byte IDENTIFIER_SELECTION      = 1;
+    private static final byte IDENTIFIER_REGEX          = 1 << 1;
+    private static final byte IDENTIFIER_FAIL_NOT_MATCH = 1 << 2;
+
+    private static final int HEADER_SIZE = 4 + 2 + 1;
+    private static final int CRC_SIZE    = 4;
+
+    private TemplateBinary() {
+    }
+
+    /*-- writing --*/
+
+    /**
+     * @return the compiled template
+     */
+    public static byte[] toBytes(Template template) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try {
+            write(template, bytes);
+        } catch (IOException e) {
+            //not thrown by byte array
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * write the compiled template, the stream is not closed
+     */
+    public static void write(Template template, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        writeHeader(data, FILE_TEMPLATE);
+        data.write(encode(template));
+        data.flush();
+    }
+
+    /**
+     * write the compiled templates as a bundle, the stream is not closed
+     *
+     * @param templates by name, in the order of the bundle
+     */
+    public static void writeBundle(Map<String, Template> templates, OutputStream out) throws IOException {
+        List<byte[]> names     = new ArrayList<>(templates.size());
+        List<byte[]> payloads  = new ArrayList<>(templates.size());
+        int          indexSize = 4;
+        for (Map.Entry<String, Template> entry : templates.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            payloads.add(encode(entry.getValue()));
+            indexSize += 4 + name.length + 4 + 4;
+        }
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream(indexSize);
+        DataOutputStream      index      = new DataOutputStream(indexBytes);
+        index.writeInt(templates.size());
+        int offset = HEADER_SIZE + indexSize + CRC_SIZE;
+        for (int i = 0, size = names.size(); i < size; i++) {
+            index.writeInt(names.get(i).length);
+            index.write(names.get(i));
+            index.writeInt(offset);
+            index.writeInt(payloads.get(i).length);
+            offset += payloads.get(i).length;
+        }
+        DataOutputStream data = new DataOutputStream(out);
+        writeHeader(data, FILE_BUNDLE);
+        indexBytes.writeTo(data);
+        data.writeInt(crc(ByteBuffer.wrap(indexBytes.toByteArray())));
+        for (byte[] payload : payloads) {
+            data.write(payload);
+        }
+        data.flush();
+    }
+
+    private static void writeHeader(DataOutputStream data, byte kind) throws IOException {
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeByte(kind);
+    }
+
+    //with the crc in front
+    private static byte[] encode(Template template) {
+        Encoder encoder = new Encoder();
+        encoder.step(template.root());
+        byte[] body = encoder.toBytes();
+        return ByteBuffer.allocate(CRC_SIZE + body.length)
+                .putInt(crc(ByteBuffer.wrap(body)))
+                .put(body)
+                .array();
+    }
+
+    //of the remaining bytes, the buffer's position is not moved
+    private static int crc(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes.duplicate());
+        return (int) crc.getValue();
+    }
+
+    //steps go to a buffer while the string table is collected, the table is written first
+    private static final class Encoder {
+        private final Map<String, Integer>  strings = new LinkedHashMap<>();
+        private final ByteArrayOutputStream steps   = new ByteArrayOutputStream(512);
+
+        void step(StepNode step) {
+            if (step instanceof ElementVisitor) {
+                steps.write(STEP_ELEMENT);
+                element(((ElementVisitor) step).spec());
+            } else if (step instanceof ObjectVisitor) {
+                steps.write(STEP_OBJECT);
+                attributes(((ObjectVisitor) step).attributes);
+            } else if (step instanceof ArrayVisitor) {
+                steps.write(STEP_ARRAY);
+                attributes(((ArrayVisitor) step).attributes);
+            } else {
+                throw new IllegalArgumentException(String.format("cannot compile step: %s", step.getClass().getName()));
+            }
+            writeVar(steps, step.childCount());
+            for (int i = 0, size = step.childCount(); i < size; i++) {
+                step(step.child(i));
+            }
+        }
+
+        private void element(ElementSpec spec) {
+            string(spec.tagName);
+            int flags = (spec.isDirectChildOfStructure ? ELEMENT_DIRECT_CHILD : 0)
+                    | (spec.textIdentifier != null ? ELEMENT_TEXT : 0);
+            steps.write(flags);
+            if (spec.textIdentifier != null) {
+                identifier(spec.textIdentifier);
+            }
+            attributes(spec.attributes);
+            for (int i = 0, size = spec.attributeKinds.length; i < size; i++) {
+                steps.write(spec.attributeKinds[i]);
+                if (spec.attributeIdentifiers[i] != null) {
+                    identifier(spec.attributeIdentifiers[i]);
+                }
+            }
+        }
+
+        private void attributes(AttributePairs attributes) {
+            writeVar(steps, attributes.size());
+            for (int i = 0, size = attributes.size(); i < size; i++) {
+                string(attributes.key(i));
+                string(attributes.value(i));
+            }
+            writeVar(steps, attributes.classCount());
+            for (int i = 0, size = attributes.classCount(); i < size; i++) {
+                string(attributes.className(i));
+            }
+        }
+
+        private void identifier(Identifier identifier) {
+            string(identifier.declaration);
+            int flags = (identifier.selection ? IDENTIFIER_SELECTION : 0)
+                    | (identifier.regex ? IDENTIFIER_REGEX : 0)
+                    | (identifier.shouldFailNotMatch ? IDENTIFIER_FAIL_NOT_MATCH : 0);
+            steps.write(flags);
+            steps.write(identifier.extraction);
+            string(identifier.property);
+            writeVar(steps, identifier.types.length);
+            for (String type : identifier.types) {
+                string(type);
+            }
+        }
+
+        private void string(String string) {
+            Integer index = strings.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.put(string, index);
+            }
+            writeVar(steps, index);
+        }
+
+        byte[] toBytes() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(steps.size() + strings.size() * 16);
+            writeVar(bytes, strings.size());
+            for (String string : strings.keySet()) {
+                byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+                writeVar(bytes, utf8.length);
+                bytes.write(utf8, 0, utf8.length);
+            }
+            byte[] stepBytes = steps.toByteArray();
+            bytes.write(stepBytes, 0, stepBytes.length);
+            return bytes.toByteArray();
+        }
+    }
+
+    private static void writeVar(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+    /*-- writing --*/
+
+    /*-- reading --*/
+
+    /**
+     * @param bytes a compiled template
+     * @return builder of the template, for a TemplateBuilder
+     * @throws TemplateSyntaxError if not a compiled template of this version, or truncated or damaged
+     */
+    public static StepTreeBuilder fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        checkHeader(buffer, FILE_TEMPLATE);
+        return new Loader(checked(buffer.slice()));
+    }
+
+    /**
+     * read a compiled template to the end of the stream, the stream is not closed
+     *
+     * @see #fromBytes(byte[])
+     */
+    public static StepTreeBuilder read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes  = new ByteArrayOutputStream(1024);
+        byte[]                buffer = new byte[8192];
+        int                   read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return fromBytes(bytes.toByteArray());
+    }
+
+    /**
+     * @param bytes a bundle of compiled templates
+     * @throws TemplateSyntaxError if not a bundle of this version, or its index is truncated or damaged
+     */
+    public static Bundle bundleOf(byte[] bytes) {
+        return new Bundle(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * map a bundle file into memory, templates are decoded from the mapping when built,
+     * the mapping lives as long as the bundle and the builders from it
+     *
+     * @param path a bundle file written by writeBundle
+     * @throws TemplateSyntaxError if not a bundle of this version, or its index is truncated or damaged
+     */
+    public static Bundle mapBundle(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Bundle(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static void checkHeader(ByteBuffer buffer, byte kind) {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new TemplateSyntaxError("not a compiled template");
+            }
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new TemplateSyntaxError(String.format("unsupported compiled template version: %d, expected: %d", version, VERSION));
+            }
+            if (buffer.get() != kind) {
+                throw new TemplateSyntaxError(kind == FILE_BUNDLE ? "not a template bundle" : "a template bundle, not a template");
+            }
+        } catch (BufferUnderflowException e) {
+            throw new TemplateSyntaxError("not a compiled template", e);
+        }
+    }
+
+    /**
+     * @param template a template with the crc in front
+     * @return the template after the crc
+     */
+    private static ByteBuffer checked(ByteBuffer template) {
+        if (template.remaining() < CRC_SIZE) {
+            throw new TemplateSyntaxError("corrupted compiled template, truncated");
+        }
+        int        expected = template.getInt(template.position());
+        ByteBuffer body     = template.duplicate();
+        body.position(body.position() + CRC_SIZE);
+        if (crc(body) != expected) {
+            throw new TemplateSyntaxError("corrupted compiled template, checksum mismatch");
+        }
+        return body.slice();
+    }
+
+    /**
+     * named compiled templates
+     */
+    public static final class Bundle {
+        //name to the template slice, in bundle order
+        private final Map<String, ByteBuffer> templates;
+
+        private Bundle(ByteBuffer buffer) {
+            checkHeader(buffer, FILE_BUNDLE);
+            try {
+                int          indexStart = buffer.position();
+                int          count      = buffer.getInt();
+                List<String> names      = new ArrayList<>();
+                List<int[]>  slices     = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    int nameLength = buffer.getInt();
+                    if (nameLength < 0 || nameLength > buffer.remaining()) {
+                        throw new BufferUnderflowException();
+                    }
+                    byte[] name = new byte[nameLength];
+                    buffer.get(name);
+                    names.add(new String(name, StandardCharsets.UTF_8));
+                    slices.add(new int[]{buffer.getInt(), buffer.getInt()});
+                }
+                ByteBuffer index = buffer.duplicate();
+                index.position(indexStart).limit(buffer.position());
+                if (crc(index) != buffer.getInt()) {
+                    throw new TemplateSyntaxError("corrupted template bundle, checksum mismatch");
+                }
+                Map<String, ByteBuffer> templates = new LinkedHashMap<>(CollectionHelper.enoughHashTableCapacity(count));
+                for (int i = 0; i < count; i++) {
+                    //offset, length
+                    int[]      slice    = slices.get(i);
+                    ByteBuffer template = buffer.duplicate();
+                    template.position(slice[0]).limit(slice[0] + slice[1]);
+                    templates.put(names.get(i), template.slice());
+                }
+                this.templates = Collections.unmodifiableMap(templates);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new TemplateSyntaxError("corrupted template bundle", e);
+            }
+        }
+
+        /**
+         * @return names of the templates, in bundle order
+         */
+        public Set<String> names() {
+            return templates.keySet();
+        }
+
+        public int size() {
+            return templates.size();
+        }
+
+        public boolean contains(String name) {
+            return templates.containsKey(name);
+        }
+
+        /**
+         * @return builder of the template for a TemplateBuilder, null if the bundle has no such template
+         * @throws TemplateSyntaxError if the template is truncated or damaged
+         */
+        public StepTreeBuilder stepTreeBuilder(String name) {
+            ByteBuffer template = templates.get(name);
+            return template == null ? null : new Loader(checked(template));
+        }
+
+        @Override
+        public String toString() {
+            return "Bundle" + templates.keySet();
+        }
+    }
+
+    //decodes the step tree each build, so one loader can build templates with different converters
+    private static final class Loader implements StepTreeBuilder {
+        private final ByteBuffer template;
+
+        Loader(ByteBuffer template) {
+            this.template = template;
+        }
+
+        @Override
+        public StepNode build(ConverterFactory converterFactory) {
+            return build(converterFactory, RegexEngines.javaRegex());
+        }
+
+        @Override
+        public StepNode build(ConverterFactory converterFactory, RegexEngine regexEngine) {
+            Decoder decoder = new Decoder(template.duplicate(), converterFactory, regexEngine);
+            try {
+                return decoder.template();
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new TemplateSyntaxError("corrupted compiled template", e);
+            }
+        }
+    }
+
+    private static final class Decoder {
+        private final ByteBuffer       in;
+        private final ConverterFactory factory;
+        private final RegexEngine      regexEngine;
+        private       String[]         strings;
+
+        Decoder(ByteBuffer in, ConverterFactory factory, RegexEngine regexEngine) {
+            this.in = in;
+            this.factory = factory;
+            this.regexEngine = regexEngine;
+        }
+
+        StepNode template() {
+            strings = new String[readVar()];
+            byte[] utf8 = new byte[64];
+            for (int i = 0; i < strings.length; i++) {
+                int length = readVar();
+                if (length > utf8.length) {
+                    utf8 = new byte[Math.max(length, utf8.length * 2)];
+                }
+                in.get(utf8, 0, length);
+                strings[i] = new String(utf8, 0, length, StandardCharsets.UTF_8);
+            }
+            return step(null);
+        }
+
+        //in the order of DefaultBuilder: a step is created before its children and exited after them
+        private StepNode step(StructPlaceHolderVisitor enclosing) {
+            StepNode                 step;
+            StructPlaceHolderVisitor structure = enclosing;
+            byte                     kind      = in.get();
+            switch (kind) {
+                case STEP_ELEMENT:
+                    step = new ElementVisitor(element(), enclosing, factory, regexEngine);
+                    break;
+                case STEP_OBJECT:
+                    step = structure = new ObjectVisitor(attributes());
+                    break;
+                case STEP_ARRAY:
+                    step = structure = new ArrayVisitor(attributes());
+                    break;
+                default:
+                    throw new TemplateSyntaxError(String.format("corrupted compiled template, unknown step: %d", kind));
+            }
+            step.onBuilderVisiting();
+            for (int i = 0, size = readVar(); i < size; i++) {
+                step.addChild(step(structure));
+            }
+            step.onBuilderExiting();
+            return step;
+        }
+
+        private ElementSpec element() {
+            String         tagName        = string();
+            byte           flags          = in.get();
+            Identifier     textIdentifier = (flags & ELEMENT_TEXT) != 0 ? identifier() : null;
+            AttributePairs attributes     = attributes();
+            byte[]         kinds          = new byte[attributes.size()];
+            Identifier[]   identifiers    = new Identifier[attributes.size()];
+            for (int i = 0; i < kinds.length; i++) {
+                kinds[i] = in.get();
+                if (kinds[i] == ElementSpec.VALUE_IDENTIFIER || kinds[i] == ElementSpec.KEY_IDENTIFIER) {
+                    identifiers[i] = identifier();
+                }
+            }
+            return new ElementSpec(tagName, (flags & ELEMENT_DIRECT_CHILD) != 0, textIdentifier, attributes, kinds, identifiers);
+        }
+
+        private AttributePairs attributes() {
+            int size = readVar();
+            if (size == 0) {
+                readVar();
+                return AttributePairs.EMPTY_PAIRS;
+            }
+            String[] keys   = new String[size];
+            String[] values = new String[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = string();
+                values[i] = string();
+            }
+            String[] classes = new String[readVar()];
+            for (int i = 0; i < classes.length; i++) {
+                classes[i] = string();
+            }
+            return new AttributePairs(keys, values, classes);
+        }
+
+        private Identifier identifier() {
+            String   declaration = string();
+            byte     flags       = in.get();
+            byte     extraction  = in.get();
+            String   property    = string();
+            String[] types       = new String[readVar()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = string();
+            }
+            return new Identifier(
+                    declaration,
+                    (flags & IDENTIFIER_SELECTION) != 0,
+                    types,
+                    extraction,
+                    property,
+                    (flags & IDENTIFIER_REGEX) != 0,
+                    (flags & IDENTIFIER_FAIL_NOT_MATCH) != 0
+            );
+        }
+
+        private String string() {
+            return strings[readVar()];
+        }
+
+        private int readVar() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = in.get();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new TemplateSyntaxError("corrupted compiled template, malformed length");
+        }
+    }
+    /*-- reading --*/
+}
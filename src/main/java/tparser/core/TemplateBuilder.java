@@ -2,10 +2,14 @@ package tparser.core;
 
 import org.jsoup.nodes.Element;
 
+import java.io.Reader;
+import java.util.Objects;
+
 @SuppressWarnings("unused")
 public class TemplateBuilder {
     private StepTreeBuilder                    stepTreeBuilder;
     private Converters.ConverterFactoryBuilder factoryBuilder = Converters.factoryBuilder();
+    private TemplateOptions                    options        = TemplateOptions.defaults();
 
     public TemplateBuilder(StepTreeBuilder templateSource) {
         this.stepTreeBuilder = templateSource;
@@ -15,6 +19,20 @@ public class TemplateBuilder {
         this.stepTreeBuilder = new DefaultBuilder(templateSource);
     }
 
+    /**
+     * build from well-formed xml markup pulled as it is read, without a jsoup DOM of the template,
+     * the same template as from Jsoup.parse(markup, "", Parser.xmlParser())
+     * <p>
+     * the reader is read by the first build() and closed by the caller,
+     * such a builder can't build again nor build through a TemplateCache
+     *
+     * @param templateSource template markup
+     * @throws TemplateSyntaxError on build, if the markup isn't well-formed xml
+     */
+    public TemplateBuilder(Reader templateSource) {
+        this.stepTreeBuilder = new XmlStreamBuilder(Objects.requireNonNull(templateSource, "template reader cannot be null"));
+    }
+
     /**
      * set client implemented factory
      *
@@ -46,7 +64,114 @@ public class TemplateBuilder {
         return this;
     }
 
+    /**
+     * number each input DOM in one pass before parsing and index elements by the tag, class, id and attribute key
+     * terms the template selects with, so steps searching a subtree only test the candidates with their terms
+     * <p>
+     * pays off on large pages searched deep by many steps, costs a traversal and some memory per document otherwise,
+     * children scoped steps and array collection still traverse
+     *
+     * @param enable if build the index, disabled by default
+     * @return this for chaining
+     */
+    public TemplateBuilder indexElements(boolean enable) {
+        options.indexElements = enable;
+        return this;
+    }
+
+    /**
+     * re-sort the terms of each step's selector by how often they reject an element (or accept, for x-or-selector),
+     * relative to their cost, as documents are parsed
+     * <p>
+     * terms are always tried cheapest first (tag and id, class, attribute, attribute value, text or regex, structural),
+     * this also puts a selective term ahead of a cheaper one that rarely rejects,
+     * the order is kept by the template and never changes results
+     *
+     * @param enable if re-sort from observed outcomes, disabled by default
+     * @return this for chaining
+     */
+    public TemplateBuilder reorderSelectorsAdaptively(boolean enable) {
+        options.reorderAdaptively = enable;
+        return this;
+    }
+
+    /**
+     * speculate the depth limit of each array without depth-limit from the documents parsed before,
+     * instead of measuring it with a traversal of the parents before every collection
+     * <p>
+     * the collection pass with the learned depth also looks below it for the first matches measuring would find,
+     * the parents are collected again only if those are at another depth, so the result is the same as measured,
+     * pays off on pages of the same site, counted by Template#learnedDepthHitCount() and the like
+     * <p>
+     * parses with indexElements still measure, the index finds the first matches without a traversal
+     *
+     * @param enable if learn the depths, disabled by default
+     * @return this for chaining
+     */
+    public TemplateBuilder learnArrayDepths(boolean enable) {
+        options.learnArrayDepths = enable;
+        return this;
+    }
+
+    /**
+     * select the engine compiling regex identifiers, java.util.regex by default
+     * <p>
+     * a backtracking engine can take exponential time on some input, use RegexEngines.linear()
+     * for templates parsing untrusted documents, or a custom engine
+     * <p>
+     * a custom StepTreeBuilder must override build(ConverterFactory, RegexEngine) to use it
+     *
+     * @param engine compiles regex identifiers when the template is built
+     * @return this for chaining
+     * @see RegexEngines
+     */
+    public TemplateBuilder regexEngine(RegexEngine engine) {
+        options.regexEngine = Objects.requireNonNull(engine, "regex engine cannot be null");
+        return this;
+    }
+
+    /**
+     * limit the work of each regex extraction to a number of characters read by the engine,
+     * a backtracking engine reads characters again on each attempt, so this bounds catastrophic matches
+     * <p>
+     * an extraction exceeding the budget is treated as not matched, a regex identifier required to match
+     * fails the parse with HtmlParseException.RegexBudgetExceeded,
+     * the number of exceeded extractions is counted by Template#regexBudgetExceededCount()
+     *
+     * @param maxCharReads chars an extraction may read, unlimited if not positive, unlimited by default
+     * @return this for chaining
+     */
+    public TemplateBuilder regexBudget(long maxCharReads) {
+        options.regexBudget = maxCharReads;
+        return this;
+    }
+
     public Template build() {
-        return new Template(stepTreeBuilder, factoryBuilder.build());
+        return new Template(stepTreeBuilder, factoryBuilder.build(), options);
+    }
+
+    /**
+     * the template cached by content, built by this builder only if the cache has none of the same source,
+     * converters and options
+     *
+     * @param cache shared template cache
+     * @return the cached template, or the one built now
+     * @see TemplateCache#get(TemplateBuilder)
+     */
+    public Template build(TemplateCache cache) {
+        return cache.get(this);
+    }
+
+    //null if built by a custom step tree builder
+    Element templateSource() {
+        return stepTreeBuilder instanceof DefaultBuilder ? ((DefaultBuilder) stepTreeBuilder).templateRoot() : null;
+    }
+
+    Object converterIdentity() {
+        return factoryBuilder.identity();
+    }
+
+    TemplateOptions optionsCopy() {
+        return options.copy();
     }
 }
@@ -0,0 +1,226 @@
+package tparser.core;
+
+import org.jsoup.nodes.Element;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * compiled templates addressed by content, so an identical template is built once per cache
+ * <p>
+ * a template is keyed by the SHA-256 digest of its source (the outer html of the template DOM),
+ * the identity of the registered converters and converter factory, and the template options,
+ * converters and factories are compared by equals, the identity for most of them (lambdas included),
+ * so register the same instances to share the entry
+ * <p>
+ * holds at most maxTemplates, the least recently used one is evicted when another is built,
+ * a template is built outside the cache lock and only once for concurrent requests of the same key,
+ * a template failing to build is not cached
+ * <p>
+ * thread safe, templates are shared and must only be used in thread safe ways (no builder state is kept)
+ *
+ * @see TemplateBuilder#build(TemplateCache)
+ */
+@SuppressWarnings("unused")
+public final class TemplateCache {
+    private static final String DIGEST = "SHA-256";
+
+    private final int                       maxTemplates;
+    //access ordered, the eldest is the least recently used
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long buildTimeConsumed;
+
+    /**
+     * @param maxTemplates number of templates kept
+     */
+    public TemplateCache(int maxTemplates) {
+        if (maxTemplates <= 0) {
+            throw new IllegalArgumentException(String.format("max templates must be positive: %d", maxTemplates));
+        }
+        this.maxTemplates = maxTemplates;
+    }
+
+    /**
+     * @param templateSource template DOM, built with the default converters and options
+     * @return the cached template, or the one built now
+     * @throws TemplateSyntaxError if the template is invalid
+     */
+    public Template get(Element templateSource) {
+        return get(new TemplateBuilder(templateSource));
+    }
+
+    /**
+     * @param builder the template builder, only built on a miss
+     * @return the cached template, or the one built now
+     * @throws TemplateSyntaxError      if the template is invalid
+     * @throws IllegalArgumentException if the builder was created with a custom StepTreeBuilder, which has no source
+     */
+    public Template get(TemplateBuilder builder) {
+        Element source = builder.templateSource();
+        if (source == null) {
+            throw new IllegalArgumentException("a template from a custom StepTreeBuilder cannot be addressed by source");
+        }
+        Key   key = new Key(digest(source.outerHtml()), builder.converterIdentity(), builder.optionsCopy());
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+            } else {
+                misses++;
+                entry = new Entry();
+                entries.put(key, entry);
+            }
+        }
+        return entry.template(this, key, builder);
+    }
+
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxTemplates) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    //evicts only for a template built, a failing one does not push out others
+    private synchronized void onBuilt(Template template) {
+        buildTimeConsumed += template.buildTimeConsumed;
+        evict();
+    }
+
+    private synchronized void onFailed(Key key, Entry entry) {
+        entries.remove(key, entry);
+    }
+
+    /**
+     * remove all templates, statistics are kept
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int maxTemplates() {
+        return maxTemplates;
+    }
+
+    /**
+     * @return requests served by a cached template
+     */
+    public synchronized long hitCount() {
+        return hits;
+    }
+
+    /**
+     * @return requests building a template
+     */
+    public synchronized long missCount() {
+        return misses;
+    }
+
+    /**
+     * @return templates removed to keep the size
+     */
+    public synchronized long evictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return sum of Template#buildTimeConsumed of the templates built, in nanoseconds
+     */
+    public synchronized long buildTimeConsumed() {
+        return buildTimeConsumed;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TemplateCache{" +
+                "size=" + entries.size() +
+                ", maxTemplates=" + maxTemplates +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", buildTimeConsumed=" + buildTimeConsumed +
+                '}';
+    }
+
+    private static byte[] digest(String source) {
+        try {
+            return MessageDigest.getInstance(DIGEST).digest(source.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            //every java platform provides it
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Key {
+        private final byte[]          sourceDigest;
+        private final Object          converters;
+        private final TemplateOptions options;
+        private final int             hash;
+
+        Key(byte[] sourceDigest, Object converters, TemplateOptions options) {
+            this.sourceDigest = sourceDigest;
+            this.converters = converters;
+            this.options = options;
+            this.hash = 31 * (31 * Arrays.hashCode(sourceDigest) + converters.hashCode()) + options.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash
+                    && Arrays.equals(sourceDigest, key.sourceDigest)
+                    && converters.equals(key.converters)
+                    && options.equals(key.options);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    //built by the first request, the others wait for it
+    private static final class Entry {
+        private volatile Template template;
+
+        Template template(TemplateCache cache, Key key, TemplateBuilder builder) {
+            Template built = template;
+            if (built != null) {
+                return built;
+            }
+            synchronized (this) {
+                if (template == null) {
+                    try {
+                        template = builder.build();
+                    } catch (RuntimeException | Error e) {
+                        cache.onFailed(key, this);
+                        throw e;
+                    }
+                    cache.onBuilt(template);
+                }
+                return template;
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package tparser.core;
+
+import java.util.Objects;
+
+/**
+ * parsing options of a template, set through the template builder
+ * <p>
+ * options only change how the result is found, never the result itself,
+ * except a regex engine may reject or treat differently what another accepts,
+ * and a regex budget turns a match running too long into not matched
+ *
+ * @see TemplateBuilder
+ */
+final class TemplateOptions {
+    //build an element index of each input before parsing
+    boolean indexElements = false;
+    //re-sort terms of and/or selectors from observed outcomes
+    boolean reorderAdaptively = false;
+    //speculate the depth limit of arrays without depth-limit from earlier documents
+    boolean learnArrayDepths  = false;
+    //compiles regex identifiers
+    RegexEngine regexEngine = RegexEngines.javaRegex();
+    //chars a regex extraction may read, unlimited if not positive
+    long        regexBudget = 0;
+
+    static TemplateOptions defaults() {
+        return new TemplateOptions();
+    }
+
+    TemplateOptions copy() {
+        TemplateOptions copy = new TemplateOptions();
+        copy.indexElements = indexElements;
+        copy.reorderAdaptively = reorderAdaptively;
+        copy.learnArrayDepths = learnArrayDepths;
+        copy.regexEngine = regexEngine;
+        copy.regexBudget = regexBudget;
+        return copy;
+    }
+
+    //templates built with equal options are interchangeable
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TemplateOptions)) {
+            return false;
+        }
+        TemplateOptions that = (TemplateOptions) o;
+        return indexElements == that.indexElements
+                && reorderAdaptively == that.reorderAdaptively
+                && learnArrayDepths == that.learnArrayDepths
+                && regexBudget == that.regexBudget
+                && regexEngine.equals(that.regexEngine);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(indexElements, reorderAdaptively, learnArrayDepths, regexEngine, regexBudget);
+    }
+
+    @Override
+    public String toString() {
+        return "TemplateOptions{" +
+                "indexElements=" + indexElements +
+                ", reorderAdaptively=" + reorderAdaptively +
+                ", learnArrayDepths=" + learnArrayDepths +
+                ", regexEngine=" + regexEngine +
+                ", regexBudget=" + regexBudget +
+                '}';
+    }
+}
@@ -0,0 +1,104 @@
+package tparser.core;
+
+import org.jsoup.nodes.Element;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * texts serialized from the subtree of elements during a parse
+ * <p>
+ * full text, inner html and outer html of an element are built at most once per parse,
+ * no matter how many identifiers or steps extract them,
+ * except full text written into the char buffer for a CharSequenceConverter, which is not kept
+ * <p>
+ * owned by a single parsing thread, a forked subtree has its own
+ *
+ * @see ExtractionContext#textCache()
+ */
+final class TextCache {
+    static final int NOT_CACHED = -1;
+
+    private static final int FULL_TEXT  = 0;
+    private static final int INNER_HTML = 1;
+    private static final int OUTER_HTML = 2;
+    private static final int SLOTS      = 3;
+
+    private final Map<Element, String[]> texts  = new IdentityHashMap<>();
+    //reused by every char sequence extraction
+    private final StringBuilder          buffer = new StringBuilder();
+
+    /**
+     * @return slot of an extractor serializing the subtree, NOT_CACHED for the ones reading the element only
+     */
+    static int slotOf(TextExtractor extractor) {
+        if (extractor == TextExtractor.fullText) {
+            return FULL_TEXT;
+        }
+        if (extractor == TextExtractor.innerHtml) {
+            return INNER_HTML;
+        }
+        if (extractor == TextExtractor.outerHtml) {
+            return OUTER_HTML;
+        }
+        //own text and attributes
+        return NOT_CACHED;
+    }
+
+    /**
+     * @param slot slot of the extractor
+     * @see #slotOf(TextExtractor)
+     */
+    String extract(TextExtractor extractor, int slot, Element element) {
+        if (slot == NOT_CACHED) {
+            return extractor.extract(element);
+        }
+        String[] known = texts.get(element);
+        if (known == null) {
+            known = new String[SLOTS];
+            texts.put(element, known);
+        }
+        String text = known[slot];
+        if (text == null) {
+            text = extractor.extract(element);
+            known[slot] = text;
+        }
+        return text;
+    }
+
+    /**
+     * extract for a CharSequenceConverter, a known text is reused, an other text is written into the buffer
+     * when the extractor supports it, so the result is only valid until the next call
+     *
+     * @param slot slot of the extractor
+     * @see CharSequenceConverter
+     */
+    CharSequence extractChars(TextExtractor extractor, int slot, Element element) {
+        String[] known = slot == NOT_CACHED ? null : texts.get(element);
+        if (known != null && known[slot] != null) {
+            return known[slot];
+        }
+        buffer.setLength(0);
+        CharSequence text = extractor.extract(element, buffer);
+        if (slot != NOT_CACHED && text instanceof String) {
+            //not written into the buffer, keep it as extract() does
+            if (known == null) {
+                known = new String[SLOTS];
+                texts.put(element, known);
+            }
+            known[slot] = (String) text;
+        }
+        return text;
+    }
+
+    void clear() {
+        texts.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "TextCache{" +
+                "elements=" + texts.size() +
+                '}';
+    }
+}
@@ -1,14 +1,31 @@
 package tparser.core;
 
+import org.jsoup.internal.StringUtil;
 import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.CDataNode;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
 
 interface TextExtractor {
 
     String extract(Element subject);
 
-    TextExtractor ownText   = Element::ownText;
-    TextExtractor fullText  = Element::text;
+    /**
+     * extract without creating a String where possible
+     *
+     * @param buffer empty buffer owned by the parsing thread
+     * @return the text, the buffer itself if written into it, only valid until the buffer is reused
+     * @see CharSequenceConverter
+     */
+    default CharSequence extract(Element subject, StringBuilder buffer) {
+        return extract(subject);
+    }
+
+    TextExtractor ownText   = new OwnText();
+    TextExtractor fullText  = new FullText();
     TextExtractor innerHtml = Element::html;
     TextExtractor outerHtml = Element::outerHtml;
     TextExtractor none      = (element) -> null;
@@ -44,6 +61,124 @@ interface TextExtractor {
         throw new IllegalArgumentException("unknown type extractor");
     }
 
+    /**
+     * Element.ownText(), also written into a buffer the same way jsoup builds it
+     */
+    final class OwnText implements TextExtractor {
+        private OwnText() {
+        }
+
+        @Override
+        public String extract(Element subject) {
+            return subject.ownText();
+        }
+
+        @Override
+        public CharSequence extract(Element subject, StringBuilder buffer) {
+            //childNodes() would wrap the list
+            for (int i = 0, size = subject.childNodeSize(); i < size; i++) {
+                Node child = subject.childNode(i);
+                if (child instanceof TextNode) {
+                    appendNormalisedText(buffer, (TextNode) child);
+                } else if (child instanceof Element) {
+                    if (isBr((Element) child) && !lastCharIsWhitespace(buffer)) {
+                        buffer.append(' ');
+                    }
+                }
+            }
+            return trim(buffer);
+        }
+    }
+
+    /**
+     * Element.text(), also written into a buffer the same way jsoup builds it
+     */
+    final class FullText implements TextExtractor {
+        private FullText() {
+        }
+
+        @Override
+        public String extract(Element subject) {
+            return subject.text();
+        }
+
+        @Override
+        public CharSequence extract(Element subject, StringBuilder buffer) {
+            NodeTraversor.traverse(new NodeVisitor() {
+                @Override
+                public void head(Node node, int depth) {
+                    if (node instanceof TextNode) {
+                        appendNormalisedText(buffer, (TextNode) node);
+                    } else if (node instanceof Element) {
+                        Element element = (Element) node;
+                        if (buffer.length() > 0 && (element.isBlock() || isBr(element)) && !lastCharIsWhitespace(buffer)) {
+                            buffer.append(' ');
+                        }
+                    }
+                }
+
+                @Override
+                public void tail(Node node, int depth) {
+                    //a space between a block and the text following it
+                    if (node instanceof Element && ((Element) node).isBlock()
+                            && node.nextSibling() instanceof TextNode && !lastCharIsWhitespace(buffer)) {
+                        buffer.append(' ');
+                    }
+                }
+            }, subject);
+            return trim(buffer);
+        }
+    }
+
+    /*-- mirrors of the package-private text building of jsoup Element and TextNode --*/
+    static void appendNormalisedText(StringBuilder buffer, TextNode textNode) {
+        String text = textNode.getWholeText();
+        if (preserveWhitespace(textNode.parentNode()) || textNode instanceof CDataNode) {
+            buffer.append(text);
+        } else {
+            StringUtil.appendNormalisedWhitespace(buffer, text, lastCharIsWhitespace(buffer));
+        }
+    }
+
+    static boolean preserveWhitespace(Node node) {
+        //this element and five levels up, as jsoup does
+        if (node instanceof Element) {
+            Element element = (Element) node;
+            int     level   = 0;
+            do {
+                if (element.tag().preserveWhitespace()) {
+                    return true;
+                }
+                element = element.parent();
+                level++;
+            } while (level < 6 && element != null);
+        }
+        return false;
+    }
+
+    static boolean isBr(Element element) {
+        return element.tag().getName().equals("br");
+    }
+
+    static boolean lastCharIsWhitespace(StringBuilder buffer) {
+        return buffer.length() != 0 && buffer.charAt(buffer.length() - 1) == ' ';
+    }
+
+    //String.trim() in place
+    static StringBuilder trim(StringBuilder buffer) {
+        int end = buffer.length();
+        while (end > 0 && buffer.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        buffer.setLength(end);
+        int start = 0;
+        while (start < end && buffer.charAt(start) <= ' ') {
+            start++;
+        }
+        return start == 0 ? buffer : buffer.delete(0, start);
+    }
+    /*-- mirrors of the package-private text building of jsoup Element and TextNode --*/
+
     class AttrValueTarget implements TextExtractor {
         private String attrKey;
 
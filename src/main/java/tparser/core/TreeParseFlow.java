@@ -1,75 +1,434 @@
 package tparser.core;
 
 import org.jsoup.nodes.Element;
-import org.jsoup.nodes.Node;
-import org.jsoup.select.NodeFilter;
+import org.jsoup.select.Elements;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * executes the step tree as a flat program
+ * <p>
+ * the tree is compiled once into array-indexed instructions in DFS order,
+ * so parsing a document is a single loop without any tree traversal or per node dispatch through jsoup
+ * <p>
+ * given steps: object{ element{ element } , array{ element } }
+ * program:  ENTER_OBJECT SELECT EXTRACT SELECT EXTRACT EXIT_SELECT EXIT_SELECT ENTER_ARRAY SELECT EXTRACT EXIT_SELECT EXIT_ARRAY EXIT_OBJECT
+ * <p>
+ * column-major (parse): every instruction runs once over all items of its structure, results are built as json nodes
+ * row-major (stream): a structure runs its body once per item, so an item is complete before the next one starts
+ * and results are sent to an event sink as soon as they are extracted
+ */
 class TreeParseFlow {
-    private StepNode stepRoot;
+    private static final byte ENTER_OBJECT = 0;
+    private static final byte ENTER_ARRAY  = 1;
+    private static final byte SELECT       = 2;
+    private static final byte EXTRACT      = 3;
+    private static final byte EXIT_SELECT  = 4;
+    private static final byte EXIT_ARRAY   = 5;
+    private static final byte EXIT_OBJECT  = 6;
+
+    private static final String[] OPCODE_NAMES = {
+            "ENTER_OBJECT", "ENTER_ARRAY", "SELECT", "EXTRACT", "EXIT_SELECT", "EXIT_ARRAY", "EXIT_OBJECT"
+    };
+
+    private final byte[]                         opcodes;
+    private final StepNode[]                     operands;
+    //pc of the matching exit for each enter/select, used to run a structure's body per item
+    private final int[]                          exits;
+    private final boolean                        indexElements;
+    //of arrays learning their depth
+    private final List<Classifier.DepthLearning> depthLearning = new ArrayList<>();
 
-    TreeParseFlow(StepNode stepRoot) {
-        this.stepRoot = stepRoot;
+    TreeParseFlow(StepNode stepRoot, TemplateOptions options) {
+        Compiler compiler = new Compiler();
+        //root need to be ignored because steps cannot select itself
+        for (int i = 0, size = stepRoot.childCount(); i < size; i++) {
+            compiler.compile(stepRoot.child(i));
+        }
+        this.opcodes = compiler.opcodes();
+        this.operands = compiler.operands.toArray(new StepNode[0]);
+        this.exits = matchExits(opcodes);
+        this.indexElements = options.indexElements;
+        if (options.reorderAdaptively) {
+            for (StepNode operand : operands) {
+                if (operand instanceof ElementVisitor) {
+                    ((ElementVisitor) operand).reorderAdaptively();
+                }
+            }
+        }
+        if (options.learnArrayDepths) {
+            for (int pc = 0; pc < opcodes.length; pc++) {
+                if (opcodes[pc] == ENTER_ARRAY) {
+                    Classifier.DepthLearning learning = ((ArrayVisitor) operands[pc]).classifier.learnDepth();
+                    if (learning != null) {
+                        depthLearning.add(learning);
+                    }
+                }
+            }
+        }
+    }
+
+    List<Classifier.DepthLearning> depthLearning() {
+        return depthLearning;
+    }
+
+    private static int[] matchExits(byte[] opcodes) {
+        int[]          exits  = new int[opcodes.length];
+        Deque<Integer> enters = new ArrayDeque<>();
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            switch (opcodes[pc]) {
+                case ENTER_OBJECT:
+                case ENTER_ARRAY:
+                case SELECT:
+                    enters.push(pc);
+                    break;
+                case EXIT_SELECT:
+                case EXIT_ARRAY:
+                case EXIT_OBJECT:
+                    exits[enters.pop()] = pc;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return exits;
     }
 
     public <JO, JA> ParseResult<JO, JA> parse(Element rootInput, JsonDelegate<JO, JA> delegate) throws HtmlParseException {
-        ParseResult<JO, JA> state = new ParseResult<>(rootInput, delegate);
+        return parse(rootInput, delegate, new ParseScratch<>());
+    }
+
+    <JO, JA> ParseResult<JO, JA> parse(Element rootInput, JsonDelegate<JO, JA> delegate, ParseScratch<JO> scratch) throws HtmlParseException {
+        return run(new ParseResult<>(rootInput, delegate, scratch));
+    }
+
+    /**
+     * column-major parsing with sibling subtrees of structures forked to the executor
+     * <p>
+     * children of a structure only read the structure's selection and groups, and write disjoint properties of its items,
+     * so they are split into up to parallelism contiguous chunks (balanced by instruction count):
+     * the parsing thread runs the first chunk, the others run on the executor with their own stacks and a recording delegate,
+     * then their writes into the structure's items are replayed in sibling order
+     * <p>
+     * the result, including key order, is identical to a sequential parse,
+     * the first failure in sibling order is thrown
+     */
+    <JO, JA> ParseResult<JO, JA> parse(Element rootInput, JsonDelegate<JO, JA> delegate, int parallelism, Executor executor) throws HtmlParseException {
+        ParseResult<JO, JA> state = new ParseResult<>(rootInput, delegate, new ParseScratch<>());
+        state.parallelism = parallelism;
+        state.executor = parallelism > 1 ? executor : null;
+        return run(state);
+    }
+
+    private <JO, JA> ParseResult<JO, JA> run(ParseResult<JO, JA> state) throws HtmlParseException {
         state.start();
-        StopOnErrorTraversal<JO, JA> traversal = new StopOnErrorTraversal<>(state);
-        stepRoot.filter(traversal);
-        if (traversal.parseException != null) {
+        if (indexElements) {
+            state.index = ElementIndex.build(state.getRootInput());
+        }
+        try {
+            execute(state, 0, opcodes.length);
+        } catch (HtmlParseException e) {
             state.end();
-            throw traversal.parseException;
+            throw e;
         }
         state.end();
         return state;
     }
 
-    private static class StopOnErrorTraversal<JO, JA> implements NodeFilter {
+    //runs instructions [from, to)
+    private <JO, JA> void execute(ParseResult<JO, JA> state, int from, int to) throws HtmlParseException {
+        final byte[]     opcodes  = this.opcodes;
+        final StepNode[] operands = this.operands;
+        int              pc       = from;
+        try {
+            for (; pc < to; pc++) {
+                switch (opcodes[pc]) {
+                    case ENTER_OBJECT:
+                        ((ObjectVisitor) operands[pc]).onVisit(state);
+                        if (state.executor != null) {
+                            executeChildren(state, pc + 1, exits[pc]);
+                            pc = exits[pc] - 1;
+                        }
+                        break;
+                    case ENTER_ARRAY:
+                        ((ArrayVisitor) operands[pc]).onVisit(state);
+                        if (state.executor != null) {
+                            executeChildren(state, pc + 1, exits[pc]);
+                            pc = exits[pc] - 1;
+                        }
+                        break;
+                    case SELECT:
+                        ((ElementVisitor) operands[pc]).select(state);
+                        break;
+                    case EXTRACT:
+                        ((ElementVisitor) operands[pc]).extract(state);
+                        break;
+                    case EXIT_SELECT:
+                        ((ElementVisitor) operands[pc]).onExit(state);
+                        break;
+                    case EXIT_ARRAY:
+                        ((ArrayVisitor) operands[pc]).onExit(state);
+                        break;
+                    case EXIT_OBJECT:
+                        ((ObjectVisitor) operands[pc]).onExit(state);
+                        break;
+                    default:
+                        throw new IllegalStateException(String.format("unknown opcode: %d", opcodes[pc]));
+                }
+            }
+        } catch (StepFailure failure) {
+            //already wrapped by a nested or forked run
+            throw failure;
+        } catch (RuntimeException re) {
+            //wrap up and re-throw
+            throw new StepFailure(
+                    String.format("STEP NODE: %s %s: %s", operands[pc].toString(), OPCODE_NAMES[opcodes[pc]], state.toString()),
+                    re
+            );
+        }
+    }
+
+    //runs the body [bodyStart, bodyEnd) of a structure, children split into chunks
+    private <JO, JA> void executeChildren(ParseResult<JO, JA> state, int bodyStart, int bodyEnd) throws HtmlParseException {
+        int children = 0;
+        for (int pc = bodyStart; pc < bodyEnd; pc = exits[pc] + 1) {
+            children++;
+        }
+        int chunks = Math.min(state.parallelism, children);
+        if (chunks < 2) {
+            execute(state, bodyStart, bodyEnd);
+            return;
+        }
+        //contiguous chunks, each cut when it reaches its share of instructions or when the rest need one child each
+        final int bodyLength = bodyEnd - bodyStart;
+        int[]     bounds     = new int[chunks + 1];
+        int       chunk      = 1;
+        int       remaining  = children;
+        for (int pc = bodyStart; chunk < chunks; ) {
+            pc = exits[pc] + 1;
+            remaining--;
+            if ((long) (pc - bodyStart) * chunks >= (long) bodyLength * chunk || remaining == chunks - chunk) {
+                bounds[chunk++] = pc;
+            }
+        }
+        bounds[0] = bodyStart;
+        bounds[chunks] = bodyEnd;
+
+        Set<Object> sharedItems = Collections.newSetFromMap(new IdentityHashMap<>());
+        sharedItems.addAll(state.pendingItemStack.peek());
+        List<FutureTask<RecordingDelegate<JO, JA>>> forks = new ArrayList<>(chunks - 1);
+        for (int i = 1; i < chunks; i++) {
+            final int                       from      = bounds[i];
+            final int                       to        = bounds[i + 1];
+            final RecordingDelegate<JO, JA> recorder  = new RecordingDelegate<>(state.delegate, sharedItems);
+            //forked here, the stacks of the parsing thread change once it runs the first chunk
+            final ParseResult<JO, JA>       forkState = state.fork(recorder);
+            FutureTask<RecordingDelegate<JO, JA>> fork = new FutureTask<>(() -> {
+                execute(forkState, from, to);
+                return recorder;
+            });
+            forks.add(fork);
+            try {
+                state.executor.execute(fork);
+            } catch (RejectedExecutionException e) {
+                //run by the parsing thread when joining
+            }
+        }
+        try {
+            execute(state, bounds[0], bounds[1]);
+            for (FutureTask<RecordingDelegate<JO, JA>> fork : forks) {
+                //no-op if already started
+                fork.run();
+                join(fork).replay(state.delegate);
+            }
+        } finally {
+            //stop the rest on failure
+            for (FutureTask<RecordingDelegate<JO, JA>> fork : forks) {
+                fork.cancel(false);
+            }
+        }
+    }
+
+    private static <T> T join(FutureTask<T> fork) throws HtmlParseException {
+        try {
+            return fork.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HtmlParseException) {
+                throw (HtmlParseException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while joining forked steps", e);
+        }
+    }
+
+    /**
+     * row-major parsing, results are written to the sink while parsing
+     * <p>
+     * an array classifies the groups of each item's own parent element only, so it differs from column-major when:
+     * a delimiter splits a nested array (all sub arrays under the parent are kept, as they are at root level),
+     * a runtime depth limit is measured per parent rather than across all parents at once
+     * <p>
+     * if parsing fails, the events already sent are left unterminated
+     */
+    public void stream(Element rootInput, JsonEventSink sink) throws HtmlParseException {
+        StreamState state = new StreamState(rootInput, sink);
+        if (indexElements) {
+            state.index = ElementIndex.build(rootInput);
+        }
+        try {
+            stream(state, 0, opcodes.length);
+        } catch (RuntimeException re) {
+            //wrap up and re-throw
+            throw new RuntimeException(
+                    String.format("STEP NODE: %s %s: %s", operands[state.pc].toString(), OPCODE_NAMES[opcodes[state.pc]], state.toString()),
+                    re
+            );
+        }
+        state.end();
+    }
+
+    //runs instructions [from, to) for the current row
+    private void stream(StreamState state, int from, int to) throws HtmlParseException {
+        final byte[]     opcodes  = this.opcodes;
+        final StepNode[] operands = this.operands;
+        for (int pc = from; pc < to; pc++) {
+            state.pc = pc;
+            switch (opcodes[pc]) {
+                case ENTER_OBJECT:
+                    streamObject((ObjectVisitor) operands[pc], state, pc + 1, exits[pc]);
+                    pc = exits[pc];
+                    break;
+                case ENTER_ARRAY:
+                    streamArray((ArrayVisitor) operands[pc], state, pc + 1, exits[pc]);
+                    pc = exits[pc];
+                    break;
+                case SELECT:
+                    state.push(((ElementVisitor) operands[pc]).selectRow(state));
+                    break;
+                case EXTRACT:
+                    ((ElementVisitor) operands[pc]).extract(state.current(), state, state.row);
+                    break;
+                case EXIT_SELECT:
+                    state.pop();
+                    break;
+                default:
+                    throw new IllegalStateException(String.format("unexpected opcode: %s", OPCODE_NAMES[opcodes[pc]]));
+            }
+        }
+    }
 
-        private ParseResult<JO, JA> state;
-        private HtmlParseException  parseException;
+    private void streamObject(ObjectVisitor object, StreamState state, int bodyStart, int bodyEnd) throws HtmlParseException {
+        ElementGroups outerGroups = state.groups;
+        int           outerRow    = state.row;
+        //always exactly 1 group for a single parent
+        state.groups = object.classifier.classify(new Elements(state.current()), state.index);
+        state.row = 0;
+        boolean shouldEnd = state.startObject(object.name);
+        stream(state, bodyStart, bodyEnd);
+        state.endObject(shouldEnd);
+        state.groups = outerGroups;
+        state.row = outerRow;
+    }
 
-        StopOnErrorTraversal(ParseResult<JO, JA> state) {
-            this.state = state;
+    private void streamArray(ArrayVisitor array, StreamState state, int bodyStart, int bodyEnd) throws HtmlParseException {
+        ElementGroups outerGroups = state.groups;
+        int           outerRow    = state.row;
+        ElementGroups groups      = array.classifier.classify(new Elements(state.current()), state.index);
+        state.groups = groups;
+        boolean shouldEnd = state.startArray(array.name);
+        for (int row = 0, groupsFound = groups.getGroupsFound(); row < groupsFound; row++) {
+            state.startItem(row);
+            stream(state, bodyStart, bodyEnd);
+            state.endItem();
         }
+        state.endArray(shouldEnd);
+        state.groups = outerGroups;
+        state.row = outerRow;
+    }
 
+    /**
+     * debug info usage
+     * format the compiled program, one instruction per line
+     */
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            stringBuilder.append(pc)
+                    .append('\t')
+                    .append(OPCODE_NAMES[opcodes[pc]])
+                    .append('\t')
+                    .append(operands[pc].id)
+                    .append('\n');
+        }
+        return stringBuilder.toString();
+    }
 
-        @Override
-        public FilterResult head(Node node, int depth) {
-            //element #root need to be ignored because steps cannot select itself
-            if (depth != 0) {
-                StepNode stepNode = (StepNode) node;
-                try {
-                    stepNode.onVisit(state);
-                } catch (HtmlParseException e) {
-                    parseException = e;
-                    return FilterResult.STOP;
-                } catch (RuntimeException re) {
-                    //wrap up and re-throw
-                    throw new RuntimeException(
-                            String.format("STEP NODE: %s onVisit: %s", stepNode.toString(), state.toString()),
-                            re
-                    );
-                }
+    //runtime failure wrapped with the failing step
+    private static final class StepFailure extends RuntimeException {
+        StepFailure(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private static final class Compiler {
+        private List<Byte>     opcodes  = new ArrayList<>();
+        private List<StepNode> operands = new ArrayList<>();
+
+        private void emit(byte opcode, StepNode operand) {
+            opcodes.add(opcode);
+            operands.add(operand);
+        }
+
+        private byte[] opcodes() {
+            byte[] program = new byte[opcodes.size()];
+            for (int pc = 0; pc < program.length; pc++) {
+                program[pc] = opcodes.get(pc);
             }
-            return FilterResult.CONTINUE;
-        }
-
-        @Override
-        public FilterResult tail(Node node, int depth) {
-            if (depth != 0) {
-                StepNode stepNode = (StepNode) node;
-                try{
-                    stepNode.onExit(state);
-                }catch (RuntimeException re) {
-                    //wrap up and re-throw
-                    throw new RuntimeException(
-                            String.format("STEP NODE: %s onExit: %s", stepNode.toString(), state.toString()),
-                            re
-                    );
+            return program;
+        }
+
+        private void compile(StepNode step) {
+            byte exit;
+            if (step instanceof ObjectVisitor) {
+                emit(ENTER_OBJECT, step);
+                exit = EXIT_OBJECT;
+            } else if (step instanceof ArrayVisitor) {
+                emit(ENTER_ARRAY, step);
+                exit = EXIT_ARRAY;
+            } else if (step instanceof ElementVisitor) {
+                ElementVisitor elementVisitor = (ElementVisitor) step;
+                emit(SELECT, step);
+                if (elementVisitor.hasExtractions()) {
+                    emit(EXTRACT, step);
                 }
+                exit = EXIT_SELECT;
+            } else {
+                throw new IllegalArgumentException(String.format("unknown step node type: %s", step.getClass().getName()));
+            }
+            for (int i = 0, size = step.childCount(); i < size; i++) {
+                compile(step.child(i));
             }
-            return FilterResult.CONTINUE;
+            emit(exit, step);
         }
     }
 }
@@ -3,28 +3,94 @@ package tparser.core;
 import org.jsoup.nodes.Element;
 
 class TypeProcessor {
+    //output of the converter
+    private static final byte BOXED   = 0;
+    private static final byte INT     = 1;
+    private static final byte LONG    = 2;
+    private static final byte DOUBLE  = 3;
+    private static final byte BOOLEAN = 4;
+
     private final StructPlaceHolderVisitor structure;
-    final         String                   property;
+    final         JsonKey                  key;
     private final String                   typeName;
     private final Converter                converter;
+    //reads the text as a char sequence
+    final         boolean                  acceptsChars;
+    private final byte                     output;
 
-    TypeProcessor(StructPlaceHolderVisitor structure, String property, Converter converter, String typeName) {
-        this.property = property;
+    TypeProcessor(StructPlaceHolderVisitor structure, JsonKey key, Converter converter, String typeName) {
+        this.key = key;
         this.structure = structure;
         this.converter = converter;
         this.typeName = typeName;
+        this.acceptsChars = converter instanceof CharSequenceConverter;
+        this.output = outputOf(converter);
+    }
+
+    private static byte outputOf(Converter converter) {
+        if (converter instanceof PrimitiveConverter.OfInt) {
+            return INT;
+        }
+        if (converter instanceof PrimitiveConverter.OfLong) {
+            return LONG;
+        }
+        if (converter instanceof PrimitiveConverter.OfDouble) {
+            return DOUBLE;
+        }
+        if (converter instanceof PrimitiveConverter.OfBoolean) {
+            return BOOLEAN;
+        }
+        return BOXED;
+    }
+
+    void process(ExtractionContext state, String result, Element context, int index) {
+        if (!converter.shouldConvert(result, context)) {
+            state.onExtract(structure, key, null, index);
+        } else if (output != BOXED) {
+            processPrimitive(state, result, context, index);
+        } else {
+            state.onExtract(structure, key, converter.convert(result, context), index);
+        }
+    }
+
+    /**
+     * only for a CharSequenceConverter
+     *
+     * @see #acceptsChars
+     */
+    void processChars(ExtractionContext state, CharSequence result, Element context, int index) {
+        if (!((CharSequenceConverter) converter).shouldConvert(result, context)) {
+            state.onExtract(structure, key, null, index);
+        } else if (output != BOXED) {
+            processPrimitive(state, result, context, index);
+        } else {
+            state.onExtract(structure, key, ((CharSequenceConverter) converter).convert(result, context), index);
+        }
     }
 
-    <JO, JA> void process(ParseResult<JO, JA> state, String result, Element context, int index) {
-        Object value = converter.shouldConvert(result, context) ?
-                converter.convert(result, context) :
-                null;
-        structure.onExtract(state, property, value, index);
+    //unboxed all the way to the delegate
+    private void processPrimitive(ExtractionContext state, CharSequence result, Element context, int index) {
+        switch (output) {
+            case INT:
+                state.onExtractInt(structure, key, ((PrimitiveConverter.OfInt) converter).convertInt(result, context), index);
+                break;
+            case LONG:
+                state.onExtractLong(structure, key, ((PrimitiveConverter.OfLong) converter).convertLong(result, context), index);
+                break;
+            case DOUBLE:
+                state.onExtractDouble(structure, key, ((PrimitiveConverter.OfDouble) converter).convertDouble(result, context), index);
+                break;
+            case BOOLEAN:
+                state.onExtractBoolean(structure, key, ((PrimitiveConverter.OfBoolean) converter).convertBoolean(result, context), index);
+                break;
+            default:
+                throw new IllegalStateException("not a primitive converter");
+        }
     }
 
     @Override
     public String toString() {
-        return String.format("%s@%s", property, typeName);
+        return String.format("%s@%s", key.name(), typeName);
     }
 
 }
@@ -0,0 +1,222 @@
+package tparser.core;
+
+import org.jsoup.internal.StringUtil;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * builds the step tree from template markup pulled with StAX, without a jsoup DOM of the template
+ * <p>
+ * the tree is the same as DefaultBuilder's over Jsoup.parse(template, "", Parser.xmlParser()), rooted at #root,
+ * only each element's tag, attributes and own text are held until the steps are created in the same order,
+ * the template must be well-formed xml though, named html entities such as &amp;nbsp; are not declared in it,
+ * and tabs and line breaks in attribute values are read as spaces, as xml normalizes them
+ * <p>
+ * the reader is read to the end by the first build, and not closed
+ *
+ * @see DefaultBuilder
+ */
+class XmlStreamBuilder implements StepTreeBuilder {
+    private static final String   ROOT_TAG       = "#root";
+    private static final String   ATTR_CLASS     = "class";
+    private static final String[] NONE           = new String[0];
+    //tags jsoup keeps the whitespace of own text in, and in descendants up to 5 levels below
+    private static final String[] PRESERVING     = {"pre", "plaintext", "title", "textarea"};
+    private static final int      PRESERVE_DEPTH = 5;
+    //as Element#classNames splits
+    private static final Pattern  CLASS_SPLIT    = Pattern.compile("\\s+");
+
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    });
+
+    private Reader           templateSource;
+    private ConverterFactory factory;
+    private RegexEngine      regexEngine = RegexEngines.javaRegex();
+
+    XmlStreamBuilder(Reader templateSource) {
+        this.templateSource = templateSource;
+    }
+
+    @Override
+    public StepNode build(ConverterFactory converterFactory) {
+        if (templateSource == null) {
+            throw new IllegalStateException("template reader is already read by a build");
+        }
+        this.factory = converterFactory;
+        Pending root = read(templateSource);
+        templateSource = null;
+        return step(root, null);
+    }
+
+    @Override
+    public StepNode build(ConverterFactory converterFactory, RegexEngine regexEngine) {
+        this.regexEngine = regexEngine;
+        return build(converterFactory);
+    }
+
+    //in the order of DefaultBuilder: a step is created before its children and exited after them
+    private StepNode step(Pending pending, StructPlaceHolderVisitor enclosing) {
+        StepNode                 step;
+        StructPlaceHolderVisitor structure = enclosing;
+        if (ArrayVisitor.TAG.equals(pending.tagName)) {
+            step = structure = new ArrayVisitor(pending.attributes);
+        } else if (ObjectVisitor.TAG.equals(pending.tagName)) {
+            step = structure = new ObjectVisitor(pending.attributes);
+        } else {
+            step = new ElementVisitor(pending.spec, enclosing, factory, regexEngine);
+        }
+        step.onBuilderVisiting();
+        for (Pending child : pending.children) {
+            step.addChild(step(child, structure));
+        }
+        step.onBuilderExiting();
+        return step;
+    }
+
+    /**
+     * @return the #root element, its children read and the identifiers of every element matched
+     * @throws TemplateSyntaxError if the template isn't well-formed xml
+     */
+    private static Pending read(Reader source) {
+        XMLStreamReader reader = null;
+        try {
+            reader = INPUT_FACTORY.get().createXMLStreamReader(source);
+            List<Pending> open = new ArrayList<>();
+            Pending       root = new Pending(ROOT_TAG, AttributePairs.EMPTY_PAIRS, null);
+            open.add(root);
+            while (reader.hasNext()) {
+                Pending current = open.get(open.size() - 1);
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        Pending element = new Pending(qualifiedName(reader), attributes(reader), current);
+                        current.children.add(element);
+                        if (element.tagName.equals("br")) {
+                            current.appendSpace();
+                        }
+                        open.add(element);
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        open.remove(open.size() - 1).finish();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                        current.appendText(reader.getText());
+                        break;
+                    case XMLStreamConstants.CDATA:
+                        current.ownText.append(reader.getText());
+                        break;
+                    default:
+                        //comments, processing instructions and the doctype are not elements
+                        break;
+                }
+            }
+            root.finish();
+            return root;
+        } catch (XMLStreamException e) {
+            throw new TemplateSyntaxError(String.format("malformed template: %s", e.getMessage()), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                    //the source is left to the caller
+                }
+            }
+        }
+    }
+
+    private static String qualifiedName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        return prefix == null || prefix.isEmpty() ? reader.getLocalName() : prefix + ":" + reader.getLocalName();
+    }
+
+    private static AttributePairs attributes(XMLStreamReader reader) {
+        int count = reader.getAttributeCount();
+        if (count == 0) {
+            return AttributePairs.EMPTY_PAIRS;
+        }
+        String[] keys    = new String[count];
+        String[] values  = new String[count];
+        String[] classes = null;
+        for (int i = 0; i < count; i++) {
+            String prefix = reader.getAttributePrefix(i);
+            String name   = reader.getAttributeLocalName(i);
+            keys[i] = prefix == null || prefix.isEmpty() ? name : prefix + ":" + name;
+            values[i] = reader.getAttributeValue(i);
+            //as Element#className, the first class key in any case
+            if (classes == null && keys[i].equalsIgnoreCase(ATTR_CLASS)) {
+                LinkedHashSet<String> names = new LinkedHashSet<>(Arrays.asList(CLASS_SPLIT.split(values[i].trim())));
+                names.remove("");
+                classes = names.toArray(NONE);
+            }
+        }
+        return new AttributePairs(keys, values, classes != null ? classes : NONE);
+    }
+
+    //a template element read so far
+    private static final class Pending {
+        final String         tagName;
+        final AttributePairs attributes;
+        final Pending        parent;
+        final List<Pending>  children = new ArrayList<>(1);
+        //levels up to the nearest element preserving whitespace
+        final int            preserving;
+        StringBuilder        ownText  = new StringBuilder();
+        //null for structures
+        ElementSpec          spec;
+
+        Pending(String tagName, AttributePairs attributes, Pending parent) {
+            this.tagName = tagName;
+            this.attributes = attributes;
+            this.parent = parent;
+            if (StringUtil.in(tagName, PRESERVING)) {
+                preserving = 0;
+            } else {
+                preserving = parent == null ? Integer.MAX_VALUE : Math.min(parent.preserving, PRESERVE_DEPTH) + 1;
+            }
+        }
+
+        //as Element#ownText appends a text node
+        void appendText(String text) {
+            if (preserving <= PRESERVE_DEPTH) {
+                ownText.append(text);
+            } else {
+                StringUtil.appendNormalisedWhitespace(ownText, text, endsWithSpace());
+            }
+        }
+
+        //for a br child
+        void appendSpace() {
+            if (!endsWithSpace()) {
+                ownText.append(' ');
+            }
+        }
+
+        private boolean endsWithSpace() {
+            return ownText.length() != 0 && ownText.charAt(ownText.length() - 1) == ' ';
+        }
+
+        void finish() {
+            if (!StructPlaceHolderVisitor.isStructure(tagName)) {
+                boolean directChild = parent != null && StructPlaceHolderVisitor.isStructure(parent.tagName);
+                spec = ElementSpec.of(tagName, ownText.toString().trim(), directChild, attributes);
+            }
+            ownText = null;
+        }
+    }
+}
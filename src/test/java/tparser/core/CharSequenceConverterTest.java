@@ -0,0 +1,44 @@
+package tparser.core;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CharSequenceConverterTest {
+    //a length, null for empty text
+    private static final CharSequenceConverter<Integer> LENGTH = new CharSequenceConverter<Integer>() {
+        @Override
+        public Integer convert(CharSequence text, Element context) {
+            return text.length();
+        }
+
+        @Override
+        public boolean shouldConvert(CharSequence text, Element context) {
+            return text != null && text.length() > 0;
+        }
+    };
+
+    private static String parse(String html) throws HtmlParseException {
+        Template template = new TemplateBuilder(Jsoup.parse("<html><body><json-object>" +
+                "<b>[length]{own}</b>" +
+                "<i>[length]{'#full}</i>" +
+                "<a href=\"[length]{attribute}\"/>" +
+                "<s>{/(?&lt;group>[a-z]*)/}</s>" +
+                "<u>[length]{/(?&lt;typed>[a-z]*)/}</u>" +
+                "</json-object></body></html>", "", Parser.xmlParser()))
+                .registerConverter("length", LENGTH)
+                .build();
+        return template.parse(Jsoup.parse(html), CompactJsonDelegate.INSTANCE).getResultObject().toJson();
+    }
+
+    @Test
+    public void shouldConvertIsCalledForEveryText() throws HtmlParseException {
+        assertEquals("{\"own\":3,\"full\":5,\"attribute\":2,\"group\":\"abc\",\"typed\":2}",
+                parse("<b>abc</b><i>ab<em>cde</em></i><a href=ab></a><s>abc</s><u>xy</u>"));
+        assertEquals("{\"own\":null,\"full\":null,\"attribute\":null,\"group\":\"\",\"typed\":null}",
+                parse("<b></b><i><em></em></i><a href=\"\"></a><s>1</s><u>2</u>"));
+    }
+}
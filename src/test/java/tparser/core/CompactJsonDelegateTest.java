@@ -0,0 +1,42 @@
+package tparser.core;
+
+import org.jsoup.Jsoup;
+import org.jsoup.parser.Parser;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CompactJsonDelegateTest {
+    private static final String FLOAT_TEMPLATE =
+            "<html><body><json-object>" +
+                    "<b class=\"f\">[float]{f}</b>" +
+                    "<b class=\"g\">[float]{g}</b>" +
+                    "<i>[double]{d}</i>" +
+                    "</json-object></body></html>";
+
+    private static CompactJsonDelegate.Record parse(String template, String html) throws HtmlParseException {
+        Template parser = new TemplateBuilder(Jsoup.parse(template, "", Parser.xmlParser())).build();
+        return parser.parse(Jsoup.parse(html), CompactJsonDelegate.INSTANCE).getResultObject();
+    }
+
+    @Test
+    public void floatFieldsAreWrittenAsFloats() throws HtmlParseException {
+        CompactJsonDelegate.Record record = parse(FLOAT_TEMPLATE,
+                "<html><body><b class=f>0.1</b><b class=g>3.3</b><i>0.1</i></body></html>");
+
+        assertEquals("{\"f\":0.1,\"g\":3.3,\"d\":0.1}", record.toJson());
+        assertEquals(0.1f, record.get("f"));
+        assertEquals(3.3f, record.get("g"));
+        assertEquals(0.1d, record.get("d"));
+    }
+
+    @Test
+    public void floatsPutByNameAreWrittenAsFloats() {
+        CompactJsonDelegate.Record record = CompactJsonDelegate.INSTANCE.createObjectNode();
+        CompactJsonDelegate.INSTANCE.putValue(record, "f", 0.1f);
+        CompactJsonDelegate.INSTANCE.putValue(record, "nan", Float.NaN);
+
+        assertEquals("{\"f\":0.1,\"nan\":null}", record.toJson());
+        assertEquals(0.1f, record.get("f"));
+    }
+}
@@ -0,0 +1,100 @@
+package tparser.core;
+
+import org.junit.Test;
+
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ConvertersTest {
+    private static final String[] INTEGERS = {
+            "0", "-0", "+0", "7", "-7", "+7", "007", "", "+", "-", "--1", "+-1", " 1", "1 ", "1.0", "1e3", "0x10",
+            "127", "128", "-128", "-129", "255", "32767", "32768", "-32768", "-32769",
+            "2147483647", "2147483648", "-2147483648", "-2147483649", "21474836470", "99999999999",
+            "9223372036854775807", "9223372036854775808", "-9223372036854775808", "-9223372036854775809",
+            "92233720368547758070", "00000000000000000000000000001",
+            //arabic-indic and fullwidth digits
+            "\u0661\u0662\u0663", "-\uff11\uff12", "1\u0660", "a", "1a", "\u00001"
+    };
+    private static final String[] DECIMALS = {
+            "0", "-0", "+0", "0.0", "-0.0", "-0e5", ".5", "-.5", "1.", "-1.", ".", "-", "+", "", " ", "e5", ".e5", "1e",
+            "1e+", "1e-", "1.5e3", "1.5E-3", "1e22", "1e23", "-1e22", "1e-22", "1e-23", "1e10", "1e11", "1e-10", "1e-11",
+            "123456789012345678", "1234567890123456789", "12345678901234567890", "0.123456789012345678",
+            "0.1234567890123456789", "9007199254740992", "9007199254740993", "16777216", "16777217",
+            "3.4028235e38", "3.4028236e38", "1e39", "1.4e-45", "1e-46", "1.7976931348623157e308", "1e309", "4.9e-324",
+            "1e-325", "1e99999", "1e-99999", " 1.5 ", "\t-2\n", "\u00001\u0000", "1 2", "1..2", "1.2.3", "1e1.5",
+            "0x1p3", "0x1.8p1", "-0X10P-2", "NaN", "-NaN", "Infinity", "-Infinity", "+Infinity", "infinity",
+            "1d", "1D", "1f", "1F", "1.5e3d", "\u0661", "1\u0660", "0.1", "0.2", "0.3", "2.5", "19.99"
+    };
+    private static final String[] BOOLEANS = {
+            "true", "TRUE", "True", "tRuE", "false", "", "t", "yes", " true", "true ", "1", "tru\u0435", "TRU\u0130"
+    };
+
+    //the value, or the exception with its message
+    private static Object outcome(Function<String, Object> parse, String text) {
+        try {
+            return parse.apply(text);
+        } catch (NumberFormatException e) {
+            return "NumberFormatException: " + e.getMessage();
+        }
+    }
+
+    private static void assertSameAsJdk(TextConverter<?> converter, Function<String, Object> jdk, String... texts) {
+        CharSequenceConverter<?> chars = (CharSequenceConverter<?>) converter;
+        for (String text : texts) {
+            Object expected = outcome(jdk, text);
+            //a builder, so the text is not read as a String
+            assertEquals("\"" + text + "\"", expected, outcome(t -> chars.convert(new StringBuilder(t), null), text));
+            assertEquals("\"" + text + "\"", expected, outcome(t -> converter.convert(t, null), text));
+        }
+    }
+
+    @Test
+    public void integersAreTheSameAsJdk() {
+        assertSameAsJdk(Converters.toInteger, Integer::valueOf, INTEGERS);
+        assertSameAsJdk(Converters.toLong, Long::valueOf, INTEGERS);
+        assertSameAsJdk(Converters.toShort, Short::valueOf, INTEGERS);
+        assertSameAsJdk(Converters.toByte, Byte::valueOf, INTEGERS);
+    }
+
+    @Test
+    public void decimalsAreTheSameAsJdk() {
+        //Double.equals compares bits, so -0.0 differs from 0.0 and NaN equals NaN
+        assertSameAsJdk(Converters.toDouble, Double::valueOf, DECIMALS);
+        assertSameAsJdk(Converters.toFloat, Float::valueOf, DECIMALS);
+        assertSameAsJdk(Converters.toDouble, Double::valueOf, INTEGERS);
+        assertSameAsJdk(Converters.toFloat, Float::valueOf, INTEGERS);
+    }
+
+    @Test
+    public void shortDecimalsAreTheSameAsJdk() {
+        //every 1 to 4 digit mantissa with the dot anywhere and a small exponent
+        for (int mantissa = 0; mantissa < 10000; mantissa += 7) {
+            String digits = Integer.toString(mantissa);
+            for (int dot = 0; dot <= digits.length(); dot++) {
+                for (int exponent = -25; exponent <= 25; exponent += 3) {
+                    String text = digits.substring(0, dot) + "." + digits.substring(dot) + "e" + exponent;
+                    assertSameAsJdk(Converters.toDouble, Double::valueOf, text);
+                    assertSameAsJdk(Converters.toFloat, Float::valueOf, text);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void booleansAreTheSameAsJdk() {
+        assertSameAsJdk(Converters.toBoolean, Boolean::valueOf, BOOLEANS);
+        assertSameAsJdk(Converters.toBoolean, Boolean::valueOf, INTEGERS);
+    }
+
+    @Test
+    public void outOfRangeIsReportedLikeJdk() {
+        try {
+            ((CharSequenceConverter<?>) Converters.toByte).convert(new StringBuilder("300"), null);
+            fail();
+        } catch (NumberFormatException e) {
+            assertEquals("Value out of range. Value:\"300\" Radix:10", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package tparser.core;
+
+import org.jsoup.Jsoup;
+import org.jsoup.parser.Parser;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DelimiterTest {
+    private static final String ROOT   = "<html><body>" +
+            "<json-array name=\"v\" end-delimiter=\"hr\"><span>{v}</span></json-array>" +
+            "</body></html>";
+    private static final String NESTED = "<html><body><json-object>" +
+            "<json-array name=\"rows\"><li class=\"row\" x-select-in-subtree=\"true\"><b>{key}</b>" +
+            "<json-array name=\"values\" end-delimiter=\"hr\"><span>{v}</span></json-array>" +
+            "</li></json-array>" +
+            "</json-object></body></html>";
+
+    private static String parse(String template, String html) throws HtmlParseException {
+        ParseResult<CompactJsonDelegate.Record, CompactJsonDelegate.Array> result =
+                new TemplateBuilder(Jsoup.parse(template, "", Parser.xmlParser())).build()
+                        .parse(Jsoup.parse(html), CompactJsonDelegate.INSTANCE);
+        return result.getResultObject() != null ? result.getResultObject().toJson() : result.getResultArray().toJson();
+    }
+
+    private static String row(String key, String... values) {
+        StringBuilder json = new StringBuilder("{\"key\":\"").append(key).append("\",\"values\":[");
+        for (int i = 0; i < values.length; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"v\":\"").append(values[i]).append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+
+    @Test
+    public void elementsAfterTheLastEndDelimiterAreLeftOut() throws HtmlParseException {
+        assertEquals("[{\"v\":\"1\"},{\"v\":\"2\"},{\"v\":\"3\"}]",
+                parse(ROOT, "<span>1</span><span>2</span><hr><span>3</span><hr><span>4</span>"));
+        assertEquals("[{\"v\":\"1\"}]", parse(ROOT, "<span>1</span><hr><hr>"));
+        //never ended
+        assertEquals("[]", parse(ROOT, "<span>1</span><span>2</span>"));
+        assertEquals("[]", parse(ROOT, "<hr><span>1</span>"));
+    }
+
+    @Test
+    public void nestedArraysKeepTheirParents() throws HtmlParseException {
+        //what a parent has after its last end delimiter, or without one, is not given to the next parents
+        assertEquals("{\"rows\":[" +
+                        row("a", "1", "2") + "," +
+                        row("b", "3") + "," +
+                        row("c") + "," +
+                        row("d") + "," +
+                        row("e", "4") + "," +
+                        row("f", "5", "6") + "]}",
+                parse(NESTED, "<ul>" +
+                        "<li class=row><b>a</b><span>1</span><span>2</span><hr><span>x</span></li>" +
+                        "<li class=row><b>b</b><span>3</span><hr><span>y</span><span>z</span></li>" +
+                        "<li class=row><b>c</b><span>w</span></li>" +
+                        "<li class=row><b>d</b></li>" +
+                        "<li class=row><b>e</b><span>4</span><hr></li>" +
+                        "<li class=row><b>f</b><span>5</span><span>6</span><hr></li>" +
+                        "</ul>"));
+    }
+}
@@ -0,0 +1,142 @@
+package tparser.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LinearRegexTest {
+    private static final String[] ATOMS       = {"a", "b", "[^a]", ".", "\\s", "\\d", "^", "$", "\\b"};
+    private static final String[] QUANTIFIERS = {"*", "+", "?", "*?", "+?", "??", "{2}", "{2,}", "{1,3}", "{0,2}", "{2,}?"};
+    private static final String   ALPHABET    = "ab1 ";
+
+    //the matches of find() until none, with the whole match of each
+    private static String javaMatches(Pattern pattern, String input) {
+        StringBuilder matches = new StringBuilder();
+        Matcher       matcher = pattern.matcher(input);
+        while (matcher.find()) {
+            matches.append('[').append(matcher.group()).append(']');
+        }
+        return matches.toString();
+    }
+
+    private static String linearMatches(LinearRegex regex, String input) {
+        StringBuilder     matches = new StringBuilder();
+        RegexEngine.Match match   = regex.matcher(input);
+        while (match.find()) {
+            matches.append('[').append(match.group(0)).append(']');
+        }
+        return matches.toString();
+    }
+
+    private static String randomRegex(Random random, int depth) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0, items = 1 + random.nextInt(3); i < items; i++) {
+            int choice = random.nextInt(depth < 3 ? ATOMS.length + 3 : ATOMS.length);
+            if (choice < ATOMS.length) {
+                regex.append(ATOMS[choice]);
+            } else if (choice == ATOMS.length) {
+                regex.append('(').append(randomRegex(random, depth + 1)).append(')');
+            } else if (choice == ATOMS.length + 1) {
+                regex.append("(?:").append(randomRegex(random, depth + 1)).append(')');
+            } else {
+                regex.append("(?<g").append(depth).append(i).append('>').append(randomRegex(random, depth + 1)).append(')');
+            }
+            if (random.nextBoolean()) {
+                regex.append(QUANTIFIERS[random.nextInt(QUANTIFIERS.length)]);
+            }
+        }
+        if (random.nextInt(6) == 0) {
+            regex.append('|').append(randomRegex(random, depth + 1));
+        }
+        return regex.toString();
+    }
+
+    private static String randomInput(Random random) {
+        char[] input = new char[random.nextInt(9)];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(input);
+    }
+
+    private static void assertRejected(String regex) {
+        try {
+            LinearRegex.compile(regex);
+            fail("accepted " + regex);
+        } catch (PatternSyntaxException e) {
+            assertTrue(e.getDescription(), e.getDescription().contains("not supported by the linear regex engine"));
+        }
+    }
+
+    @Test
+    public void matchesAreTheSameAsJavaRegex() {
+        Random random   = new Random(42);
+        int    compared = 0;
+        for (int i = 0; i < 20000; i++) {
+            String      regex = randomRegex(random, 0);
+            Pattern     java;
+            LinearRegex linear;
+            try {
+                //java also rejects a repeated group name
+                java = Pattern.compile(regex);
+                linear = LinearRegex.compile(regex);
+            } catch (PatternSyntaxException e) {
+                continue;
+            }
+            for (int j = 0; j < 5; j++) {
+                String input = randomInput(random);
+                assertEquals(regex + " on \"" + input + "\"", javaMatches(java, input), linearMatches(linear, input));
+                compared++;
+            }
+        }
+        //most of the random regexes are supported
+        assertTrue(String.valueOf(compared), compared > 50000);
+    }
+
+    @Test
+    public void countedRepetitionsOfEmptyMatchesAreRejected() {
+        //java matches "" on "ab1 " and nothing on "1a    b", a simulation would match "a" and "1a  "
+        assertRejected("(^a?){2,}");
+        assertRejected("(?<g1>^^[^a]*){2,}.[^a]{2}");
+        assertRejected("(a*){2}");
+        assertRejected("(?:b|\\b){1,3}");
+        assertRejected("(\\b|a?){2}");
+    }
+
+    @Test
+    public void repetitionsOfEmptyMatchesAreSupported() {
+        assertEquals("[ab][][]", linearMatches(LinearRegex.compile("(a?)*b?"), "ab1"));
+        assertEquals("[a][][]", linearMatches(LinearRegex.compile("(^a?){0,1}"), "ab"));
+        assertEquals("[a]", linearMatches(LinearRegex.compile("(^a?){1}"), "ab"));
+        assertEquals("[aa][b][]", linearMatches(LinearRegex.compile("(?:a{2}){1,3}|(b?)+"), "aab"));
+    }
+
+    @Test
+    public void groupsAreTheSameAsJavaRegexOutsideRepetitions() {
+        String            regex  = "(?<year>\\d{4})-(?<month>\\d\\d)(?:-(?<day>\\d\\d))?";
+        LinearRegex       linear = LinearRegex.compile(regex);
+        Matcher           java   = Pattern.compile(regex).matcher("from 2019-07 to 2020-01-31");
+        RegexEngine.Match match  = linear.matcher("from 2019-07 to 2020-01-31");
+        while (java.find()) {
+            assertTrue(match.find());
+            for (int group = 0; group <= java.groupCount(); group++) {
+                assertEquals(java.group(group), match.group(group));
+            }
+        }
+        assertEquals(false, match.find());
+    }
+
+    @Test
+    public void enginesAreNamed() {
+        assertEquals("linear", RegexEngines.linear().toString());
+        assertEquals("java.util.regex", RegexEngines.javaRegex().toString());
+        assertEquals("linear, at most 100 char reads", new RegexBudget(RegexEngines.linear(), 100).toString());
+    }
+}
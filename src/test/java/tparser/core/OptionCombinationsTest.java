@@ -0,0 +1,169 @@
+package tparser.core;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OptionCombinationsTest {
+    //indexElements, reorderSelectorsAdaptively, learnArrayDepths and the linear regex engine
+    private static final int    OPTIONS     = 4;
+    //parsed again, so depths are learned and selectors reordered on what earlier parses saw
+    private static final int    ROUNDS      = 3;
+    private static final String SINGLE_TYPE = "<html><body><json-object><div class=\"results\">" +
+            "<json-array name=\"hits\">" +
+            "<article class=\"hit\" x-select-in-subtree=\"true\"><h3>{title}</h3><span class=\"price\">[int]{price}</span></article>" +
+            "</json-array></div></json-object></body></html>";
+    private static final String MULTI_TYPE  = "<html><body><json-object><div class=\"results\">" +
+            "<json-array name=\"hits\">" +
+            "<article class=\"hit\" x-select-in-subtree=\"true\"><h3>{title}</h3><span class=\"price\">[int]{price}</span></article>" +
+            "<aside class=\"promo\" x-select-in-subtree=\"true\">{promo}</aside>" +
+            "<em class=\"note\" x-select-in-subtree=\"true\">{note}</em>" +
+            "<p class=\"child\">{child}</p>" +
+            "</json-array></div></json-object></body></html>";
+    private static final String FIELDS      = "<html><body><json-object>" +
+            "<h1>{title}</h1>" +
+            "<div class=\"price\">{/(?&lt;currency>[A-Z]+) (?&lt;amount>\\d+(\\.\\d+)?)/}</div>" +
+            "<a class=\"main\" href=\"{link}\">{/(?&lt;verb>[a-z]+)(?&lt;rest>.*)/}</a>" +
+            "<json-array name=\"rows\" end-delimiter=\"hr\"><span class=\"v\">[int]{v}</span></json-array>" +
+            "<json-array name=\"tags\"><li class=\"tag\" x-select-in-subtree=\"true\">{tag}</li></json-array>" +
+            "</json-object></body></html>";
+
+    private static Document resource(String name, Parser parser) throws IOException {
+        try (InputStream in = OptionCombinationsTest.class.getResourceAsStream(name)) {
+            return Jsoup.parse(in, "UTF-8", "", parser);
+        }
+    }
+
+    private static String json(ParseResult<CompactJsonDelegate.Record, CompactJsonDelegate.Array> result) {
+        return result.getResultObject() != null ? result.getResultObject().toJson() : result.getResultArray().toJson();
+    }
+
+    private static Template build(Document source, int options) {
+        return new TemplateBuilder(source)
+                .indexElements((options & 1) != 0)
+                .reorderSelectorsAdaptively((options & 2) != 0)
+                .learnArrayDepths((options & 4) != 0)
+                .regexEngine((options & 8) != 0 ? RegexEngines.linear() : RegexEngines.javaRegex())
+                .build();
+    }
+
+    //hits nested the depth below the list after chrome that never matches, with promos, notes and children
+    private static Document results(int chrome, int depth, int items) {
+        StringBuilder html = new StringBuilder("<html><body><div class=results><form class=filters>");
+        for (int i = 0; i < chrome; i++) {
+            html.append("<fieldset><legend>filter ").append(i).append("</legend><label><input type=checkbox>")
+                    .append("<span class=price>option</span></label></fieldset>");
+        }
+        html.append("</form><div class=list>");
+        for (int i = 0; i < items; i++) {
+            if (i % 6 == 5) {
+                html.append("<p class=child>child ").append(i).append("</p>");
+            }
+            for (int d = 2; d < depth; d++) {
+                html.append("<div>");
+            }
+            html.append("<article class=hit><h3>hit ").append(i).append("</h3><span class=price>").append(i)
+                    .append("</span></article>");
+            if (i % 5 == 4) {
+                html.append("<aside class=promo>promo ").append(i).append("</aside>");
+            }
+            if (i % 7 == 6) {
+                html.append("<div><em class=note>note ").append(i).append("</em></div>");
+            }
+            for (int d = 2; d < depth; d++) {
+                html.append("</div>");
+            }
+        }
+        return Jsoup.parse(html.append("</div></div></body></html>").toString());
+    }
+
+    private static Document fields(int rows, boolean tagsDeep) {
+        StringBuilder html = new StringBuilder("<html><body><h1>fields ").append(rows).append("</h1>")
+                .append("<div class=price>EUR ").append(rows).append(".50</div>")
+                .append("<a class='main link' href=/f/").append(rows).append(">open the page</a>");
+        for (int i = 0; i < rows; i++) {
+            html.append("<span class=v>").append(i).append("</span>");
+            if (i % 3 == 2) {
+                html.append("<hr>");
+            }
+        }
+        html.append("<ul>");
+        for (int i = 0; i < rows; i++) {
+            html.append(tagsDeep ? "<li><div><li class=tag>deep " : "<li class=tag>tag ").append(i)
+                    .append(tagsDeep ? "</li></div></li>" : "</li>");
+        }
+        return Jsoup.parse(html.append("</ul></body></html>").toString());
+    }
+
+    private static void assertSameAsDefault(Document source, List<Document> pages) throws HtmlParseException {
+        Template     plain    = build(source, 0);
+        List<String> expected = new ArrayList<>();
+        for (Document page : pages) {
+            expected.add(json(plain.parse(page, CompactJsonDelegate.INSTANCE)));
+        }
+        for (int options = 1; options < 1 << OPTIONS; options++) {
+            Template template = build(source, options);
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = 0; i < pages.size(); i++) {
+                    assertEquals("options " + options + " round " + round + " page " + i,
+                            expected.get(i), json(template.parse(pages.get(i), CompactJsonDelegate.INSTANCE)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void listingPages() throws IOException, HtmlParseException {
+        List<Document> pages = new ArrayList<>();
+        pages.add(resource("/corpus/listing.html", Parser.htmlParser()));
+        pages.add(Jsoup.parse("<html><body><p>no listing</p></body></html>"));
+        for (String template : new String[]{"listing", "listing.fields", "listing.prices"}) {
+            assertSameAsDefault(resource("/corpus/" + template + ".template.html", Parser.xmlParser()), pages);
+        }
+    }
+
+    @Test
+    public void arraysInSubtrees() throws HtmlParseException {
+        List<Document> pages = new ArrayList<>();
+        //the learned depth held, too deep, too shallow and found nowhere
+        pages.add(results(20, 4, 30));
+        pages.add(results(0, 4, 12));
+        pages.add(results(5, 6, 20));
+        pages.add(results(5, 2, 20));
+        pages.add(results(10, 4, 0));
+        pages.add(results(0, 3, 1));
+        for (String template : new String[]{SINGLE_TYPE, MULTI_TYPE}) {
+            Document source = Jsoup.parse(template, "", Parser.xmlParser());
+            assertSameAsDefault(source, pages);
+
+            //the pages both hold the learned depth and make it search again
+            Template learning = build(source, 4);
+            for (int round = 0; round < ROUNDS; round++) {
+                for (Document page : pages) {
+                    learning.parse(page, CompactJsonDelegate.INSTANCE);
+                }
+            }
+            assertTrue(learning.learnedDepthHitCount() > 0);
+            assertTrue(learning.learnedDepthRetryCount() > 0);
+        }
+    }
+
+    @Test
+    public void regexAndDelimitedFields() throws HtmlParseException {
+        List<Document> pages = new ArrayList<>();
+        pages.add(fields(10, false));
+        pages.add(fields(4, true));
+        pages.add(fields(0, false));
+        pages.add(fields(7, false));
+        assertSameAsDefault(Jsoup.parse(FIELDS, "", Parser.xmlParser()), pages);
+    }
+}
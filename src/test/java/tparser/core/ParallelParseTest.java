@@ -0,0 +1,112 @@
+package tparser.core;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelParseTest {
+    private static final int[]  PARALLELISMS = {2, 3, 8};
+    //repeated to give races a chance
+    private static final int    REPEATS      = 10;
+    private static final String SECTIONS     = "<html><body><json-object>" +
+            "<h1>{title}</h1>" +
+            "<json-array name=\"sections\">" +
+            "<section x-select-in-subtree=\"true\"><h2>{heading}</h2>" +
+            "<json-array name=\"rows\">" +
+            "<tr x-select-in-subtree=\"true\"><td class=\"key\">{key}</td><td class=\"value\">[int]{value}</td></tr>" +
+            "</json-array>" +
+            "</section>" +
+            "</json-array>" +
+            "<json-array name=\"notes\"><p class=\"note\" x-select-in-subtree=\"true\">{note}</p></json-array>" +
+            "</json-object></body></html>";
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void startExecutor() {
+        //fewer threads than the largest parallelism, so forked subtrees also wait in the queue
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void stopExecutor() {
+        executor.shutdown();
+    }
+
+    private static Template template(String source) {
+        return new TemplateBuilder(Jsoup.parse(source, "", Parser.xmlParser())).build();
+    }
+
+    private static Document resource(String name, Parser parser) throws IOException {
+        try (InputStream in = ParallelParseTest.class.getResourceAsStream(name)) {
+            return Jsoup.parse(in, "UTF-8", "", parser);
+        }
+    }
+
+    private static Document sections(int sections, int rows) {
+        StringBuilder html = new StringBuilder("<html><body><h1>report</h1>");
+        for (int i = 0; i < sections; i++) {
+            html.append("<section><h2>section ").append(i).append("</h2><table>");
+            for (int j = 0; j < rows; j++) {
+                html.append("<tr><td class=key>k").append(i).append('.').append(j).append("</td>")
+                        .append("<td class=value>").append(i * rows + j).append("</td></tr>");
+            }
+            html.append("</table></section>");
+            if (i % 3 == 0) {
+                html.append("<p class=note>note ").append(i).append("</p>");
+            }
+        }
+        return Jsoup.parse(html.append("</body></html>").toString());
+    }
+
+    private static String json(ParseResult<CompactJsonDelegate.Record, CompactJsonDelegate.Array> result) {
+        return result.getResultObject() != null ? result.getResultObject().toJson() : result.getResultArray().toJson();
+    }
+
+    private static void assertSameAsSequential(Template template, Document document) throws HtmlParseException {
+        String sequential = json(template.parse(document, CompactJsonDelegate.INSTANCE));
+        for (int parallelism : PARALLELISMS) {
+            for (int i = 0; i < REPEATS; i++) {
+                assertEquals("parallelism " + parallelism, sequential,
+                        json(template.parse(document, CompactJsonDelegate.INSTANCE, parallelism, executor)));
+            }
+        }
+    }
+
+    @Test
+    public void nestedArraysParseTheSame() throws HtmlParseException {
+        Template template = template(SECTIONS);
+        assertSameAsSequential(template, sections(40, 25));
+        assertSameAsSequential(template, sections(1, 3));
+        assertSameAsSequential(template, sections(0, 0));
+
+        AtomicInteger forks = new AtomicInteger();
+        String        json  = json(template.parse(sections(40, 25), CompactJsonDelegate.INSTANCE, 8, task -> {
+            forks.incrementAndGet();
+            executor.execute(task);
+        }));
+        assertTrue(forks.toString(), forks.get() > 0);
+        assertTrue(json, json.contains("{\"heading\":\"section 39\",\"rows\":[{\"key\":\"k39.0\",\"value\":975}"));
+    }
+
+    @Test
+    public void listingPagesParseTheSame() throws IOException, HtmlParseException {
+        Document document = resource("/corpus/listing.html", Parser.htmlParser());
+        for (String template : new String[]{"listing", "listing.fields", "listing.prices"}) {
+            Document source = resource("/corpus/" + template + ".template.html", Parser.xmlParser());
+            assertSameAsSequential(new TemplateBuilder(source).build(), document);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package tparser.core;
+
+import org.jsoup.Jsoup;
+import org.jsoup.parser.Parser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+
+public class PruningReaderTest {
+    private static final String ITEMS     =
+            "<html><body><json-array name=\"items\">" +
+                    "<li class=\"item\" x-select-in-subtree=\"true\"><b>{name}</b></li>" +
+                    "</json-array></body></html>";
+    private static final String FULL_TEXT =
+            "<html><body><json-array name=\"items\">" +
+                    "<li class=\"item\" x-select-in-subtree=\"true\">{'#text}</li>" +
+                    "</json-array></body></html>";
+
+    //gives the input a char per read, so every token is split across reads
+    private static final class OneCharReader extends FilterReader {
+        OneCharReader(Reader input) {
+            super(input);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, 1));
+        }
+    }
+
+    private static Template template(String source) {
+        return new TemplateBuilder(Jsoup.parse(source, "", Parser.xmlParser())).build();
+    }
+
+    private static String json(ParseResult<CompactJsonDelegate.Record, CompactJsonDelegate.Array> result) {
+        return result.getResultObject() != null ? result.getResultObject().toJson() : result.getResultArray().toJson();
+    }
+
+    private static void assertSameAsDom(Template template, String html) throws IOException, HtmlParseException {
+        String expected = json(template.parse(Jsoup.parse(html), CompactJsonDelegate.INSTANCE));
+        assertEquals(html, expected, json(template.parse(new StringReader(html), CompactJsonDelegate.INSTANCE)));
+        assertEquals(html, expected,
+                json(template.parse(new OneCharReader(new StringReader(html)), CompactJsonDelegate.INSTANCE)));
+    }
+
+    private static void assertSameAsDom(String template, String... pages) throws IOException, HtmlParseException {
+        Template compiled = template(template);
+        for (String html : pages) {
+            assertSameAsDom(compiled, html);
+        }
+    }
+
+    private static String resource(String name) throws IOException {
+        try (InputStream in = PruningReaderTest.class.getResourceAsStream(name)) {
+            ByteArrayOutputStream bytes  = new ByteArrayOutputStream();
+            byte[]                buffer = new byte[8192];
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString("UTF-8");
+        }
+    }
+
+    @Test
+    public void impliedEndTags() throws IOException, HtmlParseException {
+        assertSameAsDom(ITEMS,
+                "<div class=ad><p>one<p>two</div><ul><li class=item><b>a</b><li class=item><b>b</b><li>other</ul>",
+                "<ul><li class=item><b>a</b><div class=ad></li></ul><li class=item><b>c</b></div></ul>" +
+                        "<li class=item><b>d</b>",
+                "<ul><li class=item><b>a</b><li><div class=ad>x</div><li class=item><b>b</b></ul>",
+                "<p>a<div class=ad><p>b</div><li class=item><b>x</b>",
+                "<p>open<div class=banner><span>ad</span></div><aside><dl><dt>x<dd>y</dl></aside>" +
+                        "<li class=item><b>e</b>",
+                "<div class=ad><a href=x><div>y</a></div><li class=item><b>a1</b>" +
+                        "<a><div class=ad><a>z</div></a><li class=item><b>a2</b>",
+                "<div class=ad><form><li class=item><b>f</b></form></div>" +
+                        "<form><div class=ad><form></div><li class=item><b>g</b></form>");
+    }
+
+    @Test
+    public void tables() throws IOException, HtmlParseException {
+        assertSameAsDom(ITEMS,
+                "<table><tr><td><li class=item><b>x</b></td>" +
+                        "<div class=ad>fostered<li class=item><b>f</b></div></tr></table>",
+                "<table><div class=ad>x</div><tr><td><ul><li class=item><b>t</b></ul></td></tr></table>",
+                "<table><script>var a=1;</script><tr><td><li class=item><b>x</b><aside>y</aside></td></table>",
+                "<table><td><div class=ad>x</div><li class=item><b>implied</b></table>",
+                "<select><div class=ad>x</div><option><li class=item><b>o</b></select><li class=item><b>p</b>");
+    }
+
+    @Test
+    public void scriptsAndRawText() throws IOException, HtmlParseException {
+        assertSameAsDom(ITEMS,
+                "<head><script>var x = \"<li class=item><b>fake</b></li>\";</script></head>" +
+                        "<body><li class=item><b>a</b>",
+                "<div class=ad><script><!--<script>document.write(\"</script><li class=item><b>s</b>\")</script>" +
+                        "--></script></div><li class=item><b>r</b>",
+                "<div class=ad><textarea><li class=item><b>t</b></textarea><title></div><li class=item><b>u</b>" +
+                        "</title></div><li class=item><b>v</b>",
+                "<div class=ad><xmp></div><li class=item><b>x</b></xmp><noscript><li class=item><b>n</b></noscript>" +
+                        "<iframe><li class=item><b>i</b></iframe></div><li class=item><b>w</b>",
+                "<div class=ad><style>.x{}</style><svg><li class=item><b>svg</b></svg></div>" +
+                        "<math><div class=ad><mi>x</div></math><li class=item><b>m</b>");
+    }
+
+    @Test
+    public void comments() throws IOException, HtmlParseException {
+        String html = "<!-- <li class=item><b>commented</b></li> --><li class=item><b>a</b>" +
+                "<div class=ad><!-- </div><li class=item><b>c</b> --></div><!--> <li class=item><b>d</b>" +
+                "<!---> <li class=item><b>e</b><!-- -- --!> <li class=item><b>f</b>";
+        assertSameAsDom(ITEMS, html);
+        //only comments are left out for full text
+        assertSameAsDom(FULL_TEXT, html, "<li class=item>a<!-- b -->c<div class=ad>d</div></li>");
+    }
+
+    @Test
+    public void plaintext() throws IOException, HtmlParseException {
+        assertSameAsDom(ITEMS,
+                "<li class=item><b>a</b><div class=ad><plaintext><li class=item><b>x</b></div></plaintext>",
+                "<div class=ad>a</div><plaintext></div><li class=item><b>y</b>");
+    }
+
+    @Test
+    public void framesets() throws IOException, HtmlParseException {
+        //a frameset replaces the body unless a token before it cleared jsoup's frameset-ok flag
+        String frameset = "<frameset><li class=item><b>X</b>";
+        assertSameAsDom(ITEMS,
+                "<div class=ad><ul><li></ul></div>" + frameset,
+                "<div class=ad><iframe></iframe></div>" + frameset,
+                "<ins><iframe>i</iframe></ins>" + frameset,
+                "<div class=ad><dl><dt>t<dd>d</dl></div>" + frameset,
+                "<div class=ad><pre></pre></div><aside><listing></listing></aside>" + frameset,
+                "<div class=ad><img></div>" + frameset,
+                "<div class=ad><input type=hidden></div>" + frameset,
+                "<div class=ad><input type=hidden><input></div>" + frameset,
+                "<div class=ad><hr><embed></div>" + frameset,
+                "<div class=ad><br></div>" + frameset,
+                "<div class=ad></br></div>" + frameset,
+                "<div class=ad><table></table></div>" + frameset,
+                "<div class=ad><select></select></div>" + frameset,
+                "<div class=ad><textarea></textarea></div>" + frameset,
+                "<div class=ad><xmp></xmp></div>" + frameset,
+                "<div class=ad><object></object></div><nav><marquee></marquee><applet></applet></nav>" + frameset,
+                "<div class=ad><button></button></div>" + frameset,
+                "<div class=ad>text</div>" + frameset,
+                "<div class=ad>&amp;</div>" + frameset,
+                "<div class=ad>&#32;</div>" + frameset,
+                "<div class=ad> \n\t</div>" + frameset,
+                "<div class=ad><span> </span><i></i></div>" + frameset,
+                "<p> </p><div class=ad><span> </span></div><div class=ad><i>x</i></div>" + frameset,
+                "<p>cleared</p><div class=ad><iframe></iframe></div>" + frameset,
+                "<select><option>in select</option></select><div class=ad><li></div>" + frameset,
+                "<table><tr><td><div class=ad><li></div></td></tr></table>" + frameset);
+    }
+
+    @Test
+    public void listingPages() throws IOException, HtmlParseException {
+        String page = resource("/corpus/listing.html");
+        int    end  = page.lastIndexOf("</body>");
+        StringBuilder chrome = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+            chrome.append("<script>window.dataLayer.push({event:\"impression\",slot:").append(i).append("});</script>")
+                    .append("<style>.slot-").append(i).append("{min-height:250px}</style>")
+                    .append("<div class=\"ad-slot\"><iframe src=\"/ads/").append(i).append("\"></iframe>")
+                    .append("<div class=\"ad-label\"><span>Sponsored</span></div></div>\n");
+        }
+        String withChrome = page.substring(0, end) + chrome + page.substring(end);
+        for (String template : new String[]{"listing", "listing.fields", "listing.prices"}) {
+            Template compiled = new TemplateBuilder(
+                    Jsoup.parse(resource("/corpus/" + template + ".template.html"), "", Parser.xmlParser())).build();
+            assertSameAsDom(compiled, page);
+            assertSameAsDom(compiled, withChrome);
+        }
+    }
+}
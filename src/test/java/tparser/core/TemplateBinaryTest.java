@@ -0,0 +1,160 @@
+package tparser.core;
+
+import org.jsoup.Jsoup;
+import org.jsoup.parser.Parser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TemplateBinaryTest {
+    private static final String LISTING = "<html><body><json-object>" +
+            "<h1 class=\"title\">{title}</h1>" +
+            "<a x-select-in-subtree=\"true\" href=\"{link}\"/>" +
+            "<p class=\"count\">{/(?&lt;from>\\d+) of (?&lt;total>\\d+)/}</p>" +
+            "<ul><json-array name=\"items\">" +
+            "<li class=\"item\" data-id=\"[int]{id}\"><b>{name}</b><i>[upper]{tag}</i><s>[double]{price}</s></li>" +
+            "</json-array></ul>" +
+            "</json-object></body></html>";
+    private static final String ROWS    = "<html><body><table><json-array name=\"rows\">" +
+            "<tr x-select-in-subtree=\"true\"><td class=\"key\">{key}</td><td class=\"value\">{'#value}</td></tr>" +
+            "</json-array></table></body></html>";
+    private static final String PAGE    = "<html><body>" +
+            "<h1 class=title>Lamps</h1><a href=\"/lamps?page=2\">next</a><p class=count>1 of 3</p>" +
+            "<ul><li class=item data-id=7><b>desk</b><i>new</i><s>19.5</s></li>" +
+            "<li class=item data-id=8><b>floor</b><i>sale</i><s>42</s></li></ul>" +
+            "<table><tr><td class=key>color</td><td class=value>red <b>and</b> blue</td></tr></table>" +
+            "</body></html>";
+
+    private static TemplateBuilder withConverters(TemplateBuilder builder) {
+        return builder.registerConverter("upper", (TextConverter<String>) (text, element) -> text.toUpperCase());
+    }
+
+    private static Template template(String source) {
+        return withConverters(new TemplateBuilder(Jsoup.parse(source, "", Parser.xmlParser()))).build();
+    }
+
+    private static Template load(StepTreeBuilder compiled) {
+        return withConverters(new TemplateBuilder(compiled)).build();
+    }
+
+    private static String parse(Template template) throws HtmlParseException {
+        ParseResult<CompactJsonDelegate.Record, CompactJsonDelegate.Array> result =
+                template.parse(Jsoup.parse(PAGE), CompactJsonDelegate.INSTANCE);
+        return result.getResultObject() != null ? result.getResultObject().toJson() : result.getResultArray().toJson();
+    }
+
+    private static byte[] bundle() throws IOException {
+        Map<String, Template> templates = new LinkedHashMap<>();
+        templates.put("listing", template(LISTING));
+        templates.put("rows", template(ROWS));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TemplateBinary.writeBundle(templates, out);
+        return out.toByteArray();
+    }
+
+    private static void assertRejected(byte[] compiled, String what) {
+        try {
+            load(TemplateBinary.fromBytes(compiled));
+            fail("loaded " + what);
+        } catch (TemplateSyntaxError expected) {
+            //rejected
+        }
+    }
+
+    //the index, or any template of the bundle
+    private static void assertBundleRejected(byte[] bundle, String what) {
+        try {
+            TemplateBinary.Bundle loaded = TemplateBinary.bundleOf(bundle);
+            for (String name : loaded.names()) {
+                load(loaded.stepTreeBuilder(name));
+            }
+            fail("loaded " + what);
+        } catch (TemplateSyntaxError expected) {
+            //rejected
+        }
+    }
+
+    @Test
+    public void loadedTemplatesParseTheSame() throws HtmlParseException {
+        for (String source : new String[]{LISTING, ROWS}) {
+            Template template = template(source);
+            Template loaded   = load(TemplateBinary.fromBytes(TemplateBinary.toBytes(template)));
+            assertEquals(parse(template), parse(loaded));
+        }
+        assertEquals("{\"title\":\"Lamps\",\"link\":\"/lamps?page=2\",\"from\":\"1\",\"total\":\"3\",\"items\":[" +
+                        "{\"id\":7,\"name\":\"desk\",\"tag\":\"NEW\",\"price\":19.5}," +
+                        "{\"id\":8,\"name\":\"floor\",\"tag\":\"SALE\",\"price\":42.0}]}",
+                parse(load(TemplateBinary.fromBytes(TemplateBinary.toBytes(template(LISTING))))));
+    }
+
+    @Test
+    public void bundledTemplatesParseTheSame() throws IOException, HtmlParseException {
+        TemplateBinary.Bundle bundle = TemplateBinary.bundleOf(bundle());
+
+        assertEquals(Arrays.asList("listing", "rows"), Arrays.asList(bundle.names().toArray()));
+        assertEquals(parse(template(LISTING)), parse(load(bundle.stepTreeBuilder("listing"))));
+        assertEquals(parse(template(ROWS)), parse(load(bundle.stepTreeBuilder("rows"))));
+        assertEquals(null, bundle.stepTreeBuilder("missing"));
+    }
+
+    @Test
+    public void truncatedTemplatesAreRejected() {
+        byte[] compiled = TemplateBinary.toBytes(template(LISTING));
+        for (int length = 0; length < compiled.length; length++) {
+            assertRejected(Arrays.copyOf(compiled, length), "truncated to " + length);
+        }
+    }
+
+    @Test
+    public void truncatedBundlesAreRejected() throws IOException {
+        byte[] bundle = bundle();
+        for (int length = 0; length < bundle.length; length++) {
+            assertBundleRejected(Arrays.copyOf(bundle, length), "truncated to " + length);
+        }
+    }
+
+    @Test
+    public void otherVersionsAreRejected() {
+        byte[] compiled = TemplateBinary.toBytes(template(LISTING));
+        //the version follows the 4 byte magic
+        compiled[5] = (byte) (TemplateBinary.VERSION + 1);
+        try {
+            TemplateBinary.fromBytes(compiled);
+            fail("loaded another version");
+        } catch (TemplateSyntaxError e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("unsupported compiled template version"));
+        }
+    }
+
+    @Test
+    public void damagedTemplatesAreRejected() {
+        byte[] compiled = TemplateBinary.toBytes(template(LISTING));
+        for (int i = 0; i < compiled.length; i++) {
+            for (int bit = 0; bit < 8; bit++) {
+                byte[] damaged = compiled.clone();
+                damaged[i] ^= 1 << bit;
+                assertRejected(damaged, "bit " + bit + " of byte " + i + " flipped");
+            }
+        }
+        byte[] extended = Arrays.copyOf(compiled, compiled.length + 1);
+        assertRejected(extended, "a byte appended");
+    }
+
+    @Test
+    public void damagedBundlesAreRejected() throws IOException {
+        byte[] bundle = bundle();
+        for (int i = 0; i < bundle.length; i++) {
+            byte[] damaged = bundle.clone();
+            damaged[i] ^= 0x20;
+            assertBundleRejected(damaged, "byte " + i + " flipped");
+        }
+    }
+}
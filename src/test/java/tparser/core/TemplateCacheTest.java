@@ -0,0 +1,137 @@
+package tparser.core;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class TemplateCacheTest {
+
+    private static Document source(String field) {
+        return Jsoup.parse("<html><body><json-object><b>{" + field + "}</b></json-object></body></html>", "", Parser.xmlParser());
+    }
+
+    //counts the builds by the converters they create
+    private static final class CountingFactory implements ConverterFactory {
+        final AtomicInteger builds = new AtomicInteger();
+        //builds failing before one succeeds
+        private final AtomicInteger failures;
+
+        CountingFactory(int failures) {
+            this.failures = new AtomicInteger(failures);
+        }
+
+        @Override
+        public Converter create(String type) {
+            builds.incrementAndGet();
+            try {
+                //widens the window of concurrent requests
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return failures.getAndDecrement() > 0 ? null : Converters.toString;
+        }
+    }
+
+    private static TemplateBuilder counted(CountingFactory factory) {
+        return new TemplateBuilder(Jsoup.parse(
+                "<html><body><json-object><b>[counted]{b}</b></json-object></body></html>", "", Parser.xmlParser()))
+                .setExternalConverterFactory(factory);
+    }
+
+    @Test
+    public void identicalSourcesHit() {
+        TemplateCache cache = new TemplateCache(4);
+        Template      a     = cache.get(source("a"));
+
+        assertSame(a, cache.get(source("a")));
+        assertNotSame(a, cache.get(source("b")));
+        //other options are another template
+        assertNotSame(a, cache.get(new TemplateBuilder(source("a")).indexElements(true)));
+        assertEquals(1, cache.hitCount());
+        assertEquals(3, cache.missCount());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        TemplateCache cache = new TemplateCache(2);
+        Template      a     = cache.get(source("a"));
+        Template      b     = cache.get(source("b"));
+        //a is used after b
+        assertSame(a, cache.get(source("a")));
+        cache.get(source("c"));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+        assertSame(a, cache.get(source("a")));
+        assertNotSame(b, cache.get(source("b")));
+        //b pushed out c, the least recently used then
+        assertEquals(2, cache.evictionCount());
+        assertEquals(2, cache.hitCount());
+        assertEquals(4, cache.missCount());
+    }
+
+    @Test
+    public void failedBuildsAreNotCached() {
+        TemplateCache   cache   = new TemplateCache(2);
+        CountingFactory factory = new CountingFactory(1);
+        Template        kept    = cache.get(source("a"));
+        try {
+            cache.get(counted(factory));
+            fail("built with a missing converter");
+        } catch (TemplateSyntaxError expected) {
+            //not cached
+        }
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.evictionCount());
+
+        Template built = cache.get(counted(factory));
+        assertSame(built, cache.get(counted(factory)));
+        assertSame(kept, cache.get(source("a")));
+        assertEquals(2, factory.builds.get());
+    }
+
+    @Test
+    public void concurrentRequestsBuildOnce() throws Exception {
+        TemplateCache   cache    = new TemplateCache(2);
+        CountingFactory factory  = new CountingFactory(0);
+        int             threads  = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch  start    = new CountDownLatch(1);
+        try {
+            List<Future<Template>> templates = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                templates.add(executor.submit((Callable<Template>) () -> {
+                    start.await();
+                    return cache.get(counted(factory));
+                }));
+            }
+            start.countDown();
+            Template first = templates.get(0).get();
+            for (Future<Template> template : templates) {
+                assertSame(first, template.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, factory.builds.get());
+        assertEquals(1, cache.missCount());
+        assertEquals(threads - 1, cache.hitCount());
+    }
+}
@@ -0,0 +1,96 @@
+package tparser.core;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class XmlStreamBuilderTest {
+
+    private static String resource(String name) throws IOException {
+        try (InputStream in = XmlStreamBuilderTest.class.getResourceAsStream(name)) {
+            ByteArrayOutputStream bytes  = new ByteArrayOutputStream();
+            byte[]                buffer = new byte[8192];
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString("UTF-8");
+        }
+    }
+
+    //the compiled form holds every step with its tag, attributes, classes and identifiers
+    private static void assertSameAsDom(String template) {
+        Document dom    = Jsoup.parse(template, "", Parser.xmlParser());
+        byte[]   fromDom = TemplateBinary.toBytes(new TemplateBuilder(dom).build());
+        assertArrayEquals(template, fromDom, TemplateBinary.toBytes(new TemplateBuilder(new StringReader(template)).build()));
+    }
+
+    private static String object(String body) {
+        return "<html><body><json-object>" + body + "</json-object></body></html>";
+    }
+
+    @Test
+    public void corpusTemplates() throws IOException {
+        for (String template : new String[]{"listing", "listing.fields", "listing.prices"}) {
+            assertSameAsDom(resource("/corpus/" + template + ".template.html"));
+        }
+    }
+
+    @Test
+    public void whitespace() {
+        assertSameAsDom(object("<b>  {trimmed}  </b><i>\n{lines}\n</i>"));
+        assertSameAsDom(object("<pre>  {kept}  </pre>"));
+        assertSameAsDom(object("<pre><span><b>  {nested}  </b></span></pre>"));
+        assertSameAsDom(object("<pre><a><b><c><d><e><f>  {deep}  </f></e></d></c></b></a></pre>"));
+        assertSameAsDom(object("<textarea> {area} </textarea><title> {title} </title>"));
+        assertSameAsDom(object("<p>{a}   \n\t  {b}</p>"));
+        assertSameAsDom(object("<pre>\r\n{crlf}\r\n</pre>"));
+    }
+
+    @Test
+    public void textSplitByMarkup() {
+        assertSameAsDom(object("<p>{before}<br/>{after}</p>"));
+        assertSameAsDom(object("<p>{a}<!-- comment -->{b}</p>"));
+        assertSameAsDom(object("<p>{a<!-- in the identifier -->b}</p>"));
+        assertSameAsDom(object("<p><![CDATA[{cdata}]]></p>"));
+        assertSameAsDom(object("<p>{a}<![CDATA[ <b>not a tag</b> ]]>{b}</p>"));
+        assertSameAsDom(object("<p>x<b>{child}</b>y</p>"));
+        assertSameAsDom(object("<p>{/(?&lt;n>\\d+) &amp; (?&lt;m>\\d+)/}</p>"));
+    }
+
+    @Test
+    public void classes() {
+        assertSameAsDom(object("<b class=\"a b\">{single}</b>"));
+        assertSameAsDom(object("<b class=\"a  a   b\">{duplicated}</b>"));
+        assertSameAsDom(object("<b class=\"  a b   c \">{spaced}</b>"));
+        assertSameAsDom(object("<b class=\"\">{empty}</b><i class=\"  \">{blank}</i>"));
+        assertSameAsDom(object("<b CLASS=\"Upper\" data-x=\"1\" title=\"{attribute}\">{cased}</b>"));
+        assertSameAsDom(object("<b class=\"\" Class=\"first\">{second}</b><i Class=\"first\" class=\"second\">{first}</i>"));
+    }
+
+    @Test
+    public void tabsAndLineBreaksInClassesSelectTheSame() throws HtmlParseException {
+        //xml reads them as spaces in attribute values, only the class names are matched though
+        String   template = object("<b class=\" a\tb\n c \">{b}</b><i class=\"\ta\r\n\">{i}</i>");
+        Document page     = Jsoup.parse("<b class=a>1</b><b class='c b a'>2</b><i class=c>3</i><i class=a>4</i>");
+        Template dom      = new TemplateBuilder(Jsoup.parse(template, "", Parser.xmlParser())).build();
+        Template stax     = new TemplateBuilder(new StringReader(template)).build();
+        assertEquals("{\"b\":\"2\",\"i\":\"4\"}", dom.parse(page, CompactJsonDelegate.INSTANCE).getResultObject().toJson());
+        assertEquals("{\"b\":\"2\",\"i\":\"4\"}", stax.parse(page, CompactJsonDelegate.INSTANCE).getResultObject().toJson());
+    }
+
+    @Test
+    public void structures() {
+        assertSameAsDom("<html><body><json-object><json-array name=\"items\" end-delimiter=\"hr\">" +
+                "<li class=\"item\" x-select-in-subtree=\"true\"><b>[int]{id}</b><json-object name=\"meta\">" +
+                "<i>{tag}</i></json-object></li></json-array><h1>{title}</h1></json-object></body></html>");
+    }
+}